@@ -0,0 +1,702 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.datavec.api.records.reader.impl.csv;
+
+import lombok.AllArgsConstructor;
+import org.datavec.api.conf.Configuration;
+import org.datavec.api.records.Record;
+import org.datavec.api.records.metadata.RecordMetaData;
+import org.datavec.api.records.metadata.RecordMetaDataInterval;
+import org.datavec.api.records.reader.BaseRecordReader;
+import org.datavec.api.split.InputSplit;
+import org.datavec.api.writable.DoubleWritable;
+import org.datavec.api.writable.Writable;
+import org.datavec.api.writable.batch.NDArrayRecordBatch;
+import org.nd4j.base.Preconditions;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.concurrency.AffinityManager;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A record reader for large, purely numerical CSV files, as an alternative to {@link CSVRecordReader} for the
+ * common "all columns are numbers" use case.<br>
+ * Files are split into chunks of approximately {@link #DEFAULT_CHUNK_SIZE} bytes, aligned to line boundaries. Chunks are
+ * memory mapped and parsed in parallel (but returned in order) by a pool of worker threads: numbers are parsed directly
+ * from the file bytes into primitive arrays, without creating any String or Writable objects per value. Parsed chunk
+ * buffers are recycled, hence in steady state parsing does not allocate.<br>
+ * <br>
+ * {@link #next(int)} writes the parsed values directly into a single [minibatch, numColumns] array, and returns a
+ * {@link NDArrayRecordBatch} with one [minibatch, 1] view per column. Consequently RecordReaderDataSetIterator and
+ * RecordReaderMultiDataSetIterator (including label column selection and one-hot conversion) work as with
+ * {@link CSVRecordReader}, but without any per-value conversion.<br>
+ * <br>
+ * Limitations: only local files are supported, all values must be numeric, all lines must have the same number of
+ * columns, and quoted fields must not contain the delimiter. Blank lines are skipped.
+ * The number of lines specified via skipNumLines are skipped at the start of each file.<br>
+ * <br>
+ * The metadata of records returned by {@link #nextRecord()} is a {@link RecordMetaDataInterval} with the file URI and
+ * the byte offsets [start, end) of the line in the file, so records can be loaded again via
+ * {@link #loadFromMetaData(List)} without re-reading the file from the start.
+ */
+public class NumericCSVRecordReader extends BaseRecordReader {
+    public static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+    public static final String NUM_THREADS = NAME_SPACE + ".numericcsv.numthreads";
+    public static final String CHUNK_SIZE = NAME_SPACE + ".numericcsv.chunksize";
+
+    // 10^0 to 10^22 are exactly representable as doubles
+    private static final double[] POW10 = new double[23];
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    static {
+        POW10[0] = 1.0;
+        for (int i = 1; i < POW10.length; i++) {
+            POW10[i] = POW10[i - 1] * 10.0;
+        }
+    }
+
+    protected int skipNumLines;
+    protected char delimiter;
+    protected int numThreads;
+    protected int chunkSize;
+    protected DataType dataType;
+
+    protected Configuration conf;
+    protected transient boolean initialized;
+    protected transient URI[] locations;
+    protected transient List<Chunk> chunks;
+
+    protected transient ExecutorService executor;
+    protected transient ArrayDeque<Future<ParsedChunk>> pending;
+    protected transient ConcurrentLinkedQueue<double[]> freeBuffers;
+    protected transient ConcurrentLinkedQueue<int[]> freeLineBuffers;
+    protected transient int nextChunk;
+    protected transient ParsedChunk current;
+    protected transient int currentRow;
+    protected transient int numColumns = -1;
+
+    public NumericCSVRecordReader() {
+        this(0);
+    }
+
+    /**
+     * @param skipNumLines Number of lines to skip at the start of each file
+     */
+    public NumericCSVRecordReader(int skipNumLines) {
+        this(skipNumLines, CSVRecordReader.DEFAULT_DELIMITER);
+    }
+
+    /**
+     * @param skipNumLines Number of lines to skip at the start of each file
+     * @param delimiter    Delimiter character
+     */
+    public NumericCSVRecordReader(int skipNumLines, char delimiter) {
+        this(skipNumLines, delimiter, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * @param skipNumLines Number of lines to skip at the start of each file
+     * @param delimiter    Delimiter character
+     * @param numThreads   Number of threads used for parsing
+     */
+    public NumericCSVRecordReader(int skipNumLines, char delimiter, int numThreads) {
+        this(skipNumLines, delimiter, numThreads, DEFAULT_CHUNK_SIZE, Nd4j.defaultFloatingPointType());
+    }
+
+    /**
+     * @param skipNumLines Number of lines to skip at the start of each file
+     * @param delimiter    Delimiter character
+     * @param numThreads   Number of threads used for parsing
+     * @param chunkSize    Approximate number of bytes parsed in each task
+     * @param dataType     Data type of the arrays returned by {@link #next(int)}: FLOAT or DOUBLE
+     */
+    public NumericCSVRecordReader(int skipNumLines, char delimiter, int numThreads, int chunkSize, DataType dataType) {
+        Preconditions.checkArgument(skipNumLines >= 0, "Number of lines to skip must be >= 0, got %s", skipNumLines);
+        Preconditions.checkArgument(numThreads > 0, "Number of threads must be positive, got %s", numThreads);
+        Preconditions.checkArgument(chunkSize > 0, "Chunk size must be positive, got %s", chunkSize);
+        Preconditions.checkArgument(dataType == DataType.FLOAT || dataType == DataType.DOUBLE,
+                "Only FLOAT and DOUBLE data types are supported, got %s", dataType);
+        this.skipNumLines = skipNumLines;
+        this.delimiter = delimiter;
+        this.numThreads = numThreads;
+        this.chunkSize = chunkSize;
+        this.dataType = dataType;
+    }
+
+    @Override
+    public void initialize(Configuration conf, InputSplit split) throws IOException, InterruptedException {
+        setConf(conf);
+        this.skipNumLines = conf.getInt(CSVRecordReader.SKIP_NUM_LINES, skipNumLines);
+        this.delimiter = conf.getChar(CSVRecordReader.DELIMITER, delimiter);
+        this.numThreads = conf.getInt(NUM_THREADS, numThreads);
+        this.chunkSize = conf.getInt(CHUNK_SIZE, chunkSize);
+        initialize(split);
+    }
+
+    @Override
+    public void initialize(InputSplit split) throws IOException, InterruptedException {
+        super.initialize(split);
+        close();
+
+        locations = split.locations();
+        chunks = new ArrayList<>();
+        for (URI uri : locations) {
+            if (uri.getScheme() != null && !"file".equals(uri.getScheme())) {
+                throw new UnsupportedOperationException("NumericCSVRecordReader only supports local files, got " + uri);
+            }
+            splitChunks(new File(uri), chunks);
+        }
+
+        freeBuffers = new ConcurrentLinkedQueue<>();
+        freeLineBuffers = new ConcurrentLinkedQueue<>();
+        pending = new ArrayDeque<>();
+        initialized = true;
+        reset();
+    }
+
+    /**
+     * Split the file into chunks of approximately {@link #chunkSize} bytes, each ending at a line boundary
+     */
+    protected void splitChunks(File f, List<Chunk> out) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(f, "r")) {
+            FileChannel ch = raf.getChannel();
+            long size = ch.size();
+            ByteBuffer buf = ByteBuffer.allocate(8192);
+
+            long pos = 0;
+            for (int i = 0; i < skipNumLines && pos < size; i++) {
+                pos = lineEnd(ch, pos, size, buf);
+            }
+
+            while (pos < size) {
+                long end = pos + chunkSize >= size ? size : lineEnd(ch, pos + chunkSize - 1, size, buf);
+                if (end - pos > Integer.MAX_VALUE) {
+                    throw new IllegalStateException("Line in file " + f + " at byte offset " + pos + " is too long");
+                }
+                out.add(new Chunk(f, pos, (int) (end - pos)));
+                pos = end;
+            }
+        }
+    }
+
+    /**
+     * @return Offset just after the first '\n' at or after the specified position, or the file size if none
+     */
+    private static long lineEnd(FileChannel ch, long from, long size, ByteBuffer buf) throws IOException {
+        long pos = from;
+        while (pos < size) {
+            buf.clear();
+            int read = ch.read(buf, pos);
+            if (read <= 0)
+                break;
+            for (int i = 0; i < read; i++) {
+                if (buf.get(i) == '\n')
+                    return pos + i + 1;
+            }
+            pos += read;
+        }
+        return size;
+    }
+
+    @Override
+    public boolean batchesSupported() {
+        return true;
+    }
+
+    @Override
+    public List<List<Writable>> next(int num) {
+        Preconditions.checkArgument(num > 0, "Number of examples must be positive, got %s", num);
+        if (!hasNext())
+            throw new NoSuchElementException("No next element found!");
+
+        int cols = numColumns;
+        boolean isFloat = dataType == DataType.FLOAT;
+        // parsed values are written directly into the (host) buffer of the returned array
+        INDArray arr = Nd4j.createUninitialized(dataType, new long[] {num, cols}, 'c');
+        FloatBuffer floatBuffer = isFloat ? arr.data().asNioFloat() : null;
+        DoubleBuffer doubleBuffer = isFloat ? null : arr.data().asNioDouble();
+
+        int n = 0;
+        while (n < num && hasNext()) {
+            int count = Math.min(num - n, current.numRows - currentRow);
+            int srcPos = currentRow * cols;
+            int destPos = n * cols;
+            int len = count * cols;
+            double[] src = current.values;
+            if (isFloat) {
+                for (int i = 0; i < len; i++) {
+                    floatBuffer.put(destPos + i, (float) src[srcPos + i]);
+                }
+            } else {
+                doubleBuffer.position(destPos);
+                doubleBuffer.put(src, srcPos, len);
+            }
+            currentRow += count;
+            n += count;
+        }
+        Nd4j.getAffinityManager().tagLocation(arr, AffinityManager.Location.HOST);
+
+        if (n < num) {
+            // end of data: rows [0, n) of the same array
+            arr = arr.get(NDArrayIndex.interval(0, n), NDArrayIndex.all());
+        }
+
+        List<INDArray> columns = new ArrayList<>(cols);
+        for (int i = 0; i < cols; i++) {
+            columns.add(arr.get(NDArrayIndex.all(), NDArrayIndex.interval(i, i + 1)));
+        }
+        return new NDArrayRecordBatch(columns);
+    }
+
+    @Override
+    public List<Writable> next() {
+        if (!hasNext())
+            throw new NoSuchElementException("No next element found!");
+        List<Writable> ret = new ArrayList<>(numColumns);
+        int offset = currentRow * numColumns;
+        for (int i = 0; i < numColumns; i++) {
+            ret.add(new DoubleWritable(current.values[offset + i]));
+        }
+        currentRow++;
+        return ret;
+    }
+
+    @Override
+    public boolean hasNext() {
+        Preconditions.checkState(initialized, "RecordReader has not been initialized before use");
+        while (current == null || currentRow >= current.numRows) {
+            if (current != null) {
+                freeBuffers.add(current.values);
+                freeLineBuffers.add(current.lines);
+                current = null;
+            }
+            if (pending.isEmpty())
+                return false;
+
+            Future<ParsedChunk> f = pending.poll();
+            submitNext();
+            try {
+                current = f.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for parsed CSV data", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException)
+                    throw (RuntimeException) cause;
+                throw new RuntimeException(cause);
+            }
+            currentRow = 0;
+
+            if (current.numRows > 0) {
+                if (numColumns < 0) {
+                    numColumns = current.numColumns;
+                } else if (numColumns != current.numColumns) {
+                    throw new IllegalStateException("Inconsistent number of columns: expected " + numColumns
+                            + " columns, got " + current.numColumns + " in file " + current.chunk.file
+                            + " after byte offset " + current.chunk.start);
+                }
+            }
+        }
+        return true;
+    }
+
+    private void submitNext() {
+        if (nextChunk < chunks.size()) {
+            final Chunk c = chunks.get(nextChunk++);
+            pending.add(executor.submit(new Callable<ParsedChunk>() {
+                @Override
+                public ParsedChunk call() throws Exception {
+                    return parse(c);
+                }
+            }));
+        }
+    }
+
+    protected ParsedChunk parse(Chunk c) throws IOException {
+        ByteBuffer bytes;
+        try (RandomAccessFile raf = new RandomAccessFile(c.file, "r")) {
+            // mapping remains valid after the channel is closed
+            bytes = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, c.start, c.length);
+        }
+
+        double[] values = freeBuffers.poll();
+        if (values == null) {
+            // initial guess: ~4 bytes per value
+            values = new double[Math.max(16, c.length / 4)];
+        }
+        // [start, end) offset of each parsed line within the chunk, for record metadata
+        int[] lines = freeLineBuffers.poll();
+        if (lines == null) {
+            lines = new int[Math.max(16, c.length / 16)];
+        }
+
+        int n = 0;
+        int rows = 0;
+        int cols = -1;
+        int pos = 0;
+        int limit = c.length;
+        while (pos < limit) {
+            int end = pos;
+            while (end < limit && bytes.get(end) != '\n') {
+                end++;
+            }
+
+            if (!isBlank(bytes, pos, end)) {
+                int rowCols = countColumns(bytes, pos, end);
+                if (cols < 0) {
+                    cols = rowCols;
+                } else if (rowCols != cols) {
+                    throw new IllegalStateException("Inconsistent number of columns: expected " + cols + " columns, got "
+                            + rowCols + " in file " + c.file + " at byte offset " + (c.start + pos));
+                }
+                if (n + cols > values.length) {
+                    values = Arrays.copyOf(values, Math.max(values.length * 2, n + cols));
+                }
+                if (2 * rows + 2 > lines.length) {
+                    lines = Arrays.copyOf(lines, Math.max(lines.length * 2, 2 * rows + 2));
+                }
+                parseLine(bytes, pos, end, values, n, c.file, c.start);
+                lines[2 * rows] = pos;
+                // exclude the '\r' of "\r\n" line endings
+                lines[2 * rows + 1] = end > pos && bytes.get(end - 1) == '\r' ? end - 1 : end;
+                n += cols;
+                rows++;
+            }
+            pos = end + 1;
+        }
+
+        return new ParsedChunk(c, values, lines, rows, cols);
+    }
+
+    private int countColumns(ByteBuffer bytes, int from, int to) {
+        int cols = 1;
+        for (int i = from; i < to; i++) {
+            if (bytes.get(i) == delimiter)
+                cols++;
+        }
+        return cols;
+    }
+
+    private void parseLine(ByteBuffer bytes, int from, int to, double[] out, int outPos, Object location,
+                           long fileOffset) {
+        int fieldStart = from;
+        for (int i = from; i <= to; i++) {
+            if (i == to || bytes.get(i) == delimiter) {
+                out[outPos++] = parseField(bytes, fieldStart, i, location, fileOffset);
+                fieldStart = i + 1;
+            }
+        }
+    }
+
+    private static boolean isBlank(ByteBuffer bytes, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (!isWhitespace(bytes.get(i)))
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    /**
+     * Parse a double from the specified range of bytes. Values with at most 18 significant digits and a decimal
+     * exponent in the range [-22, 22] (i.e., the vast majority of values in practice) are parsed exactly without any
+     * allocation; other values fall back to {@link Double#parseDouble(String)}
+     */
+    private static double parseField(ByteBuffer bytes, int from, int to, Object location, long fileOffset) {
+        while (from < to && isWhitespace(bytes.get(from)))
+            from++;
+        while (to > from && isWhitespace(bytes.get(to - 1)))
+            to--;
+        if (to - from >= 2 && bytes.get(from) == '"' && bytes.get(to - 1) == '"') {
+            from++;
+            to--;
+        }
+
+        int i = from;
+        boolean negative = false;
+        if (i < to && (bytes.get(i) == '-' || bytes.get(i) == '+')) {
+            negative = bytes.get(i) == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int exp10 = 0;
+        int digits = 0;
+        boolean exact = true;
+        boolean anyDigits = false;
+        byte b;
+        while (i < to && (b = bytes.get(i)) >= '0' && b <= '9') {
+            if (digits < 18) {
+                mantissa = 10 * mantissa + (b - '0');
+                if (mantissa != 0)
+                    digits++;
+            } else {
+                exp10++;
+                if (b != '0')
+                    exact = false;
+            }
+            anyDigits = true;
+            i++;
+        }
+        if (i < to && bytes.get(i) == '.') {
+            i++;
+            while (i < to && (b = bytes.get(i)) >= '0' && b <= '9') {
+                if (digits < 18) {
+                    mantissa = 10 * mantissa + (b - '0');
+                    if (mantissa != 0)
+                        digits++;
+                    exp10--;
+                } else if (b != '0') {
+                    exact = false;
+                }
+                anyDigits = true;
+                i++;
+            }
+        }
+        if (anyDigits && i < to && (bytes.get(i) == 'e' || bytes.get(i) == 'E')) {
+            i++;
+            boolean negativeExp = false;
+            if (i < to && (bytes.get(i) == '-' || bytes.get(i) == '+')) {
+                negativeExp = bytes.get(i) == '-';
+                i++;
+            }
+            int exp = 0;
+            boolean anyExpDigits = false;
+            while (i < to && (b = bytes.get(i)) >= '0' && b <= '9') {
+                if (exp < 100000)
+                    exp = 10 * exp + (b - '0');
+                anyExpDigits = true;
+                i++;
+            }
+            if (!anyExpDigits)
+                anyDigits = false;
+            exp10 += negativeExp ? -exp : exp;
+        }
+
+        if (anyDigits && i == to && exact) {
+            if (mantissa == 0)
+                return negative ? -0.0 : 0.0;
+            if (mantissa < MAX_EXACT_MANTISSA && exp10 >= -22 && exp10 <= 22) {
+                double v = exp10 < 0 ? mantissa / POW10[-exp10] : mantissa * POW10[exp10];
+                return negative ? -v : v;
+            }
+        }
+
+        // rare cases: many significant digits, large exponents, NaN, Infinity, hex floats, or invalid values
+        byte[] field = new byte[to - from];
+        for (int j = 0; j < field.length; j++) {
+            field[j] = bytes.get(from + j);
+        }
+        String s = new String(field, StandardCharsets.UTF_8);
+        try {
+            return Double.parseDouble(s);
+        } catch (NumberFormatException e) {
+            throw new NumberFormatException("Invalid numerical value \"" + s + "\" in " + location
+                    + " at byte offset " + (fileOffset + from));
+        }
+    }
+
+    @Override
+    public List<String> getLabels() {
+        return null;
+    }
+
+    @Override
+    public void reset() {
+        Preconditions.checkState(initialized, "RecordReader has not been initialized before use");
+        cancelPending();
+        if (executor == null) {
+            final AtomicInteger threadCount = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "NumericCSVRecordReader-" + threadCount.getAndIncrement());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+
+        nextChunk = 0;
+        current = null;
+        currentRow = 0;
+        numColumns = -1;
+        // keep up to 2 chunks per thread parsed ahead of the consumer
+        for (int i = 0; i < 2 * numThreads; i++) {
+            submitNext();
+        }
+    }
+
+    private void cancelPending() {
+        if (pending != null) {
+            for (Future<ParsedChunk> f : pending) {
+                f.cancel(true);
+            }
+            pending.clear();
+        }
+        current = null;
+    }
+
+    @Override
+    public boolean resetSupported() {
+        return true;
+    }
+
+    @Override
+    public List<Writable> record(URI uri, DataInputStream dataInputStream) throws IOException {
+        BufferedReader br = new BufferedReader(new InputStreamReader(dataInputStream, StandardCharsets.UTF_8));
+        for (int i = 0; i < skipNumLines; i++) {
+            br.readLine();
+        }
+        String line = br.readLine();
+        if (line == null)
+            throw new NoSuchElementException("No line found in " + uri);
+
+        return parseRecord(ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8)), uri, 0);
+    }
+
+    private List<Writable> parseRecord(ByteBuffer bytes, Object location, long fileOffset) {
+        int limit = bytes.limit();
+        double[] values = new double[countColumns(bytes, 0, limit)];
+        parseLine(bytes, 0, limit, values, 0, location, fileOffset);
+        List<Writable> ret = new ArrayList<>(values.length);
+        for (double d : values) {
+            ret.add(new DoubleWritable(d));
+        }
+        return ret;
+    }
+
+    @Override
+    public Record nextRecord() {
+        if (!hasNext())
+            throw new NoSuchElementException("No next element found!");
+        Chunk c = current.chunk;
+        long start = c.start + current.lines[2 * currentRow];
+        long end = c.start + current.lines[2 * currentRow + 1];
+        RecordMetaData meta = new RecordMetaDataInterval(start, end, c.file.toURI(), NumericCSVRecordReader.class);
+        return new org.datavec.api.records.impl.Record(next(), meta);
+    }
+
+    @Override
+    public Record loadFromMetaData(RecordMetaData recordMetaData) throws IOException {
+        return loadFromMetaData(Collections.singletonList(recordMetaData)).get(0);
+    }
+
+    @Override
+    public List<Record> loadFromMetaData(List<RecordMetaData> recordMetaDatas) throws IOException {
+        List<Record> out = new ArrayList<>(recordMetaDatas.size());
+        Map<URI, RandomAccessFile> files = new HashMap<>();
+        try {
+            for (RecordMetaData rmd : recordMetaDatas) {
+                if (!(rmd instanceof RecordMetaDataInterval)) {
+                    throw new IllegalArgumentException(
+                            "Invalid metadata; expected RecordMetaDataInterval instance; got: " + rmd);
+                }
+                RecordMetaDataInterval m = (RecordMetaDataInterval) rmd;
+                long length = m.getTo() - m.getFrom();
+                if (m.getURI() == null || length < 0 || length > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException("Invalid metadata: " + m);
+                }
+
+                RandomAccessFile raf = files.get(m.getURI());
+                if (raf == null) {
+                    raf = new RandomAccessFile(new File(m.getURI()), "r");
+                    files.put(m.getURI(), raf);
+                }
+                byte[] line = new byte[(int) length];
+                raf.seek(m.getFrom());
+                raf.readFully(line);
+                out.add(new org.datavec.api.records.impl.Record(parseRecord(ByteBuffer.wrap(line), m.getURI(),
+                        m.getFrom()), m));
+            }
+        } finally {
+            for (RandomAccessFile raf : files.values()) {
+                raf.close();
+            }
+        }
+        return out;
+    }
+
+    @Override
+    public void close() throws IOException {
+        cancelPending();
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    @Override
+    public void setConf(Configuration conf) {
+        this.conf = conf;
+    }
+
+    @Override
+    public Configuration getConf() {
+        return conf;
+    }
+
+    @AllArgsConstructor
+    protected static class Chunk {
+        private final File file;
+        private final long start;
+        private final int length;
+    }
+
+    @AllArgsConstructor
+    protected static class ParsedChunk {
+        private final Chunk chunk;
+        private final double[] values;
+        private final int[] lines;
+        private final int numRows;
+        private final int numColumns;
+    }
+}
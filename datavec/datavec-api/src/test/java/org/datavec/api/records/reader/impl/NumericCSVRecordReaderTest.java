@@ -0,0 +1,285 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.datavec.api.records.reader.impl;
+
+import org.apache.commons.io.FileUtils;
+import org.datavec.api.records.Record;
+import org.datavec.api.records.metadata.RecordMetaData;
+import org.datavec.api.records.metadata.RecordMetaDataInterval;
+import org.datavec.api.records.metadata.RecordMetaDataURI;
+import org.datavec.api.records.reader.impl.csv.CSVRecordReader;
+import org.datavec.api.records.reader.impl.csv.NumericCSVRecordReader;
+import org.datavec.api.split.FileSplit;
+import org.datavec.api.writable.Writable;
+import org.datavec.api.writable.batch.NDArrayRecordBatch;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class NumericCSVRecordReaderTest {
+
+    @Rule
+    public TemporaryFolder testDir = new TemporaryFolder();
+
+    private static String randomValue(Random r) {
+        switch (r.nextInt(8)) {
+            case 0:
+                return String.valueOf(r.nextInt(1000) - 500);
+            case 1:
+                return String.valueOf(r.nextDouble());
+            case 2:
+                return String.valueOf(-r.nextDouble() * 1e-7);
+            case 3:
+                return String.valueOf(r.nextGaussian() * 1e30);
+            case 4:
+                return String.valueOf(r.nextFloat());
+            case 5:
+                return "\"" + r.nextInt(10) + "\"";
+            case 6:
+                return " " + r.nextInt(10) + ".5 ";
+            default:
+                return "1234567890.123456789012";
+        }
+    }
+
+    private File writeFile(String header, int rows, int cols, long seed, String lineSep) throws Exception {
+        Random r = new Random(seed);
+        StringBuilder sb = new StringBuilder();
+        if (header != null)
+            sb.append(header).append(lineSep);
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                if (j > 0)
+                    sb.append(",");
+                sb.append(randomValue(r));
+            }
+            sb.append(lineSep);
+        }
+        File f = testDir.newFile();
+        FileUtils.writeStringToFile(f, sb.toString(), StandardCharsets.UTF_8);
+        return f;
+    }
+
+    private static List<double[]> expected(File f, int skipNumLines) throws Exception {
+        CSVRecordReader rr = new CSVRecordReader(skipNumLines, ',');
+        rr.initialize(new FileSplit(f));
+        List<double[]> out = new ArrayList<>();
+        while (rr.hasNext()) {
+            List<Writable> l = rr.next();
+            double[] d = new double[l.size()];
+            for (int i = 0; i < d.length; i++) {
+                d[i] = Double.parseDouble(l.get(i).toString().trim());
+            }
+            out.add(d);
+        }
+        return out;
+    }
+
+    @Test
+    public void testNextMatchesCSVRecordReader() throws Exception {
+        for (String lineSep : new String[] {"\n", "\r\n"}) {
+            File f = writeFile("a,b,c,d,e", 500, 5, 12345, lineSep);
+            List<double[]> exp = expected(f, 1);
+
+            //Small chunks: lines are split across many parsing tasks
+            NumericCSVRecordReader rr = new NumericCSVRecordReader(1, ',', 3, 64, DataType.DOUBLE);
+            rr.initialize(new FileSplit(f));
+            for (int epoch = 0; epoch < 2; epoch++) {
+                int count = 0;
+                while (rr.hasNext()) {
+                    List<Writable> l = rr.next();
+                    assertEquals(5, l.size());
+                    for (int j = 0; j < 5; j++) {
+                        assertEquals(exp.get(count)[j], l.get(j).toDouble(), 0.0);
+                    }
+                    count++;
+                }
+                assertEquals(500, count);
+                rr.reset();
+            }
+            rr.close();
+        }
+    }
+
+    @Test
+    public void testNextBatch() throws Exception {
+        File f = writeFile(null, 103, 4, 42, "\n");
+        List<double[]> exp = expected(f, 0);
+
+        for (DataType dt : new DataType[] {DataType.FLOAT, DataType.DOUBLE}) {
+            NumericCSVRecordReader rr = new NumericCSVRecordReader(0, ',', 2, 100, dt);
+            rr.initialize(new FileSplit(f));
+            assertTrue(rr.batchesSupported());
+
+            int count = 0;
+            while (rr.hasNext()) {
+                List<List<Writable>> batch = rr.next(10);
+                assertTrue(batch instanceof NDArrayRecordBatch);
+                List<INDArray> arrays = ((NDArrayRecordBatch) batch).getArrays();
+                assertEquals(4, arrays.size());
+
+                int n = count + 10 <= 103 ? 10 : 103 - count;
+                for (int j = 0; j < 4; j++) {
+                    INDArray col = arrays.get(j);
+                    //All columns are views of the same [n, 4] array
+                    assertTrue(col.isView());
+                    assertEquals(arrays.get(0).data().address() + j * dt.width(), col.data().address());
+                    assertEquals(dt, col.dataType());
+                    assertArrayEquals(new long[] {n, 1}, col.shape());
+                    for (int i = 0; i < n; i++) {
+                        double e = exp.get(count + i)[j];
+                        assertEquals(dt == DataType.FLOAT ? (float) e : e, col.getDouble(i, 0), 0.0);
+                    }
+                }
+                count += n;
+            }
+            assertEquals(103, count);
+        }
+    }
+
+    @Test
+    public void testSkipLinesMultipleFiles() throws Exception {
+        File dir = testDir.newFolder();
+        List<double[]> exp = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            File f = writeFile("header", 20 + i, 3, i, "\n");
+            exp.addAll(expected(f, 1));
+            FileUtils.moveFile(f, new File(dir, "file_" + i + ".csv"));
+        }
+
+        NumericCSVRecordReader rr = new NumericCSVRecordReader(1, ',', 2, 32, DataType.DOUBLE);
+        rr.initialize(new FileSplit(dir));
+        List<double[]> actual = new ArrayList<>();
+        while (rr.hasNext()) {
+            List<Writable> l = rr.next();
+            double[] d = new double[l.size()];
+            for (int i = 0; i < d.length; i++) {
+                d[i] = l.get(i).toDouble();
+            }
+            actual.add(d);
+        }
+
+        //FileSplit order may differ from the order files were written in: compare as sets of rows
+        assertEquals(exp.size(), actual.size());
+        for (double[] d : exp) {
+            boolean found = false;
+            for (double[] a : actual) {
+                if (Arrays.equals(d, a)) {
+                    found = true;
+                    break;
+                }
+            }
+            assertTrue(found);
+        }
+    }
+
+    @Test
+    public void testRecordMetaData() throws Exception {
+        for (String lineSep : new String[] {"\n", "\r\n"}) {
+            File f = writeFile("a,b,c", 50, 3, 123, lineSep);
+            //Blank line in the middle: skipped, and must not shift the metadata of subsequent lines
+            String content = FileUtils.readFileToString(f, StandardCharsets.UTF_8);
+            int idx = content.indexOf(lineSep, content.length() / 2) + lineSep.length();
+            content = content.substring(0, idx) + lineSep + content.substring(idx);
+            FileUtils.writeStringToFile(f, content, StandardCharsets.UTF_8);
+            byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+
+            NumericCSVRecordReader rr = new NumericCSVRecordReader(1, ',', 2, 64, DataType.DOUBLE);
+            rr.initialize(new FileSplit(f));
+            List<Record> records = new ArrayList<>();
+            List<RecordMetaData> meta = new ArrayList<>();
+            while (rr.hasNext()) {
+                Record r = rr.nextRecord();
+                records.add(r);
+                meta.add(r.getMetaData());
+
+                assertTrue(r.getMetaData() instanceof RecordMetaDataInterval);
+                RecordMetaDataInterval m = (RecordMetaDataInterval) r.getMetaData();
+                assertEquals(f.toURI(), m.getURI());
+                assertEquals(NumericCSVRecordReader.class, m.getReaderClass());
+                //Offsets delimit exactly the source line
+                String line = new String(bytes, (int) m.getFrom(), (int) (m.getTo() - m.getFrom()), StandardCharsets.UTF_8);
+                assertEquals('\n', bytes[(int) m.getFrom() - 1]);
+                assertFalse(line, line.isEmpty() || line.contains("\n") || line.contains("\r"));
+                String[] split = line.split(",");
+                assertEquals(split.length, r.getRecord().size());
+                for (int i = 0; i < split.length; i++) {
+                    assertEquals(Double.parseDouble(split[i].replace("\"", "").trim()), r.getRecord().get(i).toDouble(), 0.0);
+                }
+            }
+            assertEquals(50, records.size());
+
+            //Load in a different order than the records were read in
+            Collections.reverse(meta);
+            List<Record> loaded = rr.loadFromMetaData(meta);
+            assertEquals(50, loaded.size());
+            for (int i = 0; i < 50; i++) {
+                Record r = records.get(49 - i);
+                assertEquals(r.getMetaData(), loaded.get(i).getMetaData());
+                assertEquals(r.getRecord(), loaded.get(i).getRecord());
+            }
+            assertEquals(records.get(3).getRecord(), rr.loadFromMetaData(records.get(3).getMetaData()).getRecord());
+            rr.close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLoadFromInvalidMetaData() throws Exception {
+        File f = writeFile(null, 5, 3, 1, "\n");
+        NumericCSVRecordReader rr = new NumericCSVRecordReader();
+        rr.loadFromMetaData(new RecordMetaDataURI(f.toURI(), NumericCSVRecordReader.class));
+    }
+
+    @Test
+    public void testInconsistentColumns() throws Exception {
+        File f = testDir.newFile();
+        FileUtils.writeStringToFile(f, "1,2,3\n4,5,6\n7,8\n", StandardCharsets.UTF_8);
+
+        NumericCSVRecordReader rr = new NumericCSVRecordReader();
+        rr.initialize(new FileSplit(f));
+        try {
+            rr.next(10);
+            fail("Expected exception");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("byte offset 12"));
+        }
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void testInvalidValue() throws Exception {
+        File f = testDir.newFile();
+        FileUtils.writeStringToFile(f, "1,2,3\n4,five,6\n", StandardCharsets.UTF_8);
+
+        NumericCSVRecordReader rr = new NumericCSVRecordReader();
+        rr.initialize(new FileSplit(f));
+        while (rr.hasNext()) {
+            rr.next();
+        }
+    }
+}
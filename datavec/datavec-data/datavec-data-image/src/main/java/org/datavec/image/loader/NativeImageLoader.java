@@ -141,6 +141,19 @@ public class NativeImageLoader extends BaseImageLoader {
         this.multiPageMode = other.multiPageMode;
     }
 
+    /**
+     * Create a copy of this image loader, with the same output shape and settings but using the specified transform.
+     * As image loaders are not thread safe, this can be used to create one loader per thread.
+     *
+     * @param imageTransform Transform to use in the copy. May be null (no transform)
+     * @return Copy of this image loader
+     */
+    public NativeImageLoader copy(ImageTransform imageTransform) {
+        NativeImageLoader ret = new NativeImageLoader(this);
+        ret.imageTransform = imageTransform;
+        return ret;
+    }
+
     @Override
     public String[] getAllowedFormats() {
         return ALLOWED_FORMATS;
@@ -543,6 +556,17 @@ public class NativeImageLoader extends BaseImageLoader {
         transformImage(image, view);
     }
 
+    /**
+     * Convert ImageWritable into the specified view
+     *
+     * @param writable ImageWritable to convert
+     * @param view     Array to write the image into
+     * @throws IOException
+     */
+    public void asMatrixView(ImageWritable writable, INDArray view) throws IOException {
+        transformImage(converter.convert(writable.getFrame()), view);
+    }
+
     public void asMatrixView(org.opencv.core.Mat image, INDArray view) throws IOException {
         transformImage(image, view);
     }
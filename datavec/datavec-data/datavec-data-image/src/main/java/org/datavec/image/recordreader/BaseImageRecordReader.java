@@ -44,6 +44,7 @@ import org.datavec.image.transform.ImageTransform;
 import org.nd4j.linalg.api.concurrency.AffinityManager;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.function.Supplier;
 
 import java.io.*;
 import java.net.URI;
@@ -77,12 +78,20 @@ public abstract class BaseImageRecordReader extends BaseRecordReader {
     protected int patternPosition = 0;
     @Getter @Setter
     protected boolean logLabelCountOnInit = true;
+    protected int numDecodeWorkers = 1;
+    protected long decodeSeed = 12345;
+    protected transient Supplier<ImageTransform> transformSupplier;
+    protected transient ParallelImageDecoder decoder;
+    protected long decodeEpoch;
+    protected long decodeIndex;
 
     public final static String HEIGHT = NAME_SPACE + ".height";
     public final static String WIDTH = NAME_SPACE + ".width";
     public final static String CHANNELS = NAME_SPACE + ".channels";
     public final static String CROP_IMAGE = NAME_SPACE + ".cropimage";
     public final static String IMAGE_LOADER = NAME_SPACE + ".imageloader";
+    public final static String DECODE_WORKERS = NAME_SPACE + ".decodeworkers";
+    public final static String DECODE_SEED = NAME_SPACE + ".decodeseed";
 
     public BaseImageRecordReader() {}
 
@@ -120,6 +129,9 @@ public abstract class BaseImageRecordReader extends BaseRecordReader {
 
     @Override
     public void initialize(InputSplit split) throws IOException {
+        closeDecoder();
+        decodeEpoch = 0;
+        decodeIndex = 0;
         if (imageLoader == null) {
             imageLoader = new NativeImageLoader(height, width, channels, imageTransform);
         }
@@ -181,10 +193,51 @@ public abstract class BaseImageRecordReader extends BaseRecordReader {
         } else {
             this.imageLoader = new NativeImageLoader(height, width, channels, imageTransform);
         }
+        this.numDecodeWorkers = conf.getInt(DECODE_WORKERS, numDecodeWorkers);
+        this.decodeSeed = conf.getLong(DECODE_SEED, decodeSeed);
         this.conf = conf;
         initialize(split);
     }
 
+    /**
+     * Decode (and transform) images in parallel in {@link #next(int)}, using the specified number of threads.
+     * Images are returned in the same order as with sequential decoding. As image loaders and transforms are not thread
+     * safe, each thread uses its own copy of this reader's image loader and its own transform instance, obtained from
+     * the supplier. Random transforms are seeded per image (based on the seed, the epoch and the position of the image
+     * in the epoch), hence the output does not depend on the number of threads, including a single thread.<br>
+     * Note that this only applies to {@link #next(int)} (i.e., when used with RecordReaderDataSetIterator etc):
+     * {@link #next()} still decodes images one at a time using the transform set on this record reader.
+     *
+     * @param numWorkers        Number of threads to use for decoding. 1: decode on the calling thread
+     * @param transformSupplier Supplier for the transform used by each thread. May be null if no transform is required,
+     *                          otherwise must return a new instance on each call
+     * @param seed              Seed for random transforms
+     */
+    public void setParallelDecoding(int numWorkers, Supplier<ImageTransform> transformSupplier, long seed) {
+        Preconditions.checkArgument(numWorkers > 0, "Number of workers must be > 0: got " + numWorkers);
+        this.numDecodeWorkers = numWorkers;
+        this.transformSupplier = transformSupplier;
+        this.decodeSeed = seed;
+        closeDecoder();
+    }
+
+    protected ParallelImageDecoder getDecoder() {
+        if (decoder == null) {
+            Preconditions.checkState(transformSupplier != null || imageTransform == null, "Parallel decoding with an " +
+                    "image transform requires a transform supplier: see setParallelDecoding(int, Supplier, long)");
+            decoder = new ParallelImageDecoder((NativeImageLoader) imageLoader, numDecodeWorkers, transformSupplier,
+                    decodeSeed);
+        }
+        return decoder;
+    }
+
+    protected void closeDecoder() {
+        if (decoder != null) {
+            decoder.close();
+            decoder = null;
+        }
+    }
+
 
     /**
      * Called once at initialization.
@@ -328,15 +381,24 @@ public abstract class BaseImageRecordReader extends BaseRecordReader {
 
         INDArray features = Nd4j.createUninitialized(new long[] {cnt, channels, height, width}, 'c');
         Nd4j.getAffinityManager().tagLocation(features, AffinityManager.Location.HOST);
-        for (int i = 0; i < cnt; i++) {
+        if (numDecodeWorkers > 1 || transformSupplier != null) {
             try {
-                ((NativeImageLoader) imageLoader).asMatrixView(currBatch.get(i),
-                        features.tensorAlongDimension(i, 1, 2, 3));
-            } catch (Exception e) {
-                System.out.println("Image file failed during load: " + currBatch.get(i).getAbsolutePath());
+                getDecoder().decode(currBatch, features, decodeEpoch, decodeIndex);
+            } catch (IOException e) {
                 throw new RuntimeException(e);
             }
+        } else {
+            for (int i = 0; i < cnt; i++) {
+                try {
+                    ((NativeImageLoader) imageLoader).asMatrixView(currBatch.get(i),
+                            features.tensorAlongDimension(i, 1, 2, 3));
+                } catch (Exception e) {
+                    log.warn("Image file failed during load: {}", currBatch.get(i).getAbsolutePath());
+                    throw new RuntimeException(e);
+                }
+            }
         }
+        decodeIndex += cnt;
         Nd4j.getAffinityManager().ensureLocation(features, AffinityManager.Location.DEVICE);
 
 
@@ -386,7 +448,7 @@ public abstract class BaseImageRecordReader extends BaseRecordReader {
 
     @Override
     public void close() throws IOException {
-        //No op
+        closeDecoder();
     }
 
     @Override
@@ -455,6 +517,8 @@ public abstract class BaseImageRecordReader extends BaseRecordReader {
         if (inputSplit == null)
             throw new UnsupportedOperationException("Cannot reset without first initializing");
         inputSplit.reset();
+        decodeEpoch++;
+        decodeIndex = 0;
         if (iter != null) {
             iter = new FileFromPathIterator(inputSplit.locationsPathIterator());
         } else if (record != null) {
@@ -0,0 +1,194 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.datavec.image.recordreader;
+
+import com.google.common.base.Preconditions;
+import org.datavec.image.data.ImageWritable;
+import org.datavec.image.loader.NativeImageLoader;
+import org.datavec.image.transform.ImageTransform;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.function.Supplier;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decodes (and optionally transforms) minibatches of images using a pool of worker threads.<br>
+ * Each worker has its own copy of the provided {@link NativeImageLoader} and its own {@link ImageTransform} instance
+ * (as image loaders and transforms are not thread safe), and writes each image directly into its slice of the output
+ * minibatch array. Hence the output is independent of the number of workers and of thread scheduling. With a single
+ * worker, images are decoded on the calling thread.<br>
+ * <br>
+ * Random transforms are seeded per image, based on the decoder seed, the epoch and the index of the image in the epoch.
+ * Consequently augmentation is reproducible for a given seed, but differs between epochs. Note that this only applies
+ * to transforms that use the {@link Random} instance provided to {@link ImageTransform#transform(ImageWritable, Random)}.
+ */
+public class ParallelImageDecoder implements Closeable {
+
+    protected final NativeImageLoader imageLoader;
+    protected final int numWorkers;
+    protected final Supplier<ImageTransform> transformSupplier;
+    protected final long seed;
+
+    protected final ExecutorService executor;
+    protected final ThreadLocal<Worker> workers;
+
+    /**
+     * @param imageLoader       Image loader to copy for each worker. Its own transform (if any) is not used
+     * @param numWorkers        Number of decoding threads. 1: decode on the calling thread
+     * @param transformSupplier Supplier for the transform used by each worker. May be null (no transform), otherwise
+     *                          must return a new instance on each call
+     * @param seed              Seed for random transforms
+     */
+    public ParallelImageDecoder(NativeImageLoader imageLoader, int numWorkers,
+                                Supplier<ImageTransform> transformSupplier, long seed) {
+        Preconditions.checkNotNull(imageLoader, "Image loader must not be null");
+        Preconditions.checkArgument(numWorkers > 0, "Number of workers must be > 0: got " + numWorkers);
+        this.imageLoader = imageLoader;
+        this.numWorkers = numWorkers;
+        this.transformSupplier = transformSupplier;
+        this.seed = seed;
+
+        if (numWorkers == 1) {
+            this.executor = null;
+        } else {
+            final AtomicInteger threadCount = new AtomicInteger();
+            this.executor = Executors.newFixedThreadPool(numWorkers, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "ParallelImageDecoder-" + threadCount.getAndIncrement());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        this.workers = new ThreadLocal<Worker>() {
+            @Override
+            protected Worker initialValue() {
+                return new Worker();
+            }
+        };
+    }
+
+    public int getNumWorkers() {
+        return numWorkers;
+    }
+
+    /**
+     * Decode the specified images into the output array
+     *
+     * @param files      Images to decode
+     * @param out        Output array, with shape [minibatch, channels, height, width] and minibatch >= files.size()
+     * @param epoch      Epoch number, used for seeding random transforms
+     * @param firstIndex Index of the first image in the epoch, used for seeding random transforms
+     */
+    public void decode(final List<File> files, INDArray out, final long epoch, final long firstIndex) throws IOException {
+        final int n = files.size();
+        if (executor == null) {
+            Worker w = workers.get();
+            for (int i = 0; i < n; i++) {
+                w.decode(files.get(i), out.tensorAlongDimension(i, 1, 2, 3), epoch, firstIndex + i);
+            }
+            return;
+        }
+
+        // views are created on the calling thread; workers only write into them
+        final INDArray[] views = new INDArray[n];
+        for (int i = 0; i < n; i++) {
+            views[i] = out.tensorAlongDimension(i, 1, 2, 3);
+        }
+
+        final AtomicInteger next = new AtomicInteger();
+        int numTasks = Math.min(numWorkers, n);
+        List<Future<Void>> futures = new ArrayList<>(numTasks);
+        for (int t = 0; t < numTasks; t++) {
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    Worker w = workers.get();
+                    int i;
+                    while ((i = next.getAndIncrement()) < n) {
+                        w.decode(files.get(i), views[i], epoch, firstIndex + i);
+                    }
+                    return null;
+                }
+            }));
+        }
+
+        try {
+            for (Future<Void> f : futures) {
+                f.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while decoding images", e);
+        } catch (ExecutionException e) {
+            // stop the remaining tasks as soon as possible
+            next.set(n);
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw new RuntimeException(cause);
+        }
+    }
+
+    protected long imageSeed(long epoch, long index) {
+        long s = seed * 31 + epoch;
+        return s * 0x9E3779B97F4A7C15L + index;
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    protected class Worker {
+        // transforms are applied here (with a seeded Random), not by the loader
+        private final NativeImageLoader loader = imageLoader.copy(null);
+        private final ImageTransform transform = transformSupplier == null ? null : transformSupplier.get();
+        private final Random random = new Random();
+
+        protected void decode(File f, INDArray view, long epoch, long index) throws IOException {
+            try {
+                if (transform == null) {
+                    loader.asMatrixView(f, view);
+                } else {
+                    random.setSeed(imageSeed(epoch, index));
+                    ImageWritable image = transform.transform(loader.asWritable(f), random);
+                    loader.asMatrixView(image, view);
+                }
+            } catch (IOException | RuntimeException e) {
+                throw new IOException("Image file failed during load: " + f.getAbsolutePath(), e);
+            }
+        }
+    }
+}
@@ -32,6 +32,9 @@ import org.datavec.api.writable.DoubleWritable;
 import org.datavec.api.writable.NDArrayWritable;
 import org.datavec.api.writable.Writable;
 import org.datavec.api.writable.batch.NDArrayRecordBatch;
+import org.datavec.image.loader.NativeImageLoader;
+import org.datavec.image.transform.FlipImageTransform;
+import org.datavec.image.transform.ImageTransform;
 import org.junit.Ignore;
 import org.junit.Rule;
 import org.junit.Test;
@@ -39,6 +42,7 @@ import org.junit.rules.TemporaryFolder;
 import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.function.Supplier;
 import org.nd4j.linalg.io.ClassPathResource;
 
 import java.io.File;
@@ -244,6 +248,88 @@ public class TestImageRecordReader {
         assertEquals(l2.get(), act2);
     }
 
+    @Test
+    public void testParallelDecoding() throws Exception {
+        File rootDir = testDir.newFolder();
+        new ClassPathResource("datavec-data-image/testimages/").copyDirectory(rootDir);
+
+        ImageRecordReader rrSeq = new ImageRecordReader(32, 32, 3, new ParentPathLabelGenerator());
+        rrSeq.initialize(new FileSplit(rootDir));
+        ImageRecordReader rrPar = new ImageRecordReader(32, 32, 3, new ParentPathLabelGenerator());
+        rrPar.setParallelDecoding(3, null, 12345);
+        rrPar.initialize(new FileSplit(rootDir));
+
+        for (int epoch = 0; epoch < 2; epoch++) {
+            while (rrSeq.hasNext()) {
+                assertTrue(rrPar.hasNext());
+                List<INDArray> exp = ((NDArrayRecordBatch) rrSeq.next(4)).getArrays();
+                List<INDArray> act = ((NDArrayRecordBatch) rrPar.next(4)).getArrays();
+                assertEquals(exp, act);
+            }
+            assertFalse(rrPar.hasNext());
+            rrSeq.reset();
+            rrPar.reset();
+        }
+        rrPar.close();
+    }
+
+    @Test
+    public void testParallelDecodingImageLoaderConfig() throws Exception {
+        File rootDir = testDir.newFolder();
+        new ClassPathResource("datavec-data-image/testimages/").copyDirectory(rootDir);
+
+        //Workers must decode with the same loader configuration as the record reader
+        ImageRecordReader rrSeq = new ImageRecordReader(32, 32, 3, new ParentPathLabelGenerator()) {{
+            imageLoader = new NativeImageLoader(32, 32, 3, true);
+        }};
+        rrSeq.initialize(new FileSplit(rootDir));
+        ImageRecordReader rrPar = new ImageRecordReader(32, 32, 3, new ParentPathLabelGenerator()) {{
+            imageLoader = new NativeImageLoader(32, 32, 3, true);
+        }};
+        rrPar.setParallelDecoding(3, null, 12345);
+        rrPar.initialize(new FileSplit(rootDir));
+
+        while (rrSeq.hasNext()) {
+            assertTrue(rrPar.hasNext());
+            assertEquals(((NDArrayRecordBatch) rrSeq.next(4)).getArrays(), ((NDArrayRecordBatch) rrPar.next(4)).getArrays());
+        }
+        assertFalse(rrPar.hasNext());
+        rrPar.close();
+    }
+
+    @Test
+    public void testParallelDecodingTransformDeterminism() throws Exception {
+        File rootDir = testDir.newFolder();
+        new ClassPathResource("datavec-data-image/testimages/").copyDirectory(rootDir);
+
+        Supplier<ImageTransform> supplier = new Supplier<ImageTransform>() {
+            @Override
+            public ImageTransform get() {
+                return new FlipImageTransform(new Random());
+            }
+        };
+
+        List<INDArray> first = null;
+        for (int numWorkers : new int[] {1, 2, 4}) {
+            ImageRecordReader rr = new ImageRecordReader(32, 32, 3, new ParentPathLabelGenerator());
+            rr.setParallelDecoding(numWorkers, supplier, 12345);
+            rr.initialize(new FileSplit(rootDir));
+
+            List<INDArray> features = new ArrayList<>();
+            while (rr.hasNext()) {
+                features.add(((NDArrayRecordBatch) rr.next(4)).getArrays().get(0));
+            }
+            rr.close();
+
+            if (first == null) {
+                first = features;
+            } else {
+                //Output must not depend on the number of workers
+                assertEquals(first, features);
+            }
+        }
+    }
+
     @Test
     public void testListenerInvocationBatch() throws IOException {
         ParentPathLabelGenerator labelMaker = new ParentPathLabelGenerator();
@@ -37,6 +37,7 @@ import org.datavec.api.transform.sequence.ConvertToSequence;
 import org.datavec.api.transform.sequence.SequenceSplit;
 import org.datavec.api.writable.*;
 import org.datavec.arrow.ArrowConverter;
+import org.datavec.local.transforms.columnar.ArrowTransformExecutor;
 import org.datavec.local.transforms.functions.EmptyRecordFunction;
 import org.datavec.local.transforms.join.ExecuteJoinFromCoGroupFlatMapFunction;
 import org.datavec.local.transforms.join.ExtractKeysFunction;
@@ -66,13 +67,19 @@ public class LocalTransformExecutor {
     //will cause some functions to invoke a try catch block and just log errors
     //returning empty records
     public final static String LOG_ERROR_PROPERTY = "org.datavec.spark.transform.logerrors";
+    //a boolean jvm argument that when the system property is true
+    //will cause non-sequence transform processes to be executed over
+    //arrow columns, see ArrowTransformExecutor. Off by default
+    public final static String COLUMNAR_PROPERTY = "org.datavec.local.transform.columnar";
 
     private static BufferAllocator bufferAllocator = new RootAllocator(Long.MAX_VALUE);
 
     /**
      * Execute the specified TransformProcess with the given input data<br>
      * Note: this method can only be used if the TransformProcess returns non-sequence data. For TransformProcesses
-     * that return a sequence, use {@link #executeToSequence(List, TransformProcess)}
+     * that return a sequence, use {@link #executeToSequence(List, TransformProcess)}<br>
+     * If the {@link #COLUMNAR_PROPERTY} system property is set, the TransformProcess is executed with
+     * {@link ArrowTransformExecutor} when possible
      *
      * @param inputWritables   Input data to process
      * @param transformProcess TransformProcess to execute
@@ -85,6 +92,10 @@ public class LocalTransformExecutor {
 
         }
 
+        if (isColumnar() && !isTryCatch() && ArrowTransformExecutor.canExecute(transformProcess)) {
+            return ArrowTransformExecutor.execute(inputWritables, transformProcess);
+        }
+
         List<List<Writable>> filteredSequence = inputWritables.parallelStream()
                 .filter(input -> input.size() == transformProcess.getInitialSchema().numColumns()).collect(toList());
         if(filteredSequence.size() != inputWritables.size()) {
@@ -301,6 +312,15 @@ public class LocalTransformExecutor {
         return Boolean.getBoolean(LOG_ERROR_PROPERTY);
     }
 
+    /**
+     * Returns true if the executor
+     * is in columnar mode.
+     * @return
+     */
+    public static boolean isColumnar() {
+        return Boolean.getBoolean(COLUMNAR_PROPERTY);
+    }
+
     private static Pair<List<List<Writable>>, List<List<List<Writable>>>> execute(
             List<List<Writable>> inputWritables, List<List<List<Writable>>> inputSequence,
             TransformProcess sequence) {
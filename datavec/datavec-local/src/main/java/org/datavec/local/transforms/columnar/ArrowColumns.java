@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.datavec.local.transforms.columnar;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.*;
+import org.apache.arrow.vector.util.TransferPair;
+import org.datavec.api.transform.ColumnType;
+import org.datavec.api.writable.*;
+import org.datavec.arrow.ArrowConverter;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Utilities for reading and copying Arrow column vectors, used by {@link ArrowTransformExecutor}.<br>
+ * Values are read into reusable (mutable) writables where possible, so that per-value functions such as
+ * {@link org.datavec.api.transform.transform.BaseColumnTransform#map(Writable)} or
+ * {@link org.datavec.api.transform.condition.column.ColumnCondition#columnCondition(Writable)} can be applied to a
+ * whole column without allocating a writable for every row.
+ */
+class ArrowColumns {
+
+    private ArrowColumns() {
+    }
+
+    /**
+     * Create a reusable writable for reading values of the specified column, or null if values of this vector type
+     * can only be read via {@link ArrowConverter#fromEntry(int, FieldVector, ColumnType)}
+     */
+    static Writable newCell(FieldVector vector, ColumnType type) {
+        switch (type) {
+            case Double:
+                return vector instanceof Float8Vector ? new DoubleWritable() : null;
+            case Float:
+                return vector instanceof Float4Vector ? new FloatWritable() : null;
+            case Integer:
+                return vector instanceof IntVector ? new IntWritable() : null;
+            case Long:
+                return vector instanceof BigIntVector ? new LongWritable() : null;
+            case Boolean:
+                return vector instanceof BitVector ? new BooleanWritable() : null;
+            case String:
+            case Categorical:
+                return vector instanceof VarCharVector ? new Text() : null;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Read the value at the specified row. Null values are returned as {@link NullWritable#INSTANCE}
+     *
+     * @param reuse Writable returned by {@link #newCell(FieldVector, ColumnType)}: if non-null, it is set to the value
+     *              and returned. Consequently the returned writable is only valid until the next call
+     */
+    static Writable readCell(FieldVector vector, ColumnType type, int row, Writable reuse) {
+        if (vector.isNull(row))
+            return NullWritable.INSTANCE;
+        if (reuse == null)
+            return ArrowConverter.fromEntry(row, vector, type);
+
+        switch (type) {
+            case Double:
+                ((DoubleWritable) reuse).set(((Float8Vector) vector).get(row));
+                break;
+            case Float:
+                ((FloatWritable) reuse).set(((Float4Vector) vector).get(row));
+                break;
+            case Integer:
+                ((IntWritable) reuse).set(((IntVector) vector).get(row));
+                break;
+            case Long:
+                ((LongWritable) reuse).set(((BigIntVector) vector).get(row));
+                break;
+            case Boolean:
+                ((BooleanWritable) reuse).set(((BitVector) vector).get(row) > 0);
+                break;
+            default:
+                ((Text) reuse).set(((VarCharVector) vector).get(row));
+        }
+        return reuse;
+    }
+
+    /**
+     * @return String representation of the value at the specified row, consistent with {@link Writable#toString()}
+     */
+    static String cellString(FieldVector vector, ColumnType type, int row) {
+        if (vector.isNull(row))
+            return NullWritable.INSTANCE.toString();
+        if (vector instanceof IntVector)
+            return String.valueOf(((IntVector) vector).get(row));
+        if (vector instanceof BigIntVector)
+            return String.valueOf(((BigIntVector) vector).get(row));
+        if (vector instanceof VarCharVector)
+            return new String(((VarCharVector) vector).get(row), StandardCharsets.UTF_8);
+        return ArrowConverter.fromEntry(row, vector, type).toString();
+    }
+
+    /**
+     * Copy the specified rows of a vector into a new vector
+     *
+     * @param name    Name of the new vector
+     * @param rows    Indices of the rows to copy, in order
+     * @param numRows Number of (leading) entries of rows to copy
+     */
+    static FieldVector copyRows(BufferAllocator allocator, FieldVector from, String name, int[] rows, int numRows) {
+        TransferPair tp = from.getTransferPair(name, allocator);
+        for (int i = 0; i < numRows; i++) {
+            tp.copyValueSafe(rows[i], i);
+        }
+        FieldVector to = (FieldVector) tp.getTo();
+        to.setValueCount(numRows);
+        return to;
+    }
+
+    /**
+     * Copy all rows of a vector into a new vector
+     */
+    static FieldVector copy(BufferAllocator allocator, FieldVector from, String name) {
+        int numRows = from.getValueCount();
+        TransferPair tp = from.getTransferPair(name, allocator);
+        for (int i = 0; i < numRows; i++) {
+            tp.copyValueSafe(i, i);
+        }
+        FieldVector to = (FieldVector) tp.getTo();
+        to.setValueCount(numRows);
+        return to;
+    }
+
+    /**
+     * @return True if the specified method of the object's class is declared by the given class, i.e., not
+     * overridden by a subclass
+     */
+    static boolean declaredBy(Object o, Class<?> declaringClass, String method, Class<?>... parameterTypes) {
+        try {
+            return o.getClass().getMethod(method, parameterTypes).getDeclaringClass() == declaringClass;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,277 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.datavec.local.transforms.columnar;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.*;
+import org.datavec.api.transform.ColumnType;
+import org.datavec.api.transform.ReduceOp;
+import org.datavec.api.transform.ops.IAggregableReduceOp;
+import org.datavec.api.transform.reduce.IAssociativeReducer;
+import org.datavec.api.transform.reduce.Reducer;
+import org.datavec.api.transform.schema.Schema;
+import org.datavec.api.writable.Writable;
+import org.datavec.arrow.ArrowConverter;
+import org.datavec.arrow.recordreader.ArrowWritableRecordBatch;
+import org.datavec.local.transforms.reduce.MapToPairForReducerFunction;
+
+import java.util.*;
+
+/**
+ * Columnar execution of reductions, for {@link ArrowTransformExecutor}.<br>
+ * Rows are first assigned to groups (using the same keys as {@link MapToPairForReducerFunction}); groups are output
+ * in order of first occurrence. {@link Reducer}s with only the {@link #COLUMNAR_OPS} ops (numeric ops on integer,
+ * long, float and double columns only) and no custom or conditional reductions are then executed column by column.
+ * All other reducers are executed row by row, via {@link IAssociativeReducer#aggregableReducer()}.
+ */
+class ArrowReduction {
+
+    static final Set<ReduceOp> COLUMNAR_OPS = Collections.unmodifiableSet(EnumSet.of(ReduceOp.Min, ReduceOp.Max,
+            ReduceOp.Range, ReduceOp.Sum, ReduceOp.Mean, ReduceOp.Count, ReduceOp.TakeFirst, ReduceOp.TakeLast));
+
+    private ArrowReduction() {
+    }
+
+    static List<FieldVector> reduce(BufferAllocator allocator, IAssociativeReducer reducer, Schema inSchema,
+                                    Schema outSchema, List<FieldVector> columns, int numRows) {
+        //Assign rows to groups
+        int[] groups = new int[numRows];
+        int[] first = new int[16];
+        int[] last = new int[16];
+        int[] counts = new int[16];
+        int numGroups = 0;
+        List<String> keyColumns = reducer.getKeyColumns();
+        int[] keyIdxs = keyColumns == null ? null : inSchema.getIndexOfColumns(keyColumns);
+        Map<String, Integer> groupIds = new HashMap<>();
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < numRows; i++) {
+            String key;
+            if (keyIdxs == null) {
+                key = MapToPairForReducerFunction.GLOBAL_KEY;
+            } else if (keyIdxs.length == 1) {
+                key = ArrowColumns.cellString(columns.get(keyIdxs[0]), inSchema.getType(keyIdxs[0]), i);
+            } else {
+                sb.setLength(0);
+                for (int k = 0; k < keyIdxs.length; k++) {
+                    if (k > 0)
+                        sb.append("_");
+                    sb.append(ArrowColumns.cellString(columns.get(keyIdxs[k]), inSchema.getType(keyIdxs[k]), i));
+                }
+                key = sb.toString();
+            }
+
+            Integer g = groupIds.get(key);
+            if (g == null) {
+                g = numGroups++;
+                groupIds.put(key, g);
+                if (g == first.length) {
+                    first = Arrays.copyOf(first, 2 * g);
+                    last = Arrays.copyOf(last, 2 * g);
+                    counts = Arrays.copyOf(counts, 2 * g);
+                }
+                first[g] = i;
+            }
+            last[g] = i;
+            counts[g]++;
+            groups[i] = g;
+        }
+
+        if (!(reducer instanceof Reducer) || !isColumnar((Reducer) reducer, inSchema, columns)) {
+            return reduceRows(allocator, reducer, inSchema, outSchema, columns, numRows, groups, numGroups);
+        }
+
+        Reducer r = (Reducer) reducer;
+        List<FieldVector> ret = new ArrayList<>(outSchema.numColumns());
+        for (int c = 0; c < inSchema.numColumns(); c++) {
+            String name = inSchema.getName(c);
+            FieldVector in = columns.get(c);
+            if (r.getKeyColumnsSet() != null && r.getKeyColumnsSet().contains(name)) {
+                ret.add(ArrowColumns.copyRows(allocator, in, outSchema.getName(ret.size()), first, numGroups));
+                continue;
+            }
+
+            for (ReduceOp op : opsFor(r, name)) {
+                int outIdx = ret.size();
+                String outName = outSchema.getName(outIdx);
+                switch (op) {
+                    case TakeFirst:
+                        ret.add(ArrowColumns.copyRows(allocator, in, outName, first, numGroups));
+                        break;
+                    case TakeLast:
+                        ret.add(ArrowColumns.copyRows(allocator, in, outName, last, numGroups));
+                        break;
+                    case Count:
+                        BigIntVector count = ArrowConverter.longVectorOf(allocator, outName, numGroups);
+                        for (int g = 0; g < numGroups; g++) {
+                            count.set(g, counts[g]);
+                        }
+                        ret.add(count);
+                        break;
+                    default:
+                        ret.add(reduceNumeric(allocator, op, in, inSchema.getType(c), outName,
+                                outSchema.getType(outIdx), numRows, groups, numGroups));
+                }
+            }
+        }
+        return ret;
+    }
+
+    private static List<ReduceOp> opsFor(Reducer r, String column) {
+        List<ReduceOp> lop = r.getOpMap().get(column);
+        return lop == null || lop.isEmpty() ? Collections.singletonList(r.getDefaultOp()) : lop;
+    }
+
+    private static boolean isColumnar(Reducer r, Schema inSchema, List<FieldVector> columns) {
+        if ((r.getCustomReductions() != null && !r.getCustomReductions().isEmpty())
+                || (r.getConditionalReductions() != null && !r.getConditionalReductions().isEmpty())
+                || (r.getIgnoreInvalidInColumns() != null && !r.getIgnoreInvalidInColumns().isEmpty()))
+            return false;
+
+        for (int c = 0; c < inSchema.numColumns(); c++) {
+            String name = inSchema.getName(c);
+            if (r.getKeyColumnsSet() != null && r.getKeyColumnsSet().contains(name))
+                continue;
+            //Output schema (Reducer.transform) and row-wise execution differ for empty op lists
+            if (r.getOpMap().containsKey(name) && r.getOpMap().get(name).isEmpty())
+                return false;
+
+            FieldVector v = columns.get(c);
+            boolean numeric = v.getNullCount() == 0 && (v instanceof IntVector || v instanceof BigIntVector
+                    || v instanceof Float4Vector || v instanceof Float8Vector);
+            for (ReduceOp op : opsFor(r, name)) {
+                if (op == null || !COLUMNAR_OPS.contains(op))
+                    return false;
+                if (op != ReduceOp.Count && op != ReduceOp.TakeFirst && op != ReduceOp.TakeLast && !numeric)
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Numeric reductions, with the same semantics (and output types) as the corresponding
+     * {@link org.datavec.api.transform.ops.AggregatorImpls} ops. Integer and long values are reduced as longs, float
+     * and double values as doubles
+     */
+    private static FieldVector reduceNumeric(BufferAllocator allocator, ReduceOp op, FieldVector in, ColumnType inType,
+                                             String outName, ColumnType outType, int numRows, int[] groups,
+                                             int numGroups) {
+        boolean integral = in instanceof IntVector || in instanceof BigIntVector;
+        boolean isFloat = in instanceof Float4Vector;
+        long[] l = integral ? new long[numGroups] : null;
+        long[] l2 = integral && op == ReduceOp.Range ? new long[numGroups] : null;
+        double[] d = !integral || op == ReduceOp.Mean ? new double[numGroups] : null;
+        double[] d2 = !integral && op == ReduceOp.Range ? new double[numGroups] : null;
+        long[] n = new long[numGroups];
+
+        for (int i = 0; i < numRows; i++) {
+            int g = groups[i];
+            boolean firstInGroup = n[g]++ == 0;
+            if (integral) {
+                long x = in instanceof IntVector ? ((IntVector) in).get(i) : ((BigIntVector) in).get(i);
+                switch (op) {
+                    case Min:
+                        l[g] = firstInGroup ? x : Math.min(l[g], x);
+                        break;
+                    case Max:
+                        l[g] = firstInGroup ? x : Math.max(l[g], x);
+                        break;
+                    case Range:
+                        l[g] = firstInGroup ? x : Math.min(l[g], x);
+                        l2[g] = firstInGroup ? x : Math.max(l2[g], x);
+                        break;
+                    case Sum:
+                        l[g] += x;
+                        break;
+                    case Mean:
+                        //See Knuth TAOCP vol 2, 3rd edition, page 232 - as per AggregableMean
+                        d[g] = firstInGroup ? x : d[g] + (x - d[g]) / n[g];
+                        break;
+                    default:
+                        throw new UnsupportedOperationException("Unknown or not implemented op: " + op);
+                }
+            } else {
+                double x = isFloat ? ((Float4Vector) in).get(i) : ((Float8Vector) in).get(i);
+                switch (op) {
+                    case Min:
+                        d[g] = firstInGroup || Double.compare(d[g], x) > 0 ? x : d[g];
+                        break;
+                    case Max:
+                        d[g] = firstInGroup || Double.compare(d[g], x) < 0 ? x : d[g];
+                        break;
+                    case Range:
+                        d[g] = firstInGroup || Double.compare(d[g], x) > 0 ? x : d[g];
+                        d2[g] = firstInGroup || Double.compare(d2[g], x) < 0 ? x : d2[g];
+                        break;
+                    case Sum:
+                        //Float sums are accumulated in float precision, as per AggregableSum
+                        d[g] = isFloat ? (float) (d[g] + x) : d[g] + x;
+                        break;
+                    case Mean:
+                        d[g] = firstInGroup ? x : d[g] + (x - d[g]) / n[g];
+                        break;
+                    default:
+                        throw new UnsupportedOperationException("Unknown or not implemented op: " + op);
+                }
+            }
+        }
+
+        FieldVector out = ArrowConverter.createFieldVector(allocator, outName, outType, numGroups);
+        for (int g = 0; g < numGroups; g++) {
+            if (op == ReduceOp.Mean) {
+                ((Float8Vector) out).set(g, d[g]);
+            } else if (integral) {
+                long v = op == ReduceOp.Range ? l2[g] - l[g] : l[g];
+                if (outType == ColumnType.Integer)
+                    ((IntVector) out).set(g, (int) v);
+                else
+                    ((BigIntVector) out).set(g, v);
+            } else {
+                double v = op == ReduceOp.Range ? d2[g] - d[g] : d[g];
+                if (outType == ColumnType.Float)
+                    ((Float4Vector) out).set(g, (float) v);
+                else
+                    ((Float8Vector) out).set(g, v);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Row by row execution, over a row view of the columns
+     */
+    private static List<FieldVector> reduceRows(BufferAllocator allocator, IAssociativeReducer reducer,
+                                                Schema inSchema, Schema outSchema, List<FieldVector> columns,
+                                                int numRows, int[] groups, int numGroups) {
+        List<IAggregableReduceOp<List<Writable>, List<Writable>>> ops = new ArrayList<>(numGroups);
+        for (int g = 0; g < numGroups; g++) {
+            ops.add(reducer.aggregableReducer());
+        }
+
+        int i = 0;
+        for (List<Writable> l : new ArrowWritableRecordBatch(columns, inSchema, 0, numRows)) {
+            ops.get(groups[i++]).accept(l);
+        }
+
+        List<List<Writable>> out = new ArrayList<>(numGroups);
+        for (IAggregableReduceOp<List<Writable>, List<Writable>> op : ops) {
+            out.add(op.get());
+        }
+        return ArrowConverter.toArrowColumns(allocator, outSchema, out);
+    }
+}
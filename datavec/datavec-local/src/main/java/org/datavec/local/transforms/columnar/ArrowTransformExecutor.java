@@ -0,0 +1,576 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.datavec.local.transforms.columnar;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.*;
+import org.datavec.api.transform.ColumnType;
+import org.datavec.api.transform.DataAction;
+import org.datavec.api.transform.MathOp;
+import org.datavec.api.transform.Transform;
+import org.datavec.api.transform.TransformProcess;
+import org.datavec.api.transform.condition.BooleanCondition;
+import org.datavec.api.transform.condition.Condition;
+import org.datavec.api.transform.condition.column.BaseColumnCondition;
+import org.datavec.api.transform.filter.ConditionFilter;
+import org.datavec.api.transform.filter.Filter;
+import org.datavec.api.transform.filter.FilterInvalidValues;
+import org.datavec.api.transform.metadata.ColumnMetaData;
+import org.datavec.api.transform.reduce.IAssociativeReducer;
+import org.datavec.api.transform.schema.Schema;
+import org.datavec.api.transform.schema.SequenceSchema;
+import org.datavec.api.transform.transform.BaseColumnTransform;
+import org.datavec.api.transform.transform.column.*;
+import org.datavec.api.transform.transform.doubletransform.*;
+import org.datavec.api.transform.transform.integer.IntegerMathOpTransform;
+import org.datavec.api.transform.transform.longtransform.LongMathOpTransform;
+import org.datavec.api.writable.Writable;
+import org.datavec.arrow.ArrowConverter;
+import org.datavec.arrow.recordreader.ArrowWritableRecordBatch;
+import org.datavec.local.transforms.LocalTransformExecutor;
+
+import java.util.*;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.IntUnaryOperator;
+import java.util.function.LongUnaryOperator;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Columnar transform executor: executes a {@link TransformProcess} over Arrow column vectors, instead of applying
+ * each step to every example as a {@code List<Writable>} as done by {@link LocalTransformExecutor}.<br>
+ * <br>
+ * Columnar implementations are used for:<br>
+ * - Math op transforms ({@link DoubleMathOpTransform}, {@link IntegerMathOpTransform}, {@link LongMathOpTransform})
+ * and double normalizers: tight primitive loops over the column<br>
+ * - Column removal, renaming, reordering and duplication: vectors are reused (or copied) without reading values<br>
+ * - Other single column transforms ({@link BaseColumnTransform}): applied to the column values only, read into a
+ * reusable writable<br>
+ * - {@link ConditionFilter} (with column conditions, combined via {@link BooleanCondition}) and
+ * {@link FilterInvalidValues}: evaluated column by column into a row mask, then applied to all columns at once<br>
+ * - Reductions with built-in numeric and first/last/count ops: see {@link ArrowReduction}<br>
+ * <br>
+ * Any other transform, filter or condition is executed row by row, over a row view of the current columns
+ * ({@link ArrowWritableRecordBatch}). Note that input values are converted to the column types of the initial schema
+ * before execution: values that cannot be converted are null (i.e., {@link org.datavec.api.writable.NullWritable})
+ * in all subsequent steps.<br>
+ * TransformProcesses that operate on sequences, or that contain other actions
+ * (such as joins, conversion to sequences or sorted ranks) are executed by {@link LocalTransformExecutor}.
+ * See {@link #canExecute(TransformProcess)}<br>
+ * <br>
+ * {@link LocalTransformExecutor} only uses this executor if the {@link LocalTransformExecutor#COLUMNAR_PROPERTY}
+ * system property is set to true. It is off by default.
+ */
+@Slf4j
+public class ArrowTransformExecutor {
+
+    private static BufferAllocator bufferAllocator = new RootAllocator(Long.MAX_VALUE);
+
+    private ArrowTransformExecutor() {
+    }
+
+    /**
+     * @return True if the specified TransformProcess can be executed in columnar mode: i.e., it operates on
+     * non-sequence data only, and consists of transforms, filters and reductions only
+     */
+    public static boolean canExecute(@NonNull TransformProcess transformProcess) {
+        Schema schema = transformProcess.getInitialSchema();
+        if (schema instanceof SequenceSchema)
+            return false;
+
+        for (DataAction d : transformProcess.getActionList()) {
+            if (d.getTransform() != null) {
+                schema = d.getTransform().transform(schema);
+            } else if (d.getReducer() != null) {
+                schema = d.getReducer().transform(schema);
+            } else if (d.getFilter() == null) {
+                return false;
+            }
+            if (schema instanceof SequenceSchema)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Execute the specified TransformProcess with the given input data.<br>
+     * TransformProcesses that cannot be executed in columnar mode (see {@link #canExecute(TransformProcess)})
+     * are executed by {@link LocalTransformExecutor} instead
+     *
+     * @param inputWritables   Input data to process
+     * @param transformProcess TransformProcess to execute
+     * @return Processed data
+     */
+    public static List<List<Writable>> execute(@NonNull List<List<Writable>> inputWritables,
+                                               @NonNull TransformProcess transformProcess) {
+        if (!canExecute(transformProcess) || LocalTransformExecutor.isTryCatch()) {
+            return LocalTransformExecutor.execute(inputWritables, transformProcess);
+        }
+
+        Schema initialSchema = transformProcess.getInitialSchema();
+        List<List<Writable>> filtered = inputWritables.stream()
+                .filter(input -> input.size() == initialSchema.numColumns()).collect(toList());
+        if (filtered.size() != inputWritables.size()) {
+            log.warn("Filtered out " + (inputWritables.size() - filtered.size()) + " values");
+        }
+        if (filtered.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        List<FieldVector> input = ArrowConverter.toArrowColumns(bufferAllocator, initialSchema, filtered);
+        List<FieldVector> output = execute(bufferAllocator, input, filtered.size(), transformProcess, false);
+        Schema finalSchema = transformProcess.getFinalSchema();
+        return new ArrowWritableRecordBatch(output, finalSchema, 0, numRows(output));
+    }
+
+    /**
+     * Execute the specified TransformProcess on the given columns. The input vectors are not modified or closed
+     * (though they may be returned as-is, for columns not modified by the TransformProcess); all vectors created
+     * for intermediate steps are closed
+     *
+     * @param allocator        Allocator for the output vectors
+     * @param input            Input columns, one per column of the TransformProcess initial schema
+     * @param transformProcess TransformProcess to execute. Must be executable in columnar mode, see
+     *                         {@link #canExecute(TransformProcess)}
+     * @return Output columns, one per column of the TransformProcess final schema
+     */
+    public static List<FieldVector> execute(@NonNull BufferAllocator allocator, @NonNull List<FieldVector> input,
+                                            @NonNull TransformProcess transformProcess) {
+        if (!canExecute(transformProcess)) {
+            throw new IllegalArgumentException("TransformProcess cannot be executed in columnar mode: " +
+                    "only non-sequence transforms, filters and reductions are supported");
+        }
+        if (input.size() != transformProcess.getInitialSchema().numColumns()) {
+            throw new IllegalArgumentException("Input data number of columns (" + input.size()
+                    + ") does not match the number of columns for the transform process ("
+                    + transformProcess.getInitialSchema().numColumns() + ")");
+        }
+        return execute(allocator, input, numRows(input), transformProcess, true);
+    }
+
+    private static List<FieldVector> execute(BufferAllocator allocator, List<FieldVector> input, int numRows,
+                                             TransformProcess transformProcess, boolean retainInput) {
+        Set<FieldVector> retained = Collections.newSetFromMap(new IdentityHashMap<FieldVector, Boolean>());
+        if (retainInput)
+            retained.addAll(input);
+
+        Schema schema = transformProcess.getInitialSchema();
+        List<FieldVector> current = input;
+        int n = numRows;
+        for (DataAction d : transformProcess.getActionList()) {
+            List<FieldVector> next;
+            if (d.getTransform() != null) {
+                Transform t = d.getTransform();
+                Schema outSchema = t.transform(schema);
+                next = executeTransform(allocator, t, schema, outSchema, current, n);
+                schema = outSchema;
+            } else if (d.getFilter() != null) {
+                boolean[] remove = removeMask(d.getFilter(), schema, current, n);
+                next = retainRows(allocator, schema, current, remove, n);
+            } else {
+                IAssociativeReducer reducer = d.getReducer();
+                Schema outSchema = reducer.transform(schema);
+                next = ArrowReduction.reduce(allocator, reducer, schema, outSchema, current, n);
+                schema = outSchema;
+            }
+
+            release(current, next, retained);
+            current = next;
+            n = numRows(current);
+        }
+        return current;
+    }
+
+    private static int numRows(List<FieldVector> columns) {
+        return columns.isEmpty() ? 0 : columns.get(0).getValueCount();
+    }
+
+    /**
+     * Close all vectors of the previous step that are not used by the next step (or retained by the caller)
+     */
+    private static void release(List<FieldVector> previous, List<FieldVector> next, Set<FieldVector> retained) {
+        Set<FieldVector> used = Collections.newSetFromMap(new IdentityHashMap<FieldVector, Boolean>());
+        used.addAll(next);
+        used.addAll(retained);
+        for (FieldVector v : previous) {
+            if (used.add(v))
+                v.close();
+        }
+    }
+
+    /**
+     * Row view of the specified columns
+     */
+    private static List<List<Writable>> rows(Schema schema, List<FieldVector> columns, int numRows) {
+        return new ArrowWritableRecordBatch(columns, schema, 0, numRows);
+    }
+
+
+    //----------------------------------------------------------------------------------------------------------------
+    // Transforms
+
+    private static List<FieldVector> executeTransform(BufferAllocator allocator, Transform t, Schema inSchema,
+                                                      Schema outSchema, List<FieldVector> columns, int numRows) {
+        if (t instanceof RemoveColumnsTransform || t instanceof RemoveAllColumnsExceptForTransform
+                || t instanceof ReorderColumnsTransform) {
+            return project(allocator, inSchema, outSchema, columns, Collections.<String, String>emptyMap(), false);
+        } else if (t instanceof RenameColumnsTransform) {
+            RenameColumnsTransform r = (RenameColumnsTransform) t;
+            return project(allocator, inSchema, outSchema, columns, sourceNames(r.getNewNames(), r.getOldNames()), false);
+        } else if (t instanceof DuplicateColumnsTransform) {
+            DuplicateColumnsTransform dup = (DuplicateColumnsTransform) t;
+            return project(allocator, inSchema, outSchema, columns,
+                    sourceNames(dup.getNewColumnNames(), dup.getColumnsToDuplicate()), true);
+        } else if (t instanceof BaseColumnTransform && isColumnLocal((BaseColumnTransform) t, inSchema, outSchema)) {
+            BaseColumnTransform ct = (BaseColumnTransform) t;
+            int idx = ct.getColumnNumber();
+            FieldVector out = mapColumnPrimitive(allocator, ct, columns.get(idx), outSchema, idx, numRows);
+            if (out == null)
+                out = mapColumn(allocator, ct, columns.get(idx), inSchema.getType(idx), outSchema, idx, numRows);
+            List<FieldVector> ret = new ArrayList<>(columns);
+            ret.set(idx, out);
+            return ret;
+        }
+
+        //No columnar implementation: execute row by row
+        List<List<Writable>> in = rows(inSchema, columns, numRows);
+        List<List<Writable>> out = new ArrayList<>(numRows);
+        for (List<Writable> l : in) {
+            out.add(t.map(l));
+        }
+        return ArrowConverter.toArrowColumns(allocator, outSchema, out);
+    }
+
+    private static Map<String, String> sourceNames(List<String> outputNames, List<String> sourceNames) {
+        Map<String, String> m = new HashMap<>();
+        for (int i = 0; i < outputNames.size(); i++) {
+            m.put(outputNames.get(i), sourceNames.get(i));
+        }
+        return m;
+    }
+
+    /**
+     * Output columns that are (renamed) input columns: vectors are reused, or copied if copySources is true
+     */
+    private static List<FieldVector> project(BufferAllocator allocator, Schema inSchema, Schema outSchema,
+                                             List<FieldVector> columns, Map<String, String> sources,
+                                             boolean copySources) {
+        List<FieldVector> ret = new ArrayList<>(outSchema.numColumns());
+        for (String name : outSchema.getColumnNames()) {
+            String source = sources.get(name);
+            if (source == null) {
+                ret.add(columns.get(inSchema.getIndexOfColumn(name)));
+            } else {
+                FieldVector from = columns.get(inSchema.getIndexOfColumn(source));
+                ret.add(copySources ? ArrowColumns.copy(allocator, from, name) : from);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return True if the transform only modifies its own column, i.e., it does not override the row-wise
+     * implementation in {@link BaseColumnTransform}
+     */
+    private static boolean isColumnLocal(BaseColumnTransform t, Schema inSchema, Schema outSchema) {
+        return t.getColumnNumber() >= 0 && inSchema.numColumns() == outSchema.numColumns()
+                && ArrowColumns.declaredBy(t, BaseColumnTransform.class, "map", List.class);
+    }
+
+    /**
+     * Apply the transform to the column values, reading the values into a reusable writable
+     */
+    private static FieldVector mapColumn(BufferAllocator allocator, BaseColumnTransform t, FieldVector in,
+                                         ColumnType inType, Schema outSchema, int idx, int numRows) {
+        ColumnType outType = outSchema.getType(idx);
+        FieldVector out = ArrowConverter.createFieldVector(allocator, outSchema.getName(idx), outType, numRows);
+        Writable cell = ArrowColumns.newCell(in, inType);
+        for (int i = 0; i < numRows; i++) {
+            Writable w = t.map(ArrowColumns.readCell(in, inType, i, cell));
+            ArrowConverter.setValue(outType, out, w, i);
+        }
+        out.setValueCount(numRows);
+        return out;
+    }
+
+    /**
+     * Primitive loops for math op transforms and normalizers. Null values remain null
+     *
+     * @return Output column, or null if there is no primitive implementation for this transform and vector type
+     */
+    private static FieldVector mapColumnPrimitive(BufferAllocator allocator, BaseColumnTransform t, FieldVector in,
+                                                  Schema outSchema, int idx, int numRows) {
+        String name = outSchema.getName(idx);
+        ColumnType outType = outSchema.getType(idx);
+        if (outType == ColumnType.Double && in instanceof Float8Vector) {
+            DoubleUnaryOperator op = doubleOp(t);
+            if (op == null)
+                return null;
+            Float8Vector from = (Float8Vector) in;
+            Float8Vector to = ArrowConverter.doubleVectorOf(allocator, name, numRows);
+            for (int i = 0; i < numRows; i++) {
+                if (!from.isNull(i))
+                    to.set(i, op.applyAsDouble(from.get(i)));
+            }
+            return to;
+        } else if (outType == ColumnType.Integer && in instanceof IntVector && t instanceof IntegerMathOpTransform) {
+            IntegerMathOpTransform mt = (IntegerMathOpTransform) t;
+            IntUnaryOperator op = intOp(mt.getMathOp(), mt.getScalar());
+            IntVector from = (IntVector) in;
+            IntVector to = ArrowConverter.intVectorOf(allocator, name, numRows);
+            for (int i = 0; i < numRows; i++) {
+                if (!from.isNull(i))
+                    to.set(i, op.applyAsInt(from.get(i)));
+            }
+            return to;
+        } else if (outType == ColumnType.Long && in instanceof BigIntVector && t instanceof LongMathOpTransform) {
+            LongMathOpTransform mt = (LongMathOpTransform) t;
+            LongUnaryOperator op = longOp(mt.getMathOp(), mt.getScalar());
+            BigIntVector from = (BigIntVector) in;
+            BigIntVector to = ArrowConverter.longVectorOf(allocator, name, numRows);
+            for (int i = 0; i < numRows; i++) {
+                if (!from.isNull(i))
+                    to.set(i, op.applyAsLong(from.get(i)));
+            }
+            return to;
+        }
+        return null;
+    }
+
+    private static DoubleUnaryOperator doubleOp(BaseColumnTransform t) {
+        if (t instanceof DoubleMathOpTransform) {
+            DoubleMathOpTransform mt = (DoubleMathOpTransform) t;
+            return doubleOp(mt.getMathOp(), mt.getScalar());
+        } else if (t instanceof MinMaxNormalizer) {
+            MinMaxNormalizer mm = (MinMaxNormalizer) t;
+            double min = mm.getMin();
+            double ratio = mm.getRatio();
+            double newMin = mm.getNewMin();
+            return x -> Double.isNaN(x) ? 0 : ratio * (x - min) + newMin;
+        } else if (t instanceof StandardizeNormalizer) {
+            StandardizeNormalizer sn = (StandardizeNormalizer) t;
+            double mean = sn.getMean();
+            double stdev = sn.getStdev();
+            return x -> (x - mean) / stdev;
+        } else if (t instanceof SubtractMeanNormalizer) {
+            double mean = ((SubtractMeanNormalizer) t).getMean();
+            return x -> x - mean;
+        } else if (t instanceof Log2Normalizer) {
+            Log2Normalizer ln = (Log2Normalizer) t;
+            double columnMin = ln.getColumnMin();
+            double range = ln.getColumnMean() - columnMin;
+            double scalingFactor = ln.getScalingFactor();
+            double log2 = Math.log(2);
+            return x -> Double.isNaN(x) ? 0 : scalingFactor * (Math.log((x - columnMin) / range + 1) / log2);
+        }
+        return null;
+    }
+
+    private static DoubleUnaryOperator doubleOp(MathOp mathOp, double scalar) {
+        switch (mathOp) {
+            case Add:
+                return x -> x + scalar;
+            case Subtract:
+                return x -> x - scalar;
+            case Multiply:
+                return x -> x * scalar;
+            case Divide:
+                return x -> x / scalar;
+            case Modulus:
+                return x -> x % scalar;
+            case ReverseSubtract:
+                return x -> scalar - x;
+            case ReverseDivide:
+                return x -> scalar / x;
+            case ScalarMin:
+                return x -> Math.min(x, scalar);
+            case ScalarMax:
+                return x -> Math.max(x, scalar);
+            default:
+                throw new IllegalStateException("Unknown or not implemented math op: " + mathOp);
+        }
+    }
+
+    private static IntUnaryOperator intOp(MathOp mathOp, int scalar) {
+        switch (mathOp) {
+            case Add:
+                return x -> x + scalar;
+            case Subtract:
+                return x -> x - scalar;
+            case Multiply:
+                return x -> x * scalar;
+            case Divide:
+                return x -> x / scalar;
+            case Modulus:
+                return x -> x % scalar;
+            case ReverseSubtract:
+                return x -> scalar - x;
+            case ReverseDivide:
+                return x -> scalar / x;
+            case ScalarMin:
+                return x -> Math.min(x, scalar);
+            case ScalarMax:
+                return x -> Math.max(x, scalar);
+            default:
+                throw new IllegalStateException("Unknown or not implemented math op: " + mathOp);
+        }
+    }
+
+    private static LongUnaryOperator longOp(MathOp mathOp, long scalar) {
+        switch (mathOp) {
+            case Add:
+                return x -> x + scalar;
+            case Subtract:
+                return x -> x - scalar;
+            case Multiply:
+                return x -> x * scalar;
+            case Divide:
+                return x -> x / scalar;
+            case Modulus:
+                return x -> x % scalar;
+            case ReverseSubtract:
+                return x -> scalar - x;
+            case ReverseDivide:
+                return x -> scalar / x;
+            case ScalarMin:
+                return x -> Math.min(x, scalar);
+            case ScalarMax:
+                return x -> Math.max(x, scalar);
+            default:
+                throw new IllegalStateException("Unknown or not implemented math op: " + mathOp);
+        }
+    }
+
+
+    //----------------------------------------------------------------------------------------------------------------
+    // Filters and conditions
+
+    /**
+     * @return Mask: true for rows that should be removed by the filter
+     */
+    private static boolean[] removeMask(Filter filter, Schema schema, List<FieldVector> columns, int numRows) {
+        if (filter instanceof ConditionFilter) {
+            return conditionMask(((ConditionFilter) filter).getCondition(), schema, columns, numRows);
+        } else if (filter instanceof FilterInvalidValues) {
+            FilterInvalidValues f = (FilterInvalidValues) filter;
+            int[] idxs = f.isFilterAnyInvalid() ? null : f.getColumnIdxs();
+            int nCols = idxs == null ? schema.numColumns() : idxs.length;
+            boolean[] remove = new boolean[numRows];
+            for (int c = 0; c < nCols; c++) {
+                int idx = idxs == null ? c : idxs[c];
+                ColumnMetaData meta = schema.getMetaData(idx);
+                FieldVector v = columns.get(idx);
+                ColumnType type = schema.getType(idx);
+                Writable cell = ArrowColumns.newCell(v, type);
+                for (int i = 0; i < numRows; i++) {
+                    if (!remove[i] && !meta.isValid(ArrowColumns.readCell(v, type, i, cell)))
+                        remove[i] = true;
+                }
+            }
+            return remove;
+        }
+
+        //No columnar implementation: execute row by row
+        boolean[] remove = new boolean[numRows];
+        int i = 0;
+        for (List<Writable> l : rows(schema, columns, numRows)) {
+            remove[i++] = filter.removeExample(l);
+        }
+        return remove;
+    }
+
+    /**
+     * @return Mask: true for rows where the condition is satisfied
+     */
+    private static boolean[] conditionMask(Condition condition, Schema schema, List<FieldVector> columns, int numRows) {
+        if (condition instanceof BooleanCondition) {
+            BooleanCondition bc = (BooleanCondition) condition;
+            Condition[] conditions = bc.getConditions();
+            boolean[] ret = conditionMask(conditions[0], schema, columns, numRows);
+            switch (bc.getType()) {
+                case AND:
+                case OR:
+                    for (int c = 1; c < conditions.length; c++) {
+                        boolean[] m = conditionMask(conditions[c], schema, columns, numRows);
+                        boolean and = bc.getType() == BooleanCondition.Type.AND;
+                        for (int i = 0; i < numRows; i++) {
+                            ret[i] = and ? ret[i] && m[i] : ret[i] || m[i];
+                        }
+                    }
+                    return ret;
+                case NOT:
+                    for (int i = 0; i < numRows; i++) {
+                        ret[i] = !ret[i];
+                    }
+                    return ret;
+                case XOR:
+                    boolean[] m = conditionMask(conditions[1], schema, columns, numRows);
+                    for (int i = 0; i < numRows; i++) {
+                        ret[i] ^= m[i];
+                    }
+                    return ret;
+                default:
+                    throw new RuntimeException("Unknown condition type: " + bc.getType());
+            }
+        } else if (condition instanceof BaseColumnCondition
+                && ArrowColumns.declaredBy(condition, BaseColumnCondition.class, "condition", List.class)) {
+            BaseColumnCondition cc = (BaseColumnCondition) condition;
+            int idx = cc.getColumnIdx();
+            FieldVector v = columns.get(idx);
+            ColumnType type = schema.getType(idx);
+            Writable cell = ArrowColumns.newCell(v, type);
+            boolean[] ret = new boolean[numRows];
+            for (int i = 0; i < numRows; i++) {
+                ret[i] = cc.columnCondition(ArrowColumns.readCell(v, type, i, cell));
+            }
+            return ret;
+        }
+
+        //No columnar implementation: execute row by row
+        boolean[] ret = new boolean[numRows];
+        int i = 0;
+        for (List<Writable> l : rows(schema, columns, numRows)) {
+            ret[i++] = condition.condition(l);
+        }
+        return ret;
+    }
+
+    /**
+     * Remove the masked rows from all columns. If no rows are removed, the input columns are returned
+     */
+    private static List<FieldVector> retainRows(BufferAllocator allocator, Schema schema, List<FieldVector> columns,
+                                                boolean[] remove, int numRows) {
+        int[] keep = new int[numRows];
+        int numKeep = 0;
+        for (int i = 0; i < numRows; i++) {
+            if (!remove[i])
+                keep[numKeep++] = i;
+        }
+        if (numKeep == numRows)
+            return columns;
+
+        List<FieldVector> ret = new ArrayList<>(columns.size());
+        for (int c = 0; c < columns.size(); c++) {
+            ret.add(ArrowColumns.copyRows(allocator, columns.get(c), schema.getName(c), keep, numKeep));
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,209 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.datavec.local.transforms.columnar;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.FieldVector;
+import org.datavec.api.transform.MathOp;
+import org.datavec.api.transform.ReduceOp;
+import org.datavec.api.transform.TransformProcess;
+import org.datavec.api.transform.condition.BooleanCondition;
+import org.datavec.api.transform.condition.ConditionOp;
+import org.datavec.api.transform.condition.column.CategoricalColumnCondition;
+import org.datavec.api.transform.condition.column.DoubleColumnCondition;
+import org.datavec.api.transform.condition.column.IntegerColumnCondition;
+import org.datavec.api.transform.reduce.Reducer;
+import org.datavec.api.transform.schema.Schema;
+import org.datavec.api.transform.sequence.comparator.NumericalColumnComparator;
+import org.datavec.api.writable.*;
+import org.datavec.arrow.ArrowConverter;
+import org.datavec.local.transforms.LocalTransformExecutor;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class ArrowTransformExecutorTest {
+
+    private static Schema schema() {
+        return new Schema.Builder()
+                .addColumnInteger("i")
+                .addColumnLong("l")
+                .addColumnDouble("d")
+                .addColumnCategorical("c", "a", "b", "c")
+                .addColumnString("s")
+                .build();
+    }
+
+    private static List<List<Writable>> data(int numRows) {
+        Random r = new Random(12345);
+        String[] cats = {"a", "b", "c"};
+        List<List<Writable>> ret = new ArrayList<>();
+        for (int i = 0; i < numRows; i++) {
+            ret.add(Arrays.<Writable>asList(new IntWritable(r.nextInt(100)), new LongWritable(r.nextInt(1000)),
+                    new DoubleWritable(3 * r.nextDouble()), new Text(cats[r.nextInt(3)]), new Text("s" + i)));
+        }
+        return ret;
+    }
+
+    @Test
+    public void testTransformsAndFilters() {
+        TransformProcess tp = new TransformProcess.Builder(schema())
+                .integerMathOp("i", MathOp.Multiply, 3)
+                .longMathOp("l", MathOp.Subtract, 7)
+                .doubleMathOp("d", MathOp.Divide, 4.0)
+                .appendStringColumnTransform("s", "_x")
+                .filter(BooleanCondition.OR(new DoubleColumnCondition("d", ConditionOp.LessThan, 0.1),
+                        new CategoricalColumnCondition("c", ConditionOp.Equal, "c")))
+                .duplicateColumn("d", "d2")
+                .renameColumn("l", "l2")
+                .conditionalReplaceValueTransform("i", new IntWritable(0),
+                        new IntegerColumnCondition("i", ConditionOp.LessThan, 30))
+                .categoricalToInteger("c")
+                .removeColumns("s")
+                .reorderColumns("d2", "i")
+                .build();
+
+        assertTrue(ArrowTransformExecutor.canExecute(tp));
+        List<List<Writable>> in = data(200);
+        List<List<Writable>> expected = LocalTransformExecutor.execute(in, tp);
+        List<List<Writable>> actual = ArrowTransformExecutor.execute(in, tp);
+
+        assertTrue(expected.size() > 0 && expected.size() < in.size());
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i), actual.get(i));
+        }
+    }
+
+    @Test
+    public void testReduction() {
+        Reducer columnar = new Reducer.Builder(ReduceOp.TakeFirst)
+                .keyColumns("c")
+                .sumColumns("i").rangeColumns("i")
+                .maxColumn("l").meanColumns("l")
+                .minColumns("d").meanColumns("d")
+                .countColumns("s").takeLastColumns("s")
+                .build();
+        //Stdev and append: not supported in columnar mode -> row-wise execution
+        Reducer rowWise = new Reducer.Builder(ReduceOp.Sum)
+                .keyColumns("c")
+                .stdevColumns("d")
+                .appendColumns("s")
+                .build();
+        Reducer global = new Reducer.Builder(ReduceOp.Max)
+                .countColumns("c")
+                .takeFirstColumns("s")
+                .build();
+
+        for (Reducer reducer : new Reducer[]{columnar, rowWise, global}) {
+            TransformProcess tp = new TransformProcess.Builder(schema())
+                    .reduce(reducer)
+                    .build();
+
+            List<List<Writable>> in = data(100);
+            List<List<Writable>> expected = sortByFirst(LocalTransformExecutor.execute(in, tp));
+            List<List<Writable>> actual = sortByFirst(ArrowTransformExecutor.execute(in, tp));
+
+            assertEquals(reducer.getKeyColumns() == null ? 1 : 3, actual.size());
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                List<Writable> e = expected.get(i);
+                List<Writable> a = actual.get(i);
+                assertEquals(e.size(), a.size());
+                for (int j = 0; j < e.size(); j++) {
+                    if (e.get(j) instanceof DoubleWritable)
+                        assertEquals(e.get(j).toDouble(), a.get(j).toDouble(), 1e-10);
+                    else
+                        assertEquals(e.get(j), a.get(j));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testExecuteOnColumns() {
+        TransformProcess tp = new TransformProcess.Builder(schema())
+                .doubleMathOp("d", MathOp.Add, 1.0)
+                .filter(new CategoricalColumnCondition("c", ConditionOp.Equal, "a"))
+                .removeColumns("c")
+                .build();
+
+        BufferAllocator allocator = new RootAllocator(Long.MAX_VALUE);
+        List<List<Writable>> in = data(50);
+        List<FieldVector> input = ArrowConverter.toArrowColumns(allocator, tp.getInitialSchema(), in);
+        List<FieldVector> output = ArrowTransformExecutor.execute(allocator, input, tp);
+        assertEquals(tp.getFinalSchema().numColumns(), output.size());
+
+        List<List<Writable>> expected = LocalTransformExecutor.execute(in, tp);
+        List<List<Writable>> actual = ArrowConverter.toArrowWritables(output, tp.getFinalSchema());
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i), actual.get(i));
+        }
+
+        //Input columns are not modified or closed
+        assertEquals(in, ArrowConverter.toArrowWritables(input, tp.getInitialSchema()).toArrayList());
+    }
+
+    @Test
+    public void testColumnarProperty() {
+        //Columnar mode is opt-in
+        assertFalse(LocalTransformExecutor.isColumnar());
+
+        TransformProcess tp = new TransformProcess.Builder(schema())
+                .integerMathOp("i", MathOp.Add, 1)
+                .filter(new CategoricalColumnCondition("c", ConditionOp.Equal, "b"))
+                .build();
+        List<List<Writable>> in = data(50);
+        List<List<Writable>> expected = LocalTransformExecutor.execute(in, tp);
+
+        System.setProperty(LocalTransformExecutor.COLUMNAR_PROPERTY, "true");
+        try {
+            assertTrue(LocalTransformExecutor.isColumnar());
+            List<List<Writable>> actual = LocalTransformExecutor.execute(in, tp);
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i), actual.get(i));
+            }
+        } finally {
+            System.clearProperty(LocalTransformExecutor.COLUMNAR_PROPERTY);
+        }
+    }
+
+    @Test
+    public void testSequenceFallback() {
+        TransformProcess tp = new TransformProcess.Builder(schema())
+                .convertToSequence("c", new NumericalColumnComparator("i"))
+                .build();
+        assertFalse(ArrowTransformExecutor.canExecute(tp));
+    }
+
+    private static List<List<Writable>> sortByFirst(List<List<Writable>> in) {
+        List<List<Writable>> ret = new ArrayList<>(in);
+        Collections.sort(ret, new Comparator<List<Writable>>() {
+            @Override
+            public int compare(List<Writable> o1, List<Writable> o2) {
+                return o1.get(0).toString().compareTo(o2.get(0).toString());
+            }
+        });
+        return ret;
+    }
+}
@@ -82,6 +82,33 @@ public class DL4JSystemProperties {
      */
     public static final String CRASH_DUMP_OUTPUT_DIRECTORY_PROPERTY = "org.deeplearning4j.crash.reporting.directory";
 
+    /**
+     * Applicability: deeplearning4j-nn<br>
+     * Description: On the CPU backend, LSTM layers (without peephole connections, and with sigmoid gate activations)
+     * use a fused implementation (CpuLSTMHelper) that performs fewer, larger matrix multiplications and allocates
+     * fewer temporary arrays than the default implementation. This is enabled by default. Set this system property to
+     * false to use the default (non-fused) implementation instead.
+     */
+    public static final String LSTM_CPU_HELPER_ENABLED_PROPERTY = "org.deeplearning4j.lstm.cpu.helper.enabled";
+
+    /**
+     * Applicability: deeplearning4j-nn<br>
+     * Description: On the CPU backend when MKL-DNN is not available, ConvolutionLayer uses CpuConvolutionHelper, which
+     * selects a Winograd (3x3 kernels, stride 1, inference only) or direct (1x1 kernels) algorithm instead of
+     * im2col + gemm where applicable. This is enabled by default. Set this system property to false to always use im2col + gemm.
+     */
+    public static final String CONV_CPU_HELPER_ENABLED_PROPERTY = "org.deeplearning4j.conv.cpu.helper.enabled";
+
+    /**
+     * Applicability: deeplearning4j-nn<br>
+     * Description: On the CPU backend, when training with stochastic gradient descent (and no gradients accumulator),
+     * Sgd, Adam, Nesterovs and RmsProp updaters (with L2 regularization and weight decay) use a fused implementation
+     * (FusedUpdater) that applies the regularization, the updater and the parameter update in a single pass over the
+     * parameters, gradients and updater state. This is disabled by default. Set this system property to true to use
+     * the fused implementation.
+     */
+    public static final String FUSED_UPDATER_ENABLED_PROPERTY = "org.deeplearning4j.updater.fused.enabled";
+
     /**
      * Applicability: deeplearning4j-ui_2.xx<br>
      * Description: The DL4J training UI (StatsListener + UIServer.getInstance().attach(ss)) will subsample the number
@@ -0,0 +1,243 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.datasets.iterator;
+
+import org.apache.commons.io.FileUtils;
+import org.datavec.api.records.reader.RecordReader;
+import org.datavec.api.records.reader.impl.csv.CSVRecordReader;
+import org.datavec.api.split.CollectionInputSplit;
+import org.datavec.api.split.FileSplit;
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.datasets.datavec.RecordReaderDataSetIterator;
+import org.deeplearning4j.datasets.datavec.RecordReaderDataSetIteratorShardFactory;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.nd4j.linalg.dataset.BaseMultiWorkerAsyncIterator;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.MultiWorkerAsyncDataSetIterator;
+import org.nd4j.linalg.dataset.MultiWorkerAsyncMultiDataSetIterator;
+import org.nd4j.linalg.dataset.adapter.MultiDataSetIteratorAdapter;
+import org.nd4j.linalg.dataset.api.MultiDataSet;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIteratorShardFactory;
+import org.nd4j.linalg.dataset.api.iterator.MultiDataSetIterator;
+import org.nd4j.linalg.dataset.api.iterator.MultiDataSetIteratorShardFactory;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.function.Supplier;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MultiWorkerAsyncDataSetIteratorTest extends BaseDL4JTest {
+    private static final int TEST_SIZE = 101;
+
+    @Rule
+    public TemporaryFolder testDir = new TemporaryFolder();
+
+    private List<DataSet> data;
+
+    @Before
+    public void setUp() {
+        data = new ArrayList<>();
+        for (int i = 0; i < TEST_SIZE; i++) {
+            data.add(new DataSet(Nd4j.valueArrayOf(new long[] {1, 10}, i), Nd4j.create(1, 2)));
+        }
+    }
+
+    /**
+     * Strided shards: shard s returns elements s, s+n, s+2n, ... with a random delay for each element
+     */
+    private DataSetIteratorShardFactory stridedShards(final int crashAt) {
+        return new DataSetIteratorShardFactory() {
+            @Override
+            public DataSetIterator createShard(int shard, int numShards) {
+                final List<DataSet> l = new ArrayList<>();
+                for (int i = shard; i < data.size(); i += numShards)
+                    l.add(data.get(i));
+                final Random r = new Random(shard);
+                return new ExistingDataSetIterator(l) {
+                    @Override
+                    public DataSet next() {
+                        DataSet ds = super.next();
+                        if (ds.getFeatures().getInt(0) == crashAt)
+                            throw new IllegalStateException("Thrown as expected");
+                        try {
+                            Thread.sleep(r.nextInt(3));
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return ds;
+                    }
+                };
+            }
+        };
+    }
+
+    private static List<Integer> values(DataSetIterator iter) {
+        List<Integer> out = new ArrayList<>();
+        while (iter.hasNext())
+            out.add(iter.next().getFeatures().getInt(0));
+        return out;
+    }
+
+    private static List<Integer> expected() {
+        List<Integer> out = new ArrayList<>();
+        for (int i = 0; i < TEST_SIZE; i++)
+            out.add(i);
+        return out;
+    }
+
+    @Test
+    public void testOrdered() {
+        for (int numWorkers : new int[] {1, 3, 4}) {
+            MultiWorkerAsyncDataSetIterator iter = new MultiWorkerAsyncDataSetIterator(stridedShards(-1), numWorkers, true);
+            for (int epoch = 0; epoch < 3; epoch++) {
+                assertEquals("Failed for numWorkers=" + numWorkers, expected(), values(iter));
+                iter.reset();
+            }
+            iter.shutdown();
+        }
+    }
+
+    @Test
+    public void testUnordered() {
+        for (int numWorkers : new int[] {1, 3, 4}) {
+            MultiWorkerAsyncDataSetIterator iter =
+                            new MultiWorkerAsyncDataSetIterator(stridedShards(-1), numWorkers, false);
+            for (int epoch = 0; epoch < 3; epoch++) {
+                List<Integer> values = values(iter);
+                Collections.sort(values);
+                assertEquals("Failed for numWorkers=" + numWorkers, expected(), values);
+                iter.reset();
+            }
+            iter.shutdown();
+        }
+    }
+
+    @Test
+    public void testResetMidEpoch() {
+        MultiWorkerAsyncDataSetIterator iter = new MultiWorkerAsyncDataSetIterator(stridedShards(-1), 3, true);
+        for (int i = 0; i < TEST_SIZE / 2; i++)
+            iter.next();
+        iter.reset();
+        assertEquals(expected(), values(iter));
+        iter.shutdown();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testWithException() {
+        MultiWorkerAsyncDataSetIterator iter = new MultiWorkerAsyncDataSetIterator(stridedShards(50), 4, false);
+        try {
+            values(iter);
+        } finally {
+            iter.shutdown();
+        }
+    }
+
+    @Test
+    public void testStatsAndAdaptiveDepth() throws Exception {
+        MultiWorkerAsyncDataSetIterator iter = new MultiWorkerAsyncDataSetIterator(stridedShards(-1), 2, false, 3, 6,
+                        true, true);
+        int count = 0;
+        while (iter.hasNext()) {
+            iter.next();
+            //Slow consumer: workers are mostly blocked on a full buffer
+            Thread.sleep(5);
+            count++;
+        }
+        assertEquals(TEST_SIZE, count);
+
+        BaseMultiWorkerAsyncIterator.Stats stats = iter.getStats();
+        assertEquals(TEST_SIZE, stats.getProduced());
+        assertEquals(TEST_SIZE, stats.getConsumed());
+        assertTrue(stats.getProducerBlockedNanos() > 0);
+        assertTrue(stats.getProducerBlockedFraction() > stats.getConsumerBlockedFraction());
+        //Adaptation depends on timing: only check the bounds here (see BaseMultiWorkerAsyncIteratorTest for the policy)
+        assertTrue(iter.getPrefetchDepth() >= 1 && iter.getPrefetchDepth() <= 6);
+
+        iter.resetStats();
+        assertEquals(0, iter.getStats().getConsumed());
+        iter.shutdown();
+    }
+
+    @Test
+    public void testRecordReaderShards() throws Exception {
+        File dir = testDir.newFolder();
+        for (int i = 0; i < 25; i++) {
+            FileUtils.writeStringToFile(new File(dir, String.format("%03d.csv", i)), i + "," + (i % 3),
+                    StandardCharsets.UTF_8);
+        }
+        FileSplit split = new FileSplit(dir);
+        Supplier<RecordReader> supplier = new Supplier<RecordReader>() {
+            @Override
+            public RecordReader get() {
+                return new CSVRecordReader();
+            }
+        };
+
+        RecordReader rr = new CSVRecordReader();
+        rr.initialize(new CollectionInputSplit(split.locations()));
+        List<DataSet> expected = new ArrayList<>();
+        DataSetIterator single = new RecordReaderDataSetIterator(rr, 4, 1, 3);
+        while (single.hasNext())
+            expected.add(single.next());
+
+        for (int numWorkers : new int[] {1, 3}) {
+            MultiWorkerAsyncDataSetIterator iter = new MultiWorkerAsyncDataSetIterator(
+                            new RecordReaderDataSetIteratorShardFactory(supplier, split, 4, 1, 3), numWorkers, true);
+            for (int epoch = 0; epoch < 2; epoch++) {
+                List<DataSet> actual = new ArrayList<>();
+                while (iter.hasNext())
+                    actual.add(iter.next());
+                assertEquals("Failed for numWorkers=" + numWorkers, expected, actual);
+                iter.reset();
+            }
+            iter.shutdown();
+        }
+    }
+
+    @Test
+    public void testMultiDataSetOrdered() {
+        final DataSetIteratorShardFactory f = stridedShards(-1);
+        MultiDataSetIteratorShardFactory mf = new MultiDataSetIteratorShardFactory() {
+            @Override
+            public MultiDataSetIterator createShard(int shard, int numShards) {
+                return new MultiDataSetIteratorAdapter(f.createShard(shard, numShards));
+            }
+        };
+
+        MultiWorkerAsyncMultiDataSetIterator iter = new MultiWorkerAsyncMultiDataSetIterator(mf, 3, true);
+        for (int epoch = 0; epoch < 2; epoch++) {
+            List<Integer> values = new ArrayList<>();
+            while (iter.hasNext()) {
+                MultiDataSet mds = iter.next();
+                values.add(mds.getFeatures(0).getInt(0));
+            }
+            assertEquals(expected(), values);
+            iter.reset();
+        }
+        iter.shutdown();
+    }
+}
@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.layers.convolution;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.TestUtils;
+import org.deeplearning4j.nn.api.Layer;
+import org.deeplearning4j.nn.conf.ConvolutionMode;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.layers.convolution.CpuConvolutionHelper.Algorithm;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.workspace.LayerWorkspaceMgr;
+import org.junit.Test;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.learning.config.NoOp;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import java.lang.reflect.Field;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class CpuConvolutionHelperTest extends BaseDL4JTest {
+
+    @Override
+    public DataType getDataType(){
+        return DataType.DOUBLE;
+    }
+
+    @Test
+    public void testAlgorithmSelection() {
+        int[] s1 = {1, 1};
+        int[] s2 = {2, 2};
+        int[] p0 = {0, 0};
+        int[] p1 = {1, 1};
+        int[] d1 = {1, 1};
+        int[] d2 = {2, 2};
+        long[] in = {2, 16, 32, 32};
+
+        assertEquals(Algorithm.DIRECT_1X1, CpuConvolutionHelper.selectAlgorithm(in, new long[]{8, 16, 1, 1}, s1, p0, d1, new int[]{32, 32}));
+        assertEquals(Algorithm.IM2COL, CpuConvolutionHelper.selectAlgorithm(in, new long[]{8, 16, 1, 1}, s2, p0, d1, new int[]{16, 16}));
+        assertEquals(Algorithm.IM2COL, CpuConvolutionHelper.selectAlgorithm(in, new long[]{8, 16, 1, 1}, s1, p1, d1, new int[]{34, 34}));
+
+        assertEquals(Algorithm.WINOGRAD_2X2_3X3, CpuConvolutionHelper.selectAlgorithm(in, new long[]{8, 16, 3, 3}, s1, p1, d1, new int[]{32, 32}));
+        assertEquals(Algorithm.IM2COL, CpuConvolutionHelper.selectAlgorithm(in, new long[]{8, 16, 3, 3}, s2, p1, d1, new int[]{16, 16}));
+        assertEquals(Algorithm.IM2COL, CpuConvolutionHelper.selectAlgorithm(in, new long[]{8, 16, 3, 3}, s1, p1, d2, new int[]{30, 30}));
+        assertEquals(Algorithm.IM2COL, CpuConvolutionHelper.selectAlgorithm(in, new long[]{2, 2, 3, 3}, s1, p1, d1, new int[]{32, 32}));
+        assertEquals(Algorithm.IM2COL, CpuConvolutionHelper.selectAlgorithm(new long[]{2, 16, 3, 3}, new long[]{8, 16, 3, 3}, s1, p0, d1, new int[]{1, 1}));
+
+        assertEquals(Algorithm.IM2COL, CpuConvolutionHelper.selectAlgorithm(in, new long[]{8, 16, 5, 5}, s1, p0, d1, new int[]{28, 28}));
+    }
+
+    @Test
+    public void testWinogradInferenceOnly() {
+        assumeTrue(Nd4j.getBackend().getClass().getName().toLowerCase().contains("native"));
+
+        CpuConvolutionHelper helper = new CpuConvolutionHelper(DataType.DOUBLE);
+        INDArray in = Nd4j.rand(DataType.DOUBLE, 2, 8, 8, 8);
+        INDArray w = Nd4j.rand(DataType.DOUBLE, 8, 8, 3, 3);
+        INDArray b = Nd4j.rand(DataType.DOUBLE, 1, 8);
+        int[] k = {3, 3};
+        int[] s = {1, 1};
+        int[] p = {1, 1};
+        int[] d = {1, 1};
+
+        //At training time the built-in im2col forward pass is used, so backprop can reuse the im2col buffer
+        assertNull(helper.preOutput(in, w, b, k, s, p, null, null, ConvolutionMode.Same, d,
+                LayerWorkspaceMgr.noWorkspaces(), true));
+        assertEquals(Algorithm.WINOGRAD_2X2_3X3, helper.getAlgorithm());
+        assertNotNull(helper.preOutput(in, w, b, k, s, p, null, null, ConvolutionMode.Same, d,
+                LayerWorkspaceMgr.noWorkspaces(), false));
+        assertNotNull(helper.preOutput(in, w, b, k, s, p, null, null, ConvolutionMode.Same, d,
+                LayerWorkspaceMgr.noWorkspaces()));
+    }
+
+    @Test
+    public void testCpuHelperVsIm2col() throws Exception {
+        assumeTrue(Nd4j.getBackend().getClass().getName().toLowerCase().contains("native"));
+
+        Field f = ConvolutionLayer.class.getDeclaredField("helper");
+        f.setAccessible(true);
+
+        for (ConvolutionMode cm : new ConvolutionMode[]{ConvolutionMode.Same, ConvolutionMode.Truncate}) {
+            for (int inSize : new int[]{7, 8}) {
+                for (boolean hasBias : new boolean[]{true, false}) {
+                    for (int minibatch : new int[]{1, 3}) {
+                        String msg = "mode=" + cm + ", inSize=" + inSize + ", hasBias=" + hasBias + ", minibatch=" + minibatch;
+                        Nd4j.getRandom().setSeed(12345);
+                        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                                .dataType(DataType.DOUBLE)
+                                .updater(new NoOp())
+                                .convolutionMode(cm)
+                                .seed(12345)
+                                .list()
+                                .layer(new org.deeplearning4j.nn.conf.layers.ConvolutionLayer.Builder().kernelSize(3, 3)
+                                        .stride(1, 1).padding(1, 1).nOut(8).hasBias(hasBias).activation(Activation.TANH).build())
+                                .layer(new org.deeplearning4j.nn.conf.layers.ConvolutionLayer.Builder().kernelSize(1, 1)
+                                        .stride(1, 1).nOut(6).hasBias(hasBias).activation(Activation.TANH).build())
+                                .layer(new org.deeplearning4j.nn.conf.layers.ConvolutionLayer.Builder().kernelSize(3, 3)
+                                        .stride(1, 1).nOut(5).activation(Activation.TANH).build())
+                                .layer(new OutputLayer.Builder().nOut(4).activation(Activation.SOFTMAX)
+                                        .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                                .setInputType(InputType.convolutional(inSize, inSize, 8))
+                                .build();
+
+                        MultiLayerNetwork netWith = new MultiLayerNetwork(conf);
+                        netWith.init();
+                        MultiLayerNetwork netWithout = netWith.clone();
+                        Layer[] lWith = netWith.getLayers();
+                        Layer[] lWithout = netWithout.getLayers();
+                        for (int i = 0; i < 3; i++) {
+                            f.set(lWith[i], new CpuConvolutionHelper(DataType.DOUBLE));
+                            f.set(lWithout[i], null);
+                        }
+
+                        INDArray in = Nd4j.rand(DataType.DOUBLE, minibatch, 8, inSize, inSize);
+                        INDArray labels = TestUtils.randomOneHot(minibatch, 4).castTo(DataType.DOUBLE);
+
+                        INDArray outWith = netWith.output(in);
+                        INDArray outWithout = netWithout.output(in);
+                        assertTrue(msg, outWithout.equalsWithEps(outWith, 1e-8));
+
+                        assertEquals(msg, Algorithm.WINOGRAD_2X2_3X3, ((CpuConvolutionHelper) ((ConvolutionLayer) lWith[0]).getHelper()).getAlgorithm());
+                        assertEquals(msg, Algorithm.DIRECT_1X1, ((CpuConvolutionHelper) ((ConvolutionLayer) lWith[1]).getHelper()).getAlgorithm());
+
+                        netWith.setInput(in);
+                        netWith.setLabels(labels);
+                        netWith.computeGradientAndScore();
+                        netWithout.setInput(in);
+                        netWithout.setLabels(labels);
+                        netWithout.computeGradientAndScore();
+                        assertEquals(msg, netWithout.score(), netWith.score(), 1e-8);
+                        assertTrue(msg, netWithout.getFlattenedGradients().equalsWithEps(netWith.getFlattenedGradients(), 1e-8));
+                    }
+                }
+            }
+        }
+    }
+}
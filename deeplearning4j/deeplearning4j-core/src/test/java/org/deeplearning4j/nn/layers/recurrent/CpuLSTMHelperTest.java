@@ -0,0 +1,151 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.layers.recurrent;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.LayerHelperValidationUtil;
+import org.deeplearning4j.TestUtils;
+import org.deeplearning4j.datasets.iterator.impl.SingletonDataSetIterator;
+import org.deeplearning4j.nn.api.Layer;
+import org.deeplearning4j.nn.conf.BackpropType;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.layers.RnnOutputLayer;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.junit.Test;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+import org.nd4j.linalg.learning.config.Adam;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import java.lang.reflect.Field;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class CpuLSTMHelperTest extends BaseDL4JTest {
+
+    private static MultiLayerConfiguration getConf(Activation afn, BackpropType bpType, int nIn, int nOut) {
+        return new NeuralNetConfiguration.Builder()
+                .dataType(DataType.DOUBLE)
+                .updater(new Adam(0.01))
+                .seed(12345)
+                .list()
+                .layer(new org.deeplearning4j.nn.conf.layers.LSTM.Builder().nIn(nIn).nOut(6).activation(afn).build())
+                .layer(new org.deeplearning4j.nn.conf.layers.LSTM.Builder().nIn(6).nOut(5).activation(afn).build())
+                .layer(new RnnOutputLayer.Builder().nIn(5).nOut(nOut).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                .backpropType(bpType).tBPTTLength(3)
+                .build();
+    }
+
+    private static void removeHelpers(MultiLayerNetwork net) throws Exception {
+        Field f = LSTM.class.getDeclaredField("helper");
+        f.setAccessible(true);
+        for (Layer l : net.getLayers()) {
+            if (l instanceof LSTM)
+                f.set(l, null);
+        }
+    }
+
+    @Test
+    public void validateCpuLSTMHelper() {
+        assumeTrue(Nd4j.getBackend().getClass().getName().toLowerCase().contains("native"));
+        Nd4j.getRandom().setSeed(12345);
+
+        int nIn = 4;
+        int nOut = 3;
+        for (Activation afn : new Activation[]{Activation.TANH, Activation.SOFTSIGN}) {
+            for (int minibatch : new int[]{1, 3}) {
+                for (int tsLength : new int[]{1, 5}) {
+                    INDArray f = Nd4j.rand(DataType.DOUBLE, minibatch, nIn, tsLength);
+                    INDArray l = TestUtils.randomOneHotTimeSeries(minibatch, nOut, tsLength).castTo(DataType.DOUBLE);
+
+                    MultiLayerNetwork net = new MultiLayerNetwork(getConf(afn, BackpropType.Standard, nIn, nOut));
+                    net.init();
+                    assertTrue(((LSTM) net.getLayer(0)).getHelper() instanceof CpuLSTMHelper);
+
+                    LayerHelperValidationUtil.TestCase tc = LayerHelperValidationUtil.TestCase.builder()
+                            .testName("afn=" + afn + ", minibatch=" + minibatch + ", tsLength=" + tsLength)
+                            .allowHelpersForClasses(Collections.<Class<?>>singletonList(LSTM.class))
+                            .testForward(true)
+                            .testScore(true)
+                            .testBackward(true)
+                            .testTraining(true)
+                            .features(f)
+                            .labels(l)
+                            .data(new SingletonDataSetIterator(new DataSet(f, l)))
+                            .build();
+
+                    LayerHelperValidationUtil.validateMLN(net, tc);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testRnnTimeStepMaskingAndTbptt() throws Exception {
+        assumeTrue(Nd4j.getBackend().getClass().getName().toLowerCase().contains("native"));
+        Nd4j.getRandom().setSeed(12345);
+
+        int nIn = 4;
+        int nOut = 3;
+        int minibatch = 3;
+        int tsLength = 7;
+
+        MultiLayerNetwork netWith = new MultiLayerNetwork(getConf(Activation.TANH, BackpropType.TruncatedBPTT, nIn, nOut));
+        netWith.init();
+        MultiLayerNetwork netWithout = netWith.clone();
+        removeHelpers(netWithout);
+        assertNotNull(((LSTM) netWith.getLayer(0)).getHelper());
+        assertNull(((LSTM) netWithout.getLayer(0)).getHelper());
+
+        INDArray f = Nd4j.rand(DataType.DOUBLE, minibatch, nIn, tsLength);
+        INDArray l = TestUtils.randomOneHotTimeSeries(minibatch, nOut, tsLength).castTo(DataType.DOUBLE);
+
+        //rnnTimeStep, one and two steps at a time
+        for (int t = 0; t < tsLength; t += 2) {
+            INDArray in = f.get(NDArrayIndex.all(), NDArrayIndex.all(), NDArrayIndex.interval(t, Math.min(t + 2, tsLength)));
+            assertEquals(netWithout.rnnTimeStep(in), netWith.rnnTimeStep(in));
+        }
+        netWith.rnnClearPreviousState();
+        netWithout.rnnClearPreviousState();
+
+        //Variable length time series: masking
+        INDArray fMask = Nd4j.ones(DataType.DOUBLE, minibatch, tsLength);
+        fMask.get(NDArrayIndex.point(1), NDArrayIndex.interval(4, tsLength)).assign(0);
+        fMask.get(NDArrayIndex.point(2), NDArrayIndex.interval(2, tsLength)).assign(0);
+        DataSet ds = new DataSet(f, l, fMask, fMask);
+
+        assertEquals(netWithout.output(f, false, fMask, fMask), netWith.output(f, false, fMask, fMask));
+
+        //Truncated BPTT (with masking): tBPTTLength = 3, so the last segment uses the stored state
+        for (int i = 0; i < 3; i++) {
+            netWith.fit(ds);
+            netWithout.fit(ds);
+        }
+        assertTrue(netWithout.params().equalsWithEps(netWith.params(), 1e-8));
+    }
+}
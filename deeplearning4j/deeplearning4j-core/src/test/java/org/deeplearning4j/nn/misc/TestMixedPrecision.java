@@ -0,0 +1,324 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.deeplearning4j.nn.misc;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.MixedPrecisionConfig;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.gradient.Gradient;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.updater.BaseMultiLayerUpdater;
+import org.deeplearning4j.nn.updater.graph.ComputationGraphUpdater;
+import org.deeplearning4j.nn.workspace.LayerWorkspaceMgr;
+import org.junit.Test;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.learning.config.Adam;
+import org.nd4j.linalg.learning.config.IUpdater;
+import org.nd4j.linalg.learning.config.Sgd;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+import org.nd4j.linalg.primitives.Pair;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class TestMixedPrecision extends BaseDL4JTest {
+
+    private static MultiLayerConfiguration getConf(MixedPrecisionConfig mixedPrecision, IUpdater updater) {
+        NeuralNetConfiguration.Builder b = new NeuralNetConfiguration.Builder()
+                .dataType(DataType.FLOAT)
+                .seed(12345)
+                .updater(updater)
+                .activation(Activation.TANH);
+        if (mixedPrecision != null) {
+            b.mixedPrecision(mixedPrecision);
+        }
+        return b.list()
+                .layer(new DenseLayer.Builder().nIn(10).nOut(10).build())
+                .layer(new OutputLayer.Builder().nIn(10).nOut(5).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                .build();
+    }
+
+    private static INDArray getLabels(int minibatch, int nOut) {
+        INDArray l = Nd4j.create(DataType.FLOAT, minibatch, nOut);
+        for (int i = 0; i < minibatch; i++) {
+            l.putScalar(i, i % nOut, 1.0);
+        }
+        return l;
+    }
+
+    @Test
+    public void testMixedPrecisionMLN() {
+        MultiLayerNetwork netFull = new MultiLayerNetwork(getConf(null, new Adam(1e-2)));
+        netFull.init();
+
+        MultiLayerConfiguration conf = getConf(new MixedPrecisionConfig(DataType.HALF), new Adam(1e-2));
+        assertEquals(DataType.HALF, conf.getDataType());
+        assertEquals(conf, MultiLayerConfiguration.fromJson(conf.toJson()));
+
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init(netFull.params().dup(), true);
+        assertEquals(DataType.HALF, net.params().dataType());
+
+        INDArray f = Nd4j.rand(DataType.FLOAT, 8, 10);
+        INDArray l = getLabels(8, 5);
+        for (int i = 0; i < 5; i++) {
+            netFull.fit(f, l);
+            net.fit(f.castTo(DataType.HALF), l.castTo(DataType.HALF));
+        }
+
+        //Updater state (including the master copy of the parameters) is stored in full precision
+        BaseMultiLayerUpdater u = (BaseMultiLayerUpdater) net.getUpdater();
+        INDArray state = u.getStateViewArray();
+        assertEquals(DataType.FLOAT, state.dataType());
+        assertEquals(net.numParams() + netFull.getUpdater().getStateViewArray().length(), state.length());
+        INDArray master = u.getMasterParams();
+        assertEquals(master.castTo(DataType.HALF), net.params());
+
+        assertTrue(netFull.params().equalsWithEps(master, 1e-2));
+        assertEquals(5, net.getIterationCount());
+    }
+
+    @Test
+    public void testOverflowSkipsUpdate() {
+        MixedPrecisionConfig mp = new MixedPrecisionConfig.Builder()
+                .computeDataType(DataType.HALF)
+                .initialLossScale(1e12)     //Always overflows for HALF
+                .build();
+        MultiLayerNetwork net = new MultiLayerNetwork(getConf(mp, new Sgd(0.1)));
+        net.init();
+
+        INDArray f = Nd4j.rand(DataType.HALF, 8, 10);
+        INDArray l = getLabels(8, 5).castTo(DataType.HALF);
+
+        INDArray paramsBefore = net.params().dup();
+        net.fit(f, l);
+        assertEquals(paramsBefore, net.params());
+
+        MixedPrecisionConfig after = net.getLayerWiseConfigurations().getMixedPrecision();
+        assertEquals(1, after.getOverflowCount());
+        assertEquals(1e12 / MixedPrecisionConfig.DEFAULT_SCALE_FACTOR, after.getLossScale(), 1.0);
+
+        //Loss scale is reduced until the gradients no longer overflow
+        for (int i = 0; i < 40; i++) {
+            net.fit(f, l);
+        }
+        assertFalse(paramsBefore.equals(net.params()));
+        assertTrue(after.getLossScale() < 65504);
+    }
+
+    @Test
+    public void testMixedPrecisionCompGraph() {
+        ComputationGraphConfiguration conf = new NeuralNetConfiguration.Builder()
+                .seed(12345)
+                .updater(new Adam(1e-2))
+                .activation(Activation.TANH)
+                .mixedPrecision(new MixedPrecisionConfig.Builder().computeDataType(DataType.HALF)
+                        .initialLossScale(1024).scaleGrowthInterval(2).build())
+                .graphBuilder()
+                .addInputs("in")
+                .addLayer("0", new DenseLayer.Builder().nIn(10).nOut(10).build(), "in")
+                .addLayer("1", new OutputLayer.Builder().nIn(10).nOut(5).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build(), "0")
+                .setOutputs("1")
+                .build();
+        assertEquals(DataType.HALF, conf.getDataType());
+        assertEquals(conf, ComputationGraphConfiguration.fromJson(conf.toJson()));
+
+        ComputationGraph cg = new ComputationGraph(conf);
+        cg.init();
+        assertEquals(DataType.HALF, cg.params().dataType());
+
+        INDArray f = Nd4j.rand(DataType.HALF, 8, 10);
+        INDArray l = getLabels(8, 5).castTo(DataType.HALF);
+        INDArray paramsBefore = cg.params().dup();
+        for (int i = 0; i < 4; i++) {
+            cg.fit(new INDArray[]{f}, new INDArray[]{l});
+        }
+        assertFalse(paramsBefore.equals(cg.params()));
+
+        BaseMultiLayerUpdater u = cg.getUpdater();
+        assertEquals(DataType.FLOAT, u.getStateViewArray().dataType());
+        assertEquals(u.getMasterParams().castTo(DataType.HALF), cg.params());
+
+        //4 iterations without overflow, growth interval of 2
+        assertEquals(4096, cg.getConfiguration().getMixedPrecision().getLossScale(), 0.0);
+
+        //Setting the parameters directly resets the master copy of the parameters
+        INDArray newParams = Nd4j.rand(DataType.HALF, paramsBefore.shape());
+        cg.setParams(newParams);
+        cg.fit(new INDArray[]{f}, new INDArray[]{l});
+        assertTrue(u.getMasterParams().castTo(DataType.HALF).equalsWithEps(cg.params(), 1e-3));
+        assertTrue(newParams.equalsWithEps(cg.params(), 0.1));
+    }
+
+    @Test
+    public void testSetParamInvalidatesMasterParams() {
+        //Zero learning rate: after fitting, the parameters must be those set directly - not the previous master copy
+        MultiLayerNetwork net = new MultiLayerNetwork(getConf(new MixedPrecisionConfig(DataType.HALF), new Sgd(0.0)));
+        net.init();
+
+        INDArray f = Nd4j.rand(DataType.HALF, 8, 10);
+        INDArray l = getLabels(8, 5).castTo(DataType.HALF);
+        net.fit(f, l);
+
+        INDArray newW = Nd4j.rand(DataType.HALF, 10, 10);
+        net.setParam("0_W", newW);
+        net.fit(f, l);
+        assertEquals(newW, net.getParam("0_W"));
+
+        Map<String, INDArray> table = new HashMap<>();
+        for (Map.Entry<String, INDArray> e : net.paramTable().entrySet()) {
+            table.put(e.getKey(), Nd4j.rand(DataType.HALF, e.getValue().shape()));
+        }
+        net.setParamTable(table);
+        net.fit(f, l);
+        assertEquals(table, net.paramTable());
+        assertEquals(net.params(), ((BaseMultiLayerUpdater) net.getUpdater()).getMasterParams().castTo(DataType.HALF));
+
+        ComputationGraphConfiguration conf = new NeuralNetConfiguration.Builder()
+                .updater(new Sgd(0.0))
+                .mixedPrecision(new MixedPrecisionConfig(DataType.HALF))
+                .graphBuilder()
+                .addInputs("in")
+                .addLayer("0", new DenseLayer.Builder().nIn(10).nOut(10).build(), "in")
+                .addLayer("1", new OutputLayer.Builder().nIn(10).nOut(5).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build(), "0")
+                .setOutputs("1")
+                .build();
+        ComputationGraph cg = new ComputationGraph(conf);
+        cg.init();
+        cg.fit(new INDArray[]{f}, new INDArray[]{l});
+
+        cg.setParam("0_W", newW);
+        cg.fit(new INDArray[]{f}, new INDArray[]{l});
+        assertEquals(newW, cg.getParam("0_W"));
+    }
+
+    @Test
+    public void testExternalErrorsMLN() {
+        //Gradients calculated from external errors aren't loss scaled, hence must not be unscaled by the updater
+        MultiLayerNetwork netFull = new MultiLayerNetwork(getExternalErrorsConf(null));
+        netFull.init();
+        MultiLayerNetwork net = new MultiLayerNetwork(getExternalErrorsConf(new MixedPrecisionConfig(DataType.HALF)));
+        net.init(netFull.params().dup(), true);
+        INDArray paramsBefore = netFull.params().dup();
+
+        INDArray f = Nd4j.rand(DataType.FLOAT, 8, 10);
+        INDArray eps = Nd4j.rand(DataType.FLOAT, 8, 10);
+        LayerWorkspaceMgr mgr = LayerWorkspaceMgr.noWorkspaces();
+        for (int i = 0; i < 3; i++) {
+            netFull.setInput(f);
+            netFull.feedForward(true, false);
+            Pair<Gradient, INDArray> pFull = netFull.backpropGradient(eps, mgr);
+            netFull.getUpdater().update(netFull, pFull.getFirst(), i, 0, 8, mgr);
+            netFull.params().subi(pFull.getFirst().gradient());
+
+            net.setInput(f.castTo(DataType.HALF));
+            net.feedForward(true, false);
+            Pair<Gradient, INDArray> p = net.backpropGradient(eps.castTo(DataType.HALF), mgr);
+            assertEquals(1.0, net.getGradientsLossScale(), 0.0);
+            assertTrue(((BaseMultiLayerUpdater) net.getUpdater()).updateAndStep(p.getFirst(), i, 0, 8, mgr));
+        }
+
+        INDArray master = ((BaseMultiLayerUpdater) net.getUpdater()).getMasterParams();
+        assertFalse(paramsBefore.equalsWithEps(netFull.params(), 0.1));
+        assertTrue(netFull.params().equalsWithEps(master, 1e-2));
+        assertEquals(master.castTo(DataType.HALF), net.params());
+
+        //Applying the update to the (lower precision) network parameters is not supported
+        net.setInput(f.castTo(DataType.HALF));
+        net.feedForward(true, false);
+        Pair<Gradient, INDArray> p = net.backpropGradient(eps.castTo(DataType.HALF), mgr);
+        try {
+            net.getUpdater().update(net, p.getFirst(), 3, 0, 8, mgr);
+            fail("Expected exception");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("updateAndStep"));
+        }
+    }
+
+    @Test
+    public void testExternalErrorsCompGraph() {
+        ComputationGraph cgFull = new ComputationGraph(getExternalErrorsGraphConf(null));
+        cgFull.init();
+        ComputationGraph cg = new ComputationGraph(getExternalErrorsGraphConf(new MixedPrecisionConfig(DataType.HALF)));
+        cg.init(cgFull.params().dup(), true);
+        INDArray paramsBefore = cgFull.params().dup();
+
+        INDArray f = Nd4j.rand(DataType.FLOAT, 8, 10);
+        INDArray eps = Nd4j.rand(DataType.FLOAT, 8, 10);
+        LayerWorkspaceMgr mgr = LayerWorkspaceMgr.noWorkspaces();
+        for (int i = 0; i < 3; i++) {
+            cgFull.feedForward(new INDArray[]{f}, true, false);
+            Gradient gFull = cgFull.backpropGradient(eps);
+            cgFull.getUpdater().update(gFull, i, 0, 8, mgr);
+            cgFull.params().subi(gFull.gradient());
+
+            cg.feedForward(new INDArray[]{f.castTo(DataType.HALF)}, true, false);
+            Gradient g = cg.backpropGradient(eps.castTo(DataType.HALF));
+            assertEquals(1.0, cg.getGradientsLossScale(), 0.0);
+            assertTrue(cg.getUpdater().updateAndStep(g, i, 0, 8, mgr));
+        }
+
+        ComputationGraphUpdater u = cg.getUpdater();
+        assertFalse(paramsBefore.equalsWithEps(cgFull.params(), 0.1));
+        assertTrue(cgFull.params().equalsWithEps(u.getMasterParams(), 1e-2));
+        assertEquals(u.getMasterParams().castTo(DataType.HALF), cg.params());
+    }
+
+    private static MultiLayerConfiguration getExternalErrorsConf(MixedPrecisionConfig mixedPrecision) {
+        NeuralNetConfiguration.Builder b = new NeuralNetConfiguration.Builder()
+                .dataType(DataType.FLOAT)
+                .seed(12345)
+                .updater(new Sgd(0.5))
+                .activation(Activation.TANH);
+        if (mixedPrecision != null) {
+            b.mixedPrecision(mixedPrecision);
+        }
+        return b.list()
+                .layer(new DenseLayer.Builder().nIn(10).nOut(10).build())
+                .build();
+    }
+
+    private static ComputationGraphConfiguration getExternalErrorsGraphConf(MixedPrecisionConfig mixedPrecision) {
+        NeuralNetConfiguration.Builder b = new NeuralNetConfiguration.Builder()
+                .dataType(DataType.FLOAT)
+                .seed(12345)
+                .updater(new Sgd(0.5))
+                .activation(Activation.TANH);
+        if (mixedPrecision != null) {
+            b.mixedPrecision(mixedPrecision);
+        }
+        return b.graphBuilder()
+                .addInputs("in")
+                .addLayer("0", new DenseLayer.Builder().nIn(10).nOut(10).build(), "in")
+                .setOutputs("0")
+                .build();
+    }
+}
@@ -804,4 +804,75 @@ public class MultiLayerTestRNN extends BaseDL4JTest {
         assertEquals(2, m.size());  //activation and cell state
         cg.rnnSetPreviousState(0, m);
     }
+
+    @Test
+    public void testRnnTimeStepWithState() {
+        Nd4j.getRandom().setSeed(12345);
+        int timeSeriesLength = 5;
+
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                        .dist(new NormalDistribution(0, 0.5)).list()
+                        .layer(new org.deeplearning4j.nn.conf.layers.LSTM.Builder().nIn(4).nOut(6).activation(Activation.TANH).build())
+                        .layer(new org.deeplearning4j.nn.conf.layers.recurrent.SimpleRnn.Builder().nIn(6).nOut(5).activation(Activation.TANH).build())
+                        .layer(new RnnOutputLayer.Builder(LossFunction.MCXENT).nIn(5).nOut(3).activation(Activation.SOFTMAX).build())
+                        .build();
+        MultiLayerNetwork mln = new MultiLayerNetwork(conf);
+        mln.init();
+
+        int numStreams = 4;
+        List<INDArray> inputs = new ArrayList<>();
+        List<INDArray> expected = new ArrayList<>();
+        for (int i = 0; i < numStreams; i++) {
+            INDArray in = Nd4j.rand(new long[] {1, 4, timeSeriesLength});
+            inputs.add(in);
+            mln.rnnClearPreviousState();
+            expected.add(mln.rnnTimeStep(in));
+        }
+
+        //Put some state into the network: this must not be changed by the methods being tested
+        mln.rnnClearPreviousState();
+        mln.rnnTimeStep(Nd4j.rand(new long[] {1, 4, 2}));
+        Map<String, INDArray> layerStateBefore = mln.rnnGetPreviousState(0);
+
+        //Single stream, one step at a time
+        RnnState state = null;
+        for (int t = 0; t < timeSeriesLength; t++) {
+            INDArray in = inputs.get(0).get(NDArrayIndex.all(), NDArrayIndex.all(), NDArrayIndex.point(t));
+            Pair<INDArray, RnnState> p = mln.rnnTimeStepWithState(in, state);
+            state = p.getSecond();
+            assertEquals(1, state.numExamples());
+            assertTrue(state.sizeBytes() > 0);
+            assertEquals(expected.get(0).get(NDArrayIndex.all(), NDArrayIndex.all(), NDArrayIndex.point(t)), p.getFirst());
+        }
+
+        //Multiple streams, batched, starting at different times
+        List<RnnState> states = new ArrayList<>();
+        for (int i = 0; i < numStreams; i++)
+            states.add(null);
+        for (int t = 0; t < timeSeriesLength + numStreams - 1; t++) {
+            List<Integer> active = new ArrayList<>();
+            List<INDArray> in = new ArrayList<>();
+            List<RnnState> st = new ArrayList<>();
+            for (int i = 0; i < numStreams; i++) {
+                int step = t - i;
+                if (step >= 0 && step < timeSeriesLength) {
+                    active.add(i);
+                    in.add(inputs.get(i).get(NDArrayIndex.all(), NDArrayIndex.all(), NDArrayIndex.point(step)));
+                    st.add(states.get(i));
+                }
+            }
+
+            List<Pair<INDArray, RnnState>> out = mln.rnnTimeStepWithState(in, st);
+            assertEquals(active.size(), out.size());
+            for (int j = 0; j < active.size(); j++) {
+                int i = active.get(j);
+                states.set(i, out.get(j).getSecond());
+                INDArray exp = expected.get(i).get(NDArrayIndex.all(), NDArrayIndex.all(), NDArrayIndex.point(t - i));
+                assertArrayEquals(exp.shape(), out.get(j).getFirst().shape());
+                assertEquals(exp, out.get(j).getFirst());
+            }
+        }
+
+        assertEquals(layerStateBefore, mln.rnnGetPreviousState(0));
+    }
 }
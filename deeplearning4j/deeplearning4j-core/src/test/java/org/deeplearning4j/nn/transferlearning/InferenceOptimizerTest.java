@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.transferlearning;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.TestUtils;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.layers.ActivationLayer;
+import org.deeplearning4j.nn.conf.layers.BatchNormalization;
+import org.deeplearning4j.nn.conf.layers.ConvolutionLayer;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.DropoutLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.conf.layers.SubsamplingLayer;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.junit.Test;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.learning.config.Adam;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class InferenceOptimizerTest extends BaseDL4JTest {
+
+    @Override
+    public DataType getDataType(){
+        return DataType.DOUBLE;
+    }
+
+    @Test
+    public void testOptimizeMLN() {
+        for (boolean useLogStd : new boolean[]{false, true}) {
+            for (boolean hasBias : new boolean[]{true, false}) {
+                Nd4j.getRandom().setSeed(12345);
+                MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                        .dataType(DataType.DOUBLE)
+                        .updater(new Adam(0.01))
+                        .seed(12345)
+                        .list()
+                        .layer(new ConvolutionLayer.Builder().kernelSize(3, 3).nOut(4).hasBias(hasBias)
+                                .activation(Activation.IDENTITY).build())
+                        .layer(new BatchNormalization.Builder().useLogStd(useLogStd).build())
+                        .layer(new ActivationLayer.Builder().activation(Activation.RELU).build())
+                        .layer(new SubsamplingLayer.Builder().kernelSize(2, 2).stride(2, 2).build())
+                        .layer(new DropoutLayer.Builder(0.5).build())
+                        .layer(new DenseLayer.Builder().nOut(6).hasBias(hasBias).activation(Activation.IDENTITY).build())
+                        .layer(new DropoutLayer.Builder(0.5).build())
+                        .layer(new BatchNormalization.Builder().useLogStd(useLogStd).build())
+                        .layer(new ActivationLayer.Builder().activation(Activation.TANH).build())
+                        .layer(new OutputLayer.Builder().nOut(3).activation(Activation.SOFTMAX)
+                                .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                        .setInputType(InputType.convolutional(8, 8, 2))
+                        .build();
+
+                MultiLayerNetwork net = new MultiLayerNetwork(conf);
+                net.init();
+
+                INDArray f = Nd4j.rand(DataType.DOUBLE, 5, 2, 8, 8);
+                INDArray l = TestUtils.randomOneHot(5, 3).castTo(DataType.DOUBLE);
+                for (int i = 0; i < 5; i++) {
+                    net.fit(new DataSet(f, l));
+                }
+
+                INDArray paramsBefore = net.params().dup();
+                MultiLayerNetwork opt = InferenceOptimizer.optimize(net);
+                assertEquals(paramsBefore, net.params());
+
+                //conv, subsampling, dense, output
+                assertEquals(4, opt.getnLayers());
+                assertEquals(ConvolutionLayer.class, opt.getLayer(0).conf().getLayer().getClass());
+                assertEquals(DenseLayer.class, opt.getLayer(2).conf().getLayer().getClass());
+
+                INDArray in = Nd4j.rand(DataType.DOUBLE, 3, 2, 8, 8);
+                INDArray exp = net.output(in);
+                INDArray out = opt.output(in);
+                assertTrue("useLogStd=" + useLogStd + ", hasBias=" + hasBias, exp.equalsWithEps(out, 1e-8));
+
+                TestUtils.testModelSerialization(opt);
+            }
+        }
+    }
+
+    @Test
+    public void testOptimizeCG() {
+        Nd4j.getRandom().setSeed(12345);
+        ComputationGraphConfiguration conf = new NeuralNetConfiguration.Builder()
+                .dataType(DataType.DOUBLE)
+                .updater(new Adam(0.01))
+                .seed(12345)
+                .graphBuilder()
+                .addInputs("in")
+                .addLayer("dense0", new DenseLayer.Builder().nIn(5).nOut(6).activation(Activation.IDENTITY).build(), "in")
+                .addLayer("bn0", new BatchNormalization.Builder().build(), "dense0")
+                .addLayer("act0", new ActivationLayer.Builder().activation(Activation.RELU).build(), "bn0")
+                .addLayer("drop0", new DropoutLayer.Builder(0.5).build(), "act0")
+                //dense1 output is used by both bn1 and out1: should not be fused
+                .addLayer("dense1", new DenseLayer.Builder().nIn(6).nOut(4).activation(Activation.IDENTITY).build(), "drop0")
+                .addLayer("bn1", new BatchNormalization.Builder().build(), "dense1")
+                .addLayer("out0", new OutputLayer.Builder().nIn(4).nOut(3).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build(), "bn1")
+                .addLayer("out1", new OutputLayer.Builder().nIn(4).nOut(2).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build(), "dense1")
+                .setOutputs("out0", "out1")
+                .build();
+
+        ComputationGraph net = new ComputationGraph(conf);
+        net.init();
+
+        INDArray f = Nd4j.rand(DataType.DOUBLE, 5, 5);
+        INDArray l0 = TestUtils.randomOneHot(5, 3).castTo(DataType.DOUBLE);
+        INDArray l1 = TestUtils.randomOneHot(5, 2).castTo(DataType.DOUBLE);
+        for (int i = 0; i < 5; i++) {
+            net.fit(new INDArray[]{f}, new INDArray[]{l0, l1});
+        }
+
+        ComputationGraph opt = InferenceOptimizer.optimize(net);
+
+        //in, dense0, dense1, bn1, out0, out1
+        assertEquals(6, opt.getVertices().length);
+        assertEquals(net.getConfiguration().getNetworkOutputs(), opt.getConfiguration().getNetworkOutputs());
+        assertTrue(opt.getConfiguration().getVertices().containsKey("bn1"));
+
+        INDArray in = Nd4j.rand(DataType.DOUBLE, 3, 5);
+        INDArray[] exp = net.output(in);
+        INDArray[] out = opt.output(in);
+        assertEquals(2, out.length);
+        for (int i = 0; i < exp.length; i++) {
+            assertTrue(exp[i].equalsWithEps(out[i], 1e-8));
+        }
+
+        TestUtils.testModelSerialization(opt);
+    }
+}
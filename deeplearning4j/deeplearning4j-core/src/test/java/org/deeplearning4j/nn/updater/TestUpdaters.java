@@ -17,8 +17,10 @@
 package org.deeplearning4j.nn.updater;
 
 
+import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.math3.util.FastMath;
 import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.config.DL4JSystemProperties;
 import org.deeplearning4j.nn.api.Layer;
 import org.deeplearning4j.nn.api.Updater;
 import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
@@ -35,6 +37,7 @@ import org.deeplearning4j.nn.params.DefaultParamInitializer;
 import org.deeplearning4j.nn.params.PretrainParamInitializer;
 import org.deeplearning4j.nn.updater.graph.ComputationGraphUpdater;
 import org.junit.Before;
+import org.junit.Ignore;
 import org.junit.Test;
 import org.nd4j.linalg.activations.Activation;
 import org.nd4j.linalg.api.buffer.DataType;
@@ -53,6 +56,7 @@ import static org.junit.Assert.*;
 import static org.nd4j.linalg.indexing.NDArrayIndex.interval;
 import static org.nd4j.linalg.indexing.NDArrayIndex.point;
 
+@Slf4j
 public class TestUpdaters extends BaseDL4JTest {
 
     protected int nIn = 3;
@@ -1106,4 +1110,230 @@ public class TestUpdaters extends BaseDL4JTest {
         INDArray expView3 = view.get(interval(0,0,true), interval(start3, start3 + length3));
         assertEquals(expView3, l.get(2));
     }
+
+    @Test
+    public void testFusedUpdaterStep() {
+        //Fused (single pass) updater + step should give the same result as the separate updater, regularization
+        // and step function ops
+        IUpdater[] updaters = {new Sgd(0.1), new Adam(0.01), new Nesterovs(0.1, 0.9), new RmsProp(0.05)};
+
+        String prop = DL4JSystemProperties.FUSED_UPDATER_ENABLED_PROPERTY;
+        try {
+            for (DataType dt : new DataType[] {DataType.DOUBLE, DataType.FLOAT}) {
+                for (IUpdater u : updaters) {
+                    MultiLayerNetwork[] nets = new MultiLayerNetwork[2];
+                    for (int i = 0; i < 2; i++) {
+                        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                                .dataType(dt).seed(12345).updater(u.clone())
+                                .list()
+                                .layer(new DenseLayer.Builder().nIn(10).nOut(9).l2(1e-2).build())
+                                .layer(new DenseLayer.Builder().nIn(9).nOut(8).weightDecay(1e-2).build())
+                                .layer(new OutputLayer.Builder().nIn(8).nOut(7).activation(Activation.SOFTMAX)
+                                        .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                                .build();
+                        nets[i] = new MultiLayerNetwork(conf);
+                        nets[i].init();
+                    }
+
+                    Nd4j.getRandom().setSeed(12345);
+                    INDArray f = Nd4j.rand(dt, 5, 10);
+                    INDArray l = Nd4j.zeros(dt, 5, 7);
+                    for (int j = 0; j < 5; j++)
+                        l.putScalar(j, j, 1.0);
+
+                    for (int iter = 0; iter < 3; iter++) {
+                        System.setProperty(prop, "false");
+                        nets[0].fit(f, l);
+                        System.setProperty(prop, "true");
+                        nets[1].fit(f, l);
+                    }
+
+                    String msg = u.getClass().getSimpleName() + " - " + dt;
+                    double eps = (dt == DataType.DOUBLE ? 1e-8 : 1e-4);
+                    assertTrue(msg, nets[0].params().equalsWithEps(nets[1].params(), eps));
+                    if (nets[0].getUpdater().getStateViewArray() != null) {
+                        assertTrue(msg, nets[0].getUpdater().getStateViewArray()
+                                .equalsWithEps(nets[1].getUpdater().getStateViewArray(), eps));
+                    }
+                }
+            }
+        } finally {
+            System.clearProperty(prop);
+        }
+    }
+
+    @Test
+    public void testFusedUpdaterParallel() {
+        //Blocks of at least PARALLEL_THRESHOLD elements are processed in parallel chunks
+        IUpdater[] updaters = {new Adam(0.01), new Nesterovs(0.1, 0.9)};
+
+        String prop = DL4JSystemProperties.FUSED_UPDATER_ENABLED_PROPERTY;
+        try {
+            for (IUpdater u : updaters) {
+                MultiLayerNetwork[] nets = new MultiLayerNetwork[2];
+                for (int i = 0; i < 2; i++) {
+                    MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                            .dataType(DataType.FLOAT).seed(12345).updater(u.clone()).l2(1e-3)
+                            .list()
+                            .layer(new DenseLayer.Builder().nIn(300).nOut(300).build())
+                            .layer(new OutputLayer.Builder().nIn(300).nOut(10).activation(Activation.SOFTMAX)
+                                    .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                            .build();
+                    nets[i] = new MultiLayerNetwork(conf);
+                    nets[i].init();
+                }
+
+                List<UpdaterBlock> blocks = ((MultiLayerUpdater) nets[1].getUpdater()).getUpdaterBlocks();
+                assertEquals(1, blocks.size());
+                assertTrue(blocks.get(0).getParamsView().length() >= FusedUpdater.PARALLEL_THRESHOLD);
+                assertFusedSupported(blocks);
+
+                Nd4j.getRandom().setSeed(12345);
+                INDArray f = Nd4j.rand(DataType.FLOAT, 8, 300);
+                INDArray l = Nd4j.zeros(DataType.FLOAT, 8, 10);
+                for (int j = 0; j < 8; j++)
+                    l.putScalar(j, j, 1.0);
+
+                for (int iter = 0; iter < 3; iter++) {
+                    System.setProperty(prop, "false");
+                    nets[0].fit(f, l);
+                    System.setProperty(prop, "true");
+                    nets[1].fit(f, l);
+                }
+
+                String msg = u.getClass().getSimpleName();
+                assertTrue(msg, nets[0].params().equalsWithEps(nets[1].params(), 1e-4));
+                assertTrue(msg, nets[0].getUpdater().getStateViewArray()
+                        .equalsWithEps(nets[1].getUpdater().getStateViewArray(), 1e-4));
+            }
+        } finally {
+            System.clearProperty(prop);
+        }
+    }
+
+    @Test
+    public void testFusedUpdaterComputationGraph() {
+        IUpdater[] updaters = {new Sgd(0.1), new Adam(0.01), new Nesterovs(0.1, 0.9), new RmsProp(0.05)};
+
+        String prop = DL4JSystemProperties.FUSED_UPDATER_ENABLED_PROPERTY;
+        try {
+            for (IUpdater u : updaters) {
+                ComputationGraph[] nets = new ComputationGraph[2];
+                for (int i = 0; i < 2; i++) {
+                    ComputationGraphConfiguration conf = new NeuralNetConfiguration.Builder()
+                            .dataType(DataType.DOUBLE).seed(12345).updater(u.clone())
+                            .graphBuilder()
+                            .addInputs("in")
+                            .addLayer("l0", new DenseLayer.Builder().nIn(10).nOut(9).l2(1e-2).build(), "in")
+                            .addLayer("l1", new DenseLayer.Builder().nIn(10).nOut(8).weightDecay(1e-2).build(), "in")
+                            .addLayer("out", new OutputLayer.Builder().nIn(17).nOut(7).activation(Activation.SOFTMAX)
+                                    .lossFunction(LossFunctions.LossFunction.MCXENT).build(), "l0", "l1")
+                            .setOutputs("out")
+                            .build();
+                    nets[i] = new ComputationGraph(conf);
+                    nets[i].init();
+                }
+                assertFusedSupported(nets[1].getUpdater().getUpdaterBlocks());
+
+                Nd4j.getRandom().setSeed(12345);
+                INDArray f = Nd4j.rand(DataType.DOUBLE, 5, 10);
+                INDArray l = Nd4j.zeros(DataType.DOUBLE, 5, 7);
+                for (int j = 0; j < 5; j++)
+                    l.putScalar(j, j, 1.0);
+
+                for (int iter = 0; iter < 3; iter++) {
+                    System.setProperty(prop, "false");
+                    nets[0].fit(new INDArray[] {f}, new INDArray[] {l});
+                    System.setProperty(prop, "true");
+                    nets[1].fit(new INDArray[] {f}, new INDArray[] {l});
+                }
+
+                String msg = u.getClass().getSimpleName();
+                assertTrue(msg, nets[0].params().equalsWithEps(nets[1].params(), 1e-8));
+                if (nets[0].getUpdater().getStateViewArray() != null) {
+                    assertTrue(msg, nets[0].getUpdater().getStateViewArray()
+                            .equalsWithEps(nets[1].getUpdater().getStateViewArray(), 1e-8));
+                }
+            }
+        } finally {
+            System.clearProperty(prop);
+        }
+    }
+
+    private static void assertFusedSupported(List<UpdaterBlock> blocks) {
+        //Otherwise the comparison with the unfused path would pass trivially
+        for (UpdaterBlock ub : blocks) {
+            assertTrue(FusedUpdater.isSupported(ub.getGradientUpdater(), ub.getGradientView(), ub.getParamsView()));
+        }
+    }
+
+    @Test
+    public void testFusedUpdaterOptIn() {
+        String prop = DL4JSystemProperties.FUSED_UPDATER_ENABLED_PROPERTY;
+        try {
+            System.clearProperty(prop);
+            assertFalse(FusedUpdater.isEnabled());
+            System.setProperty(prop, "false");
+            assertFalse(FusedUpdater.isEnabled());
+        } finally {
+            System.clearProperty(prop);
+        }
+    }
+
+    @Test
+    @Ignore("Benchmark - fused vs. unfused updater step time. Run manually")
+    public void benchmarkFusedUpdater() {
+        IUpdater[] updaters = {new Sgd(0.1), new Adam(0.01), new Nesterovs(0.1, 0.9), new RmsProp(0.05)};
+        int nIn = 1024;
+        int nOut = 1024;
+        int warmup = 20;
+        int iterations = 100;
+
+        String prop = DL4JSystemProperties.FUSED_UPDATER_ENABLED_PROPERTY;
+        try {
+            for (IUpdater u : updaters) {
+                MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                        .dataType(DataType.FLOAT).seed(12345).updater(u).l2(1e-4)
+                        .list()
+                        .layer(new DenseLayer.Builder().nIn(nIn).nOut(nOut).build())
+                        .layer(new DenseLayer.Builder().nIn(nOut).nOut(nOut).build())
+                        .layer(new OutputLayer.Builder().nIn(nOut).nOut(10).activation(Activation.SOFTMAX)
+                                .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                        .build();
+                MultiLayerNetwork net = new MultiLayerNetwork(conf);
+                net.init();
+
+                INDArray f = Nd4j.rand(DataType.FLOAT, 32, nIn);
+                INDArray l = Nd4j.zeros(DataType.FLOAT, 32, 10);
+                for (int j = 0; j < 32; j++)
+                    l.putScalar(j, j % 10, 1.0);
+                net.setInput(f);
+                net.setLabels(l);
+                net.computeGradientAndScore();
+                BaseMultiLayerUpdater updater = (BaseMultiLayerUpdater) net.getUpdater();
+                INDArray gradient = net.getFlattenedGradients().dup();
+
+                for (boolean fused : new boolean[] {false, true}) {
+                    System.setProperty(prop, String.valueOf(fused));
+                    for (int i = 0; i < warmup; i++) {
+                        net.getFlattenedGradients().assign(gradient);
+                        updater.updateAndStep(net.gradient(), i, 0, 32, LayerWorkspaceMgr.noWorkspaces());
+                    }
+                    long total = 0;
+                    for (int i = 0; i < iterations; i++) {
+                        net.getFlattenedGradients().assign(gradient);
+                        Nd4j.getExecutioner().commit();
+                        long start = System.nanoTime();
+                        updater.updateAndStep(net.gradient(), warmup + i, 0, 32, LayerWorkspaceMgr.noWorkspaces());
+                        Nd4j.getExecutioner().commit();
+                        total += System.nanoTime() - start;
+                    }
+                    log.info("{} - fused={}: {} us per step, {} params", u.getClass().getSimpleName(), fused,
+                            total / iterations / 1000, net.numParams());
+                }
+            }
+        } finally {
+            System.clearProperty(prop);
+        }
+    }
 }
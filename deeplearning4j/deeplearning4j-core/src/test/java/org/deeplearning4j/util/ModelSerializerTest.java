@@ -34,6 +34,7 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.nd4j.linalg.activations.Activation;
 import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.executioner.OpExecutioner;
 import org.nd4j.linalg.dataset.DataSet;
 import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
 import org.nd4j.linalg.dataset.api.preprocessor.Normalizer;
@@ -499,4 +500,115 @@ public class ModelSerializerTest extends BaseDL4JTest {
         ComputationGraph restoredNet = ModelSerializer.restoreComputationGraph(tempFile);
         assertEquals(net.params(), restoredNet.params());
     }
+
+    @Test
+    public void testWriteMappedMLN() throws Exception {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder().seed(12345)
+                        .updater(new Sgd(0.1)).activation(Activation.TANH).weightInit(WeightInit.XAVIER).list()
+                        .layer(0, new DenseLayer.Builder().nIn(5).nOut(20).build())
+                        .layer(1, new OutputLayer.Builder().lossFunction(LossFunctions.LossFunction.MSE).nIn(20).nOut(6).build())
+                        .build();
+
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+
+        File tempFile = tempDir.newFile();
+        ModelSerializer.writeModelMapped(net, tempFile, true);
+
+        INDArray in = Nd4j.rand(3, 5);
+        INDArray exp = net.output(in);
+
+        MultiLayerNetwork mapped = ModelSerializer.restoreMultiLayerNetworkMapped(tempFile);
+        assertEquals(net.getLayerWiseConfigurations().toJson(), mapped.getLayerWiseConfigurations().toJson());
+        assertEquals(net.params(), mapped.params());
+        assertEquals(exp, mapped.output(in));
+        //Parameters are only mapped on CPU: the CUDA backend copies them to the device
+        boolean cpu = Nd4j.getExecutioner().type() != OpExecutioner.ExecutionerType.CUDA;
+        assertEquals(cpu, ModelSerializer.isFileMapped(mapped.params()));
+        assertEquals(cpu, ModelSerializer.isFileMapped(mapped.getLayer(0).getParam("W")));
+        assertFalse(ModelSerializer.isFileMapped(net.params()));
+        assertTrue(DL4JModelValidator.validateMultiLayerNetwork(tempFile).isValid());
+
+        //Mapped layout can also be restored by the standard methods, including the updater state
+        MultiLayerNetwork copied = ModelSerializer.restoreMultiLayerNetwork(tempFile, true);
+        assertEquals(net.params(), copied.params());
+        assertFalse(ModelSerializer.isFileMapped(copied.params()));
+        assertEquals(net.getUpdater().getStateViewArray(), copied.getUpdater().getStateViewArray());
+
+        //Modifying the mapped parameters must not modify the file
+        mapped.params().assign(0);
+        MultiLayerNetwork mapped2 = ModelSerializer.restoreMultiLayerNetworkMapped(tempFile);
+        assertEquals(net.params(), mapped2.params());
+
+        //Adding objects to the file must keep the mapped layout
+        ModelSerializer.addObjectToFile(tempFile, "labels", new ArrayList<>(Arrays.asList("a", "b")));
+        MultiLayerNetwork mapped3 = ModelSerializer.restoreMultiLayerNetworkMapped(tempFile);
+        assertEquals(net.params(), mapped3.params());
+    }
+
+    @Test
+    public void testWriteMappedCG() throws Exception {
+        ComputationGraphConfiguration config = new NeuralNetConfiguration.Builder()
+                        .updater(new Sgd(0.1))
+                        .graphBuilder().addInputs("in")
+                        .addLayer("dense", new DenseLayer.Builder().nIn(4).nOut(2).build(), "in").addLayer("out",
+                                        new OutputLayer.Builder(LossFunctions.LossFunction.MCXENT).nIn(2).nOut(3)
+                                                .activation(Activation.SOFTMAX).build(),
+                                        "dense")
+                        .setOutputs("out").build();
+
+        ComputationGraph cg = new ComputationGraph(config);
+        cg.init();
+
+        File tempFile = tempDir.newFile();
+        ModelSerializer.writeModelMapped(cg, tempFile, false);
+
+        ComputationGraph mapped = ModelSerializer.restoreComputationGraphMapped(tempFile);
+        assertEquals(cg.getConfiguration().toJson(), mapped.getConfiguration().toJson());
+        assertEquals(cg.params(), mapped.params());
+        assertEquals(Nd4j.getExecutioner().type() != OpExecutioner.ExecutionerType.CUDA, ModelSerializer.isFileMapped(mapped.params()));
+        assertTrue(DL4JModelValidator.validateComputationGraph(tempFile).isValid());
+
+        INDArray in = Nd4j.rand(2, 4);
+        assertEquals(cg.outputSingle(in), mapped.outputSingle(in));
+
+        //Regular files can also be loaded via the mapped methods
+        File regular = tempDir.newFile();
+        ModelSerializer.writeModel(cg, regular, false);
+        assertEquals(cg.params(), ModelSerializer.restoreComputationGraphMapped(regular).params());
+    }
+
+    @Test
+    public void testWriteMappedLimits() throws Exception {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder().seed(12345).list()
+                        .layer(0, new OutputLayer.Builder().lossFunction(LossFunctions.LossFunction.MSE).nIn(5).nOut(3).build())
+                        .build();
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+
+        File tempFile = tempDir.newFile();
+        ModelSerializer.writeModelMapped(net, tempFile, false);
+
+        boolean cpu = Nd4j.getExecutioner().type() != OpExecutioner.ExecutionerType.CUDA;
+        assertEquals(cpu, ModelSerializer.mappingUnsupportedReason(tempFile, ModelSerializer.MAX_MAPPED_BYTES) == null);
+        //Parameters larger than 2GB cannot be mapped in a single (contiguous) mapping
+        String reason = ModelSerializer.mappingUnsupportedReason(tempFile, ModelSerializer.MAX_MAPPED_BYTES + 1);
+        assertNotNull(reason);
+        if (cpu)
+            assertTrue(reason, reason.contains(String.valueOf(ModelSerializer.MAX_MAPPED_BYTES)));
+
+        //Read-only files cannot be mapped privately: parameters are copied instead. Skipped if the file remains
+        // writable (for example, when running as root)
+        assertTrue(tempFile.setWritable(false));
+        try {
+            if (!tempFile.canWrite()) {
+                assertNotNull(ModelSerializer.mappingUnsupportedReason(tempFile, 1024));
+                MultiLayerNetwork restored = ModelSerializer.restoreMultiLayerNetworkMapped(tempFile);
+                assertEquals(net.params(), restored.params());
+                assertFalse(ModelSerializer.isFileMapped(restored.params()));
+            }
+        } finally {
+            tempFile.setWritable(true);
+        }
+    }
 }
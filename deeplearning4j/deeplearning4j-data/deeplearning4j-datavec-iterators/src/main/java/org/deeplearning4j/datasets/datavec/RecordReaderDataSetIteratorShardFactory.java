@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.datasets.datavec;
+
+import lombok.NonNull;
+import org.datavec.api.records.reader.RecordReader;
+import org.datavec.api.split.CollectionInputSplit;
+import org.datavec.api.split.InputSplit;
+import org.nd4j.base.Preconditions;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIteratorShardFactory;
+import org.nd4j.linalg.function.Supplier;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link DataSetIteratorShardFactory} for classification with {@link RecordReaderDataSetIterator}, for use with
+ * {@link org.nd4j.linalg.dataset.MultiWorkerAsyncDataSetIterator}.<br>
+ * Each shard gets its own record reader (record readers are not thread safe), initialized on the locations of the
+ * split that make up its minibatches: shard {@code s} of {@code n} gets minibatches {@code s, s+n, s+2n, ...}.
+ * Hence, in ordered mode, the multi-worker iterator returns the same minibatches, in the same order, as a single
+ * RecordReaderDataSetIterator over the locations of the split.<br>
+ * The record reader must return exactly one record per location (as is the case for image record readers, for
+ * example). Label classes inferred by the record reader must not depend on the subset of locations of the shard:
+ * an {@link IllegalStateException} is thrown if a shard infers different labels than the full split.<br>
+ * <br>
+ * Example: image classification, batch size 32, 4 decoding threads
+ * <pre>
+ * {@code DataSetIteratorShardFactory shards = new RecordReaderDataSetIteratorShardFactory(
+ *          new Supplier<RecordReader>() {
+ *              public RecordReader get() {
+ *                  return new ImageRecordReader(28, 28, 3, new ParentPathLabelGenerator());
+ *              }
+ *          }, new FileSplit(new File("/path/to/directory")), 32, 1, nClasses);
+ *  DataSetIterator iter = new MultiWorkerAsyncDataSetIterator(shards, 4, true);
+ * }
+ * </pre>
+ */
+public class RecordReaderDataSetIteratorShardFactory implements DataSetIteratorShardFactory {
+
+    protected final Supplier<RecordReader> readerSupplier;
+    protected final InputSplit split;
+    protected final int batchSize;
+    protected final int labelIndex;
+    protected final int numPossibleLabels;
+
+    protected URI[] locations;
+    protected List<String> labels;
+
+    /**
+     * @param readerSupplier    Supplier for the (uninitialized) record reader of each shard. Must return a new
+     *                          instance on each call
+     * @param split             Split with the locations to iterate over, one record per location
+     * @param batchSize         Minibatch size
+     * @param labelIndex        Index of the label Writable (usually an IntWritable), as obtained by recordReader.next()
+     * @param numPossibleLabels Number of classes (possible labels) for classification
+     */
+    public RecordReaderDataSetIteratorShardFactory(@NonNull Supplier<RecordReader> readerSupplier,
+                                                   @NonNull InputSplit split, int batchSize, int labelIndex,
+                                                   int numPossibleLabels) {
+        Preconditions.checkArgument(batchSize > 0, "Batch size must be > 0, got %s", batchSize);
+        this.readerSupplier = readerSupplier;
+        this.split = split;
+        this.batchSize = batchSize;
+        this.labelIndex = labelIndex;
+        this.numPossibleLabels = numPossibleLabels;
+    }
+
+    @Override
+    public DataSetIterator createShard(int shard, int numShards) {
+        Preconditions.checkArgument(shard >= 0 && shard < numShards, "Invalid shard %s of %s", shard, numShards);
+        if (locations == null) {
+            locations = split.locations();
+            // labels inferred from all locations, to check that shards infer the same labels
+            RecordReader rr = initialize(readerSupplier.get(), new CollectionInputSplit(locations));
+            labels = rr.getLabels();
+            try {
+                rr.close();
+            } catch (IOException e) {
+                throw new RuntimeException("Error closing record reader", e);
+            }
+        }
+
+        List<URI> shardLocations = new ArrayList<>();
+        for (int b = shard * batchSize; b < locations.length; b += numShards * batchSize) {
+            for (int i = b; i < Math.min(b + batchSize, locations.length); i++) {
+                shardLocations.add(locations[i]);
+            }
+        }
+
+        RecordReader rr = initialize(readerSupplier.get(), new CollectionInputSplit(shardLocations));
+        if (labels != null && !labels.equals(rr.getLabels())) {
+            throw new IllegalStateException("Record reader for shard " + shard + " of " + numShards + " inferred labels "
+                    + rr.getLabels() + ", but labels for the full split are " + labels + ". Label classes must not "
+                    + "depend on the locations of each shard");
+        }
+        return new RecordReaderDataSetIterator(rr, batchSize, labelIndex, numPossibleLabels);
+    }
+
+    protected RecordReader initialize(RecordReader rr, InputSplit split) {
+        try {
+            rr.initialize(split);
+        } catch (IOException | InterruptedException e) {
+            throw new RuntimeException("Error initializing record reader", e);
+        }
+        return rr;
+    }
+}
@@ -16,6 +16,7 @@
 
 package org.deeplearning4j.datasets.iterator.file;
 
+import org.nd4j.linalg.dataset.BinaryMiniBatchFormat;
 import org.nd4j.linalg.dataset.api.MultiDataSet;
 import org.nd4j.linalg.dataset.api.MultiDataSetPreProcessor;
 import org.nd4j.linalg.dataset.api.iterator.MultiDataSetIterator;
@@ -27,7 +28,7 @@ import java.util.Random;
 
 /**
  * Iterate over a directory (and optionally subdirectories) containing a number of {@link MultiDataSet} objects that have
- * previously been saved to files with {@link MultiDataSet#save(File)}.<br>
+ * previously been saved to files with {@link MultiDataSet#save(File)} or {@link BinaryMiniBatchFormat}.<br>
  * This iterator supports the following (optional) features, depending on the constructor used:<br>
  * - Recursive listing of all files (i.e., include files in subdirectories)<br>
  * - Filtering based on a set of file extensions (if null, no filtering - assume all files are saved MultiDataSet objects)<br>
@@ -143,6 +144,8 @@ public class FileMultiDataSetIterator extends BaseFileIterator<MultiDataSet, Mul
     protected MultiDataSet load(File f) {
         MultiDataSet mds = new org.nd4j.linalg.dataset.MultiDataSet();
         try {
+            if (BinaryMiniBatchFormat.isBinaryMiniBatchFile(f))
+                return BinaryMiniBatchFormat.readMultiDataSet(f);
             mds.load(f);
         } catch (IOException e) {
             throw new RuntimeException("Error loading MultiDataSet from file: " + f, e);
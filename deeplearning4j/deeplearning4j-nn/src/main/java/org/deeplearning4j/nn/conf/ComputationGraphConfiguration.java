@@ -86,6 +86,9 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
     @Setter
     protected DataType dataType = DataType.FLOAT;   //Default to float for 1.0.0-beta3 and earlier nets
 
+    //Null unless mixed precision training is used. Also stores the loss scaling state, hence persisted with the network
+    protected MixedPrecisionConfig mixedPrecision;
+
     protected boolean validateOutputLayerConfig = true;     //Default for 1.0.0-beta3 and earlier nets
 
     /**
@@ -321,6 +324,7 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
         conf.defaultConfiguration.cacheMode = this.cacheMode;
         conf.validateOutputLayerConfig = this.validateOutputLayerConfig;
         conf.dataType = this.dataType;
+        conf.mixedPrecision = (this.mixedPrecision == null ? null : this.mixedPrecision.clone());
 
         return conf;
     }
@@ -1135,6 +1139,10 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
             conf.cacheMode = globalConfiguration.cacheMode;
             conf.validateOutputLayerConfig = validateOutputConfig;
             conf.dataType = globalConfiguration.dataType;
+            if (globalConfiguration.mixedPrecision != null) {
+                conf.mixedPrecision = globalConfiguration.mixedPrecision.clone();
+                conf.dataType = conf.mixedPrecision.getComputeDataType();
+            }
 
             conf.defaultConfiguration = globalConfiguration.build();
 
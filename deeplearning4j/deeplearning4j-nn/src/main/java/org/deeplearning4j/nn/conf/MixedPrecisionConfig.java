@@ -0,0 +1,195 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.deeplearning4j.nn.conf;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.NonNull;
+import org.nd4j.base.Preconditions;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.shade.jackson.annotation.JsonIgnore;
+
+import java.io.Serializable;
+
+/**
+ * Configuration for mixed precision training, set via {@link NeuralNetConfiguration.Builder#mixedPrecision(MixedPrecisionConfig)}.<br>
+ * When mixed precision training is used, the network parameters and activations (i.e., the forward and backward passes)
+ * use the lower precision compute datatype ({@link DataType#HALF} or {@link DataType#BFLOAT16}) - and hence the network
+ * datatype is set to the compute datatype. However, the updater keeps a full precision ({@link DataType#FLOAT}) master
+ * copy of the parameters, and the updater state is also stored in full precision. Each iteration, the gradients are
+ * converted to full precision and applied to the master parameters, which are then copied back to the (lower precision)
+ * network parameters.<br>
+ * <br>
+ * To avoid small gradient values underflowing (flushing to zero) in the lower precision datatype, dynamic loss scaling
+ * is used: the loss gradient is multiplied by the current loss scale at the start of backprop, and the gradients are
+ * divided by the same value after conversion to full precision. If any gradient overflows (is infinite or NaN) the
+ * parameter update is skipped for that iteration, and the loss scale is reduced by the {@link #getScaleFactor()}. After
+ * {@link #getScaleGrowthInterval()} consecutive iterations without overflow, the loss scale is increased by the same
+ * factor.<br>
+ * <br>
+ * As the update is applied to the master parameters by the updater, mixed precision training can't be combined with
+ * gradient accumulators (as used in ParallelWrapper and Spark shared training), step functions other than the default
+ * (negative gradient) step function, or optimization algorithms other than stochastic gradient descent.<br>
+ * <br>
+ * Note that the current loss scale and the number of iterations since the last overflow are stored here (as per the
+ * network iteration and epoch counts) so that they are persisted when the network is saved.
+ */
+@Data
+@NoArgsConstructor
+public class MixedPrecisionConfig implements Serializable, Cloneable {
+
+    public static final double DEFAULT_INITIAL_LOSS_SCALE = 32768.0;
+    public static final int DEFAULT_SCALE_GROWTH_INTERVAL = 2000;
+    public static final double DEFAULT_SCALE_FACTOR = 2.0;
+
+    private DataType computeDataType = DataType.HALF;
+    private boolean dynamicLossScaling = true;
+    private double initialLossScale = DEFAULT_INITIAL_LOSS_SCALE;
+    private int scaleGrowthInterval = DEFAULT_SCALE_GROWTH_INTERVAL;
+    private double scaleFactor = DEFAULT_SCALE_FACTOR;
+    private double minLossScale = 1.0;
+
+    //Loss scaling state. Stored here so it's persisted along with the iteration/epoch counts
+    private double lossScale = DEFAULT_INITIAL_LOSS_SCALE;
+    private int stepsSinceOverflow;
+    private long overflowCount;
+
+    /**
+     * @param computeDataType Datatype for the parameters and activations (forward and backward pass). Must be one of
+     *                        {@link DataType#HALF} or {@link DataType#BFLOAT16}
+     */
+    public MixedPrecisionConfig(@NonNull DataType computeDataType) {
+        this(new Builder().computeDataType(computeDataType));
+    }
+
+    private MixedPrecisionConfig(Builder builder) {
+        this.computeDataType = builder.computeDataType;
+        this.dynamicLossScaling = builder.dynamicLossScaling;
+        this.initialLossScale = builder.initialLossScale;
+        this.scaleGrowthInterval = builder.scaleGrowthInterval;
+        this.scaleFactor = builder.scaleFactor;
+        this.minLossScale = builder.minLossScale;
+        this.lossScale = builder.initialLossScale;
+    }
+
+    /**
+     * @return The datatype used for the full precision master copy of the parameters, and the updater state
+     */
+    @JsonIgnore
+    public DataType getMasterDataType() {
+        return DataType.FLOAT;
+    }
+
+    /**
+     * Update the loss scale after an iteration
+     *
+     * @param overflow True if any of the (scaled) gradients overflowed in the current iteration - in which case the
+     *                 parameter update is skipped
+     */
+    public void onIteration(boolean overflow) {
+        if (overflow) {
+            overflowCount++;
+            stepsSinceOverflow = 0;
+            if (dynamicLossScaling) {
+                lossScale = Math.max(minLossScale, lossScale / scaleFactor);
+            }
+        } else if (dynamicLossScaling && ++stepsSinceOverflow >= scaleGrowthInterval) {
+            lossScale *= scaleFactor;
+            stepsSinceOverflow = 0;
+        }
+    }
+
+    @Override
+    public MixedPrecisionConfig clone() {
+        try {
+            return (MixedPrecisionConfig) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static class Builder {
+        private DataType computeDataType = DataType.HALF;
+        private boolean dynamicLossScaling = true;
+        private double initialLossScale = DEFAULT_INITIAL_LOSS_SCALE;
+        private int scaleGrowthInterval = DEFAULT_SCALE_GROWTH_INTERVAL;
+        private double scaleFactor = DEFAULT_SCALE_FACTOR;
+        private double minLossScale = 1.0;
+
+        /**
+         * Datatype for the parameters and activations (forward and backward pass). Must be one of {@link DataType#HALF}
+         * (default) or {@link DataType#BFLOAT16}
+         */
+        public Builder computeDataType(@NonNull DataType computeDataType) {
+            Preconditions.checkArgument(computeDataType == DataType.HALF || computeDataType == DataType.BFLOAT16,
+                    "Mixed precision compute datatype must be one of HALF or BFLOAT16, got %s", computeDataType);
+            this.computeDataType = computeDataType;
+            return this;
+        }
+
+        /**
+         * Whether the loss scale should be adjusted during training (default: true). If false, the initial loss scale
+         * is used for all iterations (but iterations with overflowing gradients are still skipped)
+         */
+        public Builder dynamicLossScaling(boolean dynamicLossScaling) {
+            this.dynamicLossScaling = dynamicLossScaling;
+            return this;
+        }
+
+        /**
+         * Loss scale to use for the first iteration. Default: 32768 (2^15). For {@link DataType#BFLOAT16} (which has the
+         * same exponent range as FLOAT) a loss scale of 1.0 is usually sufficient
+         */
+        public Builder initialLossScale(double initialLossScale) {
+            Preconditions.checkArgument(initialLossScale > 0, "Initial loss scale must be positive, got %s", initialLossScale);
+            this.initialLossScale = initialLossScale;
+            return this;
+        }
+
+        /**
+         * Number of consecutive iterations without overflow after which the loss scale is increased. Default: 2000
+         */
+        public Builder scaleGrowthInterval(int scaleGrowthInterval) {
+            Preconditions.checkArgument(scaleGrowthInterval > 0, "Scale growth interval must be positive, got %s", scaleGrowthInterval);
+            this.scaleGrowthInterval = scaleGrowthInterval;
+            return this;
+        }
+
+        /**
+         * Factor by which the loss scale is decreased (on overflow) or increased. Default: 2.0
+         */
+        public Builder scaleFactor(double scaleFactor) {
+            Preconditions.checkArgument(scaleFactor > 1.0, "Scale factor must be greater than 1.0, got %s", scaleFactor);
+            this.scaleFactor = scaleFactor;
+            return this;
+        }
+
+        /**
+         * Minimum value for the loss scale. Default: 1.0
+         */
+        public Builder minLossScale(double minLossScale) {
+            Preconditions.checkArgument(minLossScale > 0, "Minimum loss scale must be positive, got %s", minLossScale);
+            this.minLossScale = minLossScale;
+            return this;
+        }
+
+        public MixedPrecisionConfig build() {
+            return new MixedPrecisionConfig(this);
+        }
+    }
+}
@@ -81,6 +81,9 @@ public class MultiLayerConfiguration implements Serializable, Cloneable {
     @Setter
     protected DataType dataType = DataType.FLOAT;   //Default to float for deserialization of beta3 and earlier nets
 
+    //Null unless mixed precision training is used. Also stores the loss scaling state, hence persisted with the network
+    protected MixedPrecisionConfig mixedPrecision;
+
     //Counter for the number of parameter updates so far
     // This is important for learning rate schedules, for example, and is stored here to ensure it is persisted
     // for Spark and model serialization
@@ -375,6 +378,7 @@ public class MultiLayerConfiguration implements Serializable, Cloneable {
             clone.cacheMode = this.cacheMode;
             clone.validateOutputLayerConfig = this.validateOutputLayerConfig;
             clone.dataType = this.dataType;
+            clone.mixedPrecision = (this.mixedPrecision == null ? null : this.mixedPrecision.clone());
 
             return clone;
 
@@ -461,6 +465,7 @@ public class MultiLayerConfiguration implements Serializable, Cloneable {
         protected boolean validateOutputConfig = true;
         protected boolean validateTbpttConfig = true;
         protected DataType dataType;
+        protected MixedPrecisionConfig mixedPrecision;
 
         /**
          * Specify the processors.
@@ -611,6 +616,16 @@ public class MultiLayerConfiguration implements Serializable, Cloneable {
             return this;
         }
 
+        /**
+         * Use mixed precision training. If non-null, the network datatype is set to the compute datatype of the
+         * mixed precision configuration - see {@link MixedPrecisionConfig}
+         * @param mixedPrecision Mixed precision configuration. May be null (full precision training)
+         */
+        public Builder mixedPrecision(MixedPrecisionConfig mixedPrecision){
+            this.mixedPrecision = mixedPrecision;
+            return this;
+        }
+
 
         public MultiLayerConfiguration build() {
             //Validate BackpropType setting
@@ -697,6 +712,10 @@ public class MultiLayerConfiguration implements Serializable, Cloneable {
             conf.inferenceWorkspaceMode = inferenceWorkspaceMode;
             conf.cacheMode = cacheMode;
             conf.dataType = dataType;
+            if (mixedPrecision != null) {
+                conf.mixedPrecision = mixedPrecision.clone();
+                conf.dataType = mixedPrecision.getComputeDataType();
+            }
 
             Nd4j.getRandom().setSeed(conf.getConf(0).getSeed());
 
@@ -264,7 +264,7 @@ public class NeuralNetConfiguration implements Serializable, Cloneable {
                             .tBPTTBackwardLength(tbpttBackLength).setInputType(this.inputType)
                             .trainingWorkspaceMode(wsmTrain).cacheMode(globalConfig.cacheMode)
                             .inferenceWorkspaceMode(wsmTest).confs(list).validateOutputLayerConfig(validateOutputConfig)
-                            .dataType(globalConfig.dataType)
+                            .dataType(globalConfig.dataType).mixedPrecision(globalConfig.mixedPrecision)
                             .build();
         }
 
@@ -501,6 +501,7 @@ public class NeuralNetConfiguration implements Serializable, Cloneable {
         protected boolean setIWM = false;
         protected CacheMode cacheMode = CacheMode.NONE;
         protected DataType dataType = DataType.FLOAT;
+        protected MixedPrecisionConfig mixedPrecision;
 
         protected ConvolutionMode convolutionMode = ConvolutionMode.Truncate;
         protected ConvolutionLayer.AlgoMode cudnnAlgoMode = ConvolutionLayer.AlgoMode.PREFER_FASTEST;
@@ -1169,6 +1170,32 @@ public class NeuralNetConfiguration implements Serializable, Cloneable {
             return this;
         }
 
+        /**
+         * Use mixed precision training with the specified compute datatype, and the default loss scaling configuration.
+         * See {@link #mixedPrecision(MixedPrecisionConfig)} and {@link MixedPrecisionConfig} for details.
+         *
+         * @param computeDataType Datatype for the network parameters and activations: {@link DataType#HALF} or
+         *                        {@link DataType#BFLOAT16}
+         */
+        public Builder mixedPrecision(@NonNull DataType computeDataType){
+            return mixedPrecision(new MixedPrecisionConfig(computeDataType));
+        }
+
+        /**
+         * Use mixed precision training: the forward and backward passes use the lower precision compute datatype, while
+         * the updater keeps a full precision (FLOAT) copy of the parameters and the updater state, with dynamic loss
+         * scaling to avoid gradient underflow. Note that the network datatype (i.e., the datatype of the parameters
+         * and activations) is set to the compute datatype, overriding any value set via {@link #dataType(DataType)}.<br>
+         * Mixed precision training is only applied when training via the standard (stochastic gradient descent) optimizer.
+         *
+         * @param mixedPrecision Mixed precision configuration
+         */
+        public Builder mixedPrecision(@NonNull MixedPrecisionConfig mixedPrecision){
+            this.mixedPrecision = mixedPrecision;
+            this.dataType = mixedPrecision.getComputeDataType();
+            return this;
+        }
+
         /**
          * Return a configuration based on this builder
          *
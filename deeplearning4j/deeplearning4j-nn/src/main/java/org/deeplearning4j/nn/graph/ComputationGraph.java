@@ -113,6 +113,9 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
     protected INDArray flattenedParams; //Params for all layers are a view/subset of this array
     @Getter
     protected transient INDArray flattenedGradients; //Gradients for all layers are a view/subset of this array
+    //Mixed precision training: the loss scale the gradients in the flattened gradients array were calculated with
+    @Getter
+    protected transient double gradientsLossScale = 1.0;
     protected Gradient gradient;
     protected double score;
     @Setter
@@ -1377,7 +1380,8 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
                     }
                 }
             }
-            calcBackpropGradients(false,false);
+            MixedPrecisionConfig mixedPrecision = configuration.getMixedPrecision();
+            calcBackpropGradients(false, false, (mixedPrecision == null ? 1.0 : mixedPrecision.getLossScale()));
 
             workspaceMgr.assertCurrentWorkspace(ArrayType.ACTIVATIONS, null);
 
@@ -2501,9 +2505,18 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
      *                         learning situations.
      */
     protected void calcBackpropGradients(boolean clearLayers, boolean truncatedBPTT, INDArray... externalEpsilons) {
+        calcBackpropGradients(clearLayers, truncatedBPTT, 1.0, externalEpsilons);
+    }
+
+    /**
+     * As per {@link #calcBackpropGradients(boolean, boolean, INDArray...)}, but with the gradients of the output layers
+     * (and hence all other gradients) multiplied by the specified loss scale - used for mixed precision training
+     */
+    protected void calcBackpropGradients(boolean clearLayers, boolean truncatedBPTT, double lossScale, INDArray... externalEpsilons) {
         if (flattenedGradients == null) {
             initGradientsView();
         }
+        gradientsLossScale = lossScale;
 
         /*
          Design for workspaces use in backprop for ComputationGraph is similar to MultiLayerNetwork and shares some
@@ -2692,6 +2705,22 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
                     pair = current.doBackward(truncatedBPTT, workspaceMgr);
                     epsilons = pair.getSecond();
 
+                    if (lossScale != 1.0 && current.isOutputVertex() && current.hasLayer()
+                            && (current.getLayer() instanceof IOutputLayer || (current.getLayer() instanceof FrozenLayerWithBackprop
+                                && ((FrozenLayerWithBackprop) current.getLayer()).getInsideLayer() instanceof IOutputLayer))) {
+                        //Mixed precision: scale the loss gradient, so small gradients don't underflow in backprop
+                        if (pair.getFirst() != null) {
+                            for (INDArray g : pair.getFirst().gradientForVariable().values()) {
+                                g.muli(lossScale);
+                            }
+                        }
+                        for (INDArray epsilon : epsilons) {
+                            if (epsilon != null) {
+                                epsilon.muli(lossScale);
+                            }
+                        }
+                    }
+
                     //Validate workspace location for the activation gradients:
                     //validateArrayWorkspaces(LayerWorkspaceMgr mgr, INDArray array, ArrayType arrayType, String vertexName, boolean isInputVertex, String op){
                     for (INDArray epsilon : epsilons) {
@@ -3226,6 +3255,8 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
         if (params == flattenedParams)
             return; //No op
 
+        invalidateMasterParams();
+
         if (this.flattenedParams != null && this.flattenedParams.length() == params.length()) {
             this.flattenedParams.assign(params);
             return;
@@ -3367,6 +3398,7 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
             INDArray arrNew = paramTable.get(s);
             arrCurrent.assign(arrNew);
         }
+        invalidateMasterParams();
     }
 
     @Override
@@ -3378,6 +3410,19 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
         String layerName = key.substring(0, idx);
         String paramType = key.substring(idx + 1);
         getLayer(layerName).setParam(paramType, val);
+        invalidateMasterParams();
+    }
+
+    /**
+     * Mixed precision training only: the full precision copy of the parameters held by the updater is now out of date
+     */
+    private void invalidateMasterParams() {
+        if (configuration.getMixedPrecision() != null) {
+            ComputationGraphUpdater u = getUpdater(false);
+            if (u != null) {
+                u.invalidateMasterParams();
+            }
+        }
     }
 
     @Override
@@ -90,6 +90,11 @@ public class ConvolutionLayer extends BaseLayer<org.deeplearning4j.nn.conf.layer
         } else if("CPU".equalsIgnoreCase(backend)){
             helper = new MKLDNNConvHelper(dataType);
             log.trace("Created MKLDNNConvHelper, layer {}", layerConf().getLayerName());
+            if (!helper.checkSupported()) {
+                //MKL-DNN not available: use the built-in CPU algorithms (Winograd, direct 1x1) where applicable
+                helper = new CpuConvolutionHelper(dataType);
+                log.trace("Created CpuConvolutionHelper, layer {}", layerConf().getLayerName());
+            }
         }
         if (helper != null && !helper.checkSupported()) {
             log.debug("Removed helper {} as not supported", helper.getClass());
@@ -154,8 +159,8 @@ public class ConvolutionLayer extends BaseLayer<org.deeplearning4j.nn.conf.layer
 
         if (helper != null && (helperCountFail == 0 || !layerConf().isCudnnAllowFallback())) {
 
-            if(!hasBias() && !(helper instanceof MKLDNNConvHelper)){
-                //MKL-DNN supports no bias, CuDNN doesn't
+            if(!hasBias() && !(helper instanceof MKLDNNConvHelper) && !(helper instanceof CpuConvolutionHelper)){
+                //MKL-DNN and CPU helpers support no bias, CuDNN doesn't
                 if(dummyBiasGrad == null){
                     try (MemoryWorkspace wsO = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
                         dummyBiasGrad = Nd4j.create(1, layerConf().getNOut());
@@ -357,8 +362,15 @@ public class ConvolutionLayer extends BaseLayer<org.deeplearning4j.nn.conf.layer
 
             INDArray ret = null;
             try {
-                ret = helper.preOutput(input, weights, bias, kernel, strides, pad, layerConf().getCudnnAlgoMode(),
-                        layerConf().getCudnnFwdAlgo(), convolutionMode, dilation, workspaceMgr);
+                if (helper instanceof CpuConvolutionHelper) {
+                    //CPU helper: Winograd is only used at inference time
+                    ret = ((CpuConvolutionHelper) helper).preOutput(input, weights, bias, kernel, strides, pad,
+                            layerConf().getCudnnAlgoMode(), layerConf().getCudnnFwdAlgo(), convolutionMode, dilation,
+                            workspaceMgr, training);
+                } else {
+                    ret = helper.preOutput(input, weights, bias, kernel, strides, pad, layerConf().getCudnnAlgoMode(),
+                            layerConf().getCudnnFwdAlgo(), convolutionMode, dilation, workspaceMgr);
+                }
             } catch (Exception e){
                 if(e.getMessage() != null && e.getMessage().contains("Failed to allocate")){
                     //This is a memory exception - don't fallback to built-in implementation
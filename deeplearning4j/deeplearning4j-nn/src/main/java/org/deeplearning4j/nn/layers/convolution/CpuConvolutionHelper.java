@@ -0,0 +1,396 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.layers.convolution;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.config.DL4JSystemProperties;
+import org.deeplearning4j.nn.conf.ConvolutionMode;
+import org.deeplearning4j.nn.conf.layers.ConvolutionLayer.AlgoMode;
+import org.deeplearning4j.nn.conf.layers.ConvolutionLayer.BwdDataAlgo;
+import org.deeplearning4j.nn.conf.layers.ConvolutionLayer.BwdFilterAlgo;
+import org.deeplearning4j.nn.conf.layers.ConvolutionLayer.FwdAlgo;
+import org.deeplearning4j.nn.gradient.DefaultGradient;
+import org.deeplearning4j.nn.gradient.Gradient;
+import org.deeplearning4j.nn.params.ConvolutionParamInitializer;
+import org.deeplearning4j.nn.workspace.ArrayType;
+import org.deeplearning4j.nn.workspace.LayerWorkspaceMgr;
+import org.deeplearning4j.util.ConvolutionUtils;
+import org.nd4j.linalg.activations.IActivation;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.impl.broadcast.BroadcastAddOp;
+import org.nd4j.linalg.api.ops.impl.transforms.pairwise.arithmetic.OldAddOp;
+import org.nd4j.linalg.api.ops.impl.transforms.pairwise.arithmetic.OldSubOp;
+import org.nd4j.linalg.api.shape.Shape;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.INDArrayIndex;
+import org.nd4j.linalg.primitives.Pair;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.nd4j.linalg.indexing.NDArrayIndex.all;
+import static org.nd4j.linalg.indexing.NDArrayIndex.interval;
+import static org.nd4j.linalg.indexing.NDArrayIndex.point;
+
+/**
+ * Convolution helper for the CPU backend, used when MKL-DNN is not available.<br>
+ * Selects an algorithm based on the layer configuration and the input shape:<br>
+ * - {@link Algorithm#DIRECT_1X1}: 1x1 kernels with stride 1 and no padding. The convolution is a matrix multiplication
+ * per example directly on the input (no im2col buffer), for both forward pass and backprop.<br>
+ * - {@link Algorithm#WINOGRAD_2X2_3X3}: 3x3 kernels with stride 1 and no dilation. Winograd minimal filtering
+ * F(2x2,3x3), which uses 16 multiplications per 2x2 output tile (instead of 36) and a transformed input buffer of
+ * about 4x the input size (instead of 9x for im2col). Inference only: at training time the built-in im2col
+ * implementation is used for the forward pass, so that backprop can reuse its im2col buffer.<br>
+ * - {@link Algorithm#IM2COL}: everything else - the built-in im2col + gemm implementation is used.<br>
+ * The selected algorithm is cached, and only re-selected when the input shape changes.<br>
+ * See Lavin and Gray, "Fast Algorithms for Convolutional Neural Networks", 2015 -
+ * <a href="https://arxiv.org/abs/1509.09308">https://arxiv.org/abs/1509.09308</a><br>
+ * This helper can be disabled by setting the {@link DL4JSystemProperties#CONV_CPU_HELPER_ENABLED_PROPERTY} system
+ * property to false.
+ */
+@Slf4j
+public class CpuConvolutionHelper implements ConvolutionHelper {
+
+    public enum Algorithm {IM2COL, DIRECT_1X1, WINOGRAD_2X2_3X3}
+
+    /**
+     * Minimum number of output values per channel (outH * outW) for which Winograd is used. For smaller outputs,
+     * the overhead of the transforms outweighs the savings in multiplications
+     */
+    public static final int WINOGRAD_MIN_OUTPUT_SIZE = 16;
+    /**
+     * Minimum value of (inChannels * outChannels) for which Winograd is used
+     */
+    public static final int WINOGRAD_MIN_CHANNELS_PRODUCT = 64;
+
+    //Winograd F(2x2,3x3) kernel transform matrix G
+    private static final double[][] G = {{1, 0, 0}, {0.5, 0.5, 0.5}, {0.5, -0.5, 0.5}, {0, 0, 1}};
+
+    @Getter
+    private Algorithm algorithm;
+    private long[] algorithmInputShape;
+    private INDArray kernelTransform;
+
+    public CpuConvolutionHelper(DataType dataType) {
+        //No-op
+    }
+
+    /**
+     * @return True if the CPU convolution helper has not been disabled via system property
+     */
+    public static boolean isEnabled() {
+        String s = System.getProperty(DL4JSystemProperties.CONV_CPU_HELPER_ENABLED_PROPERTY);
+        return s == null || Boolean.parseBoolean(s);
+    }
+
+    @Override
+    public boolean checkSupported() {
+        return isEnabled();
+    }
+
+    /**
+     * Select the algorithm to use for the specified input and configuration
+     */
+    public static Algorithm selectAlgorithm(long[] inputShape, long[] weightShape, int[] strides, int[] pad,
+                                            int[] dilation, int[] outSize) {
+        if (inputShape.length != 4 || weightShape.length != 4)
+            return Algorithm.IM2COL;
+        long outDepth = weightShape[0];
+        long inDepth = weightShape[1];
+        long kH = weightShape[2];
+        long kW = weightShape[3];
+        boolean stride1 = strides[0] == 1 && strides[1] == 1;
+        if (kH == 1 && kW == 1 && stride1 && pad[0] == 0 && pad[1] == 0) {
+            return Algorithm.DIRECT_1X1;
+        }
+        if (kH == 3 && kW == 3 && stride1 && dilation[0] == 1 && dilation[1] == 1
+                && (long) outSize[0] * outSize[1] >= WINOGRAD_MIN_OUTPUT_SIZE
+                && inDepth * outDepth >= WINOGRAD_MIN_CHANNELS_PRODUCT) {
+            return Algorithm.WINOGRAD_2X2_3X3;
+        }
+        return Algorithm.IM2COL;
+    }
+
+    protected Algorithm getAlgorithm(INDArray input, INDArray weights, int[] strides, int[] pad, int[] dilation,
+                                     ConvolutionMode convolutionMode, int[] kernel) {
+        if (algorithm == null || !Arrays.equals(algorithmInputShape, input.shape())) {
+            int[] outSize = ConvolutionUtils.getOutputSize(input, kernel, strides, pad, convolutionMode, dilation);
+            algorithm = selectAlgorithm(input.shape(), weights.shape(), strides, pad, dilation, outSize);
+            algorithmInputShape = input.shape();
+            log.debug("Selected convolution algorithm {} for input shape {}", algorithm, algorithmInputShape);
+        }
+        return algorithm;
+    }
+
+    @Override
+    public INDArray preOutput(INDArray input, INDArray weights, INDArray bias, int[] kernel, int[] strides, int[] pad,
+                              AlgoMode mode, FwdAlgo fwdAlgo, ConvolutionMode convolutionMode, int[] dilation,
+                              LayerWorkspaceMgr workspaceMgr) {
+        return preOutput(input, weights, bias, kernel, strides, pad, mode, fwdAlgo, convolutionMode, dilation,
+                workspaceMgr, false);
+    }
+
+    /**
+     * As per {@link #preOutput(INDArray, INDArray, INDArray, int[], int[], int[], AlgoMode, FwdAlgo, ConvolutionMode, int[], LayerWorkspaceMgr)}
+     * but returns null (use the built-in implementation) for Winograd at training time: there is no Winograd backprop,
+     * and the built-in backprop can only reuse the im2col buffer if the forward pass was also done using im2col
+     *
+     * @param training True if the output is computed at training time (i.e., backprop will follow)
+     */
+    public INDArray preOutput(INDArray input, INDArray weights, INDArray bias, int[] kernel, int[] strides, int[] pad,
+                              AlgoMode mode, FwdAlgo fwdAlgo, ConvolutionMode convolutionMode, int[] dilation,
+                              LayerWorkspaceMgr workspaceMgr, boolean training) {
+        switch (getAlgorithm(input, weights, strides, pad, dilation, convolutionMode, kernel)) {
+            case DIRECT_1X1:
+                return preOutput1x1(input, weights, bias, workspaceMgr);
+            case WINOGRAD_2X2_3X3:
+                if (training)
+                    return null;
+                int[] outSize = ConvolutionUtils.getOutputSize(input, kernel, strides, pad, convolutionMode, dilation);
+                return preOutputWinograd(input, weights, bias, pad, outSize, workspaceMgr);
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    public Pair<Gradient, INDArray> backpropGradient(INDArray input, INDArray weights, INDArray bias, INDArray delta,
+                                                     int[] kernel, int[] strides, int[] pad, INDArray biasGradView,
+                                                     INDArray weightGradView, IActivation afn, AlgoMode mode,
+                                                     BwdFilterAlgo bwdFilterAlgo, BwdDataAlgo bwdDataAlgo,
+                                                     ConvolutionMode convolutionMode, int[] dilation,
+                                                     LayerWorkspaceMgr workspaceMgr) {
+        if (getAlgorithm(input, weights, strides, pad, dilation, convolutionMode, kernel) != Algorithm.DIRECT_1X1)
+            return null;
+
+        // FIXME: int cast
+        int miniBatch = (int) input.size(0);
+        int inDepth = (int) weights.size(1);
+        int outDepth = (int) weights.size(0);
+        int h = (int) input.size(2);
+        int w = (int) input.size(3);
+
+        INDArray w2d = weights.reshape('c', outDepth, inDepth);
+        //Weight gradients: [outDepth, inDepth] in c order == [inDepth, outDepth] in f order (as required by gemm)
+        INDArray weightGrad2df = Shape.newShapeNoCopy(weightGradView, new int[] {outDepth, inDepth}, false).transpose();
+        //Epsilons: [w*h, inDepth] per example in f order == [miniBatch, inDepth, h, w] c order
+        INDArray epsNext = workspaceMgr.createUninitialized(ArrayType.ACTIVATION_GRAD, weights.dataType(), new long[] {miniBatch, inDepth, h, w}, 'c');
+        INDArray epsNext3df = epsNext.reshape('c', miniBatch, inDepth, h * w).permute(2, 1, 0);
+        for (int i = 0; i < miniBatch; i++) {
+            INDArray in2d = input.tensorAlongDimension(i, 1, 2, 3).reshape('c', inDepth, h * w);
+            INDArray delta2d = delta.tensorAlongDimension(i, 1, 2, 3).reshape('c', outDepth, h * w);
+            Nd4j.gemm(in2d, delta2d, weightGrad2df, false, true, 1.0, i == 0 ? 0.0 : 1.0);
+            INDArray eps2df = epsNext3df.tensorAlongDimension(i, 0, 1);
+            if (eps2df.ordering() == 'f') {
+                Nd4j.gemm(delta2d, w2d, eps2df, true, false, 1.0, 0.0);
+            } else {
+                eps2df.assign(delta2d.transpose().mmul(w2d));
+            }
+        }
+
+        Gradient retGradient = new DefaultGradient();
+        if (bias != null) {
+            delta.sum(biasGradView, 0, 2, 3);
+            retGradient.setGradientFor(ConvolutionParamInitializer.BIAS_KEY, biasGradView);
+        }
+        retGradient.setGradientFor(ConvolutionParamInitializer.WEIGHT_KEY, weightGradView, 'c');
+        return new Pair<>(retGradient, epsNext);
+    }
+
+    /**
+     * 1x1 convolution, stride 1, no padding: out[i] = W * in[i] for each example i, where in[i] is [inDepth, h*w]
+     */
+    protected INDArray preOutput1x1(INDArray input, INDArray weights, INDArray bias, LayerWorkspaceMgr workspaceMgr) {
+        // FIXME: int cast
+        int miniBatch = (int) input.size(0);
+        int inDepth = (int) weights.size(1);
+        int outDepth = (int) weights.size(0);
+        int h = (int) input.size(2);
+        int w = (int) input.size(3);
+
+        INDArray w2d = weights.reshape('c', outDepth, inDepth);
+        //Output: computed as out[i]^T ([h*w, outDepth], f order) - this is the same buffer as out[i] in c order
+        INDArray out = workspaceMgr.createUninitialized(ArrayType.ACTIVATIONS, weights.dataType(), new long[] {miniBatch, outDepth, h, w}, 'c');
+        INDArray out3df = out.reshape('c', miniBatch, outDepth, h * w).permute(2, 1, 0);
+        for (int i = 0; i < miniBatch; i++) {
+            INDArray in2d = input.tensorAlongDimension(i, 1, 2, 3).reshape('c', inDepth, h * w);
+            INDArray out2df = out3df.tensorAlongDimension(i, 0, 1);
+            if (out2df.ordering() == 'f') {
+                Nd4j.gemm(in2d, w2d, out2df, true, true, 1.0, 0.0);
+            } else {
+                out2df.assign(in2d.transpose().mmul(w2d.transpose()));
+            }
+        }
+        addBias(out, bias);
+        return out;
+    }
+
+    /**
+     * Winograd F(2x2,3x3): output is computed in 2x2 tiles from 4x4 input tiles.<br>
+     * Y = A^T [ sum_c (G g G^T) .* (B^T d B) ] A, with the sum over input channels for each of the 16 tile positions
+     * done as a single gemm: [outDepth, inDepth] x [inDepth, numTiles]
+     */
+    protected INDArray preOutputWinograd(INDArray input, INDArray weights, INDArray bias, int[] pad, int[] outSize,
+                                         LayerWorkspaceMgr workspaceMgr) {
+        DataType dt = weights.dataType();
+        // FIXME: int cast
+        int miniBatch = (int) input.size(0);
+        int inDepth = (int) weights.size(1);
+        int outDepth = (int) weights.size(0);
+        int inH = (int) input.size(2);
+        int inW = (int) input.size(3);
+        int outH = outSize[0];
+        int outW = outSize[1];
+        int tilesH = (outH + 1) / 2;
+        int tilesW = (outW + 1) / 2;
+        int numTiles = miniBatch * tilesH * tilesW;
+        int padH = 2 * tilesH + 2;
+        int padW = 2 * tilesW + 2;
+
+        //Zero padded input: top/left padding as per configuration; bottom/right as required for complete tiles
+        INDArray padded = Nd4j.create(dt, new long[] {miniBatch, inDepth, padH, padW}, 'c');
+        padded.get(all(), all(), interval(pad[0], pad[0] + inH), interval(pad[1], pad[1] + inW)).assign(input);
+
+        //Kernel transform U = G g G^T: one gemm, [outDepth*inDepth, 9] x [9, 16] -> [outDepth*inDepth, 16], f order
+        INDArray u = Nd4j.gemm(weights.reshape('c', outDepth * inDepth, 9), getKernelTransform(dt), false, false);
+
+        //Input transform V = B^T d B, row transform first (over full rows) then column transform
+        //Rows: B^T = [[1,0,-1,0], [0,1,1,0], [0,-1,1,0], [0,1,0,-1]]
+        INDArray rows = Nd4j.createUninitialized(dt, new long[] {4, miniBatch, inDepth, tilesH, padW}, 'c');
+        INDArray[] rowsIn = new INDArray[4];
+        for (int i = 0; i < 4; i++) {
+            rowsIn[i] = padded.get(all(), all(), interval(i, 2, i + 2 * tilesH, false), all());
+        }
+        INDArray[] rowsOut = new INDArray[4];
+        for (int i = 0; i < 4; i++) {
+            rowsOut[i] = rows.get(point(i), all(), all(), all(), all());
+        }
+        transformBT(rowsIn, rowsOut);
+
+        //V: [16, inDepth, miniBatch, tilesH, tilesW], so each V[k] is a contiguous [inDepth, numTiles] matrix
+        INDArray v = Nd4j.createUninitialized(dt, new long[] {16, inDepth, miniBatch, tilesH, tilesW}, 'c');
+        for (int i = 0; i < 4; i++) {
+            INDArray[] colsIn = new INDArray[4];
+            INDArray[] colsOut = new INDArray[4];
+            for (int j = 0; j < 4; j++) {
+                colsIn[j] = rowsOut[i].get(all(), all(), all(), interval(j, 2, j + 2 * tilesW, false));
+                colsOut[j] = v.get(point(4 * i + j), all(), all(), all(), all()).permute(1, 0, 2, 3);
+            }
+            transformBT(colsIn, colsOut);
+        }
+
+        //Elementwise product in the Winograd domain, summed over input channels: 16 gemms
+        //M: [numTiles, outDepth, 16] f order - M[k]^T is computed, which is M[k] in c order
+        INDArray m = Nd4j.createUninitialized(dt, new long[] {numTiles, outDepth, 16}, 'f');
+        for (int k = 0; k < 16; k++) {
+            INDArray uk = u.tensorAlongDimension(k, 0).reshape('c', outDepth, inDepth);
+            INDArray vk = v.get(point(k), all(), all(), all(), all()).reshape('c', inDepth, numTiles);
+            Nd4j.gemm(vk, uk, m.tensorAlongDimension(k, 0, 1), true, true, 1.0, 0.0);
+        }
+        //View as [16, miniBatch, outDepth, tilesH, tilesW]
+        INDArray m5d = m.reshape('f', tilesW, tilesH, miniBatch, outDepth, 16).permute(4, 2, 3, 1, 0);
+
+        //Output transform: Y = A^T M A, A^T = [[1,1,1,0], [0,1,-1,-1]]
+        INDArray s = Nd4j.createUninitialized(dt, new long[] {2, 4, miniBatch, outDepth, tilesH, tilesW}, 'c');
+        for (int j = 0; j < 4; j++) {
+            INDArray[] in = new INDArray[4];
+            for (int i = 0; i < 4; i++) {
+                in[i] = m5d.get(point(4 * i + j), all(), all(), all(), all());
+            }
+            transformAT(in, s.get(point(0), point(j), all(), all(), all(), all()),
+                    s.get(point(1), point(j), all(), all(), all(), all()));
+        }
+
+        boolean exact = outH == 2 * tilesH && outW == 2 * tilesW;
+        INDArray out = workspaceMgr.createUninitialized(ArrayType.ACTIVATIONS, dt, new long[] {miniBatch, outDepth, 2 * tilesH, 2 * tilesW}, 'c');
+        for (int r = 0; r < 2; r++) {
+            INDArray[] in = new INDArray[4];
+            for (int j = 0; j < 4; j++) {
+                in[j] = s.get(point(r), point(j), all(), all(), all(), all());
+            }
+            INDArrayIndex rowIdx = interval(r, 2, r + 2 * tilesH, false);
+            transformAT(in, out.get(all(), all(), rowIdx, interval(0, 2, 2 * tilesW, false)),
+                    out.get(all(), all(), rowIdx, interval(1, 2, 2 * tilesW, false)));
+        }
+
+        if (!exact) {
+            //Odd output size: last row/column of tiles is only partially used
+            out = out.get(all(), all(), interval(0, outH), interval(0, outW));
+        }
+        addBias(out, bias);
+        return out;
+    }
+
+    /**
+     * out_i = B^T in, i.e.: in0-in2, in1+in2, in2-in1, in1-in3
+     */
+    private static void transformBT(INDArray[] in, INDArray[] out) {
+        Nd4j.getExecutioner().exec(new OldSubOp(in[0], in[2], out[0]));
+        Nd4j.getExecutioner().exec(new OldAddOp(in[1], in[2], out[1]));
+        Nd4j.getExecutioner().exec(new OldSubOp(in[2], in[1], out[2]));
+        Nd4j.getExecutioner().exec(new OldSubOp(in[1], in[3], out[3]));
+    }
+
+    /**
+     * out0 = in0+in1+in2, out1 = in1-in2-in3
+     */
+    private static void transformAT(INDArray[] in, INDArray out0, INDArray out1) {
+        Nd4j.getExecutioner().exec(new OldAddOp(in[0], in[1], out0));
+        out0.addi(in[2]);
+        Nd4j.getExecutioner().exec(new OldSubOp(in[1], in[2], out1));
+        out1.subi(in[3]);
+    }
+
+    private INDArray getKernelTransform(DataType dt) {
+        if (kernelTransform == null || kernelTransform.dataType() != dt) {
+            double[][] t = new double[9][16];
+            for (int i = 0; i < 3; i++) {
+                for (int j = 0; j < 3; j++) {
+                    for (int xi = 0; xi < 4; xi++) {
+                        for (int nu = 0; nu < 4; nu++) {
+                            t[3 * i + j][4 * xi + nu] = G[xi][i] * G[nu][j];
+                        }
+                    }
+                }
+            }
+            try (MemoryWorkspace ws = Nd4j.getWorkspaceManager().scopeOutOfWorkspaces()) {
+                kernelTransform = Nd4j.createFromArray(t).castTo(dt);
+            }
+        }
+        return kernelTransform;
+    }
+
+    private static void addBias(INDArray out, INDArray bias) {
+        if (bias != null) {
+            Nd4j.getExecutioner().exec(new BroadcastAddOp(out, bias.reshape(bias.length()), out, 1));
+        }
+    }
+
+    @Override
+    public INDArray activate(INDArray z, IActivation afn, boolean training) {
+        return null;
+    }
+
+    @Override
+    public Map<String, Long> helperMemoryUse() {
+        return Collections.emptyMap();
+    }
+}
@@ -0,0 +1,314 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.layers.recurrent;
+
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.config.DL4JSystemProperties;
+import org.deeplearning4j.nn.api.Layer;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.gradient.DefaultGradient;
+import org.deeplearning4j.nn.gradient.Gradient;
+import org.deeplearning4j.nn.workspace.ArrayType;
+import org.deeplearning4j.nn.workspace.LayerWorkspaceMgr;
+import org.nd4j.linalg.activations.IActivation;
+import org.nd4j.linalg.activations.impl.ActivationSigmoid;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.impl.transforms.pairwise.arithmetic.OldMulOp;
+import org.nd4j.linalg.api.ops.impl.transforms.same.TimesOneMinus;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.primitives.Pair;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static org.nd4j.linalg.indexing.NDArrayIndex.all;
+import static org.nd4j.linalg.indexing.NDArrayIndex.interval;
+
+/**
+ * Fused LSTM helper for the CPU backend (LSTM layer only: no peephole connections, sigmoid gates).<br>
+ * Compared to the default implementation in {@link LSTMHelpers}, this helper:<br>
+ * (a) Computes the input projections (input weights and bias) for all time steps with a single large GEMM<br>
+ * (b) Performs a single GEMM per time step for the recurrent contribution of all four gates<br>
+ * (c) Applies the gate nonlinearities in place, with one op for the 3 sigmoid gates<br>
+ * (d) During backprop, calculates the input weight, recurrent weight and bias gradients and the epsilons for the
+ * layer below with one GEMM each over all time steps, instead of one GEMM per time step<br>
+ * <br>
+ * Internally all arrays are stored "transposed" - i.e., with shape [4*layerSize, minibatch, timeSeriesLength] in 'f'
+ * order - so that the gates for each time step are a contiguous f order block that can be used directly as the
+ * GEMM output.<br>
+ * This helper can be disabled by setting the {@link DL4JSystemProperties#LSTM_CPU_HELPER_ENABLED_PROPERTY} system property
+ * to false.
+ */
+@Slf4j
+public class CpuLSTMHelper implements LSTMHelper {
+
+    public CpuLSTMHelper(DataType dataType) {
+        //No-op
+    }
+
+    /**
+     * @return True if the fused CPU LSTM helper has not been disabled via system property
+     */
+    public static boolean isEnabled() {
+        String s = System.getProperty(DL4JSystemProperties.LSTM_CPU_HELPER_ENABLED_PROPERTY);
+        return s == null || Boolean.parseBoolean(s);
+    }
+
+    @Override
+    public boolean checkSupported(IActivation gateActivationFn, IActivation activationFn, boolean hasPeepholeConnections) {
+        return !hasPeepholeConnections && gateActivationFn instanceof ActivationSigmoid && isEnabled();
+    }
+
+    @Override
+    public FwdPassReturn activate(Layer layer, NeuralNetConfiguration conf, IActivation gateActivationFn, INDArray input,
+                                  INDArray recurrentWeights, INDArray inputWeights, INDArray biases, boolean training,
+                                  INDArray prevOutputActivations, INDArray prevMemCellState, boolean forBackprop,
+                                  boolean forwards, String inputWeightKey, INDArray maskArray,
+                                  boolean hasPeepholeConnections, LayerWorkspaceMgr workspaceMgr) {
+        if (!forwards || !checkSupported(gateActivationFn, null, hasPeepholeConnections))
+            return null;
+
+        IActivation afn = ((org.deeplearning4j.nn.conf.layers.BaseLayer) conf.getLayer()).getActivationFn();
+        DataType dataType = inputWeights.dataType();
+        boolean is2dInput = input.rank() < 3;
+        int timeSeriesLength = (int) (is2dInput ? 1 : input.size(2));
+        int hiddenLayerSize = (int) recurrentWeights.size(0);
+        int miniBatchSize = (int) input.size(0);
+        long nIn = inputWeights.size(0);
+        long mt = (long) miniBatchSize * timeSeriesLength;
+        ArrayType arrayType = forBackprop ? ArrayType.BP_WORKING_MEM : ArrayType.FF_WORKING_MEM;
+
+        FusedFwdPassReturn toReturn = new FusedFwdPassReturn();
+
+        //Input, transposed: [nIn, miniBatch * timeSeriesLength] with column index = example + miniBatch * time
+        INDArray inputT = is2dInput ? input.transpose() : input.permute(1, 0, 2);
+        toReturn.inputT = workspaceMgr.dup(arrayType, inputT, 'f').reshape('f', nIn, mt);
+
+        //Input projections for all time steps in one GEMM: ifog = W^T * x + b
+        INDArray ifog2d = workspaceMgr.createUninitialized(arrayType, dataType, new long[] {4 * hiddenLayerSize, mt}, 'f');
+        Nd4j.gemm(inputWeights, toReturn.inputT, ifog2d, true, false, 1.0, 0.0);
+        ifog2d.addiColumnVector(biases.reshape(biases.length(), 1));
+        toReturn.ifog = ifog2d.reshape('f', 4 * hiddenLayerSize, miniBatchSize, timeSeriesLength);
+
+        //Hidden state and memory cell state, transposed. Index 0: previous state (or zeros); index t+1: time step t
+        toReturn.hT = workspaceMgr.create(arrayType, dataType, new long[] {hiddenLayerSize, miniBatchSize, timeSeriesLength + 1}, 'f');
+        toReturn.cT = workspaceMgr.create(arrayType, dataType, new long[] {hiddenLayerSize, miniBatchSize, timeSeriesLength + 1}, 'f');
+        if (prevOutputActivations != null)
+            toReturn.hT.tensorAlongDimension(0, 0, 1).assign(prevOutputActivations.transpose());
+        if (prevMemCellState != null)
+            toReturn.cT.tensorAlongDimension(0, 0, 1).assign(prevMemCellState.transpose());
+        if (forBackprop) {
+            toReturn.izT = workspaceMgr.createUninitialized(arrayType, dataType, new long[] {hiddenLayerSize, miniBatchSize, timeSeriesLength}, 'f');
+            toReturn.memCellActT = workspaceMgr.createUninitialized(arrayType, dataType, new long[] {hiddenLayerSize, miniBatchSize, timeSeriesLength}, 'f');
+        }
+
+        INDArray recurrentWeightsIFOG = recurrentWeights.get(all(), interval(0, 4 * hiddenLayerSize));
+
+        for (int time = 0; time < timeSeriesLength; time++) {
+            try (MemoryWorkspace ws = workspaceMgr.notifyScopeEntered(ArrayType.RNN_FF_LOOP_WORKING_MEM)) {
+                INDArray ifog = toReturn.ifog.tensorAlongDimension(time, 0, 1);     //[4*layerSize, miniBatch], f order
+                INDArray prevH = toReturn.hT.tensorAlongDimension(time, 0, 1);
+                INDArray prevC = toReturn.cT.tensorAlongDimension(time, 0, 1);
+                INDArray currH = toReturn.hT.tensorAlongDimension(time + 1, 0, 1);
+                INDArray currC = toReturn.cT.tensorAlongDimension(time + 1, 0, 1);
+
+                //Recurrent contribution for all 4 gates in one GEMM, accumulated into the input projections
+                Nd4j.gemm(recurrentWeightsIFOG, prevH, ifog, true, false, 1.0, 1.0);
+
+                INDArray ia = ifog.get(interval(0, hiddenLayerSize), all());
+                INDArray fa = ifog.get(interval(hiddenLayerSize, 2 * hiddenLayerSize), all());
+                INDArray oa = ifog.get(interval(2 * hiddenLayerSize, 3 * hiddenLayerSize), all());
+                INDArray ga = ifog.get(interval(3 * hiddenLayerSize, 4 * hiddenLayerSize), all());
+
+                if (forBackprop)
+                    toReturn.izT.tensorAlongDimension(time, 0, 1).assign(ia);
+                afn.getActivation(ia, training);
+                //Forget, output and input modulation gates are adjacent: one op for all 3
+                gateActivationFn.getActivation(ifog.get(interval(hiddenLayerSize, 4 * hiddenLayerSize), all()), training);
+
+                //Memory cell state: c = f * c_prev + g * i
+                Nd4j.getExecutioner().exec(new OldMulOp(fa, prevC, currC));
+                currC.addi(forBackprop ? ga.mul(ia) : ga.muli(ia));
+
+                //Output: h = o * afn(c)
+                if (forBackprop) {
+                    INDArray memCellAct = toReturn.memCellActT.tensorAlongDimension(time, 0, 1);
+                    memCellAct.assign(currC);
+                    afn.getActivation(memCellAct, training);
+                    Nd4j.getExecutioner().exec(new OldMulOp(memCellAct, oa, currH));
+                } else {
+                    currH.assign(currC);
+                    afn.getActivation(currH, training);
+                    currH.muli(oa);
+                }
+
+                if (maskArray != null) {
+                    //As per LSTMHelpers: zero out both activations and memory cell state for masked steps
+                    INDArray timeStepMaskRow = maskArray.getColumn(time, true).transpose();
+                    currH.muliRowVector(timeStepMaskRow);
+                    currC.muliRowVector(timeStepMaskRow);
+                }
+            }
+        }
+
+        INDArray outputActivations = workspaceMgr.create(ArrayType.ACTIVATIONS, dataType, new long[] {miniBatchSize, hiddenLayerSize, timeSeriesLength}, 'f');
+        outputActivations.assign(toReturn.hT.get(all(), all(), interval(1, timeSeriesLength + 1)).permute(1, 0, 2));
+        toReturn.fwdPassOutput = outputActivations;
+        toReturn.lastAct = workspaceMgr.dup(arrayType, toReturn.hT.tensorAlongDimension(timeSeriesLength, 0, 1).transpose(), 'f');
+        toReturn.lastMemCell = workspaceMgr.dup(arrayType, toReturn.cT.tensorAlongDimension(timeSeriesLength, 0, 1).transpose(), 'f');
+        toReturn.prevAct = prevOutputActivations;
+        toReturn.prevMemCell = prevMemCellState;
+        return toReturn;
+    }
+
+    @Override
+    public Pair<Gradient, INDArray> backpropGradient(NeuralNetConfiguration conf, IActivation gateActivationFn, INDArray input,
+                                                     INDArray recurrentWeights, INDArray inputWeights, INDArray epsilon,
+                                                     boolean truncatedBPTT, int tbpttBackwardLength, FwdPassReturn fwdPass,
+                                                     boolean forwards, String inputWeightKey, String recurrentWeightKey,
+                                                     String biasWeightKey, Map<String, INDArray> gradientViews,
+                                                     INDArray maskArray, boolean hasPeepholeConnections,
+                                                     LayerWorkspaceMgr workspaceMgr) {
+        if (!forwards || !(fwdPass instanceof FusedFwdPassReturn) || !checkSupported(gateActivationFn, null, hasPeepholeConnections))
+            return null;
+
+        FusedFwdPassReturn fwd = (FusedFwdPassReturn) fwdPass;
+        IActivation afn = ((org.deeplearning4j.nn.conf.layers.BaseLayer) conf.getLayer()).getActivationFn();
+        DataType dataType = inputWeights.dataType();
+        boolean is2dInput = epsilon.rank() < 3;
+        int timeSeriesLength = (int) (is2dInput ? 1 : epsilon.size(2));
+        int hiddenLayerSize = (int) recurrentWeights.size(0);
+        int miniBatchSize = (int) epsilon.size(0);
+        long nIn = inputWeights.size(0);
+        long mt = (long) miniBatchSize * timeSeriesLength;
+
+        int endIdx = 0;
+        if (truncatedBPTT) {
+            endIdx = Math.max(0, timeSeriesLength - tbpttBackwardLength);
+        }
+
+        //Gate deltas for all time steps, transposed: [4*layerSize, miniBatch, timeSeriesLength]
+        //Steps before endIdx (TBPTT) are left as zeros, and hence don't contribute to the gradients
+        INDArray deltaIfog = workspaceMgr.create(ArrayType.BP_WORKING_MEM, dataType, new long[] {4 * hiddenLayerSize, miniBatchSize, timeSeriesLength}, 'f');
+        INDArray nablaCellStateNext = workspaceMgr.create(ArrayType.BP_WORKING_MEM, dataType, new long[] {hiddenLayerSize, miniBatchSize}, 'f');
+        INDArray recurrentWeightsIFOG = recurrentWeights.get(all(), interval(0, 4 * hiddenLayerSize));
+
+        for (int time = timeSeriesLength - 1; time >= endIdx; time--) {
+            try (MemoryWorkspace ws = workspaceMgr.notifyScopeEntered(ArrayType.RNN_BP_LOOP_WORKING_MEM)) {
+                boolean last = time == timeSeriesLength - 1;
+                INDArray ifog = fwd.ifog.tensorAlongDimension(time, 0, 1);
+                INDArray ia = ifog.get(interval(0, hiddenLayerSize), all());
+                INDArray fa = ifog.get(interval(hiddenLayerSize, 2 * hiddenLayerSize), all());
+                INDArray oa = ifog.get(interval(2 * hiddenLayerSize, 3 * hiddenLayerSize), all());
+                INDArray ga = ifog.get(interval(3 * hiddenLayerSize, 4 * hiddenLayerSize), all());
+                INDArray prevC = fwd.cT.tensorAlongDimension(time, 0, 1);
+                INDArray currC = fwd.cT.tensorAlongDimension(time + 1, 0, 1);
+
+                INDArray delta = deltaIfog.tensorAlongDimension(time, 0, 1);
+                INDArray deltai = delta.get(interval(0, hiddenLayerSize), all());
+                INDArray deltaf = delta.get(interval(hiddenLayerSize, 2 * hiddenLayerSize), all());
+                INDArray deltao = delta.get(interval(2 * hiddenLayerSize, 3 * hiddenLayerSize), all());
+                INDArray deltag = delta.get(interval(3 * hiddenLayerSize, 4 * hiddenLayerSize), all());
+
+                //LSTM unit output errors: epsilon plus recurrent contribution from the next time step deltas
+                INDArray nablaOut = Nd4j.createUninitialized(dataType, new long[] {hiddenLayerSize, miniBatchSize}, 'f');
+                nablaOut.assign(is2dInput ? epsilon.transpose() : epsilon.tensorAlongDimension(time, 1, 0).transpose());
+                if (!last) {
+                    Nd4j.gemm(recurrentWeightsIFOG, deltaIfog.tensorAlongDimension(time + 1, 0, 1), nablaOut, false, false, 1.0, 1.0);
+                }
+
+                INDArray temp = Nd4j.createUninitialized(dataType, new long[] {hiddenLayerSize, miniBatchSize}, 'f');
+
+                //Output gate deltas
+                Nd4j.getExecutioner().exec(new OldMulOp(nablaOut, fwd.memCellActT.tensorAlongDimension(time, 0, 1), deltao));
+                Nd4j.getExecutioner().exec(new TimesOneMinus(oa, temp));
+                deltao.muli(temp);
+
+                //Memory cell error
+                INDArray nablaCellState = afn.backprop(currC.dup('f'), nablaOut.muli(oa)).getFirst();
+                if (!last) {
+                    INDArray nextFa = fwd.ifog.tensorAlongDimension(time + 1, 0, 1).get(interval(hiddenLayerSize, 2 * hiddenLayerSize), all());
+                    Nd4j.getExecutioner().exec(new OldMulOp(nextFa, nablaCellStateNext, temp));
+                    nablaCellState.addi(temp);
+                }
+                nablaCellStateNext.assign(nablaCellState);
+
+                //Forget gate delta. Previous memory cell state is zeros at t=0 if no state was provided
+                Nd4j.getExecutioner().exec(new TimesOneMinus(fa, deltaf));
+                deltaf.muli(nablaCellState).muli(prevC);
+
+                //Input modulation gate delta
+                Nd4j.getExecutioner().exec(new TimesOneMinus(ga, deltag));
+                deltag.muli(ia).muli(nablaCellState);
+
+                //Network input delta
+                Nd4j.getExecutioner().exec(new OldMulOp(ga, nablaCellState, temp));
+                deltai.assign(afn.backprop(fwd.izT.tensorAlongDimension(time, 0, 1), temp).getFirst());
+
+                if (maskArray != null) {
+                    delta.muliRowVector(maskArray.getColumn(time, true).transpose());
+                }
+            }
+        }
+
+        //Gradients and epsilons for all time steps, each as a single GEMM
+        INDArray delta2d = deltaIfog.reshape('f', 4 * hiddenLayerSize, mt);
+        INDArray prevH2d = fwd.hT.get(all(), all(), interval(0, timeSeriesLength)).reshape('f', hiddenLayerSize, mt);
+
+        INDArray iwGradientsOut = gradientViews.get(inputWeightKey);
+        INDArray rwGradientsOut = gradientViews.get(recurrentWeightKey);
+        INDArray bGradientsOut = gradientViews.get(biasWeightKey);
+        Nd4j.gemm(fwd.inputT, delta2d, iwGradientsOut, false, true, 1.0, 0.0);
+        Nd4j.gemm(prevH2d, delta2d, rwGradientsOut.get(all(), interval(0, 4 * hiddenLayerSize)), false, true, 1.0, 0.0);
+        bGradientsOut.assign(delta2d.sum(true, 1).reshape(bGradientsOut.shape()));
+
+        INDArray epsilonNext2d = Nd4j.gemm(inputWeights, delta2d, false, false);      //[nIn, miniBatch * timeSeriesLength]
+        INDArray epsilonNext = workspaceMgr.create(ArrayType.ACTIVATION_GRAD, dataType, new long[] {miniBatchSize, nIn, timeSeriesLength}, 'f');
+        epsilonNext.assign(epsilonNext2d.reshape('f', nIn, miniBatchSize, timeSeriesLength).permute(1, 0, 2));
+
+        Gradient retGradient = new DefaultGradient();
+        retGradient.gradientForVariable().put(inputWeightKey, iwGradientsOut);
+        retGradient.gradientForVariable().put(recurrentWeightKey, rwGradientsOut);
+        retGradient.gradientForVariable().put(biasWeightKey, bGradientsOut);
+
+        return new Pair<>(retGradient, epsilonNext);
+    }
+
+    @Override
+    public Map<String, Long> helperMemoryUse() {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Forward pass arrays in the transposed layout used by this helper. All arrays have 'f' order.
+     */
+    protected static class FusedFwdPassReturn extends FwdPassReturn {
+        //Input: [nIn, miniBatch * timeSeriesLength]
+        protected INDArray inputT;
+        //Gate activations (ifog order, in place): [4*layerSize, miniBatch, timeSeriesLength]
+        protected INDArray ifog;
+        //Input block pre-activations (backprop only): [layerSize, miniBatch, timeSeriesLength]
+        protected INDArray izT;
+        //Activations and memory cell states, including the previous state at index 0: [layerSize, miniBatch, timeSeriesLength+1]
+        protected INDArray hT;
+        protected INDArray cT;
+        //Memory cell activations (backprop only): [layerSize, miniBatch, timeSeriesLength]
+        protected INDArray memCellActT;
+    }
+}
@@ -46,6 +46,7 @@ import org.deeplearning4j.nn.layers.FrozenLayerWithBackprop;
 import org.deeplearning4j.nn.layers.recurrent.BidirectionalLayer;
 import org.deeplearning4j.nn.layers.LayerHelper;
 import org.deeplearning4j.nn.layers.wrapper.BaseWrapperLayer;
+import org.deeplearning4j.nn.updater.BaseMultiLayerUpdater;
 import org.deeplearning4j.nn.updater.UpdaterCreator;
 import org.deeplearning4j.nn.workspace.ArrayType;
 import org.deeplearning4j.nn.workspace.LayerWorkspaceMgr;
@@ -81,6 +82,7 @@ import org.nd4j.linalg.heartbeat.reports.Event;
 import org.nd4j.linalg.heartbeat.reports.Task;
 import org.nd4j.linalg.heartbeat.utils.EnvironmentUtils;
 import org.nd4j.linalg.heartbeat.utils.TaskUtils;
+import org.nd4j.linalg.indexing.INDArrayIndex;
 import org.nd4j.linalg.indexing.NDArrayIndex;
 import org.nd4j.linalg.memory.abstracts.DummyWorkspace;
 import org.nd4j.linalg.primitives.Pair;
@@ -125,6 +127,9 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
     protected INDArray flattenedParams; //Params for all layers are a view/subset of this array
     @Getter
     protected transient INDArray flattenedGradients; //Gradients for all layers are a view/subset of this array
+    //Mixed precision training: the loss scale the gradients in the flattened gradients array were calculated with
+    @Getter
+    protected transient double gradientsLossScale = 1.0;
 
     protected boolean clearTbpttState = true;  //Mainly for unit testing (should be enabled otherwise)
     protected transient ThreadLocal<Long> lastEtlTime = new ThreadLocal<>();
@@ -556,6 +561,7 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
             INDArray toSet = paramTable.get(s);
             curr.assign(toSet);
         }
+        invalidateMasterParams();
     }
 
     /**
@@ -574,6 +580,19 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
         String newKey = key.substring(idx + 1);
 
         layers[layerIdx].setParam(newKey, val);
+        invalidateMasterParams();
+    }
+
+    /**
+     * Mixed precision training only: the full precision copy of the parameters held by the updater is now out of date
+     */
+    private void invalidateMasterParams() {
+        if (layerWiseConfigurations.getMixedPrecision() != null) {
+            Updater u = getUpdater(false);
+            if (u instanceof BaseMultiLayerUpdater) {
+                ((BaseMultiLayerUpdater) u).invalidateMasterParams();
+            }
+        }
     }
 
     /**
@@ -1487,6 +1506,8 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
             return; //No op
         }
 
+        invalidateMasterParams();
+
         if (flattenedParams != null && params.length() == flattenedParams.length()) {
             if (params != flattenedParams) {
                 flattenedParams.assign(params);
@@ -1787,9 +1808,19 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
      */
     protected Pair<Gradient, INDArray> calcBackpropGradients(INDArray epsilon, boolean withOutputLayer, boolean tbptt,
                                                              boolean returnInputActGrad) {
+        return calcBackpropGradients(epsilon, withOutputLayer, tbptt, returnInputActGrad, 1.0);
+    }
+
+    /**
+     * As per {@link #calcBackpropGradients(INDArray, boolean, boolean, boolean)}, but with the output layer gradients
+     * (and hence all other gradients) multiplied by the specified loss scale - used for mixed precision training
+     */
+    protected Pair<Gradient, INDArray> calcBackpropGradients(INDArray epsilon, boolean withOutputLayer, boolean tbptt,
+                                                             boolean returnInputActGrad, double lossScale) {
         if (flattenedGradients == null) {
             initGradientsView();
         }
+        gradientsLossScale = lossScale;
         String multiGradientKey;
         Gradient gradient = new DefaultGradient(flattenedGradients);
 
@@ -1919,6 +1950,16 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
                         }
                     }
 
+                    if(withOutputLayer && i == layers.length - 1 && lossScale != 1.0){
+                        //Mixed precision: scale the loss gradient, so small gradients don't underflow in backprop
+                        for(INDArray g : currPair.getFirst().gradientForVariable().values()){
+                            g.muli(lossScale);
+                        }
+                        if(currPair.getSecond() != null){
+                            currPair.getSecond().muli(lossScale);
+                        }
+                    }
+
                     if(currPair.getSecond() != null) {
                         //Edge case: may be null for Embedding layer, for example
                         validateArrayWorkspaces(workspaceMgr, currPair.getSecond(), ArrayType.ACTIVATION_GRAD, i,
@@ -2698,7 +2739,9 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
             }
             getOutputLayer().setInput(inputToOutputLayer, mgr);
             //Then: compute gradients
-            Pair<Gradient, INDArray> pair = calcBackpropGradients(null, true, false, false);
+            MixedPrecisionConfig mixedPrecision = layerWiseConfigurations.getMixedPrecision();
+            double lossScale = (mixedPrecision == null ? 1.0 : mixedPrecision.getLossScale());
+            Pair<Gradient, INDArray> pair = calcBackpropGradients(null, true, false, false, lossScale);
             this.gradient = (pair == null ? null : pair.getFirst());
 
             //Calculate score
@@ -3141,6 +3184,155 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
         }
     }
 
+    /**
+     * As per {@link #rnnTimeStep(INDArray)}, but using the provided (caller-owned) RNN state instead of the state
+     * stored in the RNN layers. The state stored in the layers is not modified by this method.<br>
+     * This allows a single network instance to serve any number of independent input streams (sessions): each stream
+     * keeps its own {@link RnnState}, which is passed in on each call and replaced by the returned state.<br>
+     * For higher throughput with many concurrent streams, use {@link #rnnTimeStepWithState(List, List)}.
+     *
+     * @param input Input to the network, for one or more time steps. See {@link #rnnTimeStep(INDArray)}
+     * @param state State returned by a previous call for this stream. May be null for a new stream (zero state)
+     * @return The network output (as per {@link #rnnTimeStep(INDArray)}) and the new state for this stream
+     */
+    public Pair<INDArray, RnnState> rnnTimeStepWithState(@NonNull INDArray input, RnnState state) {
+        return rnnTimeStepWithState(Collections.singletonList(input), Collections.singletonList(state)).get(0);
+    }
+
+    /**
+     * Batched version of {@link #rnnTimeStepWithState(INDArray, RnnState)}: the inputs and states for many independent
+     * streams are stacked into a single minibatch, a single {@link #rnnTimeStep(INDArray)} is performed, and the
+     * outputs and new states are split back out per stream.<br>
+     * All inputs must have the same rank and (for 3d input) the same number of time steps; each stream may have any
+     * minibatch size (usually 1). The state stored in the RNN layers is not modified by this method.<br>
+     * Calls to this method (and {@link #rnnTimeStepWithState(INDArray, RnnState)}) are synchronized on this network.
+     *
+     * @param inputs Inputs, one per stream
+     * @param states States, one per stream. Entries (or the list) may be null for new streams (zero state)
+     * @return Output and new state for each stream, in the same order as the inputs
+     */
+    public synchronized List<Pair<INDArray, RnnState>> rnnTimeStepWithState(@NonNull List<INDArray> inputs, List<RnnState> states) {
+        int n = inputs.size();
+        Preconditions.checkArgument(n > 0, "Inputs list must not be empty");
+        Preconditions.checkArgument(states == null || states.size() == n, "Number of states (%s) must match number of inputs (%s)",
+                (states == null ? 0 : states.size()), n);
+
+        List<Integer> rnnLayers = new ArrayList<>();
+        for (int i = 0; i < layers.length; i++) {
+            Layer l = layers[i];
+            if (l instanceof MultiLayerNetwork)
+                throw new UnsupportedOperationException("rnnTimeStepWithState is not supported for networks with nested MultiLayerNetwork layers");
+            if (l instanceof BaseWrapperLayer)
+                l = ((BaseWrapperLayer) l).getUnderlying();
+            if (l instanceof RecurrentLayer)
+                rnnLayers.add(i);
+        }
+
+        long[] sizes = new long[n];
+        for (int i = 0; i < n; i++) {
+            INDArray in = inputs.get(i);
+            Preconditions.checkArgument(in.rank() == inputs.get(0).rank() && (in.rank() != 3 || in.size(2) == inputs.get(0).size(2)),
+                    "All inputs must have the same rank and number of time steps: got %ndShape for input 0, %ndShape for input %s",
+                    inputs.get(0), in, i);
+            RnnState st = (states == null ? null : states.get(i));
+            Preconditions.checkArgument(st == null || st.numExamples() == in.size(0), "State for input %s is for %s examples," +
+                    " but input has minibatch size %s", i, (st == null ? 0 : st.numExamples()), in.size(0));
+            sizes[i] = in.size(0);
+        }
+
+        //Keep the layers' own state, so it can be restored afterwards
+        Map<Integer, Map<String, INDArray>> savedState = new HashMap<>();
+        for (Integer idx : rnnLayers)
+            savedState.put(idx, rnnGetPreviousState(idx));
+
+        try (MemoryWorkspace ws = Nd4j.getWorkspaceManager().scopeOutOfWorkspaces()) {
+            INDArray input = n == 1 ? inputs.get(0) : Nd4j.concat(0, inputs.toArray(new INDArray[n]));
+            for (Integer idx : rnnLayers)
+                rnnSetPreviousState(idx, stackRnnState(idx, states, sizes));
+
+            INDArray out = rnnTimeStep(input);
+
+            List<Map<Integer, Map<String, INDArray>>> newStates = new ArrayList<>(n);
+            for (int i = 0; i < n; i++)
+                newStates.add(new HashMap<Integer, Map<String, INDArray>>());
+            for (Integer idx : rnnLayers) {
+                Map<String, INDArray> layerState = rnnGetPreviousState(idx);
+                for (int i = 0; i < n; i++)
+                    newStates.get(i).put(idx, new HashMap<String, INDArray>());
+                for (Map.Entry<String, INDArray> e : layerState.entrySet()) {
+                    List<INDArray> split = splitExamples(e.getValue(), sizes);
+                    for (int i = 0; i < n; i++)
+                        newStates.get(i).get(idx).put(e.getKey(), split.get(i));
+                }
+            }
+
+            List<INDArray> outputs = splitExamples(out, sizes);
+            List<Pair<INDArray, RnnState>> result = new ArrayList<>(n);
+            for (int i = 0; i < n; i++)
+                result.add(new Pair<>(outputs.get(i), new RnnState(newStates.get(i), sizes[i])));
+            return result;
+        } finally {
+            for (Map.Entry<Integer, Map<String, INDArray>> e : savedState.entrySet())
+                rnnSetPreviousState(e.getKey(), e.getValue());
+        }
+    }
+
+    /**
+     * Stack the per-stream states for one layer along dimension 0. Streams without state get zeros
+     */
+    private Map<String, INDArray> stackRnnState(int layerIdx, List<RnnState> states, long[] sizes) {
+        List<Map<String, INDArray>> perStream = new ArrayList<>(sizes.length);
+        Map<String, INDArray> template = null;
+        for (int i = 0; i < sizes.length; i++) {
+            Map<String, INDArray> m = (states == null || states.get(i) == null ? null : states.get(i).getLayerState(layerIdx));
+            perStream.add(m);
+            if (template == null && m != null && !m.isEmpty())
+                template = m;
+        }
+
+        if (template == null)
+            return Collections.emptyMap();      //All new streams: use the layer's default (zero) initialization
+        if (sizes.length == 1)
+            return template;
+
+        Map<String, INDArray> out = new HashMap<>();
+        for (Map.Entry<String, INDArray> e : template.entrySet()) {
+            INDArray[] toStack = new INDArray[sizes.length];
+            for (int i = 0; i < sizes.length; i++) {
+                Map<String, INDArray> m = perStream.get(i);
+                if (m != null && m.containsKey(e.getKey())) {
+                    toStack[i] = m.get(e.getKey());
+                } else {
+                    long[] shape = e.getValue().shape().clone();
+                    shape[0] = sizes[i];
+                    toStack[i] = Nd4j.zeros(e.getValue().dataType(), shape);
+                }
+            }
+            out.put(e.getKey(), Nd4j.concat(0, toStack));
+        }
+        return out;
+    }
+
+    /**
+     * Split the array along dimension 0 into detached arrays with the specified sizes
+     */
+    private static List<INDArray> splitExamples(INDArray arr, long[] sizes) {
+        if (sizes.length == 1)
+            return Collections.singletonList(arr.isAttached() ? arr.detach() : arr);
+
+        List<INDArray> out = new ArrayList<>(sizes.length);
+        long start = 0;
+        for (long size : sizes) {
+            INDArrayIndex[] idx = new INDArrayIndex[arr.rank()];
+            idx[0] = NDArrayIndex.interval(start, start + size);
+            for (int j = 1; j < idx.length; j++)
+                idx[j] = NDArrayIndex.all();
+            out.add(arr.get(idx).dup());
+            start += size;
+        }
+        return out;
+    }
+
     /** Similar to rnnTimeStep and feedForward() methods. Difference here is that this method:<br>
      * (a) like rnnTimeStep does forward pass using stored state for RNN layers, and<br>
      * (b) unlike rnnTimeStep does not modify the RNN layer state<br>
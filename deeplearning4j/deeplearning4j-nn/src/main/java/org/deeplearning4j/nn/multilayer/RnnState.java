@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.deeplearning4j.nn.multilayer;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * RnnState: the recurrent state (stored history) of all RNN layers in a {@link MultiLayerNetwork}, for one stream
+ * of input (i.e., one session/sequence, possibly with more than one example).<br>
+ * Unlike the state stored internally in the RNN layers (as used by {@link MultiLayerNetwork#rnnTimeStep(INDArray)}),
+ * RnnState objects are owned by the caller: this allows a single network to serve any number of concurrent streams,
+ * via {@link MultiLayerNetwork#rnnTimeStepWithState(INDArray, RnnState)} and
+ * {@link MultiLayerNetwork#rnnTimeStepWithState(java.util.List, java.util.List)}.<br>
+ * RnnState instances are immutable, and contain only detached arrays. The contents are specific to the network
+ * that created them.
+ */
+public class RnnState implements Serializable {
+
+    private final Map<Integer, Map<String, INDArray>> layerStates;
+    private final long numExamples;
+
+    RnnState(Map<Integer, Map<String, INDArray>> layerStates, long numExamples) {
+        this.layerStates = layerStates;
+        this.numExamples = numExamples;
+    }
+
+    /**
+     * @return State for the specified layer index, or null if not present
+     */
+    Map<String, INDArray> getLayerState(int layerIdx) {
+        Map<String, INDArray> m = layerStates.get(layerIdx);
+        return m == null ? null : Collections.unmodifiableMap(m);
+    }
+
+    /**
+     * @return Number of examples (minibatch size) this state is for
+     */
+    public long numExamples() {
+        return numExamples;
+    }
+
+    /**
+     * @return Total size, in bytes, of the arrays in this state
+     */
+    public long sizeBytes() {
+        long bytes = 0;
+        for (Map<String, INDArray> m : layerStates.values()) {
+            for (INDArray arr : m.values()) {
+                bytes += arr.length() * arr.dataType().width();
+            }
+        }
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return "RnnState(numExamples=" + numExamples + ", layers=" + layerStates.keySet() + ")";
+    }
+}
@@ -0,0 +1,311 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.transferlearning;
+
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.InputPreProcessor;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.graph.GraphVertex;
+import org.deeplearning4j.nn.conf.graph.LayerVertex;
+import org.deeplearning4j.nn.conf.layers.ActivationLayer;
+import org.deeplearning4j.nn.conf.layers.BatchNormalization;
+import org.deeplearning4j.nn.conf.layers.ConvolutionLayer;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.DropoutLayer;
+import org.deeplearning4j.nn.conf.layers.Layer;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.params.BatchNormalizationParamInitializer;
+import org.deeplearning4j.nn.params.DefaultParamInitializer;
+import org.nd4j.linalg.activations.impl.ActivationIdentity;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.impl.broadcast.BroadcastMulOp;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.ops.transforms.Transforms;
+
+import java.util.*;
+
+/**
+ * Inference optimization pass for {@link MultiLayerNetwork} and {@link ComputationGraph} instances.<br>
+ * The returned network is a copy of the original (the original is not modified), with the following
+ * transformations applied:<br>
+ * 1. {@link DropoutLayer}s are removed, as they are an identity operation at inference time<br>
+ * 2. A {@link BatchNormalization} layer directly following a {@link ConvolutionLayer} or {@link DenseLayer} with
+ * identity activation is folded into the weights and bias of that layer, using the global mean/variance estimates.
+ * That is, W' = W * gamma / sqrt(var + eps) (per output channel) and b' = (b - mean) * gamma / sqrt(var + eps) + beta<br>
+ * 3. An {@link ActivationLayer} directly following a {@link ConvolutionLayer} or {@link DenseLayer} with identity
+ * activation is absorbed into that layer, so that bias and activation are applied in the layer's single pass<br>
+ * <br>
+ * Layers are only fused when the output of the first layer is used exclusively by the second, and no input
+ * preprocessor sits between them. The outputs of the optimized network match the original network's inference
+ * outputs, up to floating point precision.<br>
+ * Note that the optimized network is intended for inference only: the fused parameters are not equivalent to the
+ * original parameters for training (batch statistics, updater state and dropout are not retained).
+ */
+@Slf4j
+public class InferenceOptimizer {
+
+    private InferenceOptimizer() {
+    }
+
+    /**
+     * Create an inference-optimized copy of the specified network. The original network is not modified.
+     *
+     * @param net Network to optimize
+     * @return Optimized copy of the network
+     */
+    public static MultiLayerNetwork optimize(MultiLayerNetwork net) {
+        MultiLayerConfiguration conf = net.getLayerWiseConfigurations().clone();
+        List<NeuralNetConfiguration> confs = new ArrayList<>(conf.getConfs());
+        List<InputPreProcessor> preProcessors = new ArrayList<>();
+        List<Map<String, INDArray>> params = new ArrayList<>();
+        for (int i = 0; i < confs.size(); i++) {
+            preProcessors.add(conf.getInputPreProcessors().get(i));
+            params.add(dupParams(net.getLayer(i).paramTable()));
+        }
+
+        int i = 0;
+        while (i < confs.size()) {
+            Layer l = confs.get(i).getLayer();
+            if (l instanceof DropoutLayer && i + 1 < confs.size()
+                    && (preProcessors.get(i) == null || preProcessors.get(i + 1) == null)) {
+                //Dropout is a no-op at inference: any preprocessor before it applies to the next layer instead
+                if (preProcessors.get(i) != null) {
+                    preProcessors.set(i + 1, preProcessors.get(i));
+                }
+                remove(i, confs, preProcessors, params);
+                i = Math.max(0, i - 1);
+                continue;
+            }
+
+            if (i + 1 < confs.size() && preProcessors.get(i + 1) == null
+                    && fuse(confs.get(i), params.get(i), confs.get(i + 1).getLayer(), params.get(i + 1))) {
+                remove(i + 1, confs, preProcessors, params);
+                continue;
+            }
+            i++;
+        }
+
+        Map<Integer, InputPreProcessor> preProcessorMap = new HashMap<>();
+        for (int j = 0; j < preProcessors.size(); j++) {
+            if (preProcessors.get(j) != null) {
+                preProcessorMap.put(j, preProcessors.get(j));
+            }
+        }
+        conf.setConfs(confs);
+        conf.setInputPreProcessors(preProcessorMap);
+
+        MultiLayerNetwork out = new MultiLayerNetwork(conf);
+        out.init();
+        for (int j = 0; j < confs.size(); j++) {
+            copyParams(params.get(j), out.getLayer(j));
+        }
+
+        log.info("Optimized MultiLayerNetwork for inference: {} layers reduced to {}", net.getnLayers(), out.getnLayers());
+        return out;
+    }
+
+    /**
+     * Create an inference-optimized copy of the specified computation graph. The original graph is not modified.
+     * Network inputs and outputs (and their names) are unchanged.
+     *
+     * @param graph Computation graph to optimize
+     * @return Optimized copy of the computation graph
+     */
+    public static ComputationGraph optimize(ComputationGraph graph) {
+        ComputationGraphConfiguration conf = graph.getConfiguration().clone();
+        Map<String, GraphVertex> vertices = conf.getVertices();
+        Map<String, List<String>> vertexInputs = conf.getVertexInputs();
+        List<String> outputs = conf.getNetworkOutputs();
+
+        Map<String, Map<String, INDArray>> params = new HashMap<>();
+        for (Map.Entry<String, GraphVertex> e : vertices.entrySet()) {
+            if (e.getValue() instanceof LayerVertex) {
+                params.put(e.getKey(), dupParams(graph.getLayer(e.getKey()).paramTable()));
+            }
+        }
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (String name : vertices.keySet()) {
+                if (!(vertices.get(name) instanceof LayerVertex) || outputs.contains(name)) {
+                    continue;
+                }
+                LayerVertex lv = (LayerVertex) vertices.get(name);
+                List<String> consumers = consumers(vertexInputs, name);
+
+                if (lv.getLayerConf().getLayer() instanceof DropoutLayer && lv.getPreProcessor() == null) {
+                    String input = vertexInputs.get(name).get(0);
+                    for (String c : consumers) {
+                        Collections.replaceAll(vertexInputs.get(c), name, input);
+                    }
+                    vertices.remove(name);
+                    vertexInputs.remove(name);
+                    params.remove(name);
+                    changed = true;
+                    break;
+                }
+
+                if (consumers.size() != 1 || outputs.contains(consumers.get(0))
+                        || !(vertices.get(consumers.get(0)) instanceof LayerVertex)) {
+                    continue;
+                }
+                String next = consumers.get(0);
+                LayerVertex nextVertex = (LayerVertex) vertices.get(next);
+                if (nextVertex.getPreProcessor() != null || vertexInputs.get(next).size() != 1) {
+                    continue;
+                }
+
+                if (fuse(lv.getLayerConf(), params.get(name), nextVertex.getLayerConf().getLayer(), params.get(next))) {
+                    for (String c : consumers(vertexInputs, next)) {
+                        Collections.replaceAll(vertexInputs.get(c), next, name);
+                    }
+                    vertices.remove(next);
+                    vertexInputs.remove(next);
+                    params.remove(next);
+                    changed = true;
+                    break;
+                }
+            }
+        }
+
+        ComputationGraph out = new ComputationGraph(conf);
+        out.init();
+        for (Map.Entry<String, Map<String, INDArray>> e : params.entrySet()) {
+            copyParams(e.getValue(), out.getLayer(e.getKey()));
+        }
+
+        log.info("Optimized ComputationGraph for inference: {} vertices reduced to {}", graph.getVertices().length,
+                out.getVertices().length);
+        return out;
+    }
+
+    /**
+     * Attempt to fuse layer "next" into layer "conf", modifying the configuration and parameters of "conf" in-place.
+     *
+     * @return True if the layers were fused (and hence "next" should be removed), false otherwise
+     */
+    protected static boolean fuse(NeuralNetConfiguration conf, Map<String, INDArray> params, Layer next,
+                                  Map<String, INDArray> nextParams) {
+        Layer l = conf.getLayer();
+        boolean isConv = l.getClass() == ConvolutionLayer.class;
+        boolean isDense = l.getClass() == DenseLayer.class && !((DenseLayer) l).hasLayerNorm();
+        if (!(isConv || isDense) || !(((org.deeplearning4j.nn.conf.layers.BaseLayer) l).getActivationFn() instanceof ActivationIdentity)) {
+            return false;
+        }
+
+        if (next instanceof ActivationLayer) {
+            if (((ActivationLayer) next).getActivationFn() == null) {
+                return false;
+            }
+            ((org.deeplearning4j.nn.conf.layers.BaseLayer) l).setActivationFn(((ActivationLayer) next).getActivationFn());
+            return true;
+        }
+
+        if (next instanceof BatchNormalization) {
+            BatchNormalization bn = (BatchNormalization) next;
+            //Note that the built-in BatchNormalization implementation only applies locked gamma/beta values when both
+            // differ from their defaults; only the unambiguous (gamma=1, beta=0) locked case is folded
+            if (bn.isLockGammaBeta() && (bn.getGamma() != 1.0 || bn.getBeta() != 0.0)) {
+                return false;
+            }
+            foldBatchNorm(conf, params, bn, nextParams, isConv);
+            return true;
+        }
+
+        return false;
+    }
+
+    protected static void foldBatchNorm(NeuralNetConfiguration conf, Map<String, INDArray> params, BatchNormalization bn,
+                                        Map<String, INDArray> bnParams, boolean isConv) {
+        INDArray w = params.get(DefaultParamInitializer.WEIGHT_KEY);
+        long nOut = bn.getNOut();
+
+        INDArray mean = bnParams.get(BatchNormalizationParamInitializer.GLOBAL_MEAN).reshape(nOut);
+        INDArray var;
+        if (bn.isUseLogStd()) {
+            //var = (10^(log10(s)))^2
+            INDArray log10s = bnParams.get(BatchNormalizationParamInitializer.GLOBAL_LOG_STD).reshape(nOut);
+            var = Transforms.pow(Nd4j.valueArrayOf(log10s.shape(), 10.0, log10s.dataType()), log10s);
+            var.muli(var);
+        } else {
+            var = bnParams.get(BatchNormalizationParamInitializer.GLOBAL_VAR).reshape(nOut).dup();
+        }
+
+        //scale = gamma / sqrt(var + eps)
+        INDArray scale = Transforms.sqrt(var.addi(bn.getEps()), false).rdivi(1.0);
+        if (!bn.isLockGammaBeta()) {
+            scale.muli(bnParams.get(BatchNormalizationParamInitializer.GAMMA).reshape(nOut));
+        }
+
+        //Conv weights: [nOut, nIn, kH, kW]; dense weights: [nIn, nOut]
+        Nd4j.getExecutioner().exec(new BroadcastMulOp(w, scale, w, isConv ? 0 : 1));
+
+        //b' = (b - mean) * scale + beta
+        INDArray b = params.get(DefaultParamInitializer.BIAS_KEY);
+        INDArray newBias = (b == null ? mean.neg() : b.reshape(nOut).sub(mean)).muli(scale);
+        if (!bn.isLockGammaBeta()) {
+            newBias.addi(bnParams.get(BatchNormalizationParamInitializer.BETA).reshape(nOut));
+        }
+        params.put(DefaultParamInitializer.BIAS_KEY, newBias);
+
+        Layer l = conf.getLayer();
+        if (l instanceof ConvolutionLayer) {
+            ((ConvolutionLayer) l).setHasBias(true);
+        } else {
+            ((DenseLayer) l).setHasBias(true);
+        }
+        conf.clearVariables();
+    }
+
+    private static Map<String, INDArray> dupParams(Map<String, INDArray> paramTable) {
+        Map<String, INDArray> out = new LinkedHashMap<>();
+        for (Map.Entry<String, INDArray> e : paramTable.entrySet()) {
+            out.put(e.getKey(), e.getValue().dup());
+        }
+        return out;
+    }
+
+    private static void copyParams(Map<String, INDArray> params, org.deeplearning4j.nn.api.Layer layer) {
+        for (Map.Entry<String, INDArray> e : params.entrySet()) {
+            INDArray p = layer.getParam(e.getKey());
+            p.assign(e.getValue().reshape(p.shape()));
+        }
+    }
+
+    private static List<String> consumers(Map<String, List<String>> vertexInputs, String vertex) {
+        List<String> out = new ArrayList<>();
+        for (Map.Entry<String, List<String>> e : vertexInputs.entrySet()) {
+            for (String s : e.getValue()) {
+                if (s.equals(vertex)) {
+                    out.add(e.getKey());
+                }
+            }
+        }
+        return out;
+    }
+
+    private static void remove(int idx, List<NeuralNetConfiguration> confs, List<InputPreProcessor> preProcessors,
+                               List<Map<String, INDArray>> params) {
+        confs.remove(idx);
+        preProcessors.remove(idx);
+        params.remove(idx);
+    }
+}
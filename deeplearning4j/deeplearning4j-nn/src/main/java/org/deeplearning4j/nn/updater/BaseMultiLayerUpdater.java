@@ -21,6 +21,7 @@ import org.deeplearning4j.nn.api.Model;
 import org.deeplearning4j.nn.api.Trainable;
 import org.deeplearning4j.nn.api.Updater;
 import org.deeplearning4j.nn.conf.GradientNormalization;
+import org.deeplearning4j.nn.conf.MixedPrecisionConfig;
 import org.deeplearning4j.nn.gradient.DefaultGradient;
 import org.deeplearning4j.nn.gradient.Gradient;
 import org.nd4j.base.Preconditions;
@@ -47,6 +48,11 @@ import java.util.*;
  *     however)<br>
  * are combined into a single {@link org.nd4j.linalg.learning.GradientUpdater} operation, instead of having a set of
  * smaller operations. A smaller number of larger operations improves performance, especially for GPUs.
+ * <p>
+ * For mixed precision training (see {@link MixedPrecisionConfig}) the updater operates on full precision copies of the
+ * parameters and gradients instead of the network's (lower precision) view arrays. The full precision (master) copy
+ * of the parameters is stored at the start of the updater state view array, so it is saved and restored along with
+ * the rest of the updater state.
  *
  * @author Alex Black
  */
@@ -60,6 +66,15 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
     protected boolean initializedMinibatchDivision;
     protected List<INDArray> gradientsForMinibatchDivision;
 
+    //Mixed precision training only (null otherwise): full precision parameters (a view of the updater state array),
+    // gradients, and per layer/variable views of the full precision gradients
+    protected INDArray masterParams;
+    protected INDArray masterGradients;
+    protected Map<Trainable, INDArray> masterLayerGradientViews;
+    protected Map<Trainable, Map<String, INDArray>> masterGradientViews;
+    protected List<INDArray> gradientsForLossScaling;
+    protected boolean masterParamsRequireSync;
+
     public BaseMultiLayerUpdater(T network) {
         this(network, null);
     }
@@ -85,11 +100,38 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
 
         INDArray paramsView = network.params();
         INDArray gradientView = getFlattenedGradientsView();
+
+        MixedPrecisionConfig mixedPrecision = getMixedPrecisionConfig();
+        boolean updaterRequiresInit = false;
+        int masterParamsLength = 0;
+        if (mixedPrecision != null && paramsView != null) {
+            //Mixed precision: updater state array is [master params, updater state], all in full precision
+            masterParamsLength = (int) paramsView.length();
+            long stateLength = masterParamsLength + updaterStateSize(layers);
+            if (updaterState == null) {
+                updaterState = Nd4j.createUninitialized(mixedPrecision.getMasterDataType(), new long[] {1, stateLength}, Nd4j.order());
+                updaterRequiresInit = true;
+            } else {
+                Preconditions.checkState(updaterState.length() == stateLength, "Invalid updater state for mixed precision" +
+                        " training: expected length %s (parameters plus updater state), got length %s", stateLength, updaterState.length());
+            }
+            masterParams = updaterState.get(NDArrayIndex.interval(0, 0, true), NDArrayIndex.interval(0, masterParamsLength));
+            masterGradients = Nd4j.createUninitialized(mixedPrecision.getMasterDataType(), new long[] {1, masterParamsLength}, 'f');
+            masterLayerGradientViews = new IdentityHashMap<>();
+            masterGradientViews = new IdentityHashMap<>();
+            //Master params are set from the network params before the first update
+            masterParamsRequireSync = updaterRequiresInit;
+
+            paramsView = masterParams;
+            gradientView = masterGradients;
+        }
+
         int paramsViewSoFar = 0;
         int currentUpdaterOffset = 0;
         for (int i = 0; i < layers.length; i++) {
             Map<String, INDArray> layerParamTable = layers[i].paramTable(false);
             if (layerParamTable != null) {
+                int layerParamsStart = paramsViewSoFar;
                 List<String> variables = new ArrayList<>(layerParamTable.keySet()); //Is from a set, but iteration order should be fixed per layer as it's a from a LinkedHashSet
                 for (int j = 0; j < variables.size(); j++) {
                     String var = variables.get(j);
@@ -133,20 +175,30 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
                                                         gradientViewSubset));
                     }
 
+                    if (masterGradientViews != null && gradientViewSubset != null) {
+                        if (!masterGradientViews.containsKey(layers[i])) {
+                            masterGradientViews.put(layers[i], new HashMap<String, INDArray>());
+                        }
+                        masterGradientViews.get(layers[i]).put(var, gradientViewSubset);
+                    }
+
                     lastLayer = layers[i];
                     lastVariable = variables.get(j);
                     updaterStateSize += updaterStateSizeThisVariable;
                     paramsViewSoFar += paramSizeThisVariable;
                     currentUpdaterOffset += updaterStateSizeThisVariable;
                 }
+
+                if (masterLayerGradientViews != null && paramsViewSoFar > layerParamsStart) {
+                    masterLayerGradientViews.put(layers[i], gradientView.get(NDArrayIndex.interval(0, 0, true),
+                            NDArrayIndex.interval(layerParamsStart, paramsViewSoFar)));
+                }
             }
         }
 
         //Initialize the updater state, if required
-        boolean updaterRequiresInit = false;
         if (updaterState != null) {
             updaterStateViewArray = updaterState;
-            updaterRequiresInit = false;
         } else if (updaterStateSize > 0) {
             //May be 0 if all SGD or NONE updaters, for example
             updaterStateViewArray = Nd4j.createUninitialized(network.params().dataType(), new long[] {1, updaterStateSize}, Nd4j.order());
@@ -154,7 +206,7 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
         }
 
         //Create and set up the updaters, for the updater blocks:
-        int updaterViewSoFar = 0;
+        int updaterViewSoFar = masterParamsLength;
         paramsViewSoFar = 0;
         for (int i = 0; i < updaterBlocks.size(); i++) {
             UpdaterBlock ub = updaterBlocks.get(i);
@@ -173,6 +225,9 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
                 INDArray gradientViewSubset = gradientView.get(NDArrayIndex.interval(0, 0, true),
                                 NDArrayIndex.interval(paramsViewSoFar, paramsViewSoFar + gradSize));
                 ub.setGradientView(gradientViewSubset);
+                INDArray paramsViewSubset = paramsView.get(NDArrayIndex.interval(0, 0, true),
+                                NDArrayIndex.interval(paramsViewSoFar, paramsViewSoFar + gradSize));
+                ub.setParamsView(paramsViewSubset);
             }
 
             ub.init();
@@ -182,6 +237,22 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
         }
     }
 
+    /**
+     * @return Total updater state size for the specified layers
+     */
+    protected static long updaterStateSize(Trainable[] layers) {
+        long size = 0;
+        for (Trainable t : layers) {
+            Map<String, INDArray> paramTable = t.paramTable(false);
+            if (paramTable == null)
+                continue;
+            for (Map.Entry<String, INDArray> e : paramTable.entrySet()) {
+                size += t.getConfig().getUpdaterByParam(e.getKey()).stateSize(e.getValue().length());
+            }
+        }
+        return size;
+    }
+
     /**
      *
      * @return Array of layers, in the correct order (i.e., same order as the parameter/gradient/updater flattening
@@ -204,6 +275,35 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
      */
     protected abstract boolean isMiniBatch();
 
+    /**
+     * @return The mixed precision training configuration for the model, or null if mixed precision training is not used
+     */
+    protected MixedPrecisionConfig getMixedPrecisionConfig() {
+        return null;
+    }
+
+    /**
+     * Mixed precision training only: the loss scale that the network gradients were calculated with. This is the
+     * current loss scale for gradients calculated as part of fitting, but 1.0 for gradients calculated via external
+     * errors (backpropGradient) or calculateGradients, which are not scaled
+     */
+    protected double getGradientsLossScale() {
+        return 1.0;
+    }
+
+    /**
+     * Mixed precision training only: mark the full precision (master) copy of the parameters as out of date, so it is
+     * set from the network parameters before the next update. This should be called whenever the network parameters
+     * are modified other than via this updater. The network setParams, setParamTable and setParam methods call this;
+     * code that writes to the parameter arrays directly (for example, {@code params().assign(...)}) must call it
+     * explicitly. No-op if mixed precision training is not used.
+     */
+    public void invalidateMasterParams() {
+        if (masterParams != null) {
+            masterParamsRequireSync = true;
+        }
+    }
+
     /**
      * Set the view array. Note that this does an assign operation - the provided array is not stored internally.
      *
@@ -221,6 +321,8 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
             throw new IllegalStateException("Invalid input: view arrays differ in length. " + "Expected length "
                             + this.updaterStateViewArray.length() + ", got length " + viewArray.length());
         this.updaterStateViewArray.assign(viewArray);
+        //Mixed precision: the master parameters are part of the updater state, and have now been set
+        masterParamsRequireSync = false;
     }
 
     @Override
@@ -255,18 +357,68 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
      * 1. Pre-apply: gradient clipping, etc on a per-layer basis
      * 2. Execute the updater (Adam, Nesterov momentum, etc) - in blocks of layers at a time
      * 3. Divide by minibatch size
+     * <p>
+     * Not supported for mixed precision training (other than for external gradients), as the update needs to be
+     * applied to the full precision parameters: use {@link #updateAndStep(Gradient, int, int, int, LayerWorkspaceMgr)}
      *
      * @param gradient  Gradient to updater
      * @param iteration The current iteration (i.e., number of parameter updates so far)
      * @param batchSize The current minibatch size (number of examples)
      */
     public synchronized void update(Gradient gradient, int iteration, int epoch, int batchSize, LayerWorkspaceMgr workspaceMgr) {
+        update(gradient, iteration, epoch, batchSize, workspaceMgr, false);
+    }
+
+    /**
+     * As per {@link #update(Gradient, int, int, int, LayerWorkspaceMgr)}, but also subtracts the resulting update from
+     * the network parameters - i.e., the equivalent of the update followed by the default (negative gradient) step
+     * function. Where supported, the updater and the parameter update are applied in a single pass - see
+     * {@link FusedUpdater}.<br>
+     * After this call, the gradient view array holds the update, as per the standard update method.
+     *
+     * @param gradient  Gradient to updater
+     * @param iteration The current iteration (i.e., number of parameter updates so far)
+     * @param batchSize The current minibatch size (number of examples)
+     * @return True if the parameters have been updated. False otherwise (external gradients), in which case only the
+     * gradient has been updated, and the caller is responsible for applying the update to the parameters
+     */
+    public synchronized boolean updateAndStep(Gradient gradient, int iteration, int epoch, int batchSize, LayerWorkspaceMgr workspaceMgr) {
+        return update(gradient, iteration, epoch, batchSize, workspaceMgr, true);
+    }
+
+    protected boolean update(Gradient gradient, int iteration, int epoch, int batchSize, LayerWorkspaceMgr workspaceMgr,
+                    boolean applyStep) {
 
         //First: check if gradient is standard or external...
         //In a MultiLayerNetwork, the INDArray returned by .gradient() is always the standard full view array
         // hence should be the same object under normal circumstances
         boolean isExternal = gradient.gradient() != getFlattenedGradientsView();
 
+        MixedPrecisionConfig mixedPrecision = (masterParams == null || isExternal ? null : getMixedPrecisionConfig());
+        if (mixedPrecision != null) {
+            //The update has to be applied to the full precision parameters: applying it to the network parameters
+            // (via an accumulator, a non-default step function or another optimization algorithm) would be lost when
+            // the network parameters are next set from the full precision parameters
+            if (!applyStep) {
+                throw new IllegalStateException("Mixed precision training requires the updater to apply the update " +
+                        "to the parameters: gradient accumulators (for example, ParallelWrapper or Spark shared " +
+                        "training), step functions other than the default (negative gradient) step function, and " +
+                        "optimization algorithms other than stochastic gradient descent are not supported. Use " +
+                        "updateAndStep instead of update when updating the network manually");
+            }
+            if (masterParamsRequireSync) {
+                masterParams.assign(getParams());
+                masterParamsRequireSync = false;
+            }
+            //Convert to full precision and unscale. Skip the update entirely if any gradients overflowed
+            if (!toMasterGradients(getGradientsLossScale())) {
+                mixedPrecision.onIteration(true);
+                getFlattenedGradientsView().assign(0);
+                return true;
+            }
+            gradient = toMasterGradient(gradient);
+        }
+
         //Split up the gradients on a per-layer basis, for pre-apply
         Map<String, Gradient> layerGradients = new HashMap<>();
 
@@ -310,22 +462,79 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
             //OK for LayerUpdater as this is part of layerwise pretraining
             workspaceMgr.assertNotOpen(ArrayType.UPDATER_WORKING_MEM, "Updater working memory");
         }
+        //External gradients: the parameters the gradient applies to aren't necessarily this network's parameters
+        applyStep &= !isExternal;
         for (UpdaterBlock ub : updaterBlocks) {
             if (ub.skipDueToPretrainConfig(this instanceof LayerUpdater)) {
                 //Should skip some updater blocks sometimes
                 //For example, VAE decoder params while doing supervised backprop
+                if (applyStep && ub.getParamsView() != null) {
+                    //Consistent with the step function, which is applied to the full gradient view
+                    ub.getParamsView().subi(ub.getGradientView());
+                }
                 continue;
             }
             try(MemoryWorkspace ws = workspaceMgr.notifyScopeEntered(ArrayType.UPDATER_WORKING_MEM)){
                 if (isExternal) {
                     //RL4J etc type case: calculate gradients in 1 net, update them in another
                     ub.updateExternalGradient(iteration, epoch, gradient.gradient(), getParams());
+                } else if (applyStep) {
+                    ub.updateAndStep(iteration, epoch);
                 } else {
                     //Standard case
                     ub.update(iteration, epoch);
                 }
             }
         }
+
+        if (mixedPrecision != null) {
+            getParams().assign(masterParams);
+            //As per full precision training, the network gradient view holds the update after this method is called
+            getFlattenedGradientsView().assign(masterGradients);
+            mixedPrecision.onIteration(false);
+        }
+        return applyStep;
+    }
+
+    /**
+     * Mixed precision training: copy the network gradients to the full precision gradients array, and divide by the
+     * loss scale. Gradients for parameters that aren't divided by the minibatch size (which are not actually gradients,
+     * such as batch norm mean/variance updates) aren't scaled during backprop, and hence aren't unscaled here
+     *
+     * @return False if any of the gradients overflowed (i.e., are infinite or NaN), true otherwise
+     */
+    protected boolean toMasterGradients(double lossScale) {
+        masterGradients.assign(getFlattenedGradientsView());
+        if (lossScale != 1.0) {
+            if (gradientsForLossScaling == null) {
+                gradientsForLossScaling = getMinibatchDivisionSubsets(masterGradients);
+            }
+            for (INDArray arr : gradientsForLossScaling) {
+                arr.divi(lossScale);
+            }
+        }
+        double sum = masterGradients.sumNumber().doubleValue();
+        return !Double.isNaN(sum) && !Double.isInfinite(sum);
+    }
+
+    /**
+     * @return A gradient with the same variables as the specified (network) gradient, but with views of the full
+     * precision gradients array
+     */
+    protected Gradient toMasterGradient(Gradient gradient) {
+        Gradient out = new DefaultGradient(masterGradients);
+        for (Map.Entry<String, INDArray> e : gradient.gradientForVariable().entrySet()) {
+            String key = e.getKey();
+            int idx = key.lastIndexOf('_');
+            Trainable layer = (idx < 0 ? null : layersByName.get(key.substring(0, idx)));
+            Map<String, INDArray> views = (layer == null ? null : masterGradientViews.get(layer));
+            INDArray view = (views == null ? null : views.get(key.substring(idx + 1)));
+            if (view == null) {
+                throw new IllegalStateException("Could not find full precision gradient for variable \"" + key + "\"");
+            }
+            out.setGradientFor(key, view);
+        }
+        return out;
     }
 
     protected void divideByMinibatch(boolean isExternal, Gradient gradient, int batchSize){
@@ -334,7 +543,7 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
         // shouldn't be modified
 
         if(!initializedMinibatchDivision){
-            gradientsForMinibatchDivision = getMinibatchDivisionSubsets(getFlattenedGradientsView());
+            gradientsForMinibatchDivision = getMinibatchDivisionSubsets(masterGradients != null ? masterGradients : getFlattenedGradientsView());
             initializedMinibatchDivision = true;
         }
 
@@ -405,7 +614,7 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
             return; //no op
 
         final double threshold = layer.getConfig().getGradientNormalizationThreshold();
-        INDArray layerGradientView = layer.getGradientsViewArray();
+        INDArray layerGradientView = (masterLayerGradientViews != null ? masterLayerGradientViews.get(layer) : layer.getGradientsViewArray());
 
         switch (normalization) {
             case RenormalizeL2PerLayer:
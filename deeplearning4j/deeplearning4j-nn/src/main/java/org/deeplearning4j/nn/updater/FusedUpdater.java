@@ -0,0 +1,368 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.nn.updater;
+
+import org.bytedeco.javacpp.indexer.DoubleIndexer;
+import org.bytedeco.javacpp.indexer.FloatIndexer;
+import org.deeplearning4j.config.DL4JSystemProperties;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.learning.AdamUpdater;
+import org.nd4j.linalg.learning.GradientUpdater;
+import org.nd4j.linalg.learning.NesterovsUpdater;
+import org.nd4j.linalg.learning.RmsPropUpdater;
+import org.nd4j.linalg.learning.SgdUpdater;
+import org.nd4j.linalg.learning.config.Adam;
+import org.nd4j.linalg.learning.config.Nesterovs;
+import org.nd4j.linalg.learning.config.RmsProp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Fused updater step, used by {@link UpdaterBlock#updateAndStep(int, int)}: in a single pass over the block's
+ * flattened gradient, parameter and updater state views, this applies L2 regularization, the updater itself (state
+ * updates and step computation), weight decay, and finally subtracts the update from the parameters.<br>
+ * The unfused path executes a separate op for each of these steps (for Adam: about 10 passes over arrays the size of
+ * the updater block, plus the step function), which is memory bandwidth bound for large models.<br>
+ * <br>
+ * Supported: {@link SgdUpdater}, {@link AdamUpdater}, {@link NesterovsUpdater} and {@link RmsPropUpdater}, with
+ * L2 regularization and weight decay, for contiguous FLOAT or DOUBLE arrays on the CPU backend. Other configurations
+ * use the standard (unfused) path.<br>
+ * As with the unfused path, the gradient view holds the update after the step.<br>
+ * The fused path is opt-in: it is only used if the {@link DL4JSystemProperties#FUSED_UPDATER_ENABLED_PROPERTY} system
+ * property is set to true.
+ */
+public class FusedUpdater {
+    // number of elements processed at a time: small enough to stay in cache between reading and writing back
+    protected static final int CHUNK_SIZE = 4096;
+    // min number of elements for which chunks are processed in parallel
+    protected static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    private static Boolean cpuBackend;
+
+    //Scratch arrays for BlockArrays, reused across blocks and iterations
+    private static final ThreadLocal<double[][]> SCRATCH = new ThreadLocal<>();
+    private static final ThreadLocal<float[]> FLOAT_SCRATCH = new ThreadLocal<>();
+
+    private FusedUpdater() {
+    }
+
+    /**
+     * @return True if the fused updater has been enabled via system property, and the CPU backend is used
+     */
+    public static boolean isEnabled() {
+        String s = System.getProperty(DL4JSystemProperties.FUSED_UPDATER_ENABLED_PROPERTY);
+        if (s == null || !Boolean.parseBoolean(s))
+            return false;
+
+        if (cpuBackend == null) {
+            String backend = Nd4j.getExecutioner().getEnvironmentInformation().getProperty("backend");
+            cpuBackend = "CPU".equalsIgnoreCase(backend);
+        }
+        return cpuBackend;
+    }
+
+    /**
+     * @param updater  Gradient updater for the block
+     * @param gradient Gradient view for the block
+     * @param params   Parameters view for the block
+     * @return True if the fused step can be applied for the specified updater and arrays
+     */
+    public static boolean isSupported(GradientUpdater updater, INDArray gradient, INDArray params) {
+        INDArray[] state = state(updater);
+        if (state == null || gradient == null || params == null)
+            return false;
+        DataType dt = params.dataType();
+        if (dt != DataType.FLOAT && dt != DataType.DOUBLE)
+            return false;
+        if (!isContiguous(params, dt, params.length()) || !isContiguous(gradient, dt, params.length()))
+            return false;
+        for (INDArray s : state) {
+            if (!isContiguous(s, dt, params.length()))
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean isContiguous(INDArray arr, DataType dataType, long length) {
+        return arr != null && arr.dataType() == dataType && arr.length() == length
+                && (length == 1 || arr.elementWiseStride() == 1);
+    }
+
+    /**
+     * Apply the fused step. {@link #isSupported(GradientUpdater, INDArray, INDArray)} must be checked first.<br>
+     * The block is split into segments (one per parameter in the block), as the regularization coefficients may
+     * differ between the parameters of a block
+     *
+     * @param updater        Gradient updater for the block
+     * @param gradient       Gradient view for the block. Holds the update after this call
+     * @param params         Parameters view for the block. The update is subtracted from this
+     * @param segmentLengths Length of each segment. Must sum to the length of the block
+     * @param l2             L2 regularization coefficient, for each segment (applied before the updater)
+     * @param weightDecay    Weight decay coefficient - multiplied by the learning rate where applicable - for each
+     *                       segment (applied after the updater)
+     * @param iteration      Current iteration
+     * @param epoch          Current epoch
+     */
+    public static void apply(GradientUpdater updater, INDArray gradient, INDArray params, long[] segmentLengths,
+                    double[] l2, double[] weightDecay, int iteration, int epoch) {
+        Nd4j.getExecutioner().commit();
+        final Kernel kernel = kernel(updater, iteration, epoch);
+        final BlockArrays arrays = new BlockArrays(gradient, params, state(updater));
+
+        List<Callable<Void>> tasks = new ArrayList<>();
+        long start = 0;
+        for (int s = 0; s < segmentLengths.length; s++) {
+            long end = start + segmentLengths[s];
+            for (long c = start; c < end; c += CHUNK_SIZE) {
+                final long chunkStart = c;
+                final int n = (int) Math.min(CHUNK_SIZE, end - c);
+                final double segL2 = l2[s];
+                final double segWeightDecay = weightDecay[s];
+                tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        arrays.process(kernel, chunkStart, n, segL2, segWeightDecay);
+                        return null;
+                    }
+                });
+            }
+            start = end;
+        }
+
+        if (params.length() < PARALLEL_THRESHOLD || tasks.size() == 1) {
+            for (Callable<Void> t : tasks) {
+                try {
+                    t.call();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        } else {
+            try {
+                for (Future<Void> f : ForkJoinPool.commonPool().invokeAll(tasks)) {
+                    f.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted during fused updater step", e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Error during fused updater step", e.getCause());
+            }
+        }
+    }
+
+    /**
+     * @return Updater state arrays, in the order expected by the kernel, or null if the updater is not supported
+     */
+    private static INDArray[] state(GradientUpdater updater) {
+        if (updater instanceof SgdUpdater) {
+            return new INDArray[0];
+        } else if (updater instanceof AdamUpdater) {
+            return new INDArray[] {((AdamUpdater) updater).getM(), ((AdamUpdater) updater).getV()};
+        } else if (updater instanceof NesterovsUpdater) {
+            return new INDArray[] {((NesterovsUpdater) updater).getV()};
+        } else if (updater instanceof RmsPropUpdater) {
+            return new INDArray[] {((RmsPropUpdater) updater).getLastGradient()};
+        }
+        return null;
+    }
+
+    private static Kernel kernel(GradientUpdater updater, int iteration, int epoch) {
+        if (updater instanceof SgdUpdater) {
+            return new SgdKernel(((SgdUpdater) updater).getConfig().getLearningRate(iteration, epoch));
+        } else if (updater instanceof AdamUpdater) {
+            Adam c = ((AdamUpdater) updater).getConfig();
+            double beta1t = Math.pow(c.getBeta1(), iteration + 1);
+            double beta2t = Math.pow(c.getBeta2(), iteration + 1);
+            double alphat = c.getLearningRate(iteration, epoch) * Math.sqrt(1 - beta2t) / (1 - beta1t);
+            if (Double.isNaN(alphat) || alphat == 0.0)
+                alphat = c.getEpsilon();
+            return new AdamKernel(c.getBeta1(), c.getBeta2(), alphat, c.getEpsilon());
+        } else if (updater instanceof NesterovsUpdater) {
+            Nesterovs c = ((NesterovsUpdater) updater).getConfig();
+            return new NesterovsKernel(c.getLearningRate(iteration, epoch), c.currentMomentum(iteration, epoch));
+        } else if (updater instanceof RmsPropUpdater) {
+            RmsProp c = ((RmsPropUpdater) updater).getConfig();
+            return new RmsPropKernel(c.getLearningRate(iteration, epoch), c.getRmsDecay(), c.getEpsilon());
+        }
+        throw new IllegalStateException("Fused step not supported for updater: " + updater.getClass().getName());
+    }
+
+    /**
+     * Reads chunks of the gradient, parameters and updater state into scratch arrays, applies the kernel, and writes
+     * them back
+     */
+    private static class BlockArrays {
+        private final INDArray[] arrays;
+        private final boolean isFloat;
+
+        private BlockArrays(INDArray gradient, INDArray params, INDArray[] state) {
+            arrays = new INDArray[2 + state.length];
+            arrays[0] = gradient;
+            arrays[1] = params;
+            System.arraycopy(state, 0, arrays, 2, state.length);
+            isFloat = params.dataType() == DataType.FLOAT;
+        }
+
+        private void process(Kernel kernel, long start, int n, double l2, double weightDecay) {
+            double[][] s = SCRATCH.get();
+            if (s == null || s.length < arrays.length) {
+                s = new double[arrays.length][CHUNK_SIZE];
+                SCRATCH.set(s);
+            }
+
+            for (int i = 0; i < arrays.length; i++)
+                read(arrays[i], start, s[i], n);
+
+            double[] g = s[0];
+            double[] p = s[1];
+            for (int i = 0; i < n; i++) {
+                //Before updater: L2 regularization
+                double grad = g[i] + l2 * p[i];
+                //Updater, then post updater: weight decay
+                double update = kernel.update(s, i, grad) + weightDecay * p[i];
+                g[i] = update;
+                p[i] -= update;
+            }
+
+            for (int i = 0; i < arrays.length; i++)
+                write(arrays[i], start, s[i], n);
+        }
+
+        private void read(INDArray arr, long start, double[] out, int n) {
+            long offset = arr.data().offset() + start;
+            if (isFloat) {
+                float[] f = floatScratch();
+                ((FloatIndexer) arr.data().indexer()).get(offset, f, 0, n);
+                for (int i = 0; i < n; i++)
+                    out[i] = f[i];
+            } else {
+                ((DoubleIndexer) arr.data().indexer()).get(offset, out, 0, n);
+            }
+        }
+
+        private void write(INDArray arr, long start, double[] in, int n) {
+            long offset = arr.data().offset() + start;
+            if (isFloat) {
+                float[] f = floatScratch();
+                for (int i = 0; i < n; i++)
+                    f[i] = (float) in[i];
+                ((FloatIndexer) arr.data().indexer()).put(offset, f, 0, n);
+            } else {
+                ((DoubleIndexer) arr.data().indexer()).put(offset, in, 0, n);
+            }
+        }
+
+        private float[] floatScratch() {
+            float[] f = FLOAT_SCRATCH.get();
+            if (f == null) {
+                f = new float[CHUNK_SIZE];
+                FLOAT_SCRATCH.set(f);
+            }
+            return f;
+        }
+    }
+
+    /**
+     * Updater rule for a single element. arrays[0] and arrays[1] are the gradient and parameters, arrays[2...] the
+     * updater state (modified in place)
+     */
+    private interface Kernel {
+        double update(double[][] arrays, int i, double gradient);
+    }
+
+    private static class SgdKernel implements Kernel {
+        private final double lr;
+
+        private SgdKernel(double lr) {
+            this.lr = lr;
+        }
+
+        @Override
+        public double update(double[][] arrays, int i, double gradient) {
+            return lr * gradient;
+        }
+    }
+
+    private static class AdamKernel implements Kernel {
+        private final double beta1;
+        private final double beta2;
+        private final double alphat;
+        private final double epsilon;
+
+        private AdamKernel(double beta1, double beta2, double alphat, double epsilon) {
+            this.beta1 = beta1;
+            this.beta2 = beta2;
+            this.alphat = alphat;
+            this.epsilon = epsilon;
+        }
+
+        @Override
+        public double update(double[][] arrays, int i, double gradient) {
+            double m = beta1 * arrays[2][i] + (1 - beta1) * gradient;
+            double v = beta2 * arrays[3][i] + (1 - beta2) * gradient * gradient;
+            arrays[2][i] = m;
+            arrays[3][i] = v;
+            return alphat * m / (Math.sqrt(v) + epsilon);
+        }
+    }
+
+    private static class NesterovsKernel implements Kernel {
+        private final double lr;
+        private final double momentum;
+
+        private NesterovsKernel(double lr, double momentum) {
+            this.lr = lr;
+            this.momentum = momentum;
+        }
+
+        @Override
+        public double update(double[][] arrays, int i, double gradient) {
+            //As per NesterovsUpdater: params -= mu * vPrev + (-1 - mu) * v, with v = mu * vPrev - lr * gradient
+            double vPrev = arrays[2][i];
+            double v = momentum * vPrev - lr * gradient;
+            arrays[2][i] = v;
+            return momentum * vPrev + (-momentum - 1) * v;
+        }
+    }
+
+    private static class RmsPropKernel implements Kernel {
+        private final double lr;
+        private final double rmsDecay;
+        private final double epsilon;
+
+        private RmsPropKernel(double lr, double rmsDecay, double epsilon) {
+            this.lr = lr;
+            this.rmsDecay = rmsDecay;
+            this.epsilon = epsilon;
+        }
+
+        @Override
+        public double update(double[][] arrays, int i, double gradient) {
+            double cache = rmsDecay * arrays[2][i] + (1 - rmsDecay) * gradient * gradient;
+            arrays[2][i] = cache;
+            return lr * gradient / (Math.sqrt(cache) + epsilon);
+        }
+    }
+}
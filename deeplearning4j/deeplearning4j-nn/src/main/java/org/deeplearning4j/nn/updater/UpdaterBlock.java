@@ -28,7 +28,9 @@ import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.indexing.NDArrayIndex;
 import org.nd4j.linalg.learning.GradientUpdater;
+import org.nd4j.linalg.learning.regularization.L2Regularization;
 import org.nd4j.linalg.learning.regularization.Regularization;
+import org.nd4j.linalg.learning.regularization.WeightDecay;
 import org.nd4j.linalg.ops.transforms.Transforms;
 
 import java.util.ArrayList;
@@ -50,6 +52,7 @@ public class UpdaterBlock {
 
     private INDArray updaterView;
     private INDArray gradientView;
+    private INDArray paramsView;
     private boolean updaterViewRequiresInitialization;
 
     private GradientUpdater gradientUpdater;
@@ -130,6 +133,64 @@ public class UpdaterBlock {
         update(iteration, epoch, true, fullNetworkGradientView, fullNetworkParamsArray);
     }
 
+    /**
+     * Update the gradient for this block, and subtract the resulting update from the parameters for this block - i.e.,
+     * the equivalent of {@link #update(int, int)} followed by the default (negative gradient) step function.<br>
+     * Where supported (see {@link FusedUpdater}), this is done in a single pass over the block's arrays
+     *
+     * @param iteration The current iteration (i.e., total number of parameter updates so far)
+     */
+    public void updateAndStep(int iteration, int epoch) {
+        if (gradientUpdater == null) {
+            init();
+        }
+
+        if (layersAndVariablesInBlock.get(0).getLayer().numParams() == 0) {
+            //No params for this layer
+            return;
+        }
+
+        if (!applyFused(iteration, epoch)) {
+            update(iteration, epoch);
+            paramsView.subi(gradientView);
+        }
+    }
+
+    protected boolean applyFused(int iteration, int epoch) {
+        if (!FusedUpdater.isEnabled() || !FusedUpdater.isSupported(gradientUpdater, gradientView, paramsView))
+            return false;
+
+        boolean hasLR = gradientUpdater.getConfig().hasLearningRate();
+        double lr = (hasLR ? gradientUpdater.getConfig().getLearningRate(iteration, epoch) : 1.0);
+
+        int n = layersAndVariablesInBlock.size();
+        long[] segmentLengths = new long[n];
+        double[] l2 = new double[n];
+        double[] weightDecay = new double[n];
+        for (int i = 0; i < n; i++) {
+            ParamState p = layersAndVariablesInBlock.get(i);
+            segmentLengths[i] = p.getParamOffsetEnd() - p.getParamOffsetStart();
+
+            List<Regularization> l = p.getLayer().getConfig().getRegularizationByParam(p.getParamName());
+            if (l != null) {
+                for (Regularization r : l) {
+                    if (r instanceof L2Regularization) {
+                        l2[i] += ((L2Regularization) r).getL2().valueAt(iteration, epoch);
+                    } else if (r instanceof WeightDecay) {
+                        WeightDecay wd = (WeightDecay) r;
+                        weightDecay[i] += wd.getCoeff().valueAt(iteration, epoch) * (wd.isApplyLR() ? lr : 1.0);
+                    } else {
+                        //L1 and custom regularization: not supported by the fused step
+                        return false;
+                    }
+                }
+            }
+        }
+
+        FusedUpdater.apply(gradientUpdater, gradientView, paramsView, segmentLengths, l2, weightDecay, iteration, epoch);
+        return true;
+    }
+
     private void update(int iteration, int epoch, boolean externalGradient, INDArray fullNetworkGradientView,
                     INDArray fullNetworkParamsArray) {
         //Initialize the updater, if necessary
@@ -18,6 +18,7 @@ package org.deeplearning4j.nn.updater.graph;
 
 import org.deeplearning4j.nn.api.Layer;
 import org.deeplearning4j.nn.api.Trainable;
+import org.deeplearning4j.nn.conf.MixedPrecisionConfig;
 import org.deeplearning4j.nn.graph.ComputationGraph;
 import org.deeplearning4j.nn.graph.vertex.GraphVertex;
 import org.deeplearning4j.nn.updater.BaseMultiLayerUpdater;
@@ -96,4 +97,14 @@ public class ComputationGraphUpdater extends BaseMultiLayerUpdater<ComputationGr
     protected boolean isMiniBatch() {
         return network.conf().isMiniBatch();
     }
+
+    @Override
+    protected MixedPrecisionConfig getMixedPrecisionConfig() {
+        return network.getConfiguration().getMixedPrecision();
+    }
+
+    @Override
+    protected double getGradientsLossScale() {
+        return network.getGradientsLossScale();
+    }
 }
@@ -27,6 +27,7 @@ import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
 import org.deeplearning4j.nn.gradient.Gradient;
 import org.deeplearning4j.nn.graph.ComputationGraph;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.updater.MultiLayerUpdater;
 import org.deeplearning4j.nn.updater.UpdaterCreator;
 import org.deeplearning4j.nn.updater.graph.ComputationGraphUpdater;
 import org.deeplearning4j.nn.workspace.LayerWorkspaceMgr;
@@ -77,6 +78,10 @@ public abstract class BaseOptimizer implements ConvexOptimizer {
 
     protected GradientsAccumulator accumulator;
 
+    //If true: the updater also applies the update to the parameters (see BaseMultiLayerUpdater#updateAndStep)
+    protected boolean applyStepInUpdater;
+    //Set by updateGradientAccordingToParams: true if the parameters have already been updated by the updater
+    protected boolean stepAppliedInUpdater;
 
     /**
      *
@@ -293,7 +298,13 @@ public abstract class BaseOptimizer implements ConvexOptimizer {
                     computationGraphUpdater = new ComputationGraphUpdater(graph);
                 }
             }
-            computationGraphUpdater.update(gradient, getIterationCount(model), getEpochCount(model), batchSize, workspaceMgr);
+            if (applyStepInUpdater) {
+                stepAppliedInUpdater = computationGraphUpdater.updateAndStep(gradient, getIterationCount(model),
+                                getEpochCount(model), batchSize, workspaceMgr);
+            } else {
+                stepAppliedInUpdater = false;
+                computationGraphUpdater.update(gradient, getIterationCount(model), getEpochCount(model), batchSize, workspaceMgr);
+            }
         } else {
             if (updater == null) {
                 try (MemoryWorkspace ws = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
@@ -302,7 +313,13 @@ public abstract class BaseOptimizer implements ConvexOptimizer {
             }
             Layer layer = (Layer) model;
 
-            updater.update(layer, gradient, getIterationCount(model), getEpochCount(model), batchSize, workspaceMgr);
+            if (applyStepInUpdater && model instanceof MultiLayerNetwork && updater instanceof MultiLayerUpdater) {
+                stepAppliedInUpdater = ((MultiLayerUpdater) updater).updateAndStep(gradient, getIterationCount(model),
+                                getEpochCount(model), batchSize, workspaceMgr);
+            } else {
+                stepAppliedInUpdater = false;
+                updater.update(layer, gradient, getIterationCount(model), getEpochCount(model), batchSize, workspaceMgr);
+            }
         }
     }
 
@@ -22,9 +22,12 @@ import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
 import org.deeplearning4j.nn.gradient.Gradient;
 import org.deeplearning4j.nn.graph.ComputationGraph;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.updater.FusedUpdater;
 import org.deeplearning4j.nn.workspace.LayerWorkspaceMgr;
 import org.deeplearning4j.optimize.api.StepFunction;
 import org.deeplearning4j.optimize.api.TrainingListener;
+import org.deeplearning4j.optimize.stepfunctions.NegativeDefaultStepFunction;
+import org.deeplearning4j.optimize.stepfunctions.NegativeGradientStepFunction;
 import org.nd4j.linalg.api.memory.MemoryWorkspace;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
@@ -60,6 +63,11 @@ public class StochasticGradientDescent extends BaseOptimizer {
             }
         }
 
+        //Without an accumulator, the update is applied to the params directly: the updater can do this as part of
+        // the update (in a single fused pass, where supported) instead of a separate step
+        //For mixed precision training, this is required to apply the update to the full precision (master) params
+        applyStepInUpdater = accumulator == null && (FusedUpdater.isEnabled() || isMixedPrecision(model))
+                        && isNegativeGradientStep(stepFunction);
         Pair<Gradient, Double> pair = gradientAndScore(workspaceMgr);
 
         Gradient gradient = pair.getFirst();
@@ -90,7 +98,8 @@ public class StochasticGradientDescent extends BaseOptimizer {
             // if there's no update available - just go on then
         } else {
             // if accumulator isn't used - we just to for direct updates application
-            stepFunction.step(params, gradient.gradient());
+            if (!stepAppliedInUpdater)
+                stepFunction.step(params, gradient.gradient());
         }
 
         //Note: model.params() is always in-place for MultiLayerNetwork and ComputationGraph, hence no setParams is necessary there
@@ -110,6 +119,20 @@ public class StochasticGradientDescent extends BaseOptimizer {
         return true;
     }
 
+    protected static boolean isNegativeGradientStep(StepFunction stepFunction) {
+        return stepFunction != null && (stepFunction.getClass() == NegativeDefaultStepFunction.class
+                        || stepFunction.getClass() == NegativeGradientStepFunction.class);
+    }
+
+    protected static boolean isMixedPrecision(Model model) {
+        if (model instanceof MultiLayerNetwork) {
+            return ((MultiLayerNetwork) model).getLayerWiseConfigurations().getMixedPrecision() != null;
+        } else if (model instanceof ComputationGraph) {
+            return ((ComputationGraph) model).getConfiguration().getMixedPrecision() != null;
+        }
+        return false;
+    }
+
     @Override
     public void preProcessLine() {}
 
@@ -23,18 +23,20 @@ import lombok.val;
 import org.deeplearning4j.exception.DL4JInvalidConfigException;
 import org.deeplearning4j.nn.api.Model;
 import org.deeplearning4j.optimize.api.StepFunction;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.CompressedUpdates;
 import org.deeplearning4j.optimize.solvers.accumulation.encoding.ResidualPostProcessor;
 import org.deeplearning4j.optimize.solvers.accumulation.encoding.ThresholdAlgorithm;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.UpdatesCompressionAlgorithm;
 import org.deeplearning4j.optimize.solvers.accumulation.encoding.residual.ResidualClippingPostProcessor;
 import org.deeplearning4j.optimize.solvers.accumulation.encoding.threshold.AdaptiveThresholdAlgorithm;
 import org.deeplearning4j.util.ThreadUtils;
 import org.nd4j.base.Preconditions;
 import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.api.memory.MemoryWorkspace;
 import org.nd4j.linalg.api.memory.conf.WorkspaceConfiguration;
 import org.nd4j.linalg.api.memory.enums.*;
 import org.nd4j.linalg.api.ndarray.INDArray;
-import org.nd4j.linalg.compression.ThresholdCompression;
 import org.nd4j.linalg.exception.ND4JIllegalStateException;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.util.AtomicThrowable;
@@ -43,12 +45,9 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Queue;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * This GradientsAccumulator is suited for CUDA backend.
@@ -63,9 +62,8 @@ public class EncodedGradientsAccumulator implements GradientsAccumulator, Regist
     protected int parties;
     @Getter
     protected MessageHandler handler;
-    protected List<BlockingQueue<INDArray>> messages = new ArrayList<>();
-    protected List<MemoryWorkspace> workspaces = new ArrayList<>();
-    protected List<ReentrantLock> locks = new ArrayList<>();
+    // single copy of each update, shared by all local workers
+    protected UpdatesRingBuffer messages;
 
     protected AtomicInteger workersCounter = new AtomicInteger(0);
     protected ThreadLocal<Integer> index = new ThreadLocal<>();
@@ -115,12 +113,6 @@ public class EncodedGradientsAccumulator implements GradientsAccumulator, Regist
         this.boundary = boundary;
         this.encodingDebugMode = encodingDebugMode;
 
-        // maybe not the best idea in the world, but we'll use cyclic workspace of 25MB to receive updates
-        WorkspaceConfiguration configuration = WorkspaceConfiguration.builder().initialSize(initialMemory)
-                        .policyReset(ResetPolicy.ENDOFBUFFER_REACHED).policyAllocation(AllocationPolicy.STRICT)
-                        .policySpill(SpillPolicy.FAIL).policyLearning(LearningPolicy.NONE).build();
-
-
         // we want to know, if we'll have to relocate data if accessed from different threads/devices
         relocatable = Nd4j.getAffinityManager().getNumberOfDevices() > 1
                         && !Nd4j.getAffinityManager().isCrossDeviceAccessSupported();
@@ -132,23 +124,13 @@ public class EncodedGradientsAccumulator implements GradientsAccumulator, Regist
             throw new ND4JIllegalStateException("Number of parties [" + parties
                             + "] should be less or equal to number of devices [" + numDevices + "]");
 
-        // pre-create Queues for local workers
-        int curDev = Nd4j.getAffinityManager().getDeviceForCurrentThread();
-
-        for (int i = 0; i < parties; i++) {
-            messages.add(new LinkedBlockingQueue<INDArray>(queueSize));
-
-            // we don't want device index to step out of boundaries here
-            int cDevice = numDevices > 1 ? i % numDevices : 0;
-
-            Nd4j.getAffinityManager().unsafeSetDevice(cDevice);
-            MemoryWorkspace ws = Nd4j.getWorkspaceManager().createNewWorkspace(configuration, "CGA-" + i, cDevice);
-            //ws.enableDebug(true);
-            workspaces.add(ws);
-
-            locks.add(new ReentrantLock());
-        }
-        Nd4j.getAffinityManager().unsafeSetDevice(curDev);
+        // every update is stored once for all local workers, so queueSize slots buffer as many updates as per-worker
+        // queues of queueSize did. initialMemory is split evenly between slots, and allocated once here
+        long slotLength = initialMemory / queueSize / Nd4j.sizeOfDataType(DataType.INT);
+        if (slotLength < 1)
+            throw new ND4JIllegalStateException("Not enough memory for GradientsAccumulator: [" + initialMemory
+                            + " bytes] can't be split into " + queueSize + " update slots");
+        messages = new UpdatesRingBuffer(parties, queueSize, slotLength);
 
         handler.initialize(this);
     }
@@ -168,16 +150,50 @@ public class EncodedGradientsAccumulator implements GradientsAccumulator, Regist
      * @return
      */
     public static long getOptimalBufferSize(long paramsLength, int numWorkers, int queueSize) {
+        return getOptimalBufferSize(paramsLength, null, numWorkers, queueSize);
+    }
+
+    /**
+     * This method returns optimal bufferSize for a given number of parameters and compression algorithm.<br>
+     * Unlike threshold encoding, the encoded updates of an {@link UpdatesCompressionAlgorithm} can be much larger
+     * than params / 16 (for example, about params / 4 for 8-bit quantization), so the buffer is sized using
+     * {@link UpdatesCompressionAlgorithm#maxEncodedLength(long)}
+     *
+     * @param paramsLength         Number of parameters in the model
+     * @param compressionAlgorithm Compression algorithm, or null for threshold encoding
+     * @param numWorkers           Number of workers
+     * @param queueSize            Queue size per worker
+     * @return Buffer size in bytes
+     */
+    public static long getOptimalBufferSize(long paramsLength, UpdatesCompressionAlgorithm compressionAlgorithm,
+                    int numWorkers, int queueSize) {
         // we add 64kb just for future proof volatility
-        val bufferSize = ((paramsLength / 16) + 65536) * numWorkers * queueSize * 4;
+        val bufferSize = (maxEncodedLength(paramsLength, compressionAlgorithm) + 65536) * numWorkers * queueSize * 4;
         return bufferSize;
     }
 
-
     public static long getOptimalBufferSize(Model model, int numWorkers, int queueSize) {
         return getOptimalBufferSize(model.params().length(), numWorkers, queueSize);
     }
 
+    public static long getOptimalBufferSize(Model model, UpdatesCompressionAlgorithm compressionAlgorithm,
+                    int numWorkers, int queueSize) {
+        return getOptimalBufferSize(model.params().length(), compressionAlgorithm, numWorkers, queueSize);
+    }
+
+    /**
+     * @param paramsLength         Number of parameters in the model
+     * @param compressionAlgorithm Compression algorithm, or null for threshold encoding
+     * @return Max length (number of INT elements) of a single encoded update message
+     */
+    public static long maxEncodedLength(long paramsLength, UpdatesCompressionAlgorithm compressionAlgorithm) {
+        if (compressionAlgorithm != null)
+            return compressionAlgorithm.maxEncodedLength(paramsLength);
+
+        // threshold and bitmap encoded updates never exceed params / 16 elements plus header
+        return paramsLength / 16 + CompressedUpdates.HEADER_LENGTH;
+    }
+
     @Override
     public void fallbackToSingleConsumerMode(boolean reallyFallback) {
         if (externalSource != null && externalSource instanceof Registerable)
@@ -291,23 +307,11 @@ public class EncodedGradientsAccumulator implements GradientsAccumulator, Regist
             Nd4j.getMemoryManager().memset(updates);
             //updates.assign(0.0);
 
-            int cnt = 0;
-            while (!messages.get(index.get()).isEmpty()) {
-                INDArray compressed = messages.get(index.get()).poll();
-
-                int encoding = compressed.data().getInt(3);
-                if (encoding == ThresholdCompression.FLEXIBLE_ENCODING)
-                    Nd4j.getExecutioner().thresholdDecode(compressed, updates);
-                else if (encoding == ThresholdCompression.BITMAP_ENCODING)
-                    Nd4j.getExecutioner().bitmapDecode(compressed, updates);
-                else
-                    throw new DL4JInvalidConfigException("Unknown compression header received: " + encoding);
-
-                cnt++;
-            }
+            int cnt = messages.drainTo(index.get(), updates,
+                            relocatable ? Nd4j.getAffinityManager().getDeviceForCurrentThread() : null);
 
             if (cnt > 0 && isDebug)
-                log.info("Local updates to be applied: {}", cnt);
+                log.info("Local updates to be applied: {}; consumer lag: {}", cnt, messages.getMaxLag());
 
             if (externalSource != null) {
                 int ent = 0;
@@ -356,23 +360,11 @@ public class EncodedGradientsAccumulator implements GradientsAccumulator, Regist
             Nd4j.getMemoryManager().memset(updates);
             //updates.assign(0.0);
 
-            int cnt = 0;
-            while (!messages.get(index.get()).isEmpty()) {
-                INDArray compressed = messages.get(index.get()).poll();
-
-                int encoding = compressed.data().getInt(3);
-                if (encoding == ThresholdCompression.FLEXIBLE_ENCODING)
-                    Nd4j.getExecutioner().thresholdDecode(compressed, updates);
-                else if (encoding == ThresholdCompression.BITMAP_ENCODING)
-                    Nd4j.getExecutioner().bitmapDecode(compressed, updates);
-                else
-                    throw new DL4JInvalidConfigException("Unknown compression header received: " + encoding);
-
-                cnt++;
-            }
+            int cnt = messages.drainTo(index.get(), updates,
+                            relocatable ? Nd4j.getAffinityManager().getDeviceForCurrentThread() : null);
 
             if (cnt > 0 && isDebug)
-                log.info("Local updates to be applied: {}", cnt);
+                log.info("Local updates to be applied: {}; consumer lag: {}", cnt, messages.getMaxLag());
 
             if (externalSource != null) {
                 int ent = 0;
@@ -485,36 +477,15 @@ public class EncodedGradientsAccumulator implements GradientsAccumulator, Regist
     @Override
     public void receiveUpdate(INDArray array) {
         try {
-            // we're replicating COMPRESSED MESSAGES, decompression will be thread-local
-            for (int i = 0; i < parties; i++) {
-                // we don't want to have same workspace to be accessible by 2 different threads for now
-                /*
-                    With synchronized external data, it's impossible to deadlock here.
-                    Each worker is guaranteed to have at least NUM_WORKERS slots in buffer.
-                    So we use this lock just to ensure thread-safety of corresponding workspaces
-                */
-                locks.get(i).lock();
-
-                try (MemoryWorkspace workspace = workspaces.get(i).notifyScopeEntered()) {
-                    // we might just scope out of workspace here, instead of throwing error out
-                    if (array.data().length() > (initialMemory / queueSize)
-                                    / Nd4j.sizeOfDataType(array.data().dataType()))
-                        throw new ND4JIllegalStateException("Not enough memory to handle update: ["
-                                        + array.data().length() * Nd4j.sizeOfDataType(array.data().dataType())
-                                        + " bytes required]. Please increase memory amount for GradientsAccumulator");
-
-                    INDArray compressed = array.unsafeDuplication();
-                    try {
-                        messages.get(i).put(compressed);
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                        log.warn("Something bad at index_{}", i);
-                        throw new RuntimeException(e);
-                    }
-                }
-
-                locks.get(i).unlock();
-            }
+            if (array.data().length() > messages.slotLength())
+                throw new ND4JIllegalStateException("Not enough memory to handle update: ["
+                                + array.data().length() * Nd4j.sizeOfDataType(array.data().dataType())
+                                + " bytes required, " + messages.slotLength() * Nd4j.sizeOfDataType(DataType.INT)
+                                + " bytes available per update]. Please increase memory amount for GradientsAccumulator");
+
+            // we're storing single copy of COMPRESSED MESSAGE for all workers, decompression will be thread-local.
+            // the message is copied into preallocated ring buffer slot, so nothing is allocated here
+            messages.put(array);
         } catch (Exception e) {
             throwable.setIfFirst(e);
             throw new RuntimeException(e);
@@ -535,10 +506,8 @@ public class EncodedGradientsAccumulator implements GradientsAccumulator, Regist
         // reset indexes too
         index = new ThreadLocal<>();
 
-        // throw away message queues
-        for (int i = 0; i < parties; i++) {
-            messages.get(i).clear();
-        }
+        // throw away pending messages
+        messages.reset();
     }
 
     @Override
@@ -546,10 +515,21 @@ public class EncodedGradientsAccumulator implements GradientsAccumulator, Regist
         return externalSource != null && externalSource.hasAnything(); //externalUpdatesAvailable.get();
     }
 
+    /**
+     * This method returns the buffer used to propagate updates to local workers. Useful for per-worker lag metrics,
+     * see {@link UpdatesRingBuffer#getLag(int)} and {@link UpdatesRingBuffer#getMaxObservedLag(int)}
+     *
+     * @return Local updates buffer
+     */
+    public UpdatesRingBuffer getUpdatesBuffer() {
+        return messages;
+    }
+
     public static class Builder {
         protected int parties;
         protected ThresholdAlgorithm thresholdAlgorithm;
         protected ResidualPostProcessor residualPostProcessor;
+        protected UpdatesCompressionAlgorithm compressionAlgorithm;
         protected long initialMemory = DEFAULT_INITIAL_MEMORY;
         protected int queueSize = 5;
         protected MessageHandler handler;
@@ -589,6 +569,16 @@ public class EncodedGradientsAccumulator implements GradientsAccumulator, Regist
             return this;
         }
 
+        /**
+         * This method allows to set an UpdatesCompressionAlgorithm (top-k, quantization or sign compression) to be used
+         * instead of threshold encoding. If set, the threshold algorithm is ignored
+         * @return
+         */
+        public Builder compressionAlgorithm(UpdatesCompressionAlgorithm compressionAlgorithm) {
+            this.compressionAlgorithm = compressionAlgorithm;
+            return this;
+        }
+
         /**
          * Set the residual post processor
          */
@@ -636,7 +626,9 @@ public class EncodedGradientsAccumulator implements GradientsAccumulator, Regist
         }
 
         public EncodedGradientsAccumulator build() {
-            if (handler == null) {
+            if (handler == null && compressionAlgorithm != null) {
+                handler = new EncodingHandler(compressionAlgorithm, residualPostProcessor, encodingDebugMode);
+            } else if (handler == null) {
                 Preconditions.checkNotNull(thresholdAlgorithm, "Both threshold algorithm and handler are null - one or the other must be set");
                 handler = new EncodingHandler(thresholdAlgorithm, residualPostProcessor, boundary, encodingDebugMode);
             }
@@ -22,6 +22,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.deeplearning4j.optimize.solvers.accumulation.encoding.ResidualPostProcessor;
 import org.deeplearning4j.optimize.solvers.accumulation.encoding.ThresholdAlgorithm;
 import org.deeplearning4j.optimize.solvers.accumulation.encoding.ThresholdAlgorithmReducer;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.UpdatesCompressionAlgorithm;
 import org.nd4j.linalg.api.buffer.DataBuffer;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.compression.NDArrayCompressor;
@@ -53,6 +54,7 @@ public class EncodingHandler implements MessageHandler {
     protected transient GradientsAccumulator accumulator;
     protected ThresholdAlgorithm initialThresholdAlgorithm;
     protected ResidualPostProcessor initialResidualPostProcessor;
+    protected UpdatesCompressionAlgorithm initialCompressionAlgorithm;
 
     protected Double boundary;
     protected boolean encodingDebugMode;
@@ -62,6 +64,7 @@ public class EncodingHandler implements MessageHandler {
     protected ThreadLocal<ThresholdAlgorithm> thresholdAlgorithm = new ThreadLocal<>();
     protected Map<Long,ThresholdAlgorithm> allThreadThresholdAlgorithms = new ConcurrentHashMap<>();    //All instances - we need to average them at the end once training is complete
     protected ThreadLocal<ResidualPostProcessor> residualPostProcessor = new ThreadLocal<>();
+    protected ThreadLocal<UpdatesCompressionAlgorithm> compressionAlgorithm = new ThreadLocal<>();
     protected ThreadLocal<AtomicLong> iterations = new ThreadLocal<>();
     protected ThreadLocal<AtomicLong> lastStep = new ThreadLocal<>();
     protected ThreadLocal<AtomicDouble> lastThreshold = new ThreadLocal<>();
@@ -80,6 +83,21 @@ public class EncodingHandler implements MessageHandler {
         this.encodingDebugMode = encodingDebugMode;
     }
 
+    /**
+     * Create an EncodingHandler that compresses updates using the specified compression algorithm, instead of
+     * threshold encoding
+     *
+     * @param compressionAlgorithm  Compression algorithm to use, such as top-k, quantization or sign compression
+     * @param residualPostProcessor Residual post processor. May be null
+     * @param encodingDebugMode     If true: log residual statistics on each iteration
+     */
+    public EncodingHandler(@NonNull UpdatesCompressionAlgorithm compressionAlgorithm, ResidualPostProcessor residualPostProcessor,
+                           boolean encodingDebugMode){
+        this.initialCompressionAlgorithm = compressionAlgorithm;
+        this.initialResidualPostProcessor = residualPostProcessor;
+        this.encodingDebugMode = encodingDebugMode;
+    }
+
     @Override
     public void initialize(@NonNull GradientsAccumulator accumulator) {
         this.accumulator = accumulator;
@@ -90,6 +108,9 @@ public class EncodingHandler implements MessageHandler {
     }
 
     public INDArray encodeUpdates(int iteration, int epoch, INDArray updates) {
+        if (initialCompressionAlgorithm != null)
+            return compressUpdates(iteration, epoch, updates);
+
         if(thresholdAlgorithm.get() == null){
             synchronized (this){
                 //Synchronized in case threshold algorithm has INDArrays and we're running on GPU - don't want race condition for shifting devices
@@ -212,6 +233,40 @@ public class EncodingHandler implements MessageHandler {
         return encoded;
     }
 
+    protected INDArray compressUpdates(int iteration, int epoch, INDArray updates) {
+        if (compressionAlgorithm.get() == null) {
+            compressionAlgorithm.set(initialCompressionAlgorithm.clone());
+            if(initialResidualPostProcessor != null) {
+                residualPostProcessor.set(initialResidualPostProcessor.clone());
+            }
+            currentThreshold.set(new AtomicDouble(Double.NaN));
+            iterations.set(new AtomicLong(0));
+        }
+
+        iterations.get().incrementAndGet();
+
+        UpdatesCompressionAlgorithm algorithm = compressionAlgorithm.get();
+        INDArray encoded = algorithm.encode(iteration, epoch, updates);
+        if (encoded == null)
+            return null;
+
+        double threshold = algorithm.getLastThreshold();
+        currentThreshold.get().set(threshold);
+
+        //Debug output if enabled: residual after encoding, relative to the effective threshold
+        residualDebugOutputIfRequired(updates);
+
+        applyPostProcessor(iteration, epoch, threshold, updates);
+        return encoded;
+    }
+
+    /**
+     * @return Compression algorithm used instead of threshold encoding, or null if threshold encoding is used
+     */
+    public UpdatesCompressionAlgorithm getCompressionAlgorithm() {
+        return initialCompressionAlgorithm;
+    }
+
     public void applyPostProcessor(int iteration, int epoch, Double lastThreshold, INDArray residuals){
         if(initialResidualPostProcessor == null) {
             return; //No op
@@ -20,11 +20,11 @@ import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import lombok.var;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.CompressedUpdates;
 import org.nd4j.base.Preconditions;
 import org.nd4j.linalg.api.buffer.DataBuffer;
 import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.api.ndarray.INDArray;
-import org.nd4j.linalg.compression.ThresholdCompression;
 import org.nd4j.linalg.exception.ND4JIllegalStateException;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.primitives.AtomicBoolean;
@@ -334,13 +334,7 @@ public class IndexedTail {
         INDArray result = target;
 
         if (encoded.isCompressed() || encoded.data().dataType() == DataType.INT) {
-            int encoding = encoded.data().getInt(3);
-            if (encoding == ThresholdCompression.FLEXIBLE_ENCODING) {
-                Nd4j.getExecutioner().thresholdDecode(encoded, result);
-            } else if (encoding == ThresholdCompression.BITMAP_ENCODING) {
-                Nd4j.getExecutioner().bitmapDecode(encoded, result);
-            } else
-                throw new ND4JIllegalStateException("Unknown encoding mode: [" + encoding + "]");
+            CompressedUpdates.decode(encoded, result);
         } else {
             result.addi(encoded);
         }
@@ -0,0 +1,325 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.optimize.solvers.accumulation;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.CompressedUpdates;
+import org.nd4j.base.Preconditions;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lock-free ring buffer used to fan out encoded updates to a fixed number of consumers.<br>
+ * Every update is stored exactly once, and each consumer tracks its own read sequence, so publishing an update
+ * is O(1) regardless of the number of consumers. Publishers claim slots via an atomic sequence counter, and
+ * updates become visible to consumers in claim order. A publisher only waits if the slowest consumer is
+ * {@link #capacity()} updates behind.<br>
+ * <br>
+ * Each consumer is identified by a fixed index in the range [0, numConsumers), and only one thread may consume
+ * for any given index at a time.<br>
+ * <br>
+ * If created with a slot length, the buffer preallocates storage for every slot once, and {@link #put(INDArray)}
+ * copies each update into the slot it claims. No memory is allocated per update in this mode.
+ */
+@Slf4j
+public class UpdatesRingBuffer {
+    // consumer sequences are spread out to avoid false sharing between consumer threads
+    private static final int PADDING = 16;
+    private static final int SPIN_TRIES = 100;
+
+    protected final int numConsumers;
+    protected final int capacity;
+    protected final AtomicReferenceArray<INDArray> entries;
+    // preallocated per-slot storage, null if updates are stored by reference
+    protected final INDArray[] slots;
+    protected final long slotLength;
+
+    // next sequence to be claimed by a publisher
+    protected final AtomicLong claimSequence = new AtomicLong(0);
+    // last published sequence, visible to consumers
+    protected final AtomicLong cursor = new AtomicLong(-1);
+    // cached minimum of consumer sequences: avoids scanning all consumers on each publish
+    protected final AtomicLong gatingSequence = new AtomicLong(0);
+    // next sequence to be read, per consumer
+    protected final AtomicLongArray consumerSequences;
+    // max lag observed by each consumer at drain time
+    protected final AtomicLongArray maxObservedLag;
+
+    protected final AtomicLong publisherWaits = new AtomicLong(0);
+
+    /**
+     * Create a buffer that stores published updates by reference
+     *
+     * @param numConsumers Number of consumers. Each update is retained until all consumers have read it
+     * @param capacity     Number of updates that can be buffered
+     */
+    public UpdatesRingBuffer(int numConsumers, int capacity) {
+        this(numConsumers, capacity, 0);
+    }
+
+    /**
+     * Create a buffer that copies published updates into preallocated slot storage
+     *
+     * @param numConsumers Number of consumers. Each update is retained until all consumers have read it
+     * @param capacity     Number of updates that can be buffered
+     * @param slotLength   Max length (INT elements) of a single encoded update. If 0, updates are stored by reference
+     */
+    public UpdatesRingBuffer(int numConsumers, int capacity, long slotLength) {
+        Preconditions.checkArgument(numConsumers > 0, "Number of consumers must be positive, got %s", numConsumers);
+        Preconditions.checkArgument(capacity > 0, "Capacity must be positive, got %s", capacity);
+        Preconditions.checkArgument(slotLength >= 0, "Slot length must be non-negative, got %s", slotLength);
+
+        this.numConsumers = numConsumers;
+        this.capacity = capacity;
+        this.entries = new AtomicReferenceArray<>(capacity);
+        this.consumerSequences = new AtomicLongArray(numConsumers * PADDING);
+        this.maxObservedLag = new AtomicLongArray(numConsumers * PADDING);
+        this.slotLength = slotLength;
+
+        if (slotLength > 0) {
+            slots = new INDArray[capacity];
+            try (MemoryWorkspace workspace = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+                for (int i = 0; i < capacity; i++)
+                    slots[i] = Nd4j.createUninitializedDetached(DataType.INT, slotLength);
+            }
+        } else {
+            slots = null;
+        }
+    }
+
+    /**
+     * Publish the specified update to all consumers. Blocks only if the buffer is full, i.e., the slowest consumer
+     * is {@link #capacity()} updates behind.<br>
+     * If the buffer has preallocated slot storage, the update is copied and may be reused by the caller after
+     * this call. Otherwise it is stored by reference and must not be modified after this call
+     *
+     * @param update Update to publish
+     */
+    public void put(@NonNull INDArray update) {
+        if (slots != null) {
+            Preconditions.checkArgument(update.data().dataType() == DataType.INT,
+                            "Encoded updates must have INT data type, got %s", update.data().dataType());
+            Preconditions.checkArgument(update.data().length() <= slotLength,
+                            "Update of length %s exceeds the slot length %s", update.data().length(), slotLength);
+        }
+
+        long seq = claimSequence.getAndIncrement();
+
+        // wait for the slot to be released by all consumers
+        long wrapPoint = seq - capacity;
+        if (wrapPoint >= gatingSequence.get()) {
+            int tries = 0;
+            long min;
+            while (wrapPoint >= (min = minConsumerSequence())) {
+                tries = backOff(tries);
+            }
+            gatingSequence.set(min);
+            if (tries > 0)
+                publisherWaits.incrementAndGet();
+        }
+
+        int slot = (int) (seq % capacity);
+        if (slots != null) {
+            // the slot was released by all consumers above, so it's safe to overwrite its storage
+            Nd4j.getMemoryManager().memcpy(slots[slot].data(), update.data());
+            update = slots[slot];
+        }
+        entries.set(slot, update);
+
+        // publish in claim order: wait for concurrent publishers of preceding sequences
+        int tries = 0;
+        while (cursor.get() != seq - 1) {
+            tries = backOff(tries);
+        }
+        cursor.set(seq);
+    }
+
+    /**
+     * @param consumer Consumer index
+     * @return True if there are any updates not yet read by the specified consumer
+     */
+    public boolean hasAnything(int consumer) {
+        return consumerSequences.get(consumer * PADDING) <= cursor.get();
+    }
+
+    /**
+     * Decode all updates not yet read by the specified consumer into the target array
+     *
+     * @param consumer Consumer index
+     * @param target   Array to decode (add) the updates into
+     * @return Number of updates decoded
+     */
+    public int drainTo(int consumer, @NonNull INDArray target) {
+        return drainTo(consumer, target, null);
+    }
+
+    /**
+     * Decode all updates not yet read by the specified consumer into the target array
+     *
+     * @param consumer Consumer index
+     * @param target   Array to decode (add) the updates into
+     * @param deviceId If non-null: updates are replicated to this device before decoding
+     * @return Number of updates decoded
+     */
+    public int drainTo(int consumer, @NonNull INDArray target, Integer deviceId) {
+        int idx = consumer * PADDING;
+        long next = consumerSequences.get(idx);
+        long available = cursor.get();
+        if (next > available)
+            return 0;
+
+        long lag = available - next + 1;
+        if (lag > maxObservedLag.get(idx))
+            maxObservedLag.set(idx, lag);
+
+        int cnt = 0;
+        for (long s = next; s <= available; s++) {
+            INDArray update = entries.get((int) (s % capacity));
+            if (deviceId != null)
+                update = Nd4j.getAffinityManager().replicateToDevice(deviceId, update);
+            decode(update, target);
+            cnt++;
+
+            // slot may be reused by publishers as soon as all consumers moved past it
+            consumerSequences.lazySet(idx, s + 1);
+        }
+        return cnt;
+    }
+
+    /**
+     * Skip all updates not yet read by the specified consumer, without decoding them
+     *
+     * @param consumer Consumer index
+     * @return Number of updates skipped
+     */
+    public long skip(int consumer) {
+        int idx = consumer * PADDING;
+        long available = cursor.get();
+        long next = consumerSequences.get(idx);
+        if (next > available)
+            return 0;
+        consumerSequences.lazySet(idx, available + 1);
+        return available - next + 1;
+    }
+
+    /**
+     * @param consumer Consumer index
+     * @return Number of published updates not yet read by the specified consumer
+     */
+    public long getLag(int consumer) {
+        return Math.max(0, cursor.get() + 1 - consumerSequences.get(consumer * PADDING));
+    }
+
+    /**
+     * @return Max current lag over all consumers
+     */
+    public long getMaxLag() {
+        return Math.max(0, cursor.get() + 1 - minConsumerSequence());
+    }
+
+    /**
+     * @param consumer Consumer index
+     * @return Max number of pending updates observed by the specified consumer when draining, since creation or
+     * the last {@link #reset()}
+     */
+    public long getMaxObservedLag(int consumer) {
+        return maxObservedLag.get(consumer * PADDING);
+    }
+
+    /**
+     * @return Number of times a publisher had to wait for a slow consumer to release a slot
+     */
+    public long getPublisherWaits() {
+        return publisherWaits.get();
+    }
+
+    /**
+     * @return Total number of updates published since creation or the last {@link #reset()}
+     */
+    public long getPublishedCount() {
+        return cursor.get() + 1;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return Max length (INT elements) of an update that fits into a slot, or 0 if updates are stored by reference
+     */
+    public long slotLength() {
+        return slotLength;
+    }
+
+    public int numConsumers() {
+        return numConsumers;
+    }
+
+    /**
+     * Reset all sequences and release stored updates. Preallocated slot storage is retained. Must not be called concurrently with publishers or consumers
+     */
+    public void reset() {
+        for (int i = 0; i < capacity; i++)
+            entries.set(i, null);
+
+        for (int i = 0; i < numConsumers; i++) {
+            consumerSequences.set(i * PADDING, 0);
+            maxObservedLag.set(i * PADDING, 0);
+        }
+        claimSequence.set(0);
+        gatingSequence.set(0);
+        cursor.set(-1);
+        publisherWaits.set(0);
+    }
+
+    protected long minConsumerSequence() {
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < numConsumers; i++) {
+            long s = consumerSequences.get(i * PADDING);
+            if (s < min)
+                min = s;
+        }
+        return min;
+    }
+
+    protected static int backOff(int tries) {
+        if (Thread.currentThread().isInterrupted())
+            throw new RuntimeException("Interrupted while waiting on updates ring buffer");
+
+        if (tries < SPIN_TRIES) {
+            return tries + 1;
+        } else if (tries < 2 * SPIN_TRIES) {
+            Thread.yield();
+            return tries + 1;
+        } else {
+            LockSupport.parkNanos(1000L);
+            return tries;
+        }
+    }
+
+    protected static void decode(INDArray encoded, INDArray target) {
+        CompressedUpdates.decode(encoded, target);
+    }
+}
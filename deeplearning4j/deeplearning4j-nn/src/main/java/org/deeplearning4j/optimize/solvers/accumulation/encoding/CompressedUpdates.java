@@ -0,0 +1,197 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.optimize.solvers.accumulation.encoding;
+
+import lombok.NonNull;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.compression.ThresholdCompression;
+import org.nd4j.linalg.exception.ND4JIllegalStateException;
+import org.nd4j.linalg.factory.Nd4j;
+
+/**
+ * Utility methods for encoded updates, as produced by threshold encoding and by {@link UpdatesCompressionAlgorithm}
+ * implementations.<br>
+ * All encoded updates are INT arrays with a 4 element header:<br>
+ * [0]: number of encoded elements (number of blocks, for dense encodings)<br>
+ * [1]: length of the original updates array<br>
+ * [2]: encoding specific parameter (threshold or smallest encoded magnitude as float bits, or block size)<br>
+ * [3]: encoding type, one of {@link #THRESHOLD_ENCODING}, {@link #BITMAP_ENCODING}, {@link #TOPK_ENCODING},
+ * {@link #QUANTIZED_ENCODING} or {@link #SIGN_ENCODING}
+ */
+public class CompressedUpdates {
+    public static final int HEADER_LENGTH = 4;
+
+    public static final int THRESHOLD_ENCODING = ThresholdCompression.FLEXIBLE_ENCODING;
+    public static final int BITMAP_ENCODING = ThresholdCompression.BITMAP_ENCODING;
+    /**
+     * Header, then indices of the encoded elements, then their values as float bits
+     */
+    public static final int TOPK_ENCODING = 2;
+    /**
+     * Header, then the scale of each block as float bits, then signed 8-bit values (4 per INT element)
+     */
+    public static final int QUANTIZED_ENCODING = 3;
+    /**
+     * Header, then the scale of each block as float bits, then signs (32 per INT element, 1 bit for positive)
+     */
+    public static final int SIGN_ENCODING = 4;
+
+    private CompressedUpdates() {
+    }
+
+    /**
+     * @param encoded Encoded updates
+     * @return Encoding type of the encoded updates
+     */
+    public static int getEncoding(@NonNull INDArray encoded) {
+        return encoded.data().getInt(3);
+    }
+
+    /**
+     * @param encoding Encoding type
+     * @return True if the encoding stores individual elements (as opposed to all elements of the updates array)
+     */
+    public static boolean isSparse(int encoding) {
+        return encoding == THRESHOLD_ENCODING || encoding == TOPK_ENCODING;
+    }
+
+    /**
+     * Decode the encoded updates, adding them to the target array
+     *
+     * @param encoded Encoded updates
+     * @param target  Array to add the decoded updates to
+     * @return Encoding type of the encoded updates
+     */
+    public static int decode(@NonNull INDArray encoded, @NonNull INDArray target) {
+        int encoding = getEncoding(encoded);
+        switch (encoding) {
+            case THRESHOLD_ENCODING:
+                Nd4j.getExecutioner().thresholdDecode(encoded, target);
+                break;
+            case BITMAP_ENCODING:
+                Nd4j.getExecutioner().bitmapDecode(encoded, target);
+                break;
+            case TOPK_ENCODING:
+                decodeTopK(encoded.data().asInt(), target);
+                break;
+            case QUANTIZED_ENCODING:
+                decodeQuantized(encoded.data().asInt(), target);
+                break;
+            case SIGN_ENCODING:
+                decodeSign(encoded.data().asInt(), target);
+                break;
+            default:
+                throw new ND4JIllegalStateException("Unknown encoding mode: [" + encoding + "]");
+        }
+        return encoding;
+    }
+
+    protected static void decodeTopK(int[] data, INDArray target) {
+        checkLength(data, target);
+        int k = data[0];
+        if (target.isVector() && k * 16L < target.length()) {
+            for (int i = 0; i < k; i++) {
+                int idx = data[HEADER_LENGTH + i];
+                target.putScalar(idx, target.getDouble(idx) + Float.intBitsToFloat(data[HEADER_LENGTH + k + i]));
+            }
+        } else {
+            float[] decoded = new float[data[1]];
+            for (int i = 0; i < k; i++)
+                decoded[data[HEADER_LENGTH + i]] = Float.intBitsToFloat(data[HEADER_LENGTH + k + i]);
+            addDense(target, decoded);
+        }
+    }
+
+    protected static void decodeQuantized(int[] data, INDArray target) {
+        checkLength(data, target);
+        int numBlocks = data[0];
+        int length = data[1];
+        int blockSize = data[2];
+        int offset = HEADER_LENGTH + numBlocks;
+
+        float[] decoded = new float[length];
+        for (int b = 0; b < numBlocks; b++) {
+            float scale = Float.intBitsToFloat(data[HEADER_LENGTH + b]);
+            if (scale == 0.0f)
+                continue;
+            int end = Math.min(length, (b + 1) * blockSize);
+            for (int i = b * blockSize; i < end; i++)
+                decoded[i] = ((byte) (data[offset + (i >> 2)] >> ((i & 3) << 3))) * scale;
+        }
+        addDense(target, decoded);
+    }
+
+    protected static void decodeSign(int[] data, INDArray target) {
+        checkLength(data, target);
+        int numBlocks = data[0];
+        int length = data[1];
+        int blockSize = data[2];
+        int offset = HEADER_LENGTH + numBlocks;
+
+        float[] decoded = new float[length];
+        for (int b = 0; b < numBlocks; b++) {
+            float scale = Float.intBitsToFloat(data[HEADER_LENGTH + b]);
+            if (scale == 0.0f)
+                continue;
+            int end = Math.min(length, (b + 1) * blockSize);
+            for (int i = b * blockSize; i < end; i++)
+                decoded[i] = ((data[offset + (i >> 5)] >>> (i & 31)) & 1) != 0 ? scale : -scale;
+        }
+        addDense(target, decoded);
+    }
+
+    /**
+     * @param array Array to convert
+     * @return Copy of the array values, in 'c' order
+     */
+    public static float[] toFloatArray(@NonNull INDArray array) {
+        try (MemoryWorkspace ws = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+            return array.dup('c').data().asFloat();
+        }
+    }
+
+    /**
+     * Create encoded updates array from the specified data, outside of any workspace
+     */
+    public static INDArray createEncoded(@NonNull int[] data) {
+        try (MemoryWorkspace ws = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+            return Nd4j.createFromArray(data);
+        }
+    }
+
+    /**
+     * Assign the specified values (in 'c' order) to the target array
+     */
+    public static void assign(@NonNull INDArray target, @NonNull float[] values) {
+        try (MemoryWorkspace ws = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+            target.assign(Nd4j.create(values, target.shape(), 'c').castTo(target.dataType()));
+        }
+    }
+
+    protected static void addDense(INDArray target, float[] values) {
+        try (MemoryWorkspace ws = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+            target.addi(Nd4j.create(values, target.shape(), 'c').castTo(target.dataType()));
+        }
+    }
+
+    protected static void checkLength(int[] data, INDArray target) {
+        if (data[1] != target.length())
+            throw new ND4JIllegalStateException("Encoded updates length [" + data[1] + "] doesn't match target length ["
+                    + target.length() + "]");
+    }
+}
@@ -0,0 +1,62 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.optimize.solvers.accumulation.encoding;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.io.Serializable;
+
+/**
+ * UpdatesCompressionAlgorithm is an alternative to threshold encoding (see {@link ThresholdAlgorithm}) for compressing
+ * updates in DL4J's gradient sharing implementation. It is useful for models with dense updates, where threshold
+ * encoding falls back to bitmap encoding.<br>
+ * Implementations use error feedback: the part of the updates that is communicated is subtracted from the provided
+ * array, and whatever remains (the residual) is added to the next iteration's updates. The residual is then
+ * post-processed by the {@link ResidualPostProcessor}, if any, as for threshold encoding.<br>
+ * Encoded updates are INT arrays with the same 4 element header as threshold encoding
+ * (see {@link CompressedUpdates}), and are decoded using {@link CompressedUpdates#decode(INDArray, INDArray)}
+ */
+public interface UpdatesCompressionAlgorithm extends Serializable {
+
+    /**
+     * Encode the specified updates. The communicated (decoded) values are subtracted from the array in-place, leaving
+     * the residual
+     *
+     * @param iteration           Current neural network training iteration
+     * @param epoch               Current neural network training epoch
+     * @param updatesPlusResidual Updates plus residual from previous iterations. Modified in-place
+     * @return Encoded updates, or null if there is nothing to communicate
+     */
+    INDArray encode(int iteration, int epoch, INDArray updatesPlusResidual);
+
+    /**
+     * @return A value comparable to an encoding threshold for the last encoded updates (for example, the smallest
+     * communicated magnitude, or the quantization step). Passed to the {@link ResidualPostProcessor}
+     */
+    double getLastThreshold();
+
+    /**
+     * @param length Length of the updates array
+     * @return Max length (number of INT elements, including the header) of the encoded updates
+     */
+    long maxEncodedLength(long length);
+
+    /**
+     * @return A clone of the current compression algorithm
+     */
+    UpdatesCompressionAlgorithm clone();
+}
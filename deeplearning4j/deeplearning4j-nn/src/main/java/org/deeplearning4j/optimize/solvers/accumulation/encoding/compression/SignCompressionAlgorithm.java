@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.optimize.solvers.accumulation.encoding.compression;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.CompressedUpdates;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.UpdatesCompressionAlgorithm;
+import org.nd4j.base.Preconditions;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+/**
+ * 1-bit (scaled sign) compression with error feedback: the updates (plus residual) are split into blocks of
+ * {@code blockSize} elements, and only the sign of each element is communicated, scaled by the mean magnitude of its
+ * block. The difference between the updates and the communicated values remains in the residual, which is required for
+ * sign-based compression to converge.<br>
+ * Encoded size: 1 INT element per 32 values plus 1 per block, plus the header - i.e., approximately 32x smaller than
+ * FP32 updates, and 2x smaller than bitmap encoding.
+ */
+@EqualsAndHashCode(exclude = {"lastThreshold"})
+public class SignCompressionAlgorithm implements UpdatesCompressionAlgorithm {
+    public static final int DEFAULT_BLOCK_SIZE = 1024;
+
+    @Getter
+    private final int blockSize;
+
+    @Getter
+    private double lastThreshold = Double.NaN;
+
+    /**
+     * Create the sign compression algorithm with the default block size, {@link #DEFAULT_BLOCK_SIZE}
+     */
+    public SignCompressionAlgorithm() {
+        this(DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * @param blockSize Number of elements sharing the same scale. Smaller blocks reduce the compression error, at the
+     *                  cost of 1 additional INT element per block
+     */
+    public SignCompressionAlgorithm(int blockSize) {
+        Preconditions.checkArgument(blockSize > 0, "Block size must be positive, got %s", blockSize);
+        this.blockSize = blockSize;
+    }
+
+    @Override
+    public INDArray encode(int iteration, int epoch, INDArray updatesPlusResidual) {
+        long length = updatesPlusResidual.length();
+        Preconditions.checkState(length < Integer.MAX_VALUE, "Arrays with more than Integer.MAX_VALUE elements are not supported");
+        int n = (int) length;
+        int numBlocks = (n + blockSize - 1) / blockSize;
+        int offset = CompressedUpdates.HEADER_LENGTH + numBlocks;
+
+        float[] values = CompressedUpdates.toFloatArray(updatesPlusResidual);
+        int[] data = new int[offset + (n + 31) / 32];
+
+        double scaleSum = 0.0;
+        int nonZeroBlocks = 0;
+        for (int b = 0; b < numBlocks; b++) {
+            int start = b * blockSize;
+            int end = Math.min(n, start + blockSize);
+            double sum = 0.0;
+            for (int i = start; i < end; i++)
+                sum += Math.abs(values[i]);
+
+            float scale = (float) (sum / (end - start));
+            data[CompressedUpdates.HEADER_LENGTH + b] = Float.floatToIntBits(scale);
+            if (scale == 0.0f)
+                continue;
+
+            for (int i = start; i < end; i++) {
+                if (values[i] >= 0.0f) {
+                    data[offset + (i >> 5)] |= 1 << (i & 31);
+                    values[i] -= scale;
+                } else {
+                    values[i] += scale;
+                }
+            }
+            scaleSum += scale;
+            nonZeroBlocks++;
+        }
+
+        if (nonZeroBlocks == 0)
+            return null;
+
+        data[0] = numBlocks;
+        data[1] = n;
+        data[2] = blockSize;
+        data[3] = CompressedUpdates.SIGN_ENCODING;
+
+        // compression error is kept as residual
+        CompressedUpdates.assign(updatesPlusResidual, values);
+
+        lastThreshold = scaleSum / nonZeroBlocks;
+        return CompressedUpdates.createEncoded(data);
+    }
+
+    @Override
+    public long maxEncodedLength(long length) {
+        return CompressedUpdates.HEADER_LENGTH + (length + blockSize - 1) / blockSize + (length + 31) / 32;
+    }
+
+    @Override
+    public SignCompressionAlgorithm clone() {
+        return new SignCompressionAlgorithm(blockSize);
+    }
+
+    @Override
+    public String toString() {
+        return "SignCompressionAlgorithm(blockSize=" + blockSize + ")";
+    }
+}
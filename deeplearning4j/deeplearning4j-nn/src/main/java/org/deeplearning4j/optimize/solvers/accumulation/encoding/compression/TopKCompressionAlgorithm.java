@@ -0,0 +1,174 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.optimize.solvers.accumulation.encoding.compression;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.CompressedUpdates;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.UpdatesCompressionAlgorithm;
+import org.nd4j.base.Preconditions;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+/**
+ * Exact top-k sparsification with error feedback: on each iteration, the k elements with the largest magnitude (updates
+ * plus residual) are communicated with their exact values, and all other elements remain in the residual.<br>
+ * Unlike threshold encoding, the size of the encoded updates is fixed (k = fraction * numParams), regardless of the
+ * distribution of update magnitudes.<br>
+ * Encoded size: 2 INT elements per communicated value, plus the header.
+ */
+@EqualsAndHashCode(exclude = {"lastThreshold"})
+public class TopKCompressionAlgorithm implements UpdatesCompressionAlgorithm {
+    public static final double DEFAULT_FRACTION = 1e-3;
+
+    @Getter
+    private final double fraction;
+
+    @Getter
+    private double lastThreshold = Double.NaN;
+
+    /**
+     * Create the top-k algorithm with the default fraction of elements, {@link #DEFAULT_FRACTION}
+     */
+    public TopKCompressionAlgorithm() {
+        this(DEFAULT_FRACTION);
+    }
+
+    /**
+     * @param fraction Fraction of elements to communicate on each iteration, in range (0, 1]. For example, 1e-3 means
+     *                 k = 0.001 * numParams
+     */
+    public TopKCompressionAlgorithm(double fraction) {
+        Preconditions.checkArgument(fraction > 0.0 && fraction <= 1.0, "Fraction must be in range (0, 1], got %s", fraction);
+        this.fraction = fraction;
+    }
+
+    @Override
+    public INDArray encode(int iteration, int epoch, INDArray updatesPlusResidual) {
+        long length = updatesPlusResidual.length();
+        Preconditions.checkState(length < Integer.MAX_VALUE, "Arrays with more than Integer.MAX_VALUE elements are not supported");
+        int n = (int) length;
+        int k = numElements(n);
+
+        float[] values = CompressedUpdates.toFloatArray(updatesPlusResidual);
+        float[] abs = new float[n];
+        for (int i = 0; i < n; i++)
+            abs[i] = Math.abs(values[i]);
+
+        // magnitude of the k-th largest element
+        float kth = select(abs, n - k);
+
+        int[] indices = new int[k];
+        int cnt = 0;
+        for (int i = 0; i < n && cnt < k; i++) {
+            if (Math.abs(values[i]) > kth)
+                indices[cnt++] = i;
+        }
+        // ties at the k-th magnitude. Zeros are never communicated
+        if (kth > 0.0f) {
+            for (int i = 0; i < n && cnt < k; i++) {
+                if (Math.abs(values[i]) == kth)
+                    indices[cnt++] = i;
+            }
+        }
+
+        if (cnt == 0)
+            return null;
+
+        int[] data = new int[CompressedUpdates.HEADER_LENGTH + 2 * cnt];
+        float min = Float.MAX_VALUE;
+        for (int i = 0; i < cnt; i++) {
+            float v = values[indices[i]];
+            data[CompressedUpdates.HEADER_LENGTH + i] = indices[i];
+            data[CompressedUpdates.HEADER_LENGTH + cnt + i] = Float.floatToIntBits(v);
+            min = Math.min(min, Math.abs(v));
+        }
+        data[0] = cnt;
+        data[1] = n;
+        data[2] = Float.floatToIntBits(min);
+        data[3] = CompressedUpdates.TOPK_ENCODING;
+
+        // communicated elements are removed from the residual
+        if (updatesPlusResidual.isVector() && cnt * 16L < n) {
+            for (int i = 0; i < cnt; i++)
+                updatesPlusResidual.putScalar(indices[i], 0.0);
+        } else {
+            for (int i = 0; i < cnt; i++)
+                values[indices[i]] = 0.0f;
+            CompressedUpdates.assign(updatesPlusResidual, values);
+        }
+
+        lastThreshold = min;
+        return CompressedUpdates.createEncoded(data);
+    }
+
+    @Override
+    public long maxEncodedLength(long length) {
+        return CompressedUpdates.HEADER_LENGTH + 2L * numElements(length);
+    }
+
+    protected int numElements(long length) {
+        return (int) Math.max(1, Math.min(length, (long) Math.ceil(length * fraction)));
+    }
+
+    /**
+     * Quickselect: find the value that would be at the specified position if the array was sorted. The array is reordered
+     */
+    protected static float select(float[] a, int position) {
+        int lo = 0;
+        int hi = a.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            float pivot = median(a[lo], a[mid], a[hi]);
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (a[i] < pivot)
+                    i++;
+                while (a[j] > pivot)
+                    j--;
+                if (i <= j) {
+                    float t = a[i];
+                    a[i] = a[j];
+                    a[j] = t;
+                    i++;
+                    j--;
+                }
+            }
+            if (position <= j)
+                hi = j;
+            else if (position >= i)
+                lo = i;
+            else
+                break;
+        }
+        return a[position];
+    }
+
+    private static float median(float a, float b, float c) {
+        return Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+    }
+
+    @Override
+    public TopKCompressionAlgorithm clone() {
+        return new TopKCompressionAlgorithm(fraction);
+    }
+
+    @Override
+    public String toString() {
+        return "TopKCompressionAlgorithm(fraction=" + fraction + ")";
+    }
+}
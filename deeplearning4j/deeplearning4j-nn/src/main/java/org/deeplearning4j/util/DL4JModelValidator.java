@@ -3,6 +3,7 @@ package org.deeplearning4j.util;
 import lombok.NonNull;
 import org.apache.commons.io.IOUtils;
 import org.deeplearning4j.nn.api.Model;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
 import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
 import org.deeplearning4j.nn.graph.ComputationGraph;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
@@ -38,7 +39,7 @@ public class DL4JModelValidator {
      */
     public static ValidationResult validateMultiLayerNetwork(@NonNull File f){
 
-        List<String> requiredEntries = Arrays.asList(ModelSerializer.CONFIGURATION_JSON, ModelSerializer.COEFFICIENTS_BIN);     //TODO no-params models... might be OK to have no params, but basically useless in practice
+        List<String> requiredEntries = requiredEntries(f);     //TODO no-params models... might be OK to have no params, but basically useless in practice
 
         ValidationResult vr = Nd4jCommonValidator.isValidZipFile(f, false, requiredEntries);
         if(vr != null && !vr.isValid()) {
@@ -95,7 +96,7 @@ public class DL4JModelValidator {
      */
     public static ValidationResult validateComputationGraph(@NonNull File f){
 
-        List<String> requiredEntries = Arrays.asList(ModelSerializer.CONFIGURATION_JSON, ModelSerializer.COEFFICIENTS_BIN);     //TODO no-params models... might be OK to have no params, but basically useless in practice
+        List<String> requiredEntries = requiredEntries(f);     //TODO no-params models... might be OK to have no params, but basically useless in practice
 
         ValidationResult vr = Nd4jCommonValidator.isValidZipFile(f, false, requiredEntries);
         if(vr != null && !vr.isValid()) {
@@ -121,7 +122,7 @@ public class DL4JModelValidator {
         }
 
         try{
-            MultiLayerConfiguration.fromJson(config);
+            ComputationGraphConfiguration.fromJson(config);
         } catch (Throwable t){
             return ValidationResult.builder()
                     .formatType("ComputationGraph")
@@ -142,4 +143,20 @@ public class DL4JModelValidator {
                 .path(Nd4jCommonValidator.getPath(f))
                 .build();
     }
+
+    /**
+     * Models written with {@link ModelSerializer#writeModelMapped(Model, File, boolean)} store the parameters in
+     * {@link ModelSerializer#COEFFICIENTS_MAPPED_BIN} (plus its header) instead of {@link ModelSerializer#COEFFICIENTS_BIN}
+     */
+    private static List<String> requiredEntries(File f){
+        try(ZipFile zf = new ZipFile(f)){
+            if(zf.getEntry(ModelSerializer.COEFFICIENTS_MAPPED_HEADER) != null){
+                return Arrays.asList(ModelSerializer.CONFIGURATION_JSON, ModelSerializer.COEFFICIENTS_MAPPED_HEADER,
+                        ModelSerializer.COEFFICIENTS_MAPPED_BIN);
+            }
+        } catch (IOException e){
+            //Not a valid zip file: reported by Nd4jCommonValidator.isValidZipFile
+        }
+        return Arrays.asList(ModelSerializer.CONFIGURATION_JSON, ModelSerializer.COEFFICIENTS_BIN);
+    }
 }
@@ -30,20 +30,41 @@ import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
 import org.deeplearning4j.nn.graph.ComputationGraph;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
 import org.deeplearning4j.nn.updater.graph.ComputationGraphUpdater;
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.javacpp.DoublePointer;
+import org.bytedeco.javacpp.FloatPointer;
+import org.bytedeco.javacpp.ShortPointer;
+import org.bytedeco.javacpp.indexer.DoubleIndexer;
+import org.bytedeco.javacpp.indexer.FloatIndexer;
+import org.bytedeco.javacpp.indexer.HalfIndexer;
 import org.nd4j.base.Preconditions;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.concurrency.AffinityManager;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
 import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.executioner.OpExecutioner;
 import org.nd4j.linalg.dataset.api.DataSetPreProcessor;
 import org.nd4j.linalg.dataset.api.preprocessor.DataNormalization;
 import org.nd4j.linalg.dataset.api.preprocessor.Normalizer;
 import org.nd4j.linalg.dataset.api.preprocessor.serializer.NormalizerSerializer;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.heartbeat.reports.Task;
+import org.nd4j.linalg.indexing.NDArrayIndex;
 import org.nd4j.linalg.primitives.Pair;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.Properties;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipOutputStream;
@@ -62,6 +83,19 @@ public class ModelSerializer {
     public static final String COEFFICIENTS_BIN = "coefficients.bin";
     public static final String NO_PARAMS_MARKER = "noParams.marker";
     public static final String PREPROCESSOR_BIN = "preprocessor.bin";
+    public static final String COEFFICIENTS_MAPPED_BIN = "coefficients.mapped.bin";
+    public static final String COEFFICIENTS_MAPPED_HEADER = "coefficients.mapped.properties";
+
+    //Alignment (in bytes) of the parameters within files written with writeModelMapped
+    protected static final int MAPPED_ALIGNMENT = 64;
+    //Arbitrary ID for the zip extra field used to pad the local header of the mapped parameters entry
+    protected static final int MAPPED_PADDING_EXTRA_ID = 0xD935;
+    protected static final int MAPPED_CHUNK_BYTES = 64 * 1024 * 1024;
+    /**
+     * Maximum size (in bytes) of parameters that can be memory mapped. Parameters must be contiguous, and Java maps at
+     * most 2GB in a single mapping: larger parameters are copied instead
+     */
+    public static final long MAX_MAPPED_BYTES = Integer.MAX_VALUE;
 
     private ModelSerializer() {}
 
@@ -132,7 +166,49 @@ public class ModelSerializer {
      */
     public static void writeModel(@NonNull Model model, @NonNull OutputStream stream, boolean saveUpdater,DataNormalization dataNormalization)
             throws IOException {
+        writeModel(model, stream, saveUpdater, dataNormalization, false);
+    }
+
+    /**
+     * Write a model to a file, using a layout that allows the parameters to be memory mapped when restoring
+     * via {@link #restoreMultiLayerNetworkMapped(File)} or {@link #restoreComputationGraphMapped(File)}.<br>
+     * The parameters are stored uncompressed and aligned as the first entry in the zip file, instead of
+     * {@link #COEFFICIENTS_BIN}. Files written this way are larger (no compression) but can still be restored using
+     * all of the other restore methods.
+     *
+     * @param model the model to write
+     * @param file the file to write to
+     * @param saveUpdater whether to save the updater or not
+     * @throws IOException
+     */
+    public static void writeModelMapped(@NonNull Model model, @NonNull File file, boolean saveUpdater) throws IOException {
+        writeModelMapped(model, file, saveUpdater, null);
+    }
+
+    /**
+     * As per {@link #writeModelMapped(Model, File, boolean)}, with an (optional) normalizer
+     *
+     * @param model the model to write
+     * @param file the file to write to
+     * @param saveUpdater whether to save the updater or not
+     * @param dataNormalization the normalizer to save (may be null)
+     * @throws IOException
+     */
+    public static void writeModelMapped(@NonNull Model model, @NonNull File file, boolean saveUpdater, DataNormalization dataNormalization) throws IOException {
+        try (BufferedOutputStream stream = new BufferedOutputStream(new FileOutputStream(file))) {
+            writeModel(model, stream, saveUpdater, dataNormalization, true);
+        }
+    }
+
+    private static void writeModel(@NonNull Model model, @NonNull OutputStream stream, boolean saveUpdater,
+                                   DataNormalization dataNormalization, boolean mappable) throws IOException {
         ZipOutputStream zipfile = new ZipOutputStream(new CloseShieldOutputStream(stream));
+        INDArray params = model.params();
+
+        // Mapped parameters must be the first entry, so their position in the file is known
+        if (mappable && params != null) {
+            writeMappedParams(zipfile, params);
+        }
 
         // Save configuration as JSON
         String json = "";
@@ -147,17 +223,18 @@ public class ModelSerializer {
         zipfile.write(json.getBytes());
 
         // Save parameters as binary
-        ZipEntry coefficients = new ZipEntry(COEFFICIENTS_BIN);
-        zipfile.putNextEntry(coefficients);
         DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(zipfile));
-        INDArray params = model.params();
-        if(params != null) {
+        if(params != null && !mappable) {
+            ZipEntry coefficients = new ZipEntry(COEFFICIENTS_BIN);
+            zipfile.putNextEntry(coefficients);
             try {
                 Nd4j.write(model.params(), dos);
             } finally {
                 dos.flush();
             }
-        } else {
+        } else if (params == null) {
+            ZipEntry coefficients = new ZipEntry(COEFFICIENTS_BIN);
+            zipfile.putNextEntry(coefficients);
             ZipEntry noParamsMarker = new ZipEntry(NO_PARAMS_MARKER);
             zipfile.putNextEntry(noParamsMarker);
         }
@@ -215,6 +292,55 @@ public class ModelSerializer {
      */
     public static MultiLayerNetwork restoreMultiLayerNetwork(@NonNull File file, boolean loadUpdater)
             throws IOException {
+        return restoreMultiLayerNetworkHelper(file, loadUpdater, false);
+    }
+
+    /**
+     * Load a multi layer network from a file written with {@link #writeModelMapped(Model, File, boolean)}, memory
+     * mapping the parameters instead of copying them. The updater state is not loaded.
+     *
+     * @param file the file to load from
+     * @return the loaded multi layer network
+     * @throws IOException
+     * @see #restoreMultiLayerNetworkMapped(File, boolean)
+     */
+    public static MultiLayerNetwork restoreMultiLayerNetworkMapped(@NonNull File file) throws IOException {
+        return restoreMultiLayerNetworkMapped(file, false);
+    }
+
+    /**
+     * Load a multi layer network from a file written with {@link #writeModelMapped(Model, File, boolean)}, memory
+     * mapping the parameters instead of copying them.<br>
+     * The parameters array of the returned network is backed directly by a private (copy-on-write) mapping of the
+     * file: loading is near-instant regardless of the model size, and the physical memory for the parameters is
+     * shared (via the OS page cache) with any other process or JVM that maps the same file, as long as the
+     * parameters are not modified. Modifying the parameters (for example, by fitting the network) never changes
+     * the file.<br>
+     * Memory mapping has the following limits. In all of these cases, a warning is logged and the parameters are
+     * copied from the file into off-heap memory instead (in chunks, without staging them on the heap):
+     * <ul>
+     *     <li>Parameters larger than {@link #MAX_MAPPED_BYTES} (2GB): the parameters must be contiguous in memory,
+     *     but Java cannot map more than 2GB in a single mapping</li>
+     *     <li>Files that are not writable by the current user (such as read-only deployments): Java requires a
+     *     writable channel for private mappings, even though the file itself is never modified. A read-only mapping
+     *     cannot be used instead, as any write to the parameters would crash the JVM</li>
+     *     <li>The CUDA backend, which needs the parameters in device memory</li>
+     * </ul>
+     * If the file was not written with
+     * {@link #writeModelMapped(Model, File, boolean)}, this is equivalent to {@link #restoreMultiLayerNetwork(File, boolean)}.<br>
+     * The file must not be modified or truncated while the network is in use.
+     *
+     * @param file the file to load from
+     * @param loadUpdater whether to load the updater state
+     * @return the loaded multi layer network
+     * @throws IOException
+     */
+    public static MultiLayerNetwork restoreMultiLayerNetworkMapped(@NonNull File file, boolean loadUpdater) throws IOException {
+        return restoreMultiLayerNetworkHelper(file, loadUpdater, true);
+    }
+
+    private static MultiLayerNetwork restoreMultiLayerNetworkHelper(@NonNull File file, boolean loadUpdater, boolean mapParams)
+            throws IOException {
         ZipFile zipFile = new ZipFile(file);
 
         boolean gotConfig = false;
@@ -261,6 +387,13 @@ public class ModelSerializer {
                 ZipEntry noParamsMarker = zipFile.getEntry(NO_PARAMS_MARKER);
                 gotCoefficients = (noParamsMarker != null);
             }
+        } else if (zipFile.getEntry(COEFFICIENTS_MAPPED_HEADER) != null) {
+            params = readMappedParams(file, zipFile, mapParams);
+            gotCoefficients = true;
+        }
+
+        if (mapParams && zipFile.getEntry(COEFFICIENTS_MAPPED_HEADER) == null) {
+            log.warn("Model file {} was not written using ModelSerializer.writeModelMapped: parameters will be copied instead of mapped", file);
         }
 
         if (loadUpdater) {
@@ -545,6 +678,37 @@ public class ModelSerializer {
      * @throws IOException
      */
     public static ComputationGraph restoreComputationGraph(@NonNull File file, boolean loadUpdater) throws IOException {
+        return restoreComputationGraphHelper(file, loadUpdater, false);
+    }
+
+    /**
+     * Load a computation graph from a file written with {@link #writeModelMapped(Model, File, boolean)}, memory
+     * mapping the parameters instead of copying them. The updater state is not loaded.
+     *
+     * @param file the file to load from
+     * @return the loaded computation graph
+     * @throws IOException
+     * @see #restoreMultiLayerNetworkMapped(File, boolean)
+     */
+    public static ComputationGraph restoreComputationGraphMapped(@NonNull File file) throws IOException {
+        return restoreComputationGraphMapped(file, false);
+    }
+
+    /**
+     * Load a computation graph from a file written with {@link #writeModelMapped(Model, File, boolean)}, memory
+     * mapping the parameters instead of copying them. See {@link #restoreMultiLayerNetworkMapped(File, boolean)}
+     * for details.
+     *
+     * @param file the file to load from
+     * @param loadUpdater whether to load the updater state
+     * @return the loaded computation graph
+     * @throws IOException
+     */
+    public static ComputationGraph restoreComputationGraphMapped(@NonNull File file, boolean loadUpdater) throws IOException {
+        return restoreComputationGraphHelper(file, loadUpdater, true);
+    }
+
+    private static ComputationGraph restoreComputationGraphHelper(@NonNull File file, boolean loadUpdater, boolean mapParams) throws IOException {
         ZipFile zipFile = new ZipFile(file);
 
         boolean gotConfig = false;
@@ -590,6 +754,13 @@ public class ModelSerializer {
                 ZipEntry noParamsMarker = zipFile.getEntry(NO_PARAMS_MARKER);
                 gotCoefficients = (noParamsMarker != null);
             }
+        } else if (zipFile.getEntry(COEFFICIENTS_MAPPED_HEADER) != null) {
+            params = readMappedParams(file, zipFile, mapParams);
+            gotCoefficients = true;
+        }
+
+        if (mapParams && zipFile.getEntry(COEFFICIENTS_MAPPED_HEADER) == null) {
+            log.warn("Model file {} was not written using ModelSerializer.writeModelMapped: parameters will be copied instead of mapped", file);
         }
 
 
@@ -751,7 +922,7 @@ public class ModelSerializer {
 
                     InputStream is = zipFile.getInputStream(entry);
 
-                    ZipEntry wEntry = new ZipEntry(entry.getName());
+                    ZipEntry wEntry = copyEntry(entry);
                     writeFile.putNextEntry(wEntry);
 
                     IOUtils.copy(is, writeFile);
@@ -782,7 +953,8 @@ public class ModelSerializer {
         Preconditions.checkState(f.exists(), "File must exist: %s", f);
         Preconditions.checkArgument(!(UPDATER_BIN.equalsIgnoreCase(key) || NORMALIZER_BIN.equalsIgnoreCase(key)
                 || CONFIGURATION_JSON.equalsIgnoreCase(key) || COEFFICIENTS_BIN.equalsIgnoreCase(key)
-                || NO_PARAMS_MARKER.equalsIgnoreCase(key) || PREPROCESSOR_BIN.equalsIgnoreCase(key)),
+                || NO_PARAMS_MARKER.equalsIgnoreCase(key) || PREPROCESSOR_BIN.equalsIgnoreCase(key)
+                || COEFFICIENTS_MAPPED_BIN.equalsIgnoreCase(key) || COEFFICIENTS_MAPPED_HEADER.equalsIgnoreCase(key)),
                 "Invalid key: Key is reserved for internal use: \"%s\"", key);
         File tempFile = null;
         try {
@@ -802,7 +974,7 @@ public class ModelSerializer {
 
                     InputStream is = zipFile.getInputStream(entry);
 
-                    ZipEntry wEntry = new ZipEntry(entry.getName());
+                    ZipEntry wEntry = copyEntry(entry);
                     writeFile.putNextEntry(wEntry);
 
                     IOUtils.copy(is, writeFile);
@@ -848,7 +1020,8 @@ public class ModelSerializer {
         Preconditions.checkState(f.exists(), "File must exist: %s", f);
         Preconditions.checkArgument(!(UPDATER_BIN.equalsIgnoreCase(key) || NORMALIZER_BIN.equalsIgnoreCase(key)
                         || CONFIGURATION_JSON.equalsIgnoreCase(key) || COEFFICIENTS_BIN.equalsIgnoreCase(key)
-                        || NO_PARAMS_MARKER.equalsIgnoreCase(key) || PREPROCESSOR_BIN.equalsIgnoreCase(key)),
+                        || NO_PARAMS_MARKER.equalsIgnoreCase(key) || PREPROCESSOR_BIN.equalsIgnoreCase(key)
+                        || COEFFICIENTS_MAPPED_BIN.equalsIgnoreCase(key) || COEFFICIENTS_MAPPED_HEADER.equalsIgnoreCase(key)),
                 "Invalid key: Key is reserved for internal use: \"%s\"", key);
 
         try (ZipFile zipFile = new ZipFile(f)) {
@@ -976,6 +1149,248 @@ public class ModelSerializer {
     }
 
 
+    /**
+     * Create a new zip entry for copying the specified entry to another model file. The mapped parameters entry
+     * keeps its uncompressed, aligned layout; all other entries are recompressed.
+     */
+    private static ZipEntry copyEntry(ZipEntry entry) {
+        if (COEFFICIENTS_MAPPED_BIN.equals(entry.getName()))
+            return newMappedEntry(entry.getSize(), entry.getCrc());
+        return new ZipEntry(entry.getName());
+    }
+
+    private static ZipEntry newMappedEntry(long bytes, long crc) {
+        ZipEntry entry = new ZipEntry(COEFFICIENTS_MAPPED_BIN);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(bytes);
+        entry.setCompressedSize(bytes);
+        entry.setCrc(crc);
+
+        //Pad the local file header (via an extra field) so that the data starts at an aligned offset. The local header
+        // is 30 bytes + name + extra fields; ZipOutputStream adds a 20 byte zip64 extra field for entries >= 4GB
+        int headerBytes = 30 + COEFFICIENTS_MAPPED_BIN.length() + (bytes >= 0xFFFFFFFFL ? 20 : 0) + 4;
+        int padding = (MAPPED_ALIGNMENT - headerBytes % MAPPED_ALIGNMENT) % MAPPED_ALIGNMENT;
+        byte[] extra = new byte[4 + padding];
+        extra[0] = (byte) (MAPPED_PADDING_EXTRA_ID & 0xFF);
+        extra[1] = (byte) ((MAPPED_PADDING_EXTRA_ID >> 8) & 0xFF);
+        extra[2] = (byte) (padding & 0xFF);
+        extra[3] = (byte) ((padding >> 8) & 0xFF);
+        entry.setExtra(extra);
+        return entry;
+    }
+
+    private static void writeMappedParams(ZipOutputStream zipfile, INDArray params) throws IOException {
+        DataType dataType = params.dataType();
+        Preconditions.checkState(dataType == DataType.DOUBLE || dataType == DataType.FLOAT || dataType == DataType.HALF,
+                "Only DOUBLE, FLOAT and HALF parameters can be written in the mapped format, got %s", dataType);
+        if (params.isView() || params.ordering() != 'c' || params.data().offset() != 0 || params.data().length() != params.length())
+            params = params.dup('c');
+        Nd4j.getAffinityManager().ensureLocation(params, AffinityManager.Location.HOST);
+
+        long bytes = params.length() * dataType.width();
+        BytePointer pointer = new BytePointer(params.data().addressPointer());
+        byte[] chunk = new byte[(int) Math.min(bytes, MAPPED_CHUNK_BYTES)];
+
+        //Stored entries need size and CRC before the data is written
+        CRC32 crc = new CRC32();
+        for (long pos = 0; pos < bytes; pos += chunk.length) {
+            int n = (int) Math.min(chunk.length, bytes - pos);
+            pointer.position(pos).get(chunk, 0, n);
+            crc.update(chunk, 0, n);
+        }
+
+        zipfile.putNextEntry(newMappedEntry(bytes, crc.getValue()));
+        for (long pos = 0; pos < bytes; pos += chunk.length) {
+            int n = (int) Math.min(chunk.length, bytes - pos);
+            pointer.position(pos).get(chunk, 0, n);
+            zipfile.write(chunk, 0, n);
+        }
+        zipfile.closeEntry();
+
+        Properties header = new Properties();
+        header.setProperty("dataType", dataType.toString());
+        header.setProperty("length", String.valueOf(params.length()));
+        header.setProperty("shape", Arrays.toString(params.shape()).replaceAll("[\\[\\] ]", ""));
+        header.setProperty("byteOrder", ByteOrder.nativeOrder().toString());
+        zipfile.putNextEntry(new ZipEntry(COEFFICIENTS_MAPPED_HEADER));
+        header.store(zipfile, null);
+        zipfile.closeEntry();
+    }
+
+    /**
+     * @return Offset of the mapped parameters data within the file
+     */
+    private static long mappedDataOffset(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            byte[] header = new byte[30];
+            raf.readFully(header);
+            ByteBuffer bb = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN);
+            int nameLength = bb.getShort(26) & 0xFFFF;
+            int extraLength = bb.getShort(28) & 0xFFFF;
+            byte[] name = new byte[nameLength];
+            raf.readFully(name);
+            if (bb.getInt(0) != 0x04034b50 || bb.getShort(8) != ZipEntry.STORED
+                    || !COEFFICIENTS_MAPPED_BIN.equals(new String(name, StandardCharsets.UTF_8))) {
+                throw new IllegalStateException("Invalid model file " + file + ": " + COEFFICIENTS_MAPPED_BIN +
+                        " must be the first entry of the file and must be uncompressed");
+            }
+            return 30 + nameLength + extraLength;
+        }
+    }
+
+    private static INDArray readMappedParams(File file, ZipFile zipFile, boolean map) throws IOException {
+        Properties header = new Properties();
+        try (InputStream is = zipFile.getInputStream(zipFile.getEntry(COEFFICIENTS_MAPPED_HEADER))) {
+            header.load(is);
+        }
+        DataType dataType = DataType.valueOf(header.getProperty("dataType"));
+        long length = Long.parseLong(header.getProperty("length"));
+        String[] split = header.getProperty("shape").split(",");
+        long[] shape = new long[split.length];
+        for (int i = 0; i < split.length; i++)
+            shape[i] = Long.parseLong(split[i]);
+        String byteOrder = header.getProperty("byteOrder");
+        Preconditions.checkState(ByteOrder.nativeOrder().toString().equals(byteOrder), "Model file %s was written on a " +
+                "platform with byte order %s, cannot restore on platform with byte order %s", file, byteOrder, ByteOrder.nativeOrder());
+
+        long offset = mappedDataOffset(file);
+        long bytes = length * dataType.width();
+        try (MemoryWorkspace ws = Nd4j.getWorkspaceManager().scopeOutOfWorkspaces()) {
+            if (map) {
+                String reason = mappingUnsupportedReason(file, bytes);
+                if (reason == null) {
+                    INDArray mapped = mapParams(file, offset, bytes, dataType, shape);
+                    if (mapped != null)
+                        return mapped;
+                } else {
+                    log.warn("Cannot memory map parameters of model file {}: {}. Parameters will be copied instead", file, reason);
+                }
+            }
+
+            //Copy in chunks, straight from the file into off-heap memory
+            INDArray out = Nd4j.createUninitializedDetached(dataType, length);
+            ByteBuffer buffer = ByteBuffer.allocateDirect((int) Math.min(bytes, MAPPED_CHUNK_BYTES)).order(ByteOrder.nativeOrder());
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+                long pos = 0;
+                while (pos < bytes) {
+                    buffer.clear();
+                    int n = (int) Math.min(buffer.capacity(), bytes - pos);
+                    buffer.limit(n);
+                    while (buffer.hasRemaining()) {
+                        if (channel.read(buffer, offset + pos + buffer.position()) < 0)
+                            throw new EOFException("Unexpected end of file reading mapped parameters from " + file);
+                    }
+                    buffer.flip();
+
+                    long first = pos / dataType.width();
+                    int count = n / dataType.width();
+                    INDArray chunk = Nd4j.create(Nd4j.createBuffer(buffer, dataType, count), count);
+                    out.get(NDArrayIndex.interval(first, first + count)).assign(chunk);
+                    pos += n;
+                }
+            }
+            return out.reshape('c', shape);
+        }
+    }
+
+    /**
+     * @return The reason why parameters of the given size cannot be memory mapped from the given file, or null if
+     * they can be mapped
+     */
+    static String mappingUnsupportedReason(File file, long bytes) {
+        if (Nd4j.getExecutioner().type() == OpExecutioner.ExecutionerType.CUDA)
+            return "memory mapped parameters are not supported on the CUDA backend";
+        if (bytes > MAX_MAPPED_BYTES)
+            return "parameters are " + bytes + " bytes, at most " + MAX_MAPPED_BYTES + " bytes can be mapped";
+        //Private (copy-on-write) mappings require a channel opened for writing, even though the file is never modified
+        if (!file.canWrite())
+            return "file is not writable, as required for a private (copy-on-write) mapping";
+        return null;
+    }
+
+    private static INDArray mapParams(File file, long offset, long bytes, DataType dataType, long[] shape) throws IOException {
+        RandomAccessFile raf;
+        try {
+            raf = new RandomAccessFile(file, "rw");
+        } catch (IOException e) {
+            log.warn("Cannot memory map parameters of model file {}: file is not writable, as required for a private " +
+                    "(copy-on-write) mapping. Parameters will be copied instead", file);
+            return null;
+        }
+
+        //The mapping remains valid after the file is closed
+        final MappedByteBuffer mapping;
+        try (RandomAccessFile r = raf; FileChannel channel = r.getChannel()) {
+            mapping = channel.map(FileChannel.MapMode.PRIVATE, offset, bytes);
+        }
+        mapping.order(ByteOrder.nativeOrder());
+
+        //The pointers below hold a reference to the mapping: it is only unmapped once the parameters buffer is collected
+        long length = bytes / dataType.width();
+        DataBuffer buffer;
+        switch (dataType) {
+            case DOUBLE:
+                DoublePointer dp = new MappedDoublePointer(mapping);
+                buffer = Nd4j.createBuffer(dp, dataType, length, DoubleIndexer.create(dp));
+                break;
+            case FLOAT:
+                FloatPointer fp = new MappedFloatPointer(mapping);
+                buffer = Nd4j.createBuffer(fp, dataType, length, FloatIndexer.create(fp));
+                break;
+            case HALF:
+                ShortPointer sp = new MappedShortPointer(mapping);
+                buffer = Nd4j.createBuffer(sp, dataType, length, HalfIndexer.create(sp));
+                break;
+            default:
+                return null;
+        }
+        return Nd4j.create(buffer, shape);
+    }
+
+    /**
+     * Returns true if the specified array is backed by a memory mapped model file, as restored by
+     * {@link #restoreMultiLayerNetworkMapped(File)} and {@link #restoreComputationGraphMapped(File)}. Views of the
+     * mapped parameters (such as the parameters of a single layer) are also considered mapped.
+     *
+     * @param arr Array to check
+     * @return True if the array data is memory mapped from a model file, false if it is held in regular memory
+     */
+    public static boolean isFileMapped(@NonNull INDArray arr) {
+        return !arr.isEmpty() && arr.data().pointer() instanceof MappedPointer;
+    }
+
+    /**
+     * Marker for pointers to memory mapped parameters
+     */
+    private interface MappedPointer { }
+
+    private static class MappedDoublePointer extends DoublePointer implements MappedPointer {
+        private final ByteBuffer source;
+
+        private MappedDoublePointer(MappedByteBuffer mapping) {
+            super(mapping.asDoubleBuffer());
+            this.source = mapping;
+        }
+    }
+
+    private static class MappedFloatPointer extends FloatPointer implements MappedPointer {
+        private final ByteBuffer source;
+
+        private MappedFloatPointer(MappedByteBuffer mapping) {
+            super(mapping.asFloatBuffer());
+            this.source = mapping;
+        }
+    }
+
+    private static class MappedShortPointer extends ShortPointer implements MappedPointer {
+        private final ByteBuffer source;
+
+        private MappedShortPointer(MappedByteBuffer mapping) {
+            super(mapping.asShortBuffer());
+            this.source = mapping;
+        }
+    }
+
     private static void checkInputStream(InputStream inputStream) throws IOException {
 
         /*
@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.deeplearning4j.optimize.solvers.accumulation;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.CompressedUpdates;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.UpdatesCompressionAlgorithm;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.compression.QuantizedCompressionAlgorithm;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.compression.SignCompressionAlgorithm;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.compression.TopKCompressionAlgorithm;
+import org.junit.Test;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+import org.nd4j.linalg.ops.transforms.Transforms;
+
+import static org.junit.Assert.*;
+
+public class CompressionAlgorithmTests extends BaseDL4JTest {
+
+    @Test
+    public void testErrorFeedback() {
+        UpdatesCompressionAlgorithm[] algorithms = new UpdatesCompressionAlgorithm[]{
+                new TopKCompressionAlgorithm(0.05), new QuantizedCompressionAlgorithm(64), new SignCompressionAlgorithm(64)};
+
+        for (UpdatesCompressionAlgorithm algorithm : algorithms) {
+            Nd4j.getRandom().setSeed(12345);
+            INDArray original = Nd4j.rand(DataType.FLOAT, 1, 1000).subi(0.5);
+            INDArray residual = original.dup();
+
+            INDArray encoded = algorithm.encode(0, 0, residual);
+            assertNotNull(encoded);
+            assertEquals(DataType.INT, encoded.dataType());
+            assertTrue(encoded.length() <= algorithm.maxEncodedLength(original.length()));
+            assertEquals(1000, encoded.data().getInt(1));
+
+            // decoded + residual must be equal to the original updates: nothing is lost
+            INDArray decoded = Nd4j.create(DataType.FLOAT, 1, 1000);
+            CompressedUpdates.decode(encoded, decoded);
+            assertEquals(algorithm.toString(), original, decoded.add(residual));
+
+            assertEquals(algorithm, algorithm.clone());
+            assertFalse(Double.isNaN(algorithm.getLastThreshold()));
+        }
+    }
+
+    @Test
+    public void testTopK() {
+        INDArray updates = Nd4j.createFromArray(new float[]{0.1f, -0.9f, 0.3f, 0.0f, 0.8f, -0.2f, 0.05f, 0.0f, -0.7f, 0.4f}).reshape(1, 10);
+        INDArray residual = updates.dup();
+
+        TopKCompressionAlgorithm algorithm = new TopKCompressionAlgorithm(0.3);
+        INDArray encoded = algorithm.encode(0, 0, residual);
+        assertEquals(CompressedUpdates.TOPK_ENCODING, CompressedUpdates.getEncoding(encoded));
+        assertEquals(3, encoded.data().getInt(0));
+        assertEquals(0.7, algorithm.getLastThreshold(), 1e-6);
+
+        INDArray decoded = Nd4j.create(DataType.FLOAT, 1, 10);
+        CompressedUpdates.decode(encoded, decoded);
+        INDArray exp = Nd4j.createFromArray(new float[]{0, -0.9f, 0, 0, 0.8f, 0, 0, 0, -0.7f, 0}).reshape(1, 10);
+        assertEquals(exp, decoded);
+        assertEquals(updates.sub(exp), residual);
+
+        // decoding adds to the target
+        CompressedUpdates.decode(encoded, decoded);
+        assertEquals(exp.mul(2), decoded);
+
+        // all zeros: nothing to send
+        assertNull(algorithm.encode(1, 0, Nd4j.create(DataType.FLOAT, 1, 10)));
+    }
+
+    @Test
+    public void testQuantizedError() {
+        Nd4j.getRandom().setSeed(12345);
+        INDArray updates = Nd4j.randn(DataType.FLOAT, 1, 5000);
+        INDArray residual = updates.dup();
+
+        QuantizedCompressionAlgorithm algorithm = new QuantizedCompressionAlgorithm(100);
+        INDArray encoded = algorithm.encode(0, 0, residual);
+        assertEquals(CompressedUpdates.QUANTIZED_ENCODING, CompressedUpdates.getEncoding(encoded));
+        assertEquals(50, encoded.data().getInt(0));
+
+        // quantization error is at most half a quantization step per block
+        for (int b = 0; b < 50; b++) {
+            INDArray block = updates.get(NDArrayIndex.point(0), NDArrayIndex.interval(b * 100, (b + 1) * 100));
+            INDArray blockResidual = residual.get(NDArrayIndex.point(0), NDArrayIndex.interval(b * 100, (b + 1) * 100));
+            double step = block.amaxNumber().doubleValue() / 127.0;
+            assertTrue(blockResidual.amaxNumber().doubleValue() <= step / 2 + 1e-6);
+        }
+    }
+
+    @Test
+    public void testSign() {
+        INDArray updates = Nd4j.createFromArray(new float[]{1, -3, 2, -2, 0, 0, 0, 4}).reshape(1, 8);
+        INDArray residual = updates.dup();
+
+        SignCompressionAlgorithm algorithm = new SignCompressionAlgorithm(4);
+        INDArray encoded = algorithm.encode(0, 0, residual);
+        assertEquals(CompressedUpdates.SIGN_ENCODING, CompressedUpdates.getEncoding(encoded));
+
+        INDArray decoded = Nd4j.create(DataType.FLOAT, 1, 8);
+        CompressedUpdates.decode(encoded, decoded);
+        // scales: mean abs value of each block, i.e. 2 and 1
+        INDArray exp = Nd4j.createFromArray(new float[]{2, -2, 2, -2, 1, 1, 1, 1}).reshape(1, 8);
+        assertEquals(exp, decoded);
+        assertEquals(updates.sub(exp), residual);
+        assertEquals(1.5, algorithm.getLastThreshold(), 1e-6);
+        assertEquals(Transforms.abs(exp).sumNumber().doubleValue(), Transforms.abs(updates).sumNumber().doubleValue(), 1e-6);
+    }
+
+    @Test
+    public void testEncodingHandler() {
+        EncodingHandler handler = new EncodingHandler(new QuantizedCompressionAlgorithm(), null, false);
+        INDArray updates = Nd4j.rand(DataType.FLOAT, 1, 1000);
+        INDArray original = updates.dup();
+
+        INDArray encoded = handler.encodeUpdates(0, 0, updates);
+        assertEquals(CompressedUpdates.QUANTIZED_ENCODING, CompressedUpdates.getEncoding(encoded));
+
+        INDArray decoded = Nd4j.create(DataType.FLOAT, 1, 1000);
+        CompressedUpdates.decode(encoded, decoded);
+        assertEquals(original, decoded.add(updates));
+    }
+}
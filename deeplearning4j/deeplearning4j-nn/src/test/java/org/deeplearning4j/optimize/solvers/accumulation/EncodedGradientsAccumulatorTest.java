@@ -19,8 +19,13 @@ package org.deeplearning4j.optimize.solvers.accumulation;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.UpdatesCompressionAlgorithm;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.compression.QuantizedCompressionAlgorithm;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.compression.SignCompressionAlgorithm;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.compression.TopKCompressionAlgorithm;
 import org.deeplearning4j.optimize.solvers.accumulation.encoding.threshold.FixedThresholdAlgorithm;
 import org.junit.Test;
+import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
 
@@ -57,14 +62,49 @@ public class EncodedGradientsAccumulatorTest extends BaseDL4JTest {
                 accumulator.receiveUpdate(encoded);
 
                 // just purge updates, like they were consumed
-                for (int i = 0; i < accumulator.messages.size(); i++) {
-                    accumulator.messages.get(i).clear();
+                for (int i = 0; i < accumulator.messages.numConsumers(); i++) {
+                    accumulator.messages.skip(i);
                 }
             }
         }
     }
 
 
+    /**
+     * Compression algorithms can produce messages much larger than params / 16: the buffer must be sized from the
+     * compression algorithm, as done in SharedTrainingWrapper and ParallelWrapper
+     */
+    @Test
+    public void testStoreCompressed() {
+        int numParams = 2000000;
+        int numWorkers = 4;
+        int queueSize = numWorkers * 2;
+
+        UpdatesCompressionAlgorithm[] algorithms = {new QuantizedCompressionAlgorithm(), new TopKCompressionAlgorithm(0.1),
+                        new SignCompressionAlgorithm()};
+        for (UpdatesCompressionAlgorithm a : algorithms) {
+            EncodingHandler handler = new EncodingHandler(a, null, false);
+
+            long bufferSize = EncodedGradientsAccumulator.getOptimalBufferSize(numParams, a, numWorkers, 2);
+            EncodedGradientsAccumulator accumulator =
+                            new EncodedGradientsAccumulator(numWorkers, handler, bufferSize, queueSize, null, false);
+
+            //Dense gradients: worst case for all algorithms
+            INDArray encoded = handler.encodeUpdates(0, 0, Nd4j.rand(DataType.FLOAT, 1, numParams).subi(0.5));
+            assertTrue(a.toString(), encoded.data().length() <= a.maxEncodedLength(numParams));
+            accumulator.receiveUpdate(encoded);
+            for (int i = 0; i < accumulator.messages.numConsumers(); i++) {
+                accumulator.messages.skip(i);
+            }
+
+            if (a instanceof QuantizedCompressionAlgorithm || a instanceof TopKCompressionAlgorithm) {
+                //Threshold encoding sizing would not have been enough for these
+                long thresholdBudget = EncodedGradientsAccumulator.getOptimalBufferSize(numParams, numWorkers, 2) / queueSize / 4;
+                assertTrue(a.toString(), encoded.data().length() > thresholdBudget);
+            }
+        }
+    }
+
     /**
      * Here we ensure that no matter how dense/sparse our updates are - we're never going above 1/16 of original elements of gradients array
      *
@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.optimize.solvers.accumulation;
+
+import lombok.val;
+import org.deeplearning4j.BaseDL4JTest;
+import org.junit.Test;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class UpdatesRingBufferTest extends BaseDL4JTest {
+
+    @Test
+    public void testSequencesAndLag() {
+        val buffer = new UpdatesRingBuffer(2, 3);
+        assertEquals(3, buffer.capacity());
+        assertEquals(0, buffer.slotLength());
+
+        assertFalse(buffer.hasAnything(0));
+        assertFalse(buffer.hasAnything(1));
+
+        for (int e = 0; e < 3; e++) {
+            buffer.put(Nd4j.create(5, 5));
+        }
+
+        assertEquals(3, buffer.getPublishedCount());
+        assertEquals(3, buffer.getLag(0));
+        assertEquals(3, buffer.getLag(1));
+        assertTrue(buffer.hasAnything(0));
+
+        assertEquals(3, buffer.skip(0));
+        assertEquals(0, buffer.getLag(0));
+        assertEquals(3, buffer.getLag(1));
+        assertEquals(3, buffer.getMaxLag());
+        assertFalse(buffer.hasAnything(0));
+
+        buffer.put(Nd4j.create(5, 5));
+        assertEquals(1, buffer.getLag(0));
+        assertEquals(4, buffer.getLag(1));
+        assertEquals(0, buffer.getPublisherWaits());
+
+        buffer.reset();
+        assertEquals(0, buffer.getPublishedCount());
+        assertEquals(0, buffer.getMaxLag());
+        assertFalse(buffer.hasAnything(1));
+    }
+
+    @Test
+    public void testDrainDecodes() {
+        double threshold = 1e-3;
+        INDArray grad = Nd4j.create(new double[]{threshold, 0, -threshold, 0, threshold, 0});
+        INDArray encoded = Nd4j.getExecutioner().thresholdEncode(grad.dup(), threshold);
+
+        val buffer = new UpdatesRingBuffer(2, 4);
+        buffer.put(encoded);
+        buffer.put(encoded);
+
+        INDArray target0 = Nd4j.create(grad.dataType(), grad.shape());
+        assertEquals(2, buffer.drainTo(0, target0));
+        assertEquals(grad.mul(2), target0);
+        assertEquals(2, buffer.getMaxObservedLag(0));
+
+        // draining again is a no-op until new updates are published
+        assertEquals(0, buffer.drainTo(0, target0));
+
+        buffer.put(encoded);
+        INDArray target1 = Nd4j.create(grad.dataType(), grad.shape());
+        assertEquals(3, buffer.drainTo(1, target1));
+        assertEquals(grad.mul(3), target1);
+        assertEquals(3, buffer.getMaxObservedLag(1));
+    }
+
+    @Test
+    public void testPooledSlots() {
+        double threshold = 1e-3;
+        INDArray grad = Nd4j.create(new double[]{threshold, 0, -threshold, 0, threshold, 0});
+        INDArray encoded = Nd4j.getExecutioner().thresholdEncode(grad.dup(), threshold);
+
+        val buffer = new UpdatesRingBuffer(2, 2, 64);
+        assertEquals(64, buffer.slotLength());
+
+        INDArray target0 = Nd4j.create(grad.dataType(), grad.shape());
+        INDArray target1 = Nd4j.create(grad.dataType(), grad.shape());
+        for (int e = 0; e < 5; e++) {
+            INDArray update = encoded.dup();
+            buffer.put(update);
+            // pooled buffer keeps its own copy, so the caller may reuse the update right away
+            update.assign(0);
+
+            assertEquals(1, buffer.drainTo(0, target0));
+            assertEquals(1, buffer.drainTo(1, target1));
+        }
+        assertEquals(grad.mul(5), target0);
+        assertEquals(grad.mul(5), target1);
+
+        try {
+            buffer.put(Nd4j.create(DataType.INT, 65));
+            fail("Expected exception");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("slot length"));
+        }
+    }
+
+    @Test(timeout = 30000L)
+    public void testConcurrentPublishers() throws Exception {
+        final int numProducers = 4;
+        final int numConsumers = 3;
+        final int updatesPerProducer = 1000;
+        final long total = numProducers * updatesPerProducer;
+        final INDArray update = Nd4j.create(5, 5);
+        final UpdatesRingBuffer buffer = new UpdatesRingBuffer(numConsumers, 8);
+
+        final AtomicLong[] consumed = new AtomicLong[numConsumers];
+        List<Thread> threads = new ArrayList<>();
+        for (int c = 0; c < numConsumers; c++) {
+            final int consumer = c;
+            consumed[c] = new AtomicLong(0);
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    while (consumed[consumer].get() < total) {
+                        assertTrue(buffer.getLag(consumer) <= buffer.capacity());
+                        consumed[consumer].addAndGet(buffer.skip(consumer));
+                    }
+                }
+            }));
+        }
+
+        for (int p = 0; p < numProducers; p++) {
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int e = 0; e < updatesPerProducer; e++) {
+                        buffer.put(update);
+                    }
+                }
+            }));
+        }
+
+        for (Thread t : threads)
+            t.start();
+
+        for (Thread t : threads)
+            t.join();
+
+        assertEquals(total, buffer.getPublishedCount());
+        for (int c = 0; c < numConsumers; c++) {
+            assertEquals(total, consumed[c].get());
+            assertEquals(0, buffer.getLag(c));
+        }
+    }
+}
@@ -16,6 +16,7 @@
 
 package org.deeplearning4j.parallelism;
 
+import lombok.Getter;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
@@ -27,12 +28,15 @@ import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
 import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
 import org.deeplearning4j.nn.graph.ComputationGraph;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.parallelism.inference.InferenceMetrics;
 import org.deeplearning4j.parallelism.inference.InferenceMode;
 import org.deeplearning4j.parallelism.inference.InferenceObservable;
 import org.deeplearning4j.parallelism.inference.LoadBalanceMode;
+import org.deeplearning4j.parallelism.inference.RejectionPolicy;
 import org.deeplearning4j.parallelism.inference.observers.BasicInferenceObservable;
 import org.deeplearning4j.parallelism.inference.observers.BasicInferenceObserver;
 import org.deeplearning4j.parallelism.inference.observers.BatchedInferenceObservable;
+import org.deeplearning4j.parallelism.inference.observers.FutureInferenceObserver;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.dataset.DataSet;
 import org.nd4j.linalg.exception.ND4JIllegalStateException;
@@ -40,10 +44,21 @@ import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.primitives.Pair;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Observer;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -58,12 +73,21 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 @Slf4j
 public class ParallelInference {
     protected Model model;
-    protected long nanos;
     protected int workers;
     protected int batchLimit;
     protected InferenceMode inferenceMode;
     protected int queueLimit;
     protected LoadBalanceMode loadBalanceMode = LoadBalanceMode.FIFO;
+    protected long maxQueueDelayNanos;
+    protected int sequenceBucketSize;
+    protected RejectionPolicy rejectionPolicy = RejectionPolicy.BLOCK;
+    protected long submitTimeoutNanos;
+
+    /**
+     * Request, batch and per-worker counters for this instance. Null for INPLACE inference mode
+     */
+    @Getter
+    protected InferenceMetrics metrics;
 
     // this queue holds data for inference
     private BlockingQueue<InferenceObservable> observables;
@@ -79,6 +103,7 @@ public class ParallelInference {
     public final static int DEFAULT_BATCH_LIMIT = 32;
     public final static InferenceMode DEFAULT_INFERENCE_MODE = InferenceMode.BATCHED;
     public final static int DEFAULT_QUEUE_LIMIT = 64;
+    public final static int DEFAULT_PRIORITY = 0;
 
 
 
@@ -121,7 +146,10 @@ public class ParallelInference {
     }
 
     protected void init() {
-        observables = new LinkedBlockingQueue<>(queueLimit);
+        InferenceQueue queue = new InferenceQueue(queueLimit, rejectionPolicy, submitTimeoutNanos);
+        metrics = new InferenceMetrics(workers, queue);
+        queue.setMetrics(metrics);
+        observables = queue;
 
         int numDevices = Nd4j.getAffinityManager().getNumberOfDevices();
         int currentDevice = Nd4j.getAffinityManager().getDeviceForCurrentThread();
@@ -143,7 +171,7 @@ public class ParallelInference {
 
         if (inferenceMode == InferenceMode.BATCHED) {
             log.info("Initializing ObservablesProvider...");
-            provider = new ObservablesProvider(nanos, batchLimit, observables);
+            provider = new ObservablesProvider(maxQueueDelayNanos, batchLimit, sequenceBucketSize, observables);
         }
     }
 
@@ -158,6 +186,9 @@ public class ParallelInference {
         if (zoo == null)
             return;
 
+        if (provider != null)
+            provider.shutdown();
+
         for (int e = 0; e < zoo.length; e++) {
             if (zoo[e] == null)
                 continue;
@@ -232,24 +263,23 @@ public class ParallelInference {
      * @return Output from the network
      */
     public INDArray[] output(INDArray[] input, INDArray[] inputMasks){
-        Nd4j.getExecutioner().commit(); //Commit before passing input to other thread
+        return output(input, inputMasks, DEFAULT_PRIORITY);
+    }
 
+    /**
+     * Generate predictions/outputs from the network, optionally using input masks for predictions.<br>
+     * Requests with a higher priority are executed before any queued requests with a lower priority, and are never
+     * batched together with requests of a different priority.
+     *
+     * @param input      Input to the network
+     * @param inputMasks Input masks for the network. May be null.
+     * @param priority   Priority of the request. Higher values are executed first. Default: {@link #DEFAULT_PRIORITY}
+     * @return Output from the network
+     */
+    public INDArray[] output(INDArray[] input, INDArray[] inputMasks, int priority){
         // basically, depending on model type we either throw stuff to specific model, or wait for batch
         BasicInferenceObserver observer = new BasicInferenceObserver();
-        InferenceObservable observable;
-
-        if (inferenceMode == InferenceMode.SEQUENTIAL) {
-            observable = new BasicInferenceObservable(input, inputMasks);
-            observable.addObserver(observer);
-            try {
-                observables.put(observable);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                throw new RuntimeException(e);
-            }
-        } else {
-            observable = provider.setInput(observer, input, inputMasks);
-        }
+        InferenceObservable observable = submit(observer, input, inputMasks, priority);
 
         try {
             // submit query to processing
@@ -264,6 +294,72 @@ public class ParallelInference {
         return observable.getOutput();
     }
 
+    /**
+     * Generate predictions/outputs from the network without blocking the calling thread
+     *
+     * @param input Input to the network
+     * @return Future for the output of the network
+     */
+    public CompletableFuture<INDArray[]> outputAsync(INDArray... input) {
+        return outputAsync(input, null);
+    }
+
+    /**
+     * Generate predictions/outputs from the network without blocking the calling thread, optionally using input masks
+     *
+     * @param input      Input to the network
+     * @param inputMasks Input masks for the network. May be null.
+     * @return Future for the output of the network
+     */
+    public CompletableFuture<INDArray[]> outputAsync(INDArray[] input, INDArray[] inputMasks) {
+        return outputAsync(input, inputMasks, DEFAULT_PRIORITY);
+    }
+
+    /**
+     * Generate predictions/outputs from the network without blocking the calling thread, optionally using input masks.<br>
+     * The future completes exceptionally with a {@link RejectedExecutionException} if the request is rejected or dropped
+     * by the configured {@link RejectionPolicy}.
+     * Note that with {@link RejectionPolicy#BLOCK} or {@link RejectionPolicy#TIMEOUT}, this method may still block
+     * while the request queue is full.
+     *
+     * @param input      Input to the network
+     * @param inputMasks Input masks for the network. May be null.
+     * @param priority   Priority of the request. Higher values are executed first. Default: {@link #DEFAULT_PRIORITY}
+     * @return Future for the output of the network
+     */
+    public CompletableFuture<INDArray[]> outputAsync(INDArray[] input, INDArray[] inputMasks, int priority) {
+        FutureInferenceObserver observer = new FutureInferenceObserver();
+        submit(observer, input, inputMasks, priority);
+        return observer.getFuture();
+    }
+
+    /**
+     * Submit a request for execution. The observer is notified once the request has been executed, or has failed
+     *
+     * @return Observable for the request
+     */
+    protected InferenceObservable submit(@NonNull Observer observer, INDArray[] input, INDArray[] inputMasks, int priority) {
+        Nd4j.getExecutioner().commit(); //Commit before passing input to other thread
+        metrics.recordSubmitted(1);
+
+        if (inferenceMode == InferenceMode.SEQUENTIAL) {
+            BasicInferenceObservable observable = new BasicInferenceObservable(input, inputMasks);
+            observable.setPriority(priority);
+            observable.addObserver(observer);
+            try {
+                observables.put(observable);
+            } catch (RejectedExecutionException e) {
+                observable.setOutputException(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+            return observable;
+        } else {
+            return provider.setInput(observer, input, inputMasks, priority);
+        }
+    }
+
     /**
      * This method does forward pass and returns output provided by OutputAdapter
      *
@@ -296,6 +392,10 @@ public class ParallelInference {
         private InferenceMode inferenceMode = DEFAULT_INFERENCE_MODE;
         private int queueLimit = DEFAULT_QUEUE_LIMIT;
         protected LoadBalanceMode loadBalanceMode = LoadBalanceMode.FIFO;
+        private long maxQueueDelayNanos = 0;
+        private int sequenceBucketSize = 0;
+        private RejectionPolicy rejectionPolicy = RejectionPolicy.BLOCK;
+        private long submitTimeoutNanos = 0;
 
         public Builder(@NonNull Model model) {
             this.model = model;
@@ -365,6 +465,85 @@ public class ParallelInference {
             return this;
         }
 
+        /**
+         * This method defines the maximum amount of time a request may wait for other requests to be batched with it.
+         * A batch is sent for execution once it contains {@link #batchLimit(int)} requests, or once its oldest request
+         * has waited for this amount of time - whichever comes first.<br>
+         * If set to 0 (default), batches are sent for execution immediately, and requests are only batched
+         * together while all workers are busy.
+         *
+         * PLEASE NOTE: This value has no effect in
+         * SEQUENTIAL inference mode
+         *
+         * @param time Maximum queue delay
+         * @param unit Time unit for the delay
+         * @return
+         */
+        public Builder maxQueueDelay(long time, @NonNull TimeUnit unit) {
+            if (time < 0)
+                throw new IllegalStateException("Max queue delay should be non-negative value");
+
+            this.maxQueueDelayNanos = unit.toNanos(time);
+            return this;
+        }
+
+        /**
+         * This method enables batching of variable length time series inputs.
+         * Time series (rank 3) inputs are grouped into buckets of sequence lengths: (0, bucketSize],
+         * (bucketSize, 2*bucketSize] and so on. Inputs in the same bucket are batched together by padding them to the
+         * longest sequence in the batch, with the padded time steps masked out. Time series outputs are trimmed back to
+         * the length of each input before being returned.<br>
+         * If set to 0 (default), only inputs with identical shapes are batched together.
+         *
+         * PLEASE NOTE: This value has no effect in
+         * SEQUENTIAL inference mode
+         *
+         * @param bucketSize Sequence length bucket size, or 0 to disable padding
+         * @return
+         */
+        public Builder sequenceBucketSize(int bucketSize) {
+            if (bucketSize < 0)
+                throw new IllegalStateException("Sequence bucket size should be non-negative value");
+
+            this.sequenceBucketSize = bucketSize;
+            return this;
+        }
+
+        /**
+         * This method defines what happens to new requests when the request queue is full. Options are:
+         *
+         * BLOCK: The calling thread blocks until there is space in the queue (default)
+         * FAIL_FAST: The new request is rejected immediately
+         * DROP_OLDEST: The oldest queued request with the lowest priority is rejected, to make space for the new request
+         * TIMEOUT: The calling thread blocks for up to {@link #submitTimeout(long, TimeUnit)}, after which the new
+         * request is rejected
+         *
+         * Rejected requests fail with a {@link RejectedExecutionException}
+         *
+         * @param rejectionPolicy
+         * @return
+         */
+        public Builder rejectionPolicy(@NonNull RejectionPolicy rejectionPolicy) {
+            this.rejectionPolicy = rejectionPolicy;
+            return this;
+        }
+
+        /**
+         * This method defines how long a request may wait for space in the request queue, for
+         * RejectionPolicy.TIMEOUT
+         *
+         * @param time Maximum time to wait
+         * @param unit Time unit
+         * @return
+         */
+        public Builder submitTimeout(long time, @NonNull TimeUnit unit) {
+            if (time < 0)
+                throw new IllegalStateException("Submit timeout should be non-negative value");
+
+            this.submitTimeoutNanos = unit.toNanos(time);
+            return this;
+        }
+
         /**
          * This method defines buffer queue size.
          *
@@ -405,6 +584,10 @@ public class ParallelInference {
                 inference.model = this.model;
                 inference.workers = this.workers;
                 inference.loadBalanceMode = this.loadBalanceMode;
+                inference.maxQueueDelayNanos = this.maxQueueDelayNanos;
+                inference.sequenceBucketSize = this.sequenceBucketSize;
+                inference.rejectionPolicy = this.rejectionPolicy;
+                inference.submitTimeoutNanos = this.submitTimeoutNanos;
 
                 inference.init();
 
@@ -426,10 +609,12 @@ public class ParallelInference {
         private Model replicatedModel;
         private AtomicLong counter = new AtomicLong(0);
         private boolean rootDevice;
+        private int workerIdx;
 
         private ReentrantReadWriteLock modelLock = new ReentrantReadWriteLock();
 
         private InferenceWorker(int id, @NonNull Model model, @NonNull BlockingQueue inputQueue, boolean rootDevice) {
+            this.workerIdx = id;
             this.inputQueue = inputQueue;
             this.protoModel = model;
             this.rootDevice = rootDevice;
@@ -504,6 +689,7 @@ public class ParallelInference {
 
                     if (request != null) {
                         counter.incrementAndGet();
+                        long start = System.nanoTime();
 
                         // FIXME: get rid of instanceof here, model won't change during runtime anyway
                         if (isCG) {
@@ -511,6 +697,7 @@ public class ParallelInference {
                             List<INDArray[]> out = new ArrayList<>(batches.size());
                             try {
                                 for (Pair<INDArray[],INDArray[]> inBatch : batches) {
+                                    metrics.recordBatchSize(inBatch.getFirst()[0].size(0));
                                     try {
                                         modelLock.readLock().lock();
 
@@ -522,8 +709,10 @@ public class ParallelInference {
                                     }
 
                                 }
+                                recordExecution(request, start, true);
                                 request.setOutputBatches(out);
                             } catch (Exception e){
+                                recordExecution(request, start, false);
                                 request.setOutputException(e);
                             }
                         } else if (isMLN) {
@@ -533,6 +722,7 @@ public class ParallelInference {
                                 for (Pair<INDArray[],INDArray[]> inBatch : batches) {
                                     INDArray f = inBatch.getFirst()[0];
                                     INDArray fm = (inBatch.getSecond() == null ? null : inBatch.getSecond()[0]);
+                                    metrics.recordBatchSize(f.size(0));
                                     try {
                                         modelLock.readLock().lock();
 
@@ -543,8 +733,10 @@ public class ParallelInference {
                                         modelLock.readLock().unlock();
                                     }
                                 }
+                                recordExecution(request, start, true);
                                 request.setOutputBatches(out);
                             } catch (Exception e){
+                                recordExecution(request, start, false);
                                 request.setOutputException(e);
                             }
                         }
@@ -564,6 +756,21 @@ public class ParallelInference {
             }
         }
 
+        private void recordExecution(InferenceObservable request, long start, boolean success) {
+            long now = System.nanoTime();
+            int numRequests = 1;
+            long wait = 0;
+            if (request instanceof BasicInferenceObservable) {
+                numRequests = ((BasicInferenceObservable) request).numRequests();
+                wait = start - ((BasicInferenceObservable) request).getCreatedNanos();
+            }
+            if (success)
+                metrics.recordCompleted(numRequests);
+            else
+                metrics.recordFailed(numRequests);
+            metrics.recordExecution(workerIdx, wait, now - start);
+        }
+
         protected void shutdown() {
             shouldWork.set(false);
             while (!isStopped.get()) {
@@ -573,18 +780,232 @@ public class ParallelInference {
     }
 
 
+    /**
+     * Bounded blocking queue for inference requests: requests with higher {@link BasicInferenceObservable#getPriority()}
+     * are taken first, and requests with the same priority are taken in the order they were created.<br>
+     * When the queue is full, {@link #put(InferenceObservable)} applies the {@link RejectionPolicy}: requests that are
+     * rejected cause a {@link RejectedExecutionException}, and requests that are dropped from the queue fail with one.
+     */
+    protected static class InferenceQueue extends PriorityBlockingQueue<InferenceObservable> {
+        private final Semaphore capacity;
+        private final RejectionPolicy rejectionPolicy;
+        private final long submitTimeoutNanos;
+        private InferenceMetrics metrics;
+
+        protected InferenceQueue(int capacity) {
+            this(capacity, RejectionPolicy.BLOCK, 0);
+        }
+
+        protected InferenceQueue(int capacity, @NonNull RejectionPolicy rejectionPolicy, long submitTimeoutNanos) {
+            super(11, new Comparator<InferenceObservable>() {
+                @Override
+                public int compare(InferenceObservable o1, InferenceObservable o2) {
+                    int c = Integer.compare(priority(o2), priority(o1));
+                    return c != 0 ? c : Long.compare(id(o1), id(o2));
+                }
+            });
+            this.capacity = new Semaphore(capacity);
+            this.rejectionPolicy = rejectionPolicy;
+            this.submitTimeoutNanos = submitTimeoutNanos;
+        }
+
+        protected void setMetrics(InferenceMetrics metrics) {
+            this.metrics = metrics;
+        }
+
+        private static int priority(InferenceObservable o) {
+            return o instanceof BasicInferenceObservable ? ((BasicInferenceObservable) o).getPriority() : DEFAULT_PRIORITY;
+        }
+
+        private static long id(InferenceObservable o) {
+            return o instanceof BasicInferenceObservable ? ((BasicInferenceObservable) o).getId() : 0;
+        }
+
+        @Override
+        public void put(InferenceObservable o) {
+            switch (rejectionPolicy) {
+                case BLOCK:
+                    try {
+                        capacity.acquire();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw reject(o);
+                    }
+                    break;
+                case FAIL_FAST:
+                    if (!capacity.tryAcquire())
+                        throw reject(o);
+                    break;
+                case TIMEOUT:
+                    try {
+                        if (!capacity.tryAcquire(submitTimeoutNanos, TimeUnit.NANOSECONDS))
+                            throw reject(o);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw reject(o);
+                    }
+                    break;
+                case DROP_OLDEST:
+                    while (!capacity.tryAcquire()) {
+                        dropOldest();
+                    }
+                    break;
+            }
+            super.offer(o);
+        }
+
+        private RejectedExecutionException reject(InferenceObservable o) {
+            if (metrics != null)
+                metrics.recordRejected(numRequests(o));
+            return new RejectedExecutionException("Inference request rejected: request queue is full (" + size()
+                    + " queued requests, rejection policy " + rejectionPolicy + ")");
+        }
+
+        private void dropOldest() {
+            // drop the oldest (i.e., first submitted) request of the lowest priority
+            InferenceObservable victim = null;
+            for (InferenceObservable o : this) {
+                if (victim == null) {
+                    victim = o;
+                    continue;
+                }
+                int c = Integer.compare(priority(o), priority(victim));
+                if (c < 0 || (c == 0 && id(o) < id(victim)))
+                    victim = o;
+            }
+
+            if (victim == null) {
+                // queue is empty, but a worker hasn't released its permit yet
+                Thread.yield();
+            } else if (remove(victim)) {
+                if (metrics != null)
+                    metrics.recordDropped(numRequests(victim));
+                victim.setOutputException(new RejectedExecutionException("Inference request dropped: request queue is full"));
+            }
+        }
+
+        private static int numRequests(InferenceObservable o) {
+            return o instanceof BasicInferenceObservable ? ((BasicInferenceObservable) o).numRequests() : 1;
+        }
+
+        @Override
+        public boolean offer(InferenceObservable o) {
+            if (!capacity.tryAcquire())
+                return false;
+            return super.offer(o);
+        }
+
+        @Override
+        public boolean offer(InferenceObservable o, long timeout, TimeUnit unit) {
+            try {
+                if (!capacity.tryAcquire(timeout, unit))
+                    return false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            return super.offer(o);
+        }
+
+        @Override
+        public InferenceObservable take() throws InterruptedException {
+            InferenceObservable o = super.take();
+            capacity.release();
+            return o;
+        }
+
+        @Override
+        public InferenceObservable poll() {
+            InferenceObservable o = super.poll();
+            if (o != null)
+                capacity.release();
+            return o;
+        }
+
+        @Override
+        public InferenceObservable poll(long timeout, TimeUnit unit) throws InterruptedException {
+            InferenceObservable o = super.poll(timeout, unit);
+            if (o != null)
+                capacity.release();
+            return o;
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            boolean removed = super.remove(o);
+            if (removed)
+                capacity.release();
+            return removed;
+        }
+
+        @Override
+        public int drainTo(Collection<? super InferenceObservable> c, int maxElements) {
+            int n = super.drainTo(c, maxElements);
+            capacity.release(n);
+            return n;
+        }
+
+        @Override
+        public int drainTo(Collection<? super InferenceObservable> c) {
+            return drainTo(c, Integer.MAX_VALUE);
+        }
+
+        @Override
+        public void clear() {
+            while (poll() != null) {
+                //
+            }
+        }
+
+        @Override
+        public int remainingCapacity() {
+            return capacity.availablePermits();
+        }
+    }
+
+
+    /**
+     * This class packs individual requests into batches for BATCHED inference.<br>
+     * Requests are grouped by priority. If a max queue delay is set, a batch is sent to the workers once it is full or
+     * once the delay for its first request has passed, and requests are additionally grouped by input shape (or, if
+     * sequence bucketing is enabled, by time series length bucket) so that each batch can be executed as a single
+     * forward pass. Otherwise, batches are sent to the workers immediately, and grow only while no worker has picked
+     * them up.
+     */
     protected static class ObservablesProvider {
         private BlockingQueue<InferenceObservable> targetQueue;
         private long nanos;
         private int batchLimit;
+        private int sequenceBucketSize;
 
-        private volatile BatchedInferenceObservable currentObservable;
+        // batches that are still accepting requests, by priority and shape
+        private final Map<String, BatchedInferenceObservable> currentObservables = new HashMap<>();
         private final Object locker = new Object();
+        private ScheduledExecutorService scheduler;
 
-        protected ObservablesProvider(long nanos, int batchLimit, @NonNull BlockingQueue<InferenceObservable> queue) {
+        /**
+         * @param maxQueueDelayNanos Maximum time a batch is held back for more requests, or 0 to send batches immediately
+         * @param batchLimit         Maximum number of requests per batch
+         * @param sequenceBucketSize Sequence length bucket size for padding time series inputs, or 0 to disable
+         * @param queue              Queue to send batches to
+         */
+        protected ObservablesProvider(long maxQueueDelayNanos, int batchLimit, int sequenceBucketSize,
+                                      @NonNull BlockingQueue<InferenceObservable> queue) {
             this.targetQueue = queue;
-            this.nanos = nanos;
+            this.nanos = maxQueueDelayNanos;
             this.batchLimit = batchLimit;
+            this.sequenceBucketSize = sequenceBucketSize;
+
+            if (maxQueueDelayNanos > 0) {
+                scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "ObservablesProvider-flush");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+            }
         }
 
         protected InferenceObservable setInput(@NonNull Observer observer, INDArray input){
@@ -596,27 +1017,108 @@ public class ParallelInference {
         }
 
         protected InferenceObservable setInput(@NonNull Observer observer, INDArray[] input, INDArray[] inputMask) {
+            return setInput(observer, input, inputMask, DEFAULT_PRIORITY);
+        }
+
+        protected InferenceObservable setInput(@NonNull Observer observer, INDArray[] input, INDArray[] inputMask, int priority) {
+            boolean deferred = scheduler != null;
+            // without a queue delay, batches may be picked up by workers at any time and are replaced on the next request,
+            // so we only keep one batch per priority. Inputs with different shapes within a batch are split into
+            // separate forward passes by BatchedInferenceObservable.getInputBatches()
+            final String key = deferred ? batchKey(input, priority) : String.valueOf(priority);
             synchronized (locker) {
+                BatchedInferenceObservable currentObservable = currentObservables.get(key);
                 boolean isNew = false;
                 if (currentObservable == null || currentObservable.getCounter() >= batchLimit
-                                || currentObservable.isLocked()) {
+                                || currentObservable.isFailed() || (!deferred && currentObservable.isLocked())) {
                     isNew = true;
-                    currentObservable = new BatchedInferenceObservable();
+                    currentObservable = new BatchedInferenceObservable(sequenceBucketSize > 0);
+                    currentObservable.setPriority(priority);
+                    currentObservables.put(key, currentObservable);
                 }
 
-                currentObservable.addInput(input, inputMask);
+                // observer has to be registered before the input: once the input is added, the batch may be executed
+                if (observer instanceof FutureInferenceObserver)
+                    ((FutureInferenceObserver) observer).setPosition(currentObservable.getCounter());
                 currentObservable.addObserver(observer);
+                currentObservable.addInput(input, inputMask);
 
-                try {
+                if (!deferred) {
                     if (isNew)
-                        targetQueue.put(currentObservable);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    throw new RuntimeException(e);
+                        enqueue(key, currentObservable);
+                } else if (currentObservable.getCounter() >= batchLimit) {
+                    // batch is full: no point in waiting any longer
+                    currentObservables.remove(key);
+                    enqueue(key, currentObservable);
+                } else if (isNew) {
+                    final BatchedInferenceObservable toFlush = currentObservable;
+                    scheduler.schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            flush(key, toFlush);
+                        }
+                    }, nanos, TimeUnit.NANOSECONDS);
                 }
 
                 return currentObservable;
             }
         }
+
+        /**
+         * Send the specified batch for execution, if this hasn't already happened
+         */
+        protected void flush(String key, BatchedInferenceObservable observable) {
+            synchronized (locker) {
+                if (currentObservables.get(key) == observable) {
+                    currentObservables.remove(key);
+                    enqueue(key, observable);
+                }
+            }
+        }
+
+        protected void shutdown() {
+            if (scheduler != null)
+                scheduler.shutdownNow();
+        }
+
+        private void enqueue(String key, BatchedInferenceObservable observable) {
+            try {
+                targetQueue.put(observable);
+            } catch (RejectedExecutionException e) {
+                // all requests in this batch fail, and no new requests may be added to it
+                if (currentObservables.get(key) == observable)
+                    currentObservables.remove(key);
+                observable.setOutputException(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+
+        /**
+         * Requests can only share a batch if they have the same priority, and their inputs can be merged:
+         * same shape (other than minibatch size), or time series in the same length bucket if bucketing is enabled
+         */
+        private String batchKey(INDArray[] input, int priority) {
+            StringBuilder sb = new StringBuilder();
+            sb.append(priority);
+            for (INDArray arr : input) {
+                sb.append("_");
+                if (arr == null) {
+                    sb.append("null");
+                    continue;
+                }
+                long[] shape = arr.shape();
+                for (int i = 1; i < shape.length; i++) {
+                    if (i == 2 && shape.length == 3 && sequenceBucketSize > 0) {
+                        sb.append("b").append((shape[2] + sequenceBucketSize - 1) / sequenceBucketSize);
+                    } else {
+                        sb.append(shape[i]);
+                    }
+                    sb.append(",");
+                }
+            }
+            return sb.toString();
+        }
     }
 }
@@ -39,6 +39,7 @@ import org.deeplearning4j.optimize.solvers.accumulation.GradientsAccumulator;
 import org.deeplearning4j.optimize.solvers.accumulation.Registerable;
 import org.deeplearning4j.optimize.solvers.accumulation.encoding.ResidualPostProcessor;
 import org.deeplearning4j.optimize.solvers.accumulation.encoding.ThresholdAlgorithm;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.UpdatesCompressionAlgorithm;
 import org.deeplearning4j.parallelism.factory.DefaultTrainerContext;
 import org.deeplearning4j.parallelism.factory.SymmetricTrainerContext;
 import org.deeplearning4j.parallelism.factory.TrainerContext;
@@ -687,6 +688,7 @@ public class ParallelWrapper implements AutoCloseable {
         protected Supplier<INDArray> updaterParamsSupplier;
         protected ThresholdAlgorithm thresholdAlgorithm;
         protected ResidualPostProcessor residualPostProcessor;
+        protected UpdatesCompressionAlgorithm compressionAlgorithm;
 
         protected GradientsAccumulator accumulator;
 
@@ -871,6 +873,17 @@ public class ParallelWrapper implements AutoCloseable {
             return this;
         }
 
+        /**
+         * Set the updates compression algorithm (top-k, quantization or sign compression), to be used instead of
+         * threshold encoding. Not used for single machine training (only for PW used in a distributed setting), and
+         * should not be set by users in most cases.
+         * @param compressionAlgorithm Compression algorithm to use
+         */
+        public Builder compressionAlgorithm(UpdatesCompressionAlgorithm compressionAlgorithm){
+            this.compressionAlgorithm = compressionAlgorithm;
+            return this;
+        }
+
         /**
          * Set the residual post processor algorithm. Not used for single machine training (only for PW used in a
          * distributed setting), and should not be set by users in most cases.
@@ -906,9 +919,15 @@ public class ParallelWrapper implements AutoCloseable {
                 }
                     break;
                 case SHARED_GRADIENTS: {
-                    Preconditions.checkState(thresholdAlgorithm != null, "Cannot use SHARED_GRADIENTS training mode without setting a threshold algorithm");
+                    Preconditions.checkState(thresholdAlgorithm != null || compressionAlgorithm != null, "Cannot use SHARED_GRADIENTS training mode without setting a threshold algorithm or compression algorithm");
                     this.trainerContext = new SymmetricTrainerContext();
-                    if (this.accumulator == null) {
+                    if (this.accumulator == null && compressionAlgorithm != null) {
+                        log.info("Creating new GradientsAccumulator instance with compression algorithm {}", compressionAlgorithm);
+                        int queueSize = workers * 2;
+                        long bufferSize = EncodedGradientsAccumulator.getOptimalBufferSize(model, compressionAlgorithm, workers, 2);
+                        this.accumulator = new EncodedGradientsAccumulator.Builder(workers).compressionAlgorithm(compressionAlgorithm)
+                                .residualPostProcessor(residualPostProcessor).memoryParameters(bufferSize, queueSize).build();
+                    } else if (this.accumulator == null) {
                         log.info("Creating new GradientsAccumulator instance with threshold of [5e-4");
                         this.accumulator = new EncodedGradientsAccumulator(workers, thresholdAlgorithm, residualPostProcessor,  false);
                     }
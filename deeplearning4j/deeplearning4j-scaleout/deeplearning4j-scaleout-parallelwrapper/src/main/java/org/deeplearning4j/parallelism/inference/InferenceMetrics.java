@@ -0,0 +1,224 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.parallelism.inference;
+
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters for a ParallelInference instance: request counts, queue depth, batch sizes, and queue wait time and
+ * compute time per worker. All counters are updated without locking, and can be read at any time.
+ */
+public class InferenceMetrics {
+    /**
+     * Number of batch size histogram buckets. Bucket i counts batches with size in [2^i, 2^(i+1)), with the last
+     * bucket counting all batches of size 2^(NUM_BATCH_SIZE_BUCKETS-1) and above
+     */
+    public static final int NUM_BATCH_SIZE_BUCKETS = 12;
+
+    private final Queue<?> queue;
+    private final int numWorkers;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLongArray batchSizes = new AtomicLongArray(NUM_BATCH_SIZE_BUCKETS);
+
+    private final AtomicLongArray workerBatches;
+    private final AtomicLongArray workerWaitNanos;
+    private final AtomicLongArray workerComputeNanos;
+
+    /**
+     * @param numWorkers Number of inference workers
+     * @param queue      Request queue, used for the queue depth. May be null.
+     */
+    public InferenceMetrics(int numWorkers, Queue<?> queue) {
+        this.numWorkers = numWorkers;
+        this.queue = queue;
+        this.workerBatches = new AtomicLongArray(numWorkers);
+        this.workerWaitNanos = new AtomicLongArray(numWorkers);
+        this.workerComputeNanos = new AtomicLongArray(numWorkers);
+    }
+
+    public void recordSubmitted(int numRequests) {
+        submitted.addAndGet(numRequests);
+    }
+
+    public void recordRejected(int numRequests) {
+        rejected.addAndGet(numRequests);
+    }
+
+    public void recordDropped(int numRequests) {
+        dropped.addAndGet(numRequests);
+    }
+
+    public void recordCompleted(int numRequests) {
+        completed.addAndGet(numRequests);
+    }
+
+    public void recordFailed(int numRequests) {
+        failed.addAndGet(numRequests);
+    }
+
+    /**
+     * Record the number of examples in one forward pass
+     */
+    public void recordBatchSize(long batchSize) {
+        batchSizes.incrementAndGet(bucket(batchSize));
+    }
+
+    /**
+     * Record one request taken from the queue by a worker
+     *
+     * @param worker      Index of the worker
+     * @param waitNanos   Time between creation of the request and the worker taking it from the queue
+     * @param computeNanos Time the worker spent executing the request
+     */
+    public void recordExecution(int worker, long waitNanos, long computeNanos) {
+        workerBatches.incrementAndGet(worker);
+        workerWaitNanos.addAndGet(worker, waitNanos);
+        workerComputeNanos.addAndGet(worker, computeNanos);
+    }
+
+    protected static int bucket(long batchSize) {
+        int b = 63 - Long.numberOfLeadingZeros(Math.max(1, batchSize));
+        return Math.min(b, NUM_BATCH_SIZE_BUCKETS - 1);
+    }
+
+    /**
+     * @return Number of queued batches (or individual requests in SEQUENTIAL mode) waiting for a worker
+     */
+    public int getQueueDepth() {
+        return queue == null ? 0 : queue.size();
+    }
+
+    public long getSubmitted() {
+        return submitted.get();
+    }
+
+    /**
+     * @return Number of requests rejected because the queue was full
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * @return Number of queued requests dropped to make space for newer requests
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * @return Batch size histogram - see {@link #NUM_BATCH_SIZE_BUCKETS}
+     */
+    public long[] getBatchSizeHistogram() {
+        long[] out = new long[NUM_BATCH_SIZE_BUCKETS];
+        for (int i = 0; i < out.length; i++)
+            out[i] = batchSizes.get(i);
+        return out;
+    }
+
+    public int getNumWorkers() {
+        return numWorkers;
+    }
+
+    /**
+     * @return Number of queued requests (batches, in BATCHED mode) executed by the specified worker
+     */
+    public long getWorkerBatches(int worker) {
+        return workerBatches.get(worker);
+    }
+
+    /**
+     * @return Total time requests executed by the specified worker spent waiting in the queue, in nanoseconds
+     */
+    public long getWorkerWaitNanos(int worker) {
+        return workerWaitNanos.get(worker);
+    }
+
+    /**
+     * @return Total time the specified worker spent executing requests, in nanoseconds
+     */
+    public long getWorkerComputeNanos(int worker) {
+        return workerComputeNanos.get(worker);
+    }
+
+    /**
+     * Reset all counters to zero
+     */
+    public void reset() {
+        submitted.set(0);
+        rejected.set(0);
+        dropped.set(0);
+        completed.set(0);
+        failed.set(0);
+        for (int i = 0; i < NUM_BATCH_SIZE_BUCKETS; i++)
+            batchSizes.set(i, 0);
+        for (int i = 0; i < numWorkers; i++) {
+            workerBatches.set(i, 0);
+            workerWaitNanos.set(i, 0);
+            workerComputeNanos.set(i, 0);
+        }
+    }
+
+    /**
+     * @return Human readable summary of all counters
+     */
+    public String stats() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("ParallelInference metrics: queueDepth=").append(getQueueDepth())
+                .append(", submitted=").append(getSubmitted())
+                .append(", completed=").append(getCompleted())
+                .append(", failed=").append(getFailed())
+                .append(", rejected=").append(getRejected())
+                .append(", dropped=").append(getDropped())
+                .append("\nBatch sizes:");
+        for (int i = 0; i < NUM_BATCH_SIZE_BUCKETS; i++) {
+            long c = batchSizes.get(i);
+            if (c > 0)
+                sb.append(" [").append(1L << i).append(i == NUM_BATCH_SIZE_BUCKETS - 1 ? "+" : "").append("]=").append(c);
+        }
+        for (int i = 0; i < numWorkers; i++) {
+            long n = workerBatches.get(i);
+            sb.append("\nWorker ").append(i).append(": batches=").append(n);
+            if (n > 0) {
+                sb.append(", avgWaitMs=").append(String.format("%.3f", workerWaitNanos.get(i) / (double) n / TimeUnit.MILLISECONDS.toNanos(1)))
+                        .append(", avgComputeMs=").append(String.format("%.3f", workerComputeNanos.get(i) / (double) n / TimeUnit.MILLISECONDS.toNanos(1)));
+            }
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return stats();
+    }
+}
@@ -0,0 +1,43 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.parallelism.inference;
+
+/**
+ * This enum describes what ParallelInference does with a new request when its request queue is full
+ */
+public enum RejectionPolicy {
+    /**
+     * Block the calling thread until there is space in the queue. If the calling thread is interrupted while waiting,
+     * the request is rejected and the interrupt flag of the thread is restored
+     */
+    BLOCK,
+
+    /**
+     * Reject the new request immediately
+     */
+    FAIL_FAST,
+
+    /**
+     * Drop the oldest queued request with the lowest priority to make space for the new request
+     */
+    DROP_OLDEST,
+
+    /**
+     * Block the calling thread for up to the configured submit timeout, then reject the new request
+     */
+    TIMEOUT,
+}
@@ -19,6 +19,7 @@ package org.deeplearning4j.parallelism.inference.observers;
 import com.google.common.base.Preconditions;
 import lombok.Getter;
 import lombok.NonNull;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.deeplearning4j.parallelism.inference.InferenceObservable;
 import org.nd4j.linalg.api.ndarray.INDArray;
@@ -27,18 +28,32 @@ import org.nd4j.linalg.primitives.Pair;
 import java.util.Collections;
 import java.util.List;
 import java.util.Observable;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This class holds reference input, and implements basic use case: SEQUENTIAL inference
  */
 @Slf4j
 public class BasicInferenceObservable extends Observable implements InferenceObservable {
+    private static final AtomicLong ID_COUNTER = new AtomicLong(0);
+
     private INDArray[] input;
     private INDArray[] inputMasks;
     @Getter
     private long id;
     private INDArray[] output;
     protected Exception exception;
+    /**
+     * Priority of this request: higher values are processed first. Requests with the same priority are processed
+     * in order of creation (i.e., in order of {@link #getId()})
+     */
+    @Getter @Setter
+    protected int priority;
+    /**
+     * Value of {@link System#nanoTime()} when this observable was created
+     */
+    @Getter
+    protected long createdNanos;
 
 
     public BasicInferenceObservable(INDArray... inputs) {
@@ -47,6 +62,8 @@ public class BasicInferenceObservable extends Observable implements InferenceObs
 
     public BasicInferenceObservable(INDArray[] inputs, INDArray[] inputMasks){
         super();
+        this.id = ID_COUNTER.getAndIncrement();
+        this.createdNanos = System.nanoTime();
         this.input = inputs;
         this.inputMasks = inputMasks;
     }
@@ -88,6 +105,20 @@ public class BasicInferenceObservable extends Observable implements InferenceObs
         return output;
     }
 
+    /**
+     * @return Number of individual requests held by this observable
+     */
+    public int numRequests(){
+        return 1;
+    }
+
+    /**
+     * @return True if an exception has been set for this observable - i.e., execution failed or the request was rejected
+     */
+    public boolean isFailed(){
+        return exception != null;
+    }
+
     protected void checkOutputException(){
         if(exception != null){
             if(exception instanceof RuntimeException){
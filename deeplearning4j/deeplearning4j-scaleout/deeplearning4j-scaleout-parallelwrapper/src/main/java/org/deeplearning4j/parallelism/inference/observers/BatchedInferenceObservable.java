@@ -48,6 +48,8 @@ public class BatchedInferenceObservable extends BasicInferenceObservable impleme
     private AtomicInteger counter = new AtomicInteger(0);
     private ThreadLocal<Integer> position = new ThreadLocal<>();
     private List<int[]> outputBatchInputArrays = new ArrayList<>();
+    private List<Long> outputBatchPaddedLengths = new ArrayList<>();
+    private final boolean padSequences;
 
     private final Object locker = new Object();
 
@@ -56,7 +58,17 @@ public class BatchedInferenceObservable extends BasicInferenceObservable impleme
     private AtomicBoolean isReadLocked = new AtomicBoolean(false);
 
     public BatchedInferenceObservable() {
+        this(false);
+    }
 
+    /**
+     * @param padSequences If true: time series (rank 3) inputs with different lengths are merged into a single batch,
+     *                     by padding the shorter inputs and masking the padded time steps. Rank 3 outputs are
+     *                     trimmed back to the original length of each input before being returned.
+     *                     If false: only inputs with identical shapes are merged into one batch.
+     */
+    public BatchedInferenceObservable(boolean padSequences) {
+        this.padSequences = padSequences;
     }
 
     @Override
@@ -77,6 +89,7 @@ public class BatchedInferenceObservable extends BasicInferenceObservable impleme
         isLocked.set(true);
 
         outputBatchInputArrays.clear();
+        outputBatchPaddedLengths.clear();
 
         // this method should pile individual examples into single batch
 
@@ -90,7 +103,7 @@ public class BatchedInferenceObservable extends BasicInferenceObservable impleme
                 //First: determine which we can actually batch...
                 int lastPossible = pos;
                 for (int i = pos+1; i < inputs.size(); i++) {
-                    if (canBatch(inputs.get(pos), inputs.get(i))) {
+                    if (canBatch(inputs.get(pos), inputMasks.get(pos), inputs.get(i), inputMasks.get(i), padSequences)) {
                         lastPossible = i;
                     } else {
                         break;
@@ -120,32 +133,75 @@ public class BatchedInferenceObservable extends BasicInferenceObservable impleme
                 out.add(merged);
 
                 outputBatchInputArrays.add(new int[]{pos, lastPossible});
+                outputBatchPaddedLengths.add(paddedLength(pos, lastPossible));
                 pos = lastPossible+1;
             }
             realLocker.writeLock().unlock();
             return out;
         } else {
             outputBatchInputArrays.add(new int[]{0,0});
+            outputBatchPaddedLengths.add(-1L);
             realLocker.writeLock().unlock();
             return Collections.singletonList(new Pair<>(inputs.get(0), inputMasks.get(0)));
         }
     }
 
-    private static boolean canBatch(INDArray[] first, INDArray[] candidate){
+    private static boolean canBatch(INDArray[] first, INDArray[] firstMasks, INDArray[] candidate, INDArray[] candidateMasks,
+                                    boolean padSequences){
         //Check if we can batch these inputs into the one array. This isn't always possible - for example, some fully
         // convolutional nets can support different input image sizes
-        //For now: let's simply require that the inputs have the same shape
-        //In the future: we'll intelligently handle the RNN variable length case
-        //Note also we can ignore input masks here - they should have shared dimensions with the input, thus if the
-        // inputs can be batched, so can the masks
+        //Inputs with the same shape can always be batched
+        //Time series inputs with different lengths can be batched if padding is enabled: DataSetUtil.mergeFeatures
+        // will pad the shorter sequences and add (or extend) the per-time-step mask arrays
+        //Note also we can ignore input masks in the same-shape case - they should have shared dimensions with the
+        // input, thus if the inputs can be batched, so can the masks
         for(int i=0; i<first.length; i++ ){
             if(!Arrays.equals(first[i].shape(), candidate[i].shape())){
-                return false;
+                if(!padSequences || first[i].rank() != 3 || candidate[i].rank() != 3
+                        || first[i].size(1) != candidate[i].size(1)){
+                    return false;
+                }
+                //Only per-time-step (rank 2) masks can be extended for padding
+                if(!isPaddableMask(firstMasks, i) || !isPaddableMask(candidateMasks, i)){
+                    return false;
+                }
             }
         }
         return true;
     }
 
+    private static boolean isPaddableMask(INDArray[] masks, int idx){
+        return masks == null || masks[idx] == null || masks[idx].rank() == 2;
+    }
+
+    /**
+     * @return Time series length of the merged batch for inputs first to last (inclusive), or -1 if no padding was
+     * required for these inputs
+     */
+    private long paddedLength(int first, int last){
+        if(!padSequences)
+            return -1;
+        long max = -1;
+        boolean differ = false;
+        for( int i=first; i<=last; i++ ){
+            long l = sequenceLength(inputs.get(i));
+            if(max >= 0 && l != max)
+                differ = true;
+            max = Math.max(max, l);
+        }
+        return differ ? max : -1;
+    }
+
+    private static long sequenceLength(INDArray[] input){
+        long l = -1;
+        for(INDArray arr : input){
+            if(arr.rank() == 3){
+                l = Math.max(l, arr.size(2));
+            }
+        }
+        return l;
+    }
+
     @Override
     public void setOutputBatches(List<INDArray[]> output) {
         //this method should split batched output INDArray[] into multiple separate INDArrays
@@ -161,7 +217,8 @@ public class BatchedInferenceObservable extends BasicInferenceObservable impleme
             // pull back results for individual input batches
             int firstInputBatch = countNumInputBatches;
             for (int outputNumber = 0; outputNumber < currBatchOutputs.length; outputNumber++) {    //Iterate over net outputs
-                INDArray[] split = splitExamples(currBatchOutputs[outputNumber], inputBatchIdxs[0], inputBatchIdxs[1]);
+                INDArray[] split = splitExamples(currBatchOutputs[outputNumber], inputBatchIdxs[0], inputBatchIdxs[1],
+                        outputBatchPaddedLengths.get(outBatchNum));
 
                 int currentInputBatch = firstInputBatch;
                 //Iterate over input batch (examples) - note that each output batch is made up of 1 or more input batches
@@ -179,7 +236,7 @@ public class BatchedInferenceObservable extends BasicInferenceObservable impleme
         notifyObservers();
     }
 
-    private INDArray[] splitExamples(INDArray netOutput, int firstInputComponent, int lastInputComponent){
+    private INDArray[] splitExamples(INDArray netOutput, int firstInputComponent, int lastInputComponent, long paddedLength){
 
         int numSplits = lastInputComponent - firstInputComponent + 1;
         if(numSplits == 1){
@@ -190,10 +247,15 @@ public class BatchedInferenceObservable extends BasicInferenceObservable impleme
             for(int i=1; i<indices.length; i++ ){
                 indices[i] = NDArrayIndex.all();
             }
+            //Time series outputs for padded inputs: remove the padded time steps again
+            boolean trim = paddedLength > 0 && netOutput.rank() == 3 && netOutput.size(2) == paddedLength;
             int examplesSoFar = 0;
             for( int inNum = 0; inNum < numSplits; inNum++ ){
                 val inSizeEx = inputs.get(firstInputComponent + inNum)[0].size(0);
                 indices[0] = NDArrayIndex.interval(examplesSoFar, examplesSoFar+inSizeEx);
+                if(trim){
+                    indices[2] = NDArrayIndex.interval(0, sequenceLength(inputs.get(firstInputComponent + inNum)));
+                }
                 out[inNum] = netOutput.get(indices);
                 examplesSoFar += inSizeEx;
             }
@@ -222,6 +284,11 @@ public class BatchedInferenceObservable extends BasicInferenceObservable impleme
         return counter.get();
     }
 
+    @Override
+    public int numRequests() {
+        return counter.get();
+    }
+
 
 
     public boolean isLocked() {
@@ -242,4 +309,15 @@ public class BatchedInferenceObservable extends BasicInferenceObservable impleme
         checkOutputException();
         return outputs.get(position.get());
     }
+
+    /**
+     * Get the output for the request at the specified position in this batch. Unlike {@link #getOutput()}, this
+     * method may be called from any thread
+     *
+     * @param position Position of the request, in order of {@link #addInput(INDArray[], INDArray[])} calls
+     */
+    public INDArray[] getOutput(int position) {
+        checkOutputException();
+        return outputs.get(position);
+    }
 }
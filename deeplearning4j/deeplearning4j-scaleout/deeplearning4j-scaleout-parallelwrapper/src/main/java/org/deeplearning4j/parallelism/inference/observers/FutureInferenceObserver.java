@@ -0,0 +1,56 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.parallelism.inference.observers;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.deeplearning4j.parallelism.inference.InferenceObservable;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Observer implementation for non-blocking inference: completes a {@link CompletableFuture} with the output
+ * (or exception) for one request, once the observed InferenceObservable has been executed.
+ */
+public class FutureInferenceObserver implements Observer {
+    @Getter
+    private final CompletableFuture<INDArray[]> future = new CompletableFuture<>();
+
+    /**
+     * Position of the request in a BatchedInferenceObservable. Must be set before the request is added to the batch
+     */
+    @Getter @Setter
+    private volatile int position = -1;
+
+    @Override
+    public void update(Observable o, Object arg) {
+        try {
+            INDArray[] out;
+            if (o instanceof BatchedInferenceObservable) {
+                out = ((BatchedInferenceObservable) o).getOutput(position);
+            } else {
+                out = ((InferenceObservable) o).getOutput();
+            }
+            future.complete(out);
+        } catch (Throwable t) {
+            future.completeExceptionally(t);
+        }
+    }
+}
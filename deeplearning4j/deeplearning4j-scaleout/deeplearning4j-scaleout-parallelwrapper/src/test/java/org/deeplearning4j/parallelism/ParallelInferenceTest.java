@@ -33,8 +33,11 @@ import org.nd4j.linalg.io.ClassPathResource;
 import org.deeplearning4j.datasets.iterator.impl.MnistDataSetIterator;
 import org.deeplearning4j.eval.Evaluation;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.parallelism.inference.InferenceMetrics;
 import org.deeplearning4j.parallelism.inference.InferenceMode;
 import org.deeplearning4j.parallelism.inference.InferenceObservable;
+import org.deeplearning4j.parallelism.inference.RejectionPolicy;
+import org.deeplearning4j.parallelism.inference.observers.BasicInferenceObservable;
 import org.deeplearning4j.parallelism.inference.observers.BasicInferenceObserver;
 import org.deeplearning4j.parallelism.inference.observers.BatchedInferenceObservable;
 import org.deeplearning4j.util.ModelSerializer;
@@ -52,8 +55,12 @@ import org.nd4j.resources.Resources;
 import java.io.File;
 import java.lang.reflect.Field;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.*;
@@ -222,7 +229,7 @@ public class ParallelInferenceTest extends BaseDL4JTest {
         BasicInferenceObserver observer = new BasicInferenceObserver();
 
         ParallelInference.ObservablesProvider provider =
-                        new ParallelInference.ObservablesProvider(10000000L, 100, queue);
+                        new ParallelInference.ObservablesProvider(0, 100, 0, queue);
 
         InferenceObservable observable1 = provider.setInput(observer, Nd4j.create(1, 100));
         InferenceObservable observable2 = provider.setInput(observer, Nd4j.create(1, 100));
@@ -237,7 +244,7 @@ public class ParallelInferenceTest extends BaseDL4JTest {
         LinkedBlockingQueue queue = new LinkedBlockingQueue();
         BasicInferenceObserver observer = new BasicInferenceObserver();
         ParallelInference.ObservablesProvider provider =
-                        new ParallelInference.ObservablesProvider(10000000L, 100, queue);
+                        new ParallelInference.ObservablesProvider(0, 100, 0, queue);
 
         InferenceObservable observable1 = provider.setInput(observer, Nd4j.create(1,100).assign(1.0));
         InferenceObservable observable2 = provider.setInput(observer, Nd4j.create(1,100).assign(2.0));
@@ -261,7 +268,7 @@ public class ParallelInferenceTest extends BaseDL4JTest {
     public void testProvider3() throws Exception {
         LinkedBlockingQueue queue = new LinkedBlockingQueue();
         BasicInferenceObserver observer = new BasicInferenceObserver();
-        ParallelInference.ObservablesProvider provider = new ParallelInference.ObservablesProvider(10000000L, 2, queue);
+        ParallelInference.ObservablesProvider provider = new ParallelInference.ObservablesProvider(0, 2, 0, queue);
 
         InferenceObservable observable1 = provider.setInput(observer, Nd4j.create(1,100).assign(1.0));
         InferenceObservable observable2 = provider.setInput(observer, Nd4j.create(1,100).assign(2.0));
@@ -295,7 +302,7 @@ public class ParallelInferenceTest extends BaseDL4JTest {
     public void testProvider4() throws Exception {
         LinkedBlockingQueue queue = new LinkedBlockingQueue();
         BasicInferenceObserver observer = new BasicInferenceObserver();
-        ParallelInference.ObservablesProvider provider = new ParallelInference.ObservablesProvider(10000000L, 4, queue);
+        ParallelInference.ObservablesProvider provider = new ParallelInference.ObservablesProvider(0, 4, 0, queue);
 
         BatchedInferenceObservable observable1 =
                         (BatchedInferenceObservable) provider.setInput(observer, Nd4j.create(1,100).assign(1.0));
@@ -340,6 +347,297 @@ public class ParallelInferenceTest extends BaseDL4JTest {
         assertEquals(2.0f, out.meanNumber().floatValue(), 0.01f);
     }
 
+    @Test(timeout = 30000L)
+    public void testProviderMaxQueueDelay() throws Exception {
+        LinkedBlockingQueue<InferenceObservable> queue = new LinkedBlockingQueue<>();
+        BasicInferenceObserver observer = new BasicInferenceObserver();
+        ParallelInference.ObservablesProvider provider =
+                        new ParallelInference.ObservablesProvider(200000000L, 3, 0, queue);
+        try {
+            InferenceObservable observable1 = provider.setInput(observer, Nd4j.create(1, 100).assign(1.0));
+            InferenceObservable observable2 = provider.setInput(observer, Nd4j.create(1, 100).assign(2.0));
+            //Different shape: should not be batched with the first two
+            InferenceObservable observable3 = provider.setInput(observer, Nd4j.create(1, 50).assign(3.0));
+
+            assertTrue(observable1 == observable2);
+            assertTrue(observable1 != observable3);
+
+            //Nothing should be sent for execution until the deadline has passed or the batch is full
+            assertEquals(0, queue.size());
+            InferenceObservable observable4 = provider.setInput(observer, Nd4j.create(1, 100).assign(4.0));
+            assertTrue(observable1 == observable4);
+            assertEquals(1, queue.size());
+            assertTrue(queue.take() == observable1);
+
+            //Partial batch: should be sent once the deadline has passed
+            InferenceObservable flushed = queue.take();
+            assertTrue(flushed == observable3);
+
+            List<Pair<INDArray[],INDArray[]>> l = observable1.getInputBatches();
+            assertEquals(1, l.size());
+            assertArrayEquals(new long[] {3, 100}, l.get(0).getFirst()[0].shape());
+        } finally {
+            provider.shutdown();
+        }
+    }
+
+    @Test
+    public void testProviderPriority() throws Exception {
+        ParallelInference.InferenceQueue queue = new ParallelInference.InferenceQueue(10);
+        BasicInferenceObserver observer = new BasicInferenceObserver();
+        ParallelInference.ObservablesProvider provider =
+                        new ParallelInference.ObservablesProvider(0, 100, 0, queue);
+
+        InferenceObservable low1 = provider.setInput(observer, new INDArray[]{Nd4j.create(1, 100)}, null, 0);
+        InferenceObservable high = provider.setInput(observer, new INDArray[]{Nd4j.create(1, 100)}, null, 10);
+        InferenceObservable low2 = provider.setInput(observer, new INDArray[]{Nd4j.create(1, 100)}, null, 0);
+
+        //Requests with different priorities should never share a batch
+        assertTrue(low1 == low2);
+        assertTrue(low1 != high);
+
+        assertEquals(2, queue.size());
+        assertEquals(8, queue.remainingCapacity());
+        assertTrue(queue.take() == high);
+        assertTrue(queue.take() == low1);
+        assertEquals(10, queue.remainingCapacity());
+    }
+
+    @Test
+    public void testProviderSequencePadding() throws Exception {
+        LinkedBlockingQueue<InferenceObservable> queue = new LinkedBlockingQueue<>();
+        BasicInferenceObserver observer = new BasicInferenceObserver();
+        ParallelInference.ObservablesProvider provider =
+                        new ParallelInference.ObservablesProvider(1000000000L, 3, 10, queue);
+        try {
+            BatchedInferenceObservable observable1 =
+                            (BatchedInferenceObservable) provider.setInput(observer, Nd4j.rand(new int[]{1, 5, 4}));
+            BatchedInferenceObservable observable2 =
+                            (BatchedInferenceObservable) provider.setInput(observer, Nd4j.rand(new int[]{1, 5, 7}));
+            //Different length bucket: not batched with the others
+            BatchedInferenceObservable observable3 =
+                            (BatchedInferenceObservable) provider.setInput(observer, Nd4j.rand(new int[]{1, 5, 15}));
+            assertTrue(observable1 == observable2);
+            assertTrue(observable1 != observable3);
+
+            List<Pair<INDArray[],INDArray[]>> l = observable1.getInputBatches();
+            assertEquals(1, l.size());
+            assertArrayEquals(new long[] {2, 5, 7}, l.get(0).getFirst()[0].shape());
+            INDArray mask = l.get(0).getSecond()[0];
+            assertArrayEquals(new long[] {2, 7}, mask.shape());
+            assertEquals(4.0, mask.getRow(0).sumNumber().doubleValue(), 0.0);
+            assertEquals(7.0, mask.getRow(1).sumNumber().doubleValue(), 0.0);
+
+            //Outputs should be trimmed back to the original sequence lengths
+            observable1.setOutputBatches(Collections.singletonList(new INDArray[]{Nd4j.rand(new int[]{2, 3, 7})}));
+            observable1.setPosition(0);
+            assertArrayEquals(new long[] {1, 3, 4}, observable1.getOutput()[0].shape());
+            observable1.setPosition(1);
+            assertArrayEquals(new long[] {1, 3, 7}, observable1.getOutput()[0].shape());
+        } finally {
+            provider.shutdown();
+        }
+    }
+
+    @Test
+    public void testInferenceQueueRejection() throws Exception {
+        for (RejectionPolicy policy : new RejectionPolicy[]{RejectionPolicy.FAIL_FAST, RejectionPolicy.TIMEOUT}) {
+            ParallelInference.InferenceQueue queue =
+                            new ParallelInference.InferenceQueue(2, policy, TimeUnit.MILLISECONDS.toNanos(10));
+            InferenceMetrics metrics = new InferenceMetrics(1, queue);
+            queue.setMetrics(metrics);
+
+            queue.put(new BasicInferenceObservable(Nd4j.create(1, 10)));
+            queue.put(new BasicInferenceObservable(Nd4j.create(1, 10)));
+            assertEquals(2, metrics.getQueueDepth());
+            try {
+                queue.put(new BasicInferenceObservable(Nd4j.create(1, 10)));
+                fail("Expected exception");
+            } catch (RejectedExecutionException e) {
+                //Expected
+            }
+            assertEquals(2, queue.size());
+            assertEquals(1, metrics.getRejected());
+        }
+    }
+
+    @Test
+    public void testInferenceQueueBlockIsInterruptible() throws Exception {
+        final ParallelInference.InferenceQueue queue = new ParallelInference.InferenceQueue(1, RejectionPolicy.BLOCK, 0);
+        queue.put(new BasicInferenceObservable(Nd4j.create(1, 10)));
+
+        final AtomicBoolean rejected = new AtomicBoolean();
+        final AtomicBoolean interrupted = new AtomicBoolean();
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    queue.put(new BasicInferenceObservable(Nd4j.create(1, 10)));
+                } catch (RejectedExecutionException e) {
+                    rejected.set(true);
+                    interrupted.set(Thread.currentThread().isInterrupted());
+                }
+            }
+        });
+        t.start();
+        Thread.sleep(100);
+        assertTrue(t.isAlive());
+        t.interrupt();
+        t.join(10000);
+
+        assertFalse(t.isAlive());
+        assertTrue(rejected.get());
+        assertTrue(interrupted.get());
+        assertEquals(1, queue.size());
+    }
+
+    @Test
+    public void testInferenceQueueDropOldest() throws Exception {
+        ParallelInference.InferenceQueue queue = new ParallelInference.InferenceQueue(2, RejectionPolicy.DROP_OLDEST, 0);
+        InferenceMetrics metrics = new InferenceMetrics(1, queue);
+        queue.setMetrics(metrics);
+
+        BasicInferenceObservable high = new BasicInferenceObservable(Nd4j.create(1, 10));
+        high.setPriority(1);
+        BasicInferenceObservable oldest = new BasicInferenceObservable(Nd4j.create(1, 10));
+        BasicInferenceObservable newest = new BasicInferenceObservable(Nd4j.create(1, 10));
+        BasicInferenceObserver observer = new BasicInferenceObserver();
+        oldest.addObserver(observer);
+
+        queue.put(high);
+        queue.put(oldest);
+        queue.put(newest);
+
+        //Oldest request with the lowest priority should have been dropped, and failed
+        observer.waitTillDone();
+        assertTrue(oldest.isFailed());
+        assertEquals(1, metrics.getDropped());
+        assertTrue(queue.take() == high);
+        assertTrue(queue.take() == newest);
+    }
+
+    @Test
+    public void testInferenceQueueDropOldestMultipleLowPriority() throws Exception {
+        ParallelInference.InferenceQueue queue = new ParallelInference.InferenceQueue(4, RejectionPolicy.DROP_OLDEST, 0);
+        InferenceMetrics metrics = new InferenceMetrics(1, queue);
+        queue.setMetrics(metrics);
+
+        BasicInferenceObservable high = new BasicInferenceObservable(Nd4j.create(1, 10));
+        high.setPriority(1);
+        BasicInferenceObservable low1 = new BasicInferenceObservable(Nd4j.create(1, 10));
+        BasicInferenceObservable low2 = new BasicInferenceObservable(Nd4j.create(1, 10));
+        BasicInferenceObservable low3 = new BasicInferenceObservable(Nd4j.create(1, 10));
+        BasicInferenceObservable low4 = new BasicInferenceObservable(Nd4j.create(1, 10));
+        BasicInferenceObserver observer = new BasicInferenceObserver();
+        low1.addObserver(observer);
+
+        //Submit the high priority request last, so it isn't simply the oldest request in the queue
+        queue.put(low1);
+        queue.put(low2);
+        queue.put(low3);
+        queue.put(high);
+        queue.put(low4);
+
+        //Of the 3 queued low priority requests, the first submitted one should have been dropped
+        observer.waitTillDone();
+        assertTrue(low1.isFailed());
+        assertFalse(low2.isFailed());
+        assertFalse(low3.isFailed());
+        assertEquals(1, metrics.getDropped());
+        assertTrue(queue.take() == high);
+        assertTrue(queue.take() == low2);
+        assertTrue(queue.take() == low3);
+        assertTrue(queue.take() == low4);
+    }
+
+    @Test(timeout = 60000L)
+    public void testOutputAsync() throws Exception {
+        for (InferenceMode m : new InferenceMode[]{InferenceMode.SEQUENTIAL, InferenceMode.BATCHED, InferenceMode.INPLACE}) {
+            ParallelInference inf = new ParallelInference.Builder(model)
+                            .inferenceMode(m)
+                            .workers(2)
+                            .build();
+            try {
+                List<INDArray> in = new ArrayList<>();
+                List<CompletableFuture<INDArray[]>> futures = new ArrayList<>();
+                for (int i = 0; i < 16; i++) {
+                    INDArray f = iterator.next().getFeatures();
+                    in.add(f);
+                    futures.add(inf.outputAsync(f));
+                }
+
+                for (int i = 0; i < in.size(); i++) {
+                    INDArray exp = model.output(in.get(i));
+                    INDArray act = futures.get(i).get()[0];
+                    assertEquals(exp, act);
+                }
+
+                if (m != InferenceMode.INPLACE) {
+                    InferenceMetrics metrics = inf.getMetrics();
+                    assertEquals(16, metrics.getSubmitted());
+                    assertEquals(16, metrics.getCompleted());
+                    assertEquals(0, metrics.getRejected());
+
+                    long forwardPasses = 0;
+                    for (long h : metrics.getBatchSizeHistogram())
+                        forwardPasses += h;
+                    long workerBatches = 0;
+                    for (int i = 0; i < metrics.getNumWorkers(); i++)
+                        workerBatches += metrics.getWorkerBatches(i);
+                    assertTrue(forwardPasses > 0);
+                    assertTrue(workerBatches > 0);
+                    log.info(metrics.stats());
+                }
+            } finally {
+                inf.shutdown();
+            }
+        }
+    }
+
+    @Test(timeout = 120000L)
+    public void testParallelInferenceVariableLengthTSBucketed() throws Exception {
+        Nd4j.getRandom().setSeed(12345);
+
+        int nIn = 10;
+        int[] tsLengths = {3,5,7,10,50,100};
+
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .activation(Activation.TANH)
+                .seed(12345)
+                .list()
+                .layer(new LSTM.Builder().nIn(nIn).nOut(5).build())
+                .layer(new RnnOutputLayer.Builder().nIn(5).nOut(5).activation(Activation.SOFTMAX).build())
+                .build();
+
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+
+        for( int w : new int[]{1,2}) {
+            final ParallelInference inf =
+                    new ParallelInference.Builder(net)
+                            .inferenceMode(InferenceMode.BATCHED)
+                            .batchLimit(20)
+                            .queueLimit(64)
+                            .maxQueueDelay(5, TimeUnit.MILLISECONDS)
+                            .sequenceBucketSize(8)
+                            .workers(w).build();
+            try {
+                List<INDArray> arrs = new ArrayList<>();
+                List<INDArray> exp = new ArrayList<>();
+                for (int l : tsLengths) {
+                    INDArray in = Nd4j.rand(new int[]{1, nIn, l});
+                    arrs.add(in);
+                    INDArray out = net.output(in);
+                    exp.add(out);
+                }
+
+                testParallelInference(inf, arrs, exp);
+            } finally {
+                inf.shutdown();
+            }
+        }
+    }
+
 
     protected void evalClassifcationSingleThread(@NonNull ParallelInference inf, @NonNull DataSetIterator iterator) {
         DataSet ds = iterator.next();
@@ -21,6 +21,7 @@ import org.deeplearning4j.nn.conf.WorkspaceMode;
 import org.deeplearning4j.optimize.solvers.accumulation.MessageHandler;
 import org.deeplearning4j.optimize.solvers.accumulation.encoding.ResidualPostProcessor;
 import org.deeplearning4j.optimize.solvers.accumulation.encoding.ThresholdAlgorithm;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.UpdatesCompressionAlgorithm;
 import org.nd4j.parameterserver.distributed.conf.VoidConfiguration;
 
 import java.io.Serializable;
@@ -57,8 +58,19 @@ public class SharedTrainingConfiguration implements Serializable {
 
     protected ThresholdAlgorithm thresholdAlgorithm;
     protected ResidualPostProcessor residualPostProcessor;
+    /**
+     * If set: used instead of threshold encoding
+     */
+    protected UpdatesCompressionAlgorithm compressionAlgorithm;
     protected String messageHandlerClass;
 
+    /**
+     * If true: updates are aggregated within each host before being sent to other hosts. See HostAggregatingEncodingHandler
+     */
+    @Builder.Default
+    protected boolean hostLocalAggregation = false;
+    protected String hostLocalAggregationDirectory;
+
 
 
     public void setMessageHandlerClass(@NonNull String messageHandlerClass) {
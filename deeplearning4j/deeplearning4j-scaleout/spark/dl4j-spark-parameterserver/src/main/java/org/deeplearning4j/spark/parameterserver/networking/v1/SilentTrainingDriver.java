@@ -23,10 +23,10 @@ import org.deeplearning4j.optimize.api.StepFunction;
 import org.deeplearning4j.optimize.solvers.accumulation.FancyBlockingQueue;
 import org.deeplearning4j.optimize.solvers.accumulation.GradientsAccumulator;
 import org.deeplearning4j.optimize.solvers.accumulation.IndexedTail;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.CompressedUpdates;
 import org.deeplearning4j.spark.parameterserver.networking.v1.messages.SilentUpdatesMessage;
 import org.nd4j.linalg.api.memory.MemoryWorkspace;
 import org.nd4j.linalg.api.ndarray.INDArray;
-import org.nd4j.linalg.compression.ThresholdCompression;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.parameterserver.distributed.conf.VoidConfiguration;
 import org.nd4j.parameterserver.distributed.logic.Storage;
@@ -160,15 +160,11 @@ public class SilentTrainingDriver implements TrainingDriver<SilentUpdatesMessage
             // master invokes everything, since that's Silent Worker approach: we want master to be always up-to-date
             synchronized (this) {
                 // threshold decoder is inplace & fast
-                int encoding = message.getUpdates().data().getInt(3);
-                if (encoding == ThresholdCompression.FLEXIBLE_ENCODING) {
-                    Nd4j.getExecutioner().thresholdDecode(message.getUpdates(), updates);
+                int encoding = CompressedUpdates.decode(message.getUpdates(), updates);
+                if (CompressedUpdates.isSparse(encoding))
                     sparseCounter.incrementAndGet();
-                } else if (encoding == ThresholdCompression.BITMAP_ENCODING) {
-                    Nd4j.getExecutioner().bitmapDecode(message.getUpdates(), updates);
+                else
                     denseCounter.incrementAndGet();
-                } else
-                    throw new DL4JInvalidConfigException("Unknown compression header received: " + encoding);
 
                 /*
                 if ((sparseCounter.get() + denseCounter.get()) % 100 == 0) {
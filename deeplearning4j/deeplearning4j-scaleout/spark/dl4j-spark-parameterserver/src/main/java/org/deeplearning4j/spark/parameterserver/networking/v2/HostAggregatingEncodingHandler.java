@@ -0,0 +1,479 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.spark.parameterserver.networking.v2;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.optimize.solvers.accumulation.EncodingHandler;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.CompressedUpdates;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.ResidualPostProcessor;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.ThresholdAlgorithm;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.UpdatesCompressionAlgorithm;
+import org.deeplearning4j.util.ThreadUtils;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.parameterserver.distributed.v2.ModelParameterServer;
+import org.nd4j.parameterserver.distributed.v2.transport.Transport;
+import org.nd4j.parameterserver.distributed.v2.transport.UpdatesHandler;
+import org.reactivestreams.Subscription;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This MessageHandler implementation performs hierarchical (intra-host, then inter-host) propagation of encoded
+ * updates, as an alternative to {@link WiredEncodingHandler}:<br>
+ * 1. Every update is shared with all other Spark executors on the same host via {@link HostLocalUpdatesExchange}
+ * (shared memory), instead of being sent over the network<br>
+ * 2. One executor per host (the host leader) sums all updates produced on its host, re-encodes the sum (keeping the
+ * residual for subsequent messages), and sends that single aggregated message to the other hosts via
+ * {@link ModelParameterServer}. The aggregate is sent with the leader's own updates, and at least every
+ * {@link #FLUSH_INTERVAL_MS} ms while updates from other executors are pending. Every executor keeps a replica of the
+ * sum, from which the aggregates sent by the leader are subtracted, so the residual survives a leader failure<br>
+ * 3. Updates received from other hosts are applied by the host leader and relayed to the other executors on the host
+ * via shared memory. Only the leader and the standby executor (see {@link HostLocalUpdatesExchange.Role}) receive
+ * updates from the mesh: other executors are passive mesh nodes. The standby keeps updates received from the mesh
+ * until the leader relays them, and relays the remaining ones itself when it takes over as leader<br>
+ * <br>
+ * Consequently the number of update messages sent over the network scales with the number of hosts, rather than with
+ * the number of executors, and each host receives (at most) two copies of every update.
+ */
+@Slf4j
+public class HostAggregatingEncodingHandler extends EncodingHandler {
+    // max time updates from other executors on this host wait for the leader's next message before being sent alone
+    protected static final long FLUSH_INTERVAL_MS = 100L;
+    // max time the standby waits for the leader to relay an update received from the mesh, before relaying it itself.
+    // Not less than the time the leader can wait for readers when relaying
+    protected static final long STANDBY_RELAY_TIMEOUT_MS = 30000L;
+
+    protected transient HostLocalUpdatesExchange exchange;
+    protected transient UpdatesHandler localConsumer;
+    protected transient UpdatesHandler meshConsumer;
+    protected transient Thread flusher;
+
+    protected final Object aggregationLock = new Object();
+    protected transient INDArray hostUpdates;
+    protected transient UpdatesCompressionAlgorithm hostCompressionAlgorithm;
+    protected float hostThreshold;
+    protected boolean hostPending;
+    protected volatile int lastIteration;
+    protected volatile int lastEpoch;
+    protected volatile long lastFlush;
+
+    // updates received from the mesh but not relayed by the leader yet, and relayed updates not received from the mesh
+    // (yet). Only the leader and standby receive updates from the mesh
+    protected final Object relayLock = new Object();
+    protected final LinkedList<TrackedUpdate> pendingUpdates = new LinkedList<>();
+    protected final LinkedList<TrackedUpdate> unmatchedRelays = new LinkedList<>();
+    // set once this executor is leader and has received all updates relayed by the previous leader
+    protected volatile boolean relaying;
+
+    protected final AtomicLong meshMessages = new AtomicLong(0);
+
+    public HostAggregatingEncodingHandler(ThresholdAlgorithm thresholdAlgorithm, ResidualPostProcessor residualPostProcessor,
+                                          Double boundary, boolean encodingDebugMode) {
+        super(thresholdAlgorithm, residualPostProcessor, boundary, encodingDebugMode);
+    }
+
+    public HostAggregatingEncodingHandler(UpdatesCompressionAlgorithm compressionAlgorithm, ResidualPostProcessor residualPostProcessor,
+                                          boolean encodingDebugMode) {
+        super(compressionAlgorithm, residualPostProcessor, encodingDebugMode);
+    }
+
+    /**
+     * Join the host-local exchange, and set the passive mode of this executor in the mesh accordingly. Must be called
+     * before training starts
+     *
+     * @param directory     Directory (ideally on tmpfs) shared by all executors on this host for this training session
+     * @param numParams     Number of parameters in the model
+     * @param localConsumer Consumer that applies updates received from other executors to this executor's model
+     */
+    public void startExchange(@NonNull File directory, long numParams, @NonNull UpdatesHandler localConsumer) throws IOException {
+        this.localConsumer = localConsumer;
+
+        // threshold and bitmap encoded updates never exceed numParams/16 elements + header
+        long maxUpdateLength = initialCompressionAlgorithm != null ? initialCompressionAlgorithm.maxEncodedLength(numParams)
+                : numParams / 16 + 16;
+        exchange = new HostLocalUpdatesExchange(directory, maxUpdateLength, HostLocalUpdatesExchange.DEFAULT_NUM_SLOTS,
+                HostLocalUpdatesExchange.DEFAULT_MAX_PARTICIPANTS, new HostLocalUpdatesExchange.Listener() {
+            @Override
+            public void onUpdate(INDArray update, int type) {
+                switch (type) {
+                    case HostLocalUpdatesExchange.TYPE_LOCAL:
+                        HostAggregatingEncodingHandler.this.localConsumer.onNext(update);
+                        // every executor keeps the sum of the host's updates, but only the leader sends it
+                        aggregate(update);
+                        if (exchange.isLeader() && System.currentTimeMillis() - lastFlush > FLUSH_INTERVAL_MS)
+                            flush();
+                        break;
+                    case HostLocalUpdatesExchange.TYPE_RELAY:
+                        HostAggregatingEncodingHandler.this.localConsumer.onNext(update);
+                        if (exchange.getRole() != HostLocalUpdatesExchange.Role.FOLLOWER)
+                            relayed(update);
+                        break;
+                    case HostLocalUpdatesExchange.TYPE_AGGREGATE:
+                        // already applied to the model, as separate updates
+                        sent(update);
+                        break;
+                    default:
+                        log.warn("Unknown host-local update type: {}", type);
+                }
+            }
+
+            @Override
+            public void onPromotion(HostLocalUpdatesExchange.Role role) {
+                if (role == HostLocalUpdatesExchange.Role.LEADER) {
+                    synchronized (relayLock) {
+                        relaying = true;
+                    }
+                    relayPending(false);
+                } else {
+                    updateMeshModeAsync();
+                }
+            }
+        });
+        exchange.start();
+        if (exchange.isLeader())
+            relaying = true;
+        updateMeshMode();
+
+        // the leader may stop producing updates (i.e., end of its data) while other executors still do
+        flusher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (!Thread.currentThread().isInterrupted()) {
+                        ThreadUtils.uncheckedSleep(FLUSH_INTERVAL_MS);
+                        HostLocalUpdatesExchange ex = exchange;
+                        if (ex == null)
+                            continue;
+                        try {
+                            if (ex.isLeader() && System.currentTimeMillis() - lastFlush >= FLUSH_INTERVAL_MS)
+                                flush();
+                            relayPending(true);
+                        } catch (Exception e) {
+                            log.error("Error sending host updates", e);
+                        }
+                    }
+                } catch (ThreadUtils.UncheckedInterruptedException e) {
+                    // shutdown
+                }
+            }
+        });
+        flusher.setName("HostAggregatingEncodingHandler-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    public void shutdownExchange() throws IOException {
+        if (flusher != null) {
+            flusher.interrupt();
+            try {
+                flusher.join(1000L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            flusher = null;
+        }
+
+        if (exchange != null) {
+            exchange.close();
+            exchange = null;
+        }
+        relaying = false;
+    }
+
+    /**
+     * @return Number of aggregated messages sent to other hosts by this executor
+     */
+    public long getMeshMessagesCount() {
+        return meshMessages.get();
+    }
+
+    public HostLocalUpdatesExchange getExchange() {
+        return exchange;
+    }
+
+    /**
+     * Wrap the consumer of updates received from other hosts: updates are applied and relayed to other executors on
+     * this host by the leader. The standby keeps them until the leader relays them, or until it becomes leader itself
+     *
+     * @param consumer Consumer to wrap
+     * @return Subscriber to register with {@link ModelParameterServer#addUpdatesSubscriber(UpdatesHandler)}
+     */
+    public UpdatesHandler meshSubscriber(@NonNull final UpdatesHandler consumer) {
+        this.meshConsumer = consumer;
+        return new UpdatesHandler() {
+            @Override
+            public INDArray getParametersArray() {
+                return consumer.getParametersArray();
+            }
+
+            @Override
+            public void onSubscribe(Subscription subscription) {
+                consumer.onSubscribe(subscription);
+            }
+
+            @Override
+            public void onNext(INDArray array) {
+                HostLocalUpdatesExchange ex = exchange;
+                if (ex == null) {
+                    consumer.onNext(array);
+                    return;
+                }
+
+                TrackedUpdate update = new TrackedUpdate(array.data().asInt());
+                boolean relay;
+                synchronized (relayLock) {
+                    // the previous leader might have relayed this update already
+                    boolean matched = remove(unmatchedRelays, update);
+                    HostLocalUpdatesExchange.Role role = ex.getRole();
+                    relay = relaying && !matched;
+                    if (role == HostLocalUpdatesExchange.Role.FOLLOWER) {
+                        // followers are passive mesh nodes: the same update is received by the leader and standby
+                        log.debug("Ignoring update received from the mesh by host-local follower {}", ex.getIndex());
+                    } else if (!relay && !matched) {
+                        // standby, or leader that may not have received the previous leader's relay of this update yet
+                        pendingUpdates.add(update);
+                    }
+                }
+
+                if (relay) {
+                    consumer.onNext(array);
+                    ex.publish(array, HostLocalUpdatesExchange.TYPE_RELAY);
+                }
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                consumer.onError(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                consumer.onComplete();
+            }
+        };
+    }
+
+    @Override
+    protected void sendMessage(@NonNull INDArray message, int iterationNumber, int epochNumber) {
+        lastIteration = iterationNumber;
+        lastEpoch = epochNumber;
+
+        HostLocalUpdatesExchange ex = exchange;
+        if (ex == null) {
+            // exchange not started: behave as WiredEncodingHandler
+            try (MemoryWorkspace wsO = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+                sendToMesh(message.unsafeDuplication(), iterationNumber, epochNumber);
+            }
+        } else {
+            ex.publish(message, HostLocalUpdatesExchange.TYPE_LOCAL);
+            aggregate(message);
+            if (ex.isLeader())
+                flush();
+        }
+
+        // local workers within this executor
+        super.sendMessage(message, iterationNumber, epochNumber);
+    }
+
+    /**
+     * Add the specified encoded update to the host aggregate
+     */
+    protected void aggregate(INDArray encoded) {
+        synchronized (aggregationLock) {
+            if (hostUpdates == null) {
+                try (MemoryWorkspace wsO = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+                    hostUpdates = Nd4j.create(DataType.FLOAT, encoded.data().getInt(1));
+                }
+            }
+
+            int encoding = CompressedUpdates.decode(encoded, hostUpdates);
+            if (encoding == CompressedUpdates.THRESHOLD_ENCODING || encoding == CompressedUpdates.BITMAP_ENCODING)
+                hostThreshold = Float.intBitsToFloat(encoded.data().getInt(2));
+            hostPending = true;
+        }
+    }
+
+    /**
+     * Subtract an aggregate sent by the leader from this executor's replica of the host aggregate
+     */
+    protected void sent(INDArray encoded) {
+        synchronized (aggregationLock) {
+            if (hostUpdates == null) {
+                try (MemoryWorkspace wsO = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+                    hostUpdates = Nd4j.create(DataType.FLOAT, encoded.data().getInt(1));
+                }
+            }
+
+            // decoding adds to the target: negation is exact, so this mirrors the leader's encoding
+            hostUpdates.negi();
+            CompressedUpdates.decode(encoded, hostUpdates);
+            hostUpdates.negi();
+        }
+    }
+
+    /**
+     * Encode the host aggregate and send it to other hosts, and to other executors on this host. Values that are not
+     * communicated (for example, values below the threshold) are retained for later messages
+     */
+    protected void flush() {
+        INDArray encoded;
+        synchronized (aggregationLock) {
+            if (!hostPending)
+                return;
+            hostPending = false;
+            lastFlush = System.currentTimeMillis();
+
+            try (MemoryWorkspace wsO = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+                if (initialCompressionAlgorithm != null) {
+                    if (hostCompressionAlgorithm == null)
+                        hostCompressionAlgorithm = initialCompressionAlgorithm.clone();
+                    encoded = hostCompressionAlgorithm.encode(lastIteration, lastEpoch, hostUpdates);
+                } else {
+                    encoded = Nd4j.getExecutioner().thresholdEncode(hostUpdates, hostThreshold, (int) (hostUpdates.length() / 16));
+                }
+            }
+
+            if (encoded != null) {
+                // other hosts first: if this executor fails in between, the aggregate is sent twice rather than lost
+                sendToMesh(encoded, lastIteration, lastEpoch);
+                meshMessages.incrementAndGet();
+                exchange.publish(encoded, HostLocalUpdatesExchange.TYPE_AGGREGATE);
+            }
+        }
+    }
+
+    protected void sendToMesh(INDArray encoded, int iteration, int epoch) {
+        ModelParameterServer.getInstance().sendUpdate(encoded, iteration, epoch);
+    }
+
+    /**
+     * Remove the relayed update from pending updates, or record it until the same update is received from the mesh
+     */
+    protected void relayed(INDArray array) {
+        TrackedUpdate update = new TrackedUpdate(array.data().asInt());
+        synchronized (relayLock) {
+            if (!remove(pendingUpdates, update))
+                unmatchedRelays.add(update);
+        }
+    }
+
+    /**
+     * Apply and relay pending updates received from the mesh, that the leader did not relay
+     *
+     * @param expiredOnly If true, only updates older than {@link #STANDBY_RELAY_TIMEOUT_MS} are relayed. Otherwise all
+     *                    pending updates are relayed: used when this executor becomes leader
+     */
+    protected void relayPending(boolean expiredOnly) {
+        long now = System.currentTimeMillis();
+        List<TrackedUpdate> toRelay = new ArrayList<>();
+        synchronized (relayLock) {
+            for (Iterator<TrackedUpdate> it = pendingUpdates.iterator(); it.hasNext(); ) {
+                TrackedUpdate u = it.next();
+                if (!expiredOnly || now - u.received > STANDBY_RELAY_TIMEOUT_MS) {
+                    toRelay.add(u);
+                    it.remove();
+                }
+            }
+
+            for (Iterator<TrackedUpdate> it = unmatchedRelays.iterator(); it.hasNext(); ) {
+                if (now - it.next().received > STANDBY_RELAY_TIMEOUT_MS)
+                    it.remove();
+            }
+        }
+
+        if (expiredOnly && !toRelay.isEmpty())
+            log.warn("{} updates received from the mesh were not relayed by the host leader within {} ms: relaying them",
+                    toRelay.size(), STANDBY_RELAY_TIMEOUT_MS);
+
+        for (TrackedUpdate u : toRelay) {
+            INDArray array = Nd4j.createFromArray(u.data);
+            meshConsumer.onNext(array);
+            exchange.publish(array, HostLocalUpdatesExchange.TYPE_RELAY);
+        }
+    }
+
+    /**
+     * Update the passive mode of this executor in the mesh: only the leader and the standby receive updates
+     */
+    protected synchronized void updateMeshMode() {
+        HostLocalUpdatesExchange ex = exchange;
+        if (ex != null)
+            setMeshPassive(ex.getRole() == HostLocalUpdatesExchange.Role.FOLLOWER);
+    }
+
+    protected void updateMeshModeAsync() {
+        // blocks until the root node has updated the mesh: not on the exchange polling thread
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    updateMeshMode();
+                } catch (Exception e) {
+                    log.error("Error updating passive mode of this executor in the mesh", e);
+                }
+            }
+        });
+        t.setName("HostAggregatingEncodingHandler-mesh");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    protected void setMeshPassive(boolean passive) {
+        Transport transport = ModelParameterServer.getInstance().getTransport();
+        if (transport != null)
+            transport.setPassive(passive);
+    }
+
+    protected static boolean remove(List<TrackedUpdate> list, TrackedUpdate update) {
+        for (Iterator<TrackedUpdate> it = list.iterator(); it.hasNext(); ) {
+            if (it.next().matches(update)) {
+                it.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Encoded update received from the mesh or relayed by the leader, for matching the two
+     */
+    protected static class TrackedUpdate {
+        protected final int[] data;
+        protected final int hash;
+        protected final long received = System.currentTimeMillis();
+
+        protected TrackedUpdate(int[] data) {
+            this.data = data;
+            this.hash = Arrays.hashCode(data);
+        }
+
+        protected boolean matches(TrackedUpdate other) {
+            return hash == other.hash && Arrays.equals(data, other.data);
+        }
+    }
+}
@@ -0,0 +1,625 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.spark.parameterserver.networking.v2;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.util.ThreadUtils;
+import org.nd4j.base.Preconditions;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.exception.ND4JIllegalStateException;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class exchanges encoded updates between processes (i.e., Spark executors) running on the same host, via
+ * memory-mapped files (ideally located on a tmpfs file system such as /dev/shm).<br>
+ * <br>
+ * Each participant owns a single-writer "outbox" file, which is a ring buffer of fixed size slots. All other
+ * participants on the same host read each outbox, tracking their own read sequence in the outbox header, so the
+ * writer only blocks if one of the readers is a full ring behind. A background thread polls the outboxes of all
+ * other participants, and passes received updates to the {@link Listener}.<br>
+ * <br>
+ * Participant indices and roles are chosen via file locks, so a participant that dies releases its index (and role)
+ * automatically. Each host has one {@link Role#LEADER}, one {@link Role#STANDBY} that takes over if the leader
+ * terminates, and any number of {@link Role#FOLLOWER}s, one of which takes over if the standby is promoted or
+ * terminates. A writer stops waiting for a reader whose process has terminated, but fails if a live reader falls a
+ * full ring behind for longer than the writer timeout, as dropping updates would silently diverge that reader's model.
+ * Writers wait for readers outside of the write lock, spinning briefly and then parking with exponential backoff.<br>
+ * <br>
+ * Sequences shared between processes are written after the slot contents are written (or read), and read before the
+ * slot contents, with a full fence in between (see {@link #fullFence()}), so the payload of a slot is always visible
+ * before its sequence. Sequences are 8-byte aligned, so they are read and written atomically.
+ */
+@Slf4j
+public class HostLocalUpdatesExchange implements Closeable {
+    public static final int DEFAULT_MAX_PARTICIPANTS = 64;
+    public static final int DEFAULT_NUM_SLOTS = 16;
+
+    /**
+     * Update produced by a participant on this host
+     */
+    public static final int TYPE_LOCAL = 0;
+    /**
+     * Update received from another host, and relayed by the host leader
+     */
+    public static final int TYPE_RELAY = 1;
+    /**
+     * Aggregate of updates produced on this host, sent to other hosts by the host leader
+     */
+    public static final int TYPE_AGGREGATE = 2;
+
+    private static final int MAGIC = 0x444C3453;
+    // header: [long writeSeq][int magic][int slotInts][int numSlots] + per reader sequences, on separate cache lines
+    private static final int WRITE_SEQ_OFFSET = 0;
+    private static final int MAGIC_OFFSET = 8;
+    private static final int SLOT_INTS_OFFSET = 12;
+    private static final int NUM_SLOTS_OFFSET = 16;
+    private static final int CACHE_LINE = 64;
+    // slot: [int length][int type][int... payload]
+    private static final int SLOT_HEADER_INTS = 2;
+
+    private static final long WRITER_TIMEOUT_MS = 30000L;
+    private static final long DISCOVERY_INTERVAL_MS = 1000L;
+    // a waiting writer yields this many times (readers usually catch up within microseconds), then parks
+    private static final int SPIN_WAITS = 100;
+    private static final long MAX_PARK_NANOS = 1000000L;
+
+    // Java 7 has no fence API, and ByteBuffer has no volatile accessors: a volatile store followed by a volatile load
+    // of this field is used as a full fence instead. Neither the JIT nor the CPU reorders memory accesses (including
+    // accesses to mapped files) across this pair: HotSpot emits a locked instruction on x86, and a release store
+    // followed by an acquire load on ARMv8
+    private static volatile int fence;
+
+    // lock files held by this JVM. Closing any channel to a locked file may release the (process-wide) lock, so
+    // we never open a second channel to a file already locked within this JVM
+    private static final Set<String> JVM_LOCKS = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * Role of a participant on this host. Roles are only ever promoted: from FOLLOWER to STANDBY, and from STANDBY to
+     * LEADER
+     */
+    public enum Role {
+        LEADER, STANDBY, FOLLOWER
+    }
+
+    /**
+     * Receives updates published by other participants on this host
+     */
+    public interface Listener {
+        /**
+         * @param update Encoded update
+         * @param type   Type of the update, as published. For example {@link #TYPE_LOCAL} or {@link #TYPE_RELAY}
+         */
+        void onUpdate(INDArray update, int type);
+
+        /**
+         * Called by the polling thread after this participant was promoted. When promoted to {@link Role#LEADER},
+         * all updates published by the previous leader were passed to {@link #onUpdate(INDArray, int)} already
+         *
+         * @param role New role of this participant
+         */
+        void onPromotion(Role role);
+    }
+
+    protected final File directory;
+    protected final int slotInts;
+    protected final int numSlots;
+    protected final int maxParticipants;
+    protected final Listener listener;
+
+    protected int index = -1;
+    protected FileLock indexLock;
+    protected FileLock leaderLock;
+    protected FileLock standbyLock;
+    protected volatile Role role = Role.FOLLOWER;
+
+    protected RandomAccessFile outboxFile;
+    protected MappedByteBuffer outbox;
+    protected final Object writeLock = new Object();
+
+    protected final MappedByteBuffer[] inboxes;
+    protected final RandomAccessFile[] inboxFiles;
+
+    protected final AtomicBoolean running = new AtomicBoolean(false);
+    protected Thread poller;
+    protected long lastDiscovery = 0;
+    protected long writerTimeoutMs = WRITER_TIMEOUT_MS;
+
+    protected final AtomicLong published = new AtomicLong(0);
+    protected final AtomicLong received = new AtomicLong(0);
+    protected final AtomicInteger peers = new AtomicInteger(0);
+
+    /**
+     * @param directory       Directory shared by all participants on this host. Should be on tmpfs for best performance
+     * @param maxUpdateLength Max length (number of int elements) of any encoded update
+     * @param numSlots        Number of slots in each participant's outbox
+     * @param maxParticipants Max number of participants on this host
+     * @param listener        Listener for updates received from other participants
+     */
+    public HostLocalUpdatesExchange(@NonNull File directory, long maxUpdateLength, int numSlots, int maxParticipants,
+                                    @NonNull Listener listener) {
+        Preconditions.checkArgument(numSlots > 0, "Number of slots must be positive, got %s", numSlots);
+        Preconditions.checkArgument(maxParticipants > 0, "Max number of participants must be positive, got %s", maxParticipants);
+        Preconditions.checkArgument(dataOffset(maxParticipants) + (long) numSlots * (SLOT_HEADER_INTS + maxUpdateLength) * 4 < Integer.MAX_VALUE,
+                "Outbox size exceeds 2GB: reduce number of slots (%s) or update length (%s)", numSlots, maxUpdateLength);
+        this.directory = directory;
+        this.slotInts = (int) maxUpdateLength + SLOT_HEADER_INTS;
+        this.numSlots = numSlots;
+        this.maxParticipants = maxParticipants;
+        this.listener = listener;
+        this.inboxes = new MappedByteBuffer[maxParticipants];
+        this.inboxFiles = new RandomAccessFile[maxParticipants];
+    }
+
+    /**
+     * Join the exchange: acquire a participant index, create this participant's outbox, acquire a role, and start
+     * polling other participants' outboxes
+     */
+    public synchronized void start() throws IOException {
+        if (running.get())
+            return;
+
+        if (!directory.exists() && !directory.mkdirs() && !directory.exists())
+            throw new IOException("Unable to create directory: " + directory.getAbsolutePath());
+
+        for (int i = 0; i < maxParticipants && index < 0; i++) {
+            FileLock lock = tryLock(new File(directory, "participant-" + i + ".lock"));
+            if (lock != null) {
+                index = i;
+                indexLock = lock;
+            }
+        }
+        if (index < 0)
+            throw new ND4JIllegalStateException("No free participant slots: max number of participants per host is " + maxParticipants);
+
+        // this participant owns its outbox: any stale content from a previous session is discarded.
+        // Note that the file is never shrunk, as other processes may still have it mapped
+        long size = dataOffset(maxParticipants) + (long) numSlots * slotInts * 4;
+        File f = new File(directory, "outbox-" + index + ".bin");
+        outboxFile = new RandomAccessFile(f, "rw");
+        if (outboxFile.length() < size)
+            outboxFile.setLength(size);
+        outbox = outboxFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        outbox.order(ByteOrder.nativeOrder());
+        outbox.putInt(MAGIC_OFFSET, 0);
+        outbox.putLong(WRITE_SEQ_OFFSET, 0);
+        outbox.putInt(SLOT_INTS_OFFSET, slotInts);
+        outbox.putInt(NUM_SLOTS_OFFSET, numSlots);
+        for (int i = 0; i < maxParticipants; i++)
+            outbox.putLong(readerOffset(i), -1);
+        // header is complete before readers can see the magic value
+        fullFence();
+        outbox.putInt(MAGIC_OFFSET, MAGIC);
+
+        // a new participant only becomes leader if there's no standby either: the standby is the leader's successor
+        if (tryPromote() == Role.STANDBY)
+            tryPromote();
+
+        log.info("Joined host-local updates exchange at [{}]: participant index {}, role: {}", directory.getAbsolutePath(),
+                index, role);
+
+        running.set(true);
+        poller = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (running.get()) {
+                    try {
+                        if (poll() == 0)
+                            ThreadUtils.uncheckedSleep(1);
+                    } catch (Exception e) {
+                        log.error("Error polling host-local updates", e);
+                        ThreadUtils.uncheckedSleep(100);
+                    }
+                }
+            }
+        });
+        poller.setName("HostLocalUpdatesExchange-" + index);
+        poller.setDaemon(true);
+        poller.start();
+    }
+
+    /**
+     * @return True if this participant is the host leader
+     */
+    public boolean isLeader() {
+        return role == Role.LEADER;
+    }
+
+    /**
+     * @return Current role of this participant
+     */
+    public Role getRole() {
+        return role;
+    }
+
+    /**
+     * @return Index of this participant on this host, or -1 if not started
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * @return Number of other participants on this host whose updates are being received
+     */
+    public int getNumPeers() {
+        return peers.get();
+    }
+
+    /**
+     * @return Number of updates published by this participant
+     */
+    public long getPublishedCount() {
+        return published.get();
+    }
+
+    /**
+     * @return Number of updates received from other participants
+     */
+    public long getReceivedCount() {
+        return received.get();
+    }
+
+    /**
+     * Publish an encoded update to all other participants on this host. If a reader is a full ring behind, this
+     * method waits (without holding the write lock) until the reader catches up
+     *
+     * @param encoded Encoded (INT) update
+     * @param type    Type of the update, passed to the readers' listeners. For example {@link #TYPE_LOCAL} or
+     *                {@link #TYPE_RELAY}
+     */
+    public void publish(@NonNull INDArray encoded, int type) {
+        Preconditions.checkState(outbox != null, "Exchange was not started");
+        int[] data = encoded.data().asInt();
+        if (data.length > slotInts - SLOT_HEADER_INTS)
+            throw new ND4JIllegalStateException("Update of length " + data.length + " exceeds max update length "
+                    + (slotInts - SLOT_HEADER_INTS));
+
+        long start = System.currentTimeMillis();
+        long lastCheck = start;
+        for (int waits = 0; ; waits++) {
+            synchronized (writeLock) {
+                long seq = outbox.getLong(WRITE_SEQ_OFFSET);
+                int blocking = blockingReader(seq);
+                if (blocking < 0) {
+                    // readers have released the slot before we overwrite it
+                    fullFence();
+                    int offset = slotOffset(seq % numSlots);
+                    outbox.putInt(offset, data.length);
+                    outbox.putInt(offset + 4, type);
+                    IntBuffer ib = duplicateAt(outbox, offset + SLOT_HEADER_INTS * 4).asIntBuffer();
+                    ib.put(data);
+
+                    // payload is visible to other processes before the sequence is
+                    putSequence(outbox, WRITE_SEQ_OFFSET, seq + 1);
+                    break;
+                }
+
+                long now = System.currentTimeMillis();
+                if (now - lastCheck > DISCOVERY_INTERVAL_MS) {
+                    lastCheck = now;
+                    if (releaseIfTerminated(blocking)) {
+                        log.info("Host-local participant {} has terminated: no longer waiting for it", blocking);
+                        continue;
+                    }
+                }
+
+                if (now - start > writerTimeoutMs)
+                    throw new ND4JIllegalStateException("Host-local participant " + blocking + " is alive, but did not read "
+                            + "updates for " + writerTimeoutMs + " ms. Its updates can't be dropped without diverging "
+                            + "its model: the process is likely stuck");
+            }
+
+            // other threads can publish (and fail) meanwhile
+            backoff(waits);
+        }
+        published.incrementAndGet();
+    }
+
+    /**
+     * Poll all other participants' outboxes once, passing any new updates to the listener
+     *
+     * @return Number of updates received
+     */
+    protected int poll() throws IOException {
+        Role promoted = null;
+        long now = System.currentTimeMillis();
+        if (now - lastDiscovery > DISCOVERY_INTERVAL_MS) {
+            lastDiscovery = now;
+            discover();
+            promoted = tryPromote();
+        }
+
+        int cnt = 0;
+        for (int j = 0; j < maxParticipants; j++) {
+            MappedByteBuffer in = inboxes[j];
+            if (j == index || in == null)
+                continue;
+
+            // payload of all slots up to writeSeq is visible after this
+            long writeSeq = getSequence(in, WRITE_SEQ_OFFSET);
+            long readSeq = getSequence(in, readerOffset(index));
+            if (readSeq < 0 || readSeq > writeSeq) {
+                // outbox was (re)created after we started reading it: start from its current position
+                putSequence(in, readerOffset(index), writeSeq);
+                continue;
+            }
+
+            int inSlots = in.getInt(NUM_SLOTS_OFFSET);
+            int inSlotInts = in.getInt(SLOT_INTS_OFFSET);
+            if (dataOffset(maxParticipants) + (long) inSlots * inSlotInts * 4 > in.capacity()) {
+                // outbox was recreated with a larger size: map it again
+                inboxFiles[j].close();
+                inboxFiles[j] = null;
+                inboxes[j] = null;
+                peers.decrementAndGet();
+                continue;
+            }
+            for (long s = readSeq; s < writeSeq; s++) {
+                int offset = dataOffset(maxParticipants) + (int) (s % inSlots) * inSlotInts * 4;
+                int length = in.getInt(offset);
+                int type = in.getInt(offset + 4);
+                int[] data = new int[length];
+                duplicateAt(in, offset + SLOT_HEADER_INTS * 4).asIntBuffer().get(data);
+
+                // slot can be reused by the writer once we've copied it
+                putSequence(in, readerOffset(index), s + 1);
+
+                listener.onUpdate(Nd4j.createFromArray(data), type);
+                received.incrementAndGet();
+                cnt++;
+            }
+        }
+
+        // a promoted leader has received all updates published by the previous leader by now, as the previous
+        // leader can't publish anymore
+        if (promoted != null)
+            listener.onPromotion(promoted);
+        return cnt;
+    }
+
+    protected void discover() throws IOException {
+        for (int j = 0; j < maxParticipants; j++) {
+            if (j == index || inboxes[j] != null)
+                continue;
+
+            File f = new File(directory, "outbox-" + j + ".bin");
+            if (!f.exists() || f.length() < dataOffset(maxParticipants))
+                continue;
+
+            RandomAccessFile raf = new RandomAccessFile(f, "rw");
+            MappedByteBuffer mbb = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+            mbb.order(ByteOrder.nativeOrder());
+            if (mbb.getInt(MAGIC_OFFSET) != MAGIC) {
+                raf.close();
+                continue;
+            }
+            fullFence();
+
+            // new readers start at the current position: earlier updates are from before we joined
+            putSequence(mbb, readerOffset(index), getSequence(mbb, WRITE_SEQ_OFFSET));
+            inboxes[j] = mbb;
+            inboxFiles[j] = raf;
+            peers.incrementAndGet();
+            log.debug("Participant {} discovered host-local participant {}", index, j);
+        }
+    }
+
+    /**
+     * @param seq Sequence of the next slot to write
+     * @return Index of a reader that hasn't read the slot previously written at the same position yet, or -1 if the
+     * slot can be written
+     */
+    protected int blockingReader(long seq) {
+        for (int j = 0; j < maxParticipants; j++) {
+            if (j == index)
+                continue;
+
+            long readSeq = outbox.getLong(readerOffset(j));
+            if (readSeq >= 0 && seq - readSeq >= numSlots)
+                return j;
+        }
+        return -1;
+    }
+
+    protected static void backoff(int waits) {
+        if (waits < SPIN_WAITS)
+            Thread.yield();
+        else
+            LockSupport.parkNanos(Math.min(MAX_PARK_NANOS, 1000L << Math.min(20, waits - SPIN_WAITS)));
+    }
+
+    /**
+     * If the specified participant has terminated (its index lock is not held), stop waiting for it as a reader
+     *
+     * @param participant Participant index
+     * @return True if the participant has terminated
+     */
+    protected boolean releaseIfTerminated(int participant) {
+        String fileName = "participant-" + participant + ".lock";
+        try {
+            FileLock lock = tryLock(new File(directory, fileName));
+            if (lock == null)
+                return false;
+
+            try {
+                // a new participant can't take over this index (and start reading) while we hold its lock
+                outbox.putLong(readerOffset(participant), -1);
+                fullFence();
+            } finally {
+                release(lock, fileName);
+            }
+            return true;
+        } catch (IOException e) {
+            log.warn("Unable to check if host-local participant {} is alive", participant, e);
+            return false;
+        }
+    }
+
+    /**
+     * Try to promote this participant to the next role
+     *
+     * @return New role, or null if this participant was not promoted
+     */
+    protected Role tryPromote() throws IOException {
+        if (role == Role.FOLLOWER) {
+            FileLock lock = tryLock(new File(directory, "standby.lock"));
+            if (lock != null) {
+                standbyLock = lock;
+                role = Role.STANDBY;
+                log.info("Participant {} is now host standby", index);
+                return role;
+            }
+        } else if (role == Role.STANDBY) {
+            FileLock lock = tryLock(new File(directory, "leader.lock"));
+            if (lock != null) {
+                leaderLock = lock;
+                role = Role.LEADER;
+                // a follower can take over as standby now
+                release(standbyLock, "standby.lock");
+                standbyLock = null;
+                log.info("Participant {} is now host leader", index);
+                return role;
+            }
+        }
+        return null;
+    }
+
+    protected static FileLock tryLock(File file) throws IOException {
+        String key = file.getCanonicalPath();
+        if (!JVM_LOCKS.add(key)) {
+            // lock is held by another participant in this JVM
+            return null;
+        }
+
+        FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+        FileLock lock = null;
+        try {
+            lock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            //No op: lock is held within this JVM
+        }
+
+        if (lock == null) {
+            channel.close();
+            JVM_LOCKS.remove(key);
+        }
+        return lock;
+    }
+
+    protected void release(FileLock lock, String fileName) throws IOException {
+        lock.release();
+        lock.channel().close();
+        JVM_LOCKS.remove(new File(directory, fileName).getCanonicalPath());
+    }
+
+    protected static int readerOffset(int participant) {
+        return CACHE_LINE * (participant + 1);
+    }
+
+    protected static int dataOffset(int maxParticipants) {
+        return CACHE_LINE * (maxParticipants + 1);
+    }
+
+    protected int slotOffset(long slot) {
+        return dataOffset(maxParticipants) + (int) slot * slotInts * 4;
+    }
+
+    protected static int fullFence() {
+        fence = 0;
+        return fence;
+    }
+
+    /**
+     * Read a sequence: memory accesses that follow are not reordered before this read
+     */
+    protected static long getSequence(MappedByteBuffer buffer, int offset) {
+        long value = buffer.getLong(offset);
+        fullFence();
+        return value;
+    }
+
+    /**
+     * Write a sequence: memory accesses that precede are not reordered after this write
+     */
+    protected static void putSequence(MappedByteBuffer buffer, int offset, long value) {
+        fullFence();
+        buffer.putLong(offset, value);
+    }
+
+    protected static ByteBuffer duplicateAt(MappedByteBuffer buffer, int offset) {
+        ByteBuffer bb = buffer.duplicate();
+        bb.position(offset);
+        return bb.slice().order(ByteOrder.nativeOrder());
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        running.set(false);
+        if (poller != null) {
+            try {
+                poller.join(1000L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        for (int j = 0; j < maxParticipants; j++) {
+            if (inboxFiles[j] != null) {
+                // writers don't need to wait for this participant anymore
+                putSequence(inboxes[j], readerOffset(index), -1);
+                inboxFiles[j].close();
+                inboxFiles[j] = null;
+                inboxes[j] = null;
+            }
+        }
+        peers.set(0);
+        if (outboxFile != null)
+            outboxFile.close();
+        if (leaderLock != null)
+            release(leaderLock, "leader.lock");
+        if (standbyLock != null)
+            release(standbyLock, "standby.lock");
+        if (indexLock != null)
+            release(indexLock, "participant-" + index + ".lock");
+        leaderLock = null;
+        standbyLock = null;
+        indexLock = null;
+        role = Role.FOLLOWER;
+        outbox = null;
+        index = -1;
+    }
+}
@@ -21,14 +21,13 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.deeplearning4j.exception.DL4JInvalidConfigException;
 import org.deeplearning4j.optimize.api.StepFunction;
 import org.deeplearning4j.optimize.solvers.accumulation.FancyBlockingQueue;
 import org.deeplearning4j.optimize.solvers.accumulation.GradientsAccumulator;
 import org.deeplearning4j.optimize.solvers.accumulation.IndexedTail;
 import org.deeplearning4j.optimize.solvers.accumulation.SmartFancyBlockingQueue;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.CompressedUpdates;
 import org.nd4j.linalg.api.ndarray.INDArray;
-import org.nd4j.linalg.compression.ThresholdCompression;
 import org.nd4j.linalg.exception.ND4JIllegalStateException;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.parameterserver.distributed.v2.transport.UpdatesHandler;
@@ -126,15 +125,11 @@ public class UpdatesConsumer implements UpdatesHandler {
             } else if (params != null && stepFunction != null) {
                 synchronized (this) {
                     // threshold decoder is inplace & fast
-                    int encoding = array.data().getInt(3);
-                    if (encoding == ThresholdCompression.FLEXIBLE_ENCODING) {
-                        Nd4j.getExecutioner().thresholdDecode(array, updates);
+                    int encoding = CompressedUpdates.decode(array, updates);
+                    if (CompressedUpdates.isSparse(encoding))
                         sparseCounter.incrementAndGet();
-                    } else if (encoding == ThresholdCompression.BITMAP_ENCODING) {
-                        Nd4j.getExecutioner().bitmapDecode(array, updates);
+                    else
                         denseCounter.incrementAndGet();
-                    } else
-                        throw new DL4JInvalidConfigException("Unknown compression header received: " + encoding);
 
 
                     // this simple flag shows that we have something not applied, will be used at finishTraining() method
@@ -22,6 +22,7 @@ import lombok.val;
 import org.deeplearning4j.optimize.solvers.accumulation.EncodingHandler;
 import org.deeplearning4j.optimize.solvers.accumulation.encoding.ResidualPostProcessor;
 import org.deeplearning4j.optimize.solvers.accumulation.encoding.ThresholdAlgorithm;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.UpdatesCompressionAlgorithm;
 import org.nd4j.linalg.api.memory.MemoryWorkspace;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
@@ -48,6 +49,16 @@ public class WiredEncodingHandler extends EncodingHandler {
         super(thresholdAlgorithm, residualPostProcessor, boundary, encodingDebugMode);
     }
 
+    /**
+     * This method builds new WiredEncodingHandler instance, using the specified compression algorithm instead of
+     * threshold encoding
+     *
+     * @param compressionAlgorithm The compression algorithm to use
+     */
+    public WiredEncodingHandler(UpdatesCompressionAlgorithm compressionAlgorithm, ResidualPostProcessor residualPostProcessor, boolean encodingDebugMode) {
+        super(compressionAlgorithm, residualPostProcessor, encodingDebugMode);
+    }
+
     /**
      * This method sends given message to all registered recipients
      *
@@ -40,6 +40,7 @@ import org.deeplearning4j.spark.parameterserver.conf.SharedTrainingConfiguration
 import org.deeplearning4j.spark.parameterserver.iterators.VirtualDataSetIterator;
 import org.deeplearning4j.spark.parameterserver.iterators.VirtualIterator;
 import org.deeplearning4j.spark.parameterserver.iterators.VirtualMultiDataSetIterator;
+import org.deeplearning4j.spark.parameterserver.networking.v2.HostAggregatingEncodingHandler;
 import org.deeplearning4j.spark.parameterserver.networking.v2.ModelParamsConsumer;
 import org.deeplearning4j.spark.parameterserver.networking.v2.UpdaterParamsConsumer;
 import org.deeplearning4j.spark.parameterserver.networking.v2.UpdatesConsumer;
@@ -60,6 +61,8 @@ import org.nd4j.parameterserver.distributed.v2.ModelParameterServer;
 import org.nd4j.parameterserver.distributed.v2.transport.UpdaterParametersProvider;
 import org.nd4j.parameterserver.distributed.v2.transport.impl.AeronUdpTransport;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
@@ -119,6 +122,13 @@ public class SharedTrainingWrapper {
                 INSTANCE.wrapper.shutdown();
                 INSTANCE.wrapper = null;
             }
+            if (INSTANCE.accumulator != null && INSTANCE.accumulator.getHandler() instanceof HostAggregatingEncodingHandler) {
+                try {
+                    ((HostAggregatingEncodingHandler) INSTANCE.accumulator.getHandler()).shutdownExchange();
+                } catch (IOException e) {
+                    log.warn("Failed to shut down host-local updates exchange", e);
+                }
+            }
             INSTANCE.iteratorsDS.clear();
             INSTANCE.iteratorsMDS.clear();
             INSTANCE.exceptionEncountered.set(false);
@@ -254,7 +264,17 @@ public class SharedTrainingWrapper {
                     }
                 }
 
-                val handler = new WiredEncodingHandler(trainingConfiguration.getThresholdAlgorithm(), trainingConfiguration.getResidualPostProcessor(), null, trainingConfiguration.isEncodingDebugMode());
+                EncodingHandler handler;
+                val compression = trainingConfiguration.getCompressionAlgorithm();
+                if (trainingConfiguration.isHostLocalAggregation()) {
+                    handler = compression != null
+                            ? new HostAggregatingEncodingHandler(compression, trainingConfiguration.getResidualPostProcessor(), trainingConfiguration.isEncodingDebugMode())
+                            : new HostAggregatingEncodingHandler(trainingConfiguration.getThresholdAlgorithm(), trainingConfiguration.getResidualPostProcessor(), null, trainingConfiguration.isEncodingDebugMode());
+                } else {
+                    handler = compression != null
+                            ? new WiredEncodingHandler(compression, trainingConfiguration.getResidualPostProcessor(), trainingConfiguration.isEncodingDebugMode())
+                            : new WiredEncodingHandler(trainingConfiguration.getThresholdAlgorithm(), trainingConfiguration.getResidualPostProcessor(), null, trainingConfiguration.isEncodingDebugMode());
+                }
 
                 // TODO: if there will be no code difference - use the same class instead of 2 different classes
                 val modelParamsSupplier = new ModelParamsConsumer();
@@ -263,17 +283,19 @@ public class SharedTrainingWrapper {
                 // this accumulator will provide sharing gradients over network, via WiredEncodedHandler. But we create it only once
                 if (accumulator == null) {
                     /**
-                     *  We know, that updates are guaranteed to have MAX size of params / 16. So, here we go.
+                     *  We know, that threshold encoded updates are guaranteed to have MAX size of params / 16. So, here we go.
                      *  I.e. for model with 100m params, that's 400m of floats (or 800m of doubles)
                      *  The worst case for us is bitmap encoding, that takes 2 bits to encode each gradient value
                      *
                      *  so, for float in worst case we'll have (100m / 16) int elements. So, our buffer size will be 6.25m * queueSize * 4 bytes per int
+                     *  Compression algorithms (quantization, top-k) can produce larger messages: see UpdatesCompressionAlgorithm.maxEncodedLength
                      */
 
                     int queueSize = numWorkers * 2;
 
                     val bufferSize = trainingConfiguration.getBufferSize() > 0 ? trainingConfiguration.getBufferSize()
-                                    : EncodedGradientsAccumulator.getOptimalBufferSize(model, numWorkers, 2);
+                                    : EncodedGradientsAccumulator.getOptimalBufferSize(model,
+                                                    trainingConfiguration.getCompressionAlgorithm(), numWorkers, 2);
 
                     accumulator = new EncodedGradientsAccumulator.Builder(numWorkers).messageHandler(handler)
                             .thresholdAlgorithm(trainingConfiguration.getThresholdAlgorithm())
@@ -355,7 +377,19 @@ public class SharedTrainingWrapper {
                             };
                         });
 
-                        ModelParameterServer.getInstance().addUpdatesSubscriber(consumer);
+                        if (handler instanceof HostAggregatingEncodingHandler) {
+                            // updates from other hosts are applied by the host leader, and relayed to other executors on this host
+                            val h = (HostAggregatingEncodingHandler) handler;
+                            File dir = hostLocalExchangeDirectory(trainingConfiguration, voidConfiguration);
+                            try {
+                                h.startExchange(dir, model.params().length(), consumer);
+                            } catch (IOException e) {
+                                throw new RuntimeException("Failed to start host-local updates exchange in " + dir, e);
+                            }
+                            ModelParameterServer.getInstance().addUpdatesSubscriber(h.meshSubscriber(consumer));
+                        } else {
+                            ModelParameterServer.getInstance().addUpdatesSubscriber(consumer);
+                        }
                         ModelParameterServer.getInstance().addModelParamsSubscriber(modelParamsSupplier);
                         ModelParameterServer.getInstance().addUpdaterParamsSubscriber(updateParamsSupplier);
                     }
@@ -407,6 +441,7 @@ public class SharedTrainingWrapper {
                                     .updaterParamsSupplier(updateParamsSupplier)
                                     .thresholdAlgorithm(trainingConfiguration.getThresholdAlgorithm())
                                     .residualPostProcessor(trainingConfiguration.getResidualPostProcessor())
+                                    .compressionAlgorithm(trainingConfiguration.getCompressionAlgorithm())
                                     .build();
                     wrapper.setExceptionEncountered(exceptionEncountered);
                 } else {
@@ -420,7 +455,8 @@ public class SharedTrainingWrapper {
                     val mParams = modelParamsSupplier.get();
                     if (mParams != null) {
                         log.info("Updating model params to the most recent ones...");
-                        originalModel.params().assign(mParams);
+                        //setParams rather than params().assign: also invalidates the master params (mixed precision)
+                        originalModel.setParams(mParams);
                     }
 
                     // ok. attaching accumulator to model
@@ -577,4 +613,18 @@ public class SharedTrainingWrapper {
         else
             throw new IllegalStateException("This method can't be called before iterators initialization");
     }
+
+    protected static File hostLocalExchangeDirectory(SharedTrainingConfiguration configuration, VoidConfiguration voidConfiguration) {
+        File base;
+        if (configuration.getHostLocalAggregationDirectory() != null) {
+            base = new File(configuration.getHostLocalAggregationDirectory());
+        } else {
+            File shm = new File("/dev/shm");
+            base = shm.isDirectory() && shm.canWrite() ? shm : new File(System.getProperty("java.io.tmpdir"));
+        }
+
+        // all executors of the same training session on this host share the same directory
+        String session = "dl4j-" + voidConfiguration.getControllerAddress() + "-" + voidConfiguration.getUnicastControllerPort();
+        return new File(base, session.replaceAll("[^A-Za-z0-9._-]", "_"));
+    }
 }
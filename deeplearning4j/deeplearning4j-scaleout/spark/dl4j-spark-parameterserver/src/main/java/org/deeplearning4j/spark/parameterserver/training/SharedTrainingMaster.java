@@ -41,6 +41,7 @@ import org.deeplearning4j.exception.DL4JInvalidConfigException;
 import org.deeplearning4j.optimize.api.TrainingListener;
 import org.deeplearning4j.optimize.solvers.accumulation.encoding.ResidualPostProcessor;
 import org.deeplearning4j.optimize.solvers.accumulation.encoding.ThresholdAlgorithm;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.UpdatesCompressionAlgorithm;
 import org.deeplearning4j.optimize.solvers.accumulation.encoding.residual.ResidualClippingPostProcessor;
 import org.deeplearning4j.optimize.solvers.accumulation.encoding.threshold.AdaptiveThresholdAlgorithm;
 import org.deeplearning4j.spark.api.*;
@@ -117,9 +118,12 @@ public class SharedTrainingMaster extends BaseTrainingMaster<SharedTrainingResul
     protected long debugLongerIterations = 0L;
     protected boolean logMinibatchesPerWorker = false;
     protected boolean encodingDebugMode = false;
+    protected boolean hostLocalAggregation = false;
+    protected String hostLocalAggregationDirectory;
 
     protected ThresholdAlgorithm thresholdAlgorithm;
     protected ResidualPostProcessor residualPostProcessor;
+    protected UpdatesCompressionAlgorithm compressionAlgorithm;
 
     protected Repartition repartition;
     protected RepartitionStrategy repartitionStrategy;
@@ -264,10 +268,13 @@ public class SharedTrainingMaster extends BaseTrainingMaster<SharedTrainingResul
         SharedTrainingConfiguration configuration = SharedTrainingConfiguration.builder()
                 .thresholdAlgorithm(thresholdAlgorithm)
                 .residualPostProcessor(residualPostProcessor)
+                .compressionAlgorithm(compressionAlgorithm)
                 .voidConfiguration(voidConfiguration)
                 .debugLongerIterations(debugLongerIterations)
                 .numberOfWorkersPerNode(numWorkersPerNode)
-                .encodingDebugMode(encodingDebugMode).build();
+                .encodingDebugMode(encodingDebugMode)
+                .hostLocalAggregation(hostLocalAggregation)
+                .hostLocalAggregationDirectory(hostLocalAggregationDirectory).build();
 
         if (collectTrainingStats)
             stats.logBroadcastStart();
@@ -295,10 +302,13 @@ public class SharedTrainingMaster extends BaseTrainingMaster<SharedTrainingResul
         SharedTrainingConfiguration configuration = SharedTrainingConfiguration.builder()
                 .thresholdAlgorithm(thresholdAlgorithm)
                 .residualPostProcessor(residualPostProcessor)
+                .compressionAlgorithm(compressionAlgorithm)
                 .voidConfiguration(voidConfiguration).debugLongerIterations(debugLongerIterations)
                 .numberOfWorkersPerNode(numWorkersPerNode)
                 .prefetchSize(workerPrefetchBatches)
                 .encodingDebugMode(encodingDebugMode)
+                .hostLocalAggregation(hostLocalAggregation)
+                .hostLocalAggregationDirectory(hostLocalAggregationDirectory)
                 .build();
 
         if (collectTrainingStats)
@@ -918,6 +928,9 @@ public class SharedTrainingMaster extends BaseTrainingMaster<SharedTrainingResul
         protected Boolean workerTogglePeriodicGC = new Boolean(true);
         protected Integer workerPeriodicGCFrequency = new Integer(5000);
         protected boolean encodingDebugMode = false;
+        protected boolean hostLocalAggregation = false;
+        protected String hostLocalAggregationDirectory;
+        protected UpdatesCompressionAlgorithm compressionAlgorithm;
 
         /**
          * Create a SharedTrainingMaster with defaults other than the RDD number of examples
@@ -1121,6 +1134,22 @@ public class SharedTrainingMaster extends BaseTrainingMaster<SharedTrainingResul
             return this;
         }
 
+        /**
+         * Compression algorithm to use instead of threshold encoding, such as
+         * {@link org.deeplearning4j.optimize.solvers.accumulation.encoding.compression.TopKCompressionAlgorithm},
+         * {@link org.deeplearning4j.optimize.solvers.accumulation.encoding.compression.QuantizedCompressionAlgorithm} or
+         * {@link org.deeplearning4j.optimize.solvers.accumulation.encoding.compression.SignCompressionAlgorithm}.
+         * These are useful for models with dense updates, where threshold encoding falls back to bitmap encoding.
+         * When set, the threshold algorithm is not used. The residual post processor is applied as for threshold encoding.<br>
+         * Default: null (threshold encoding)
+         *
+         * @param compressionAlgorithm Compression algorithm to use
+         */
+        public Builder compressionAlgorithm(UpdatesCompressionAlgorithm compressionAlgorithm){
+            this.compressionAlgorithm = compressionAlgorithm;
+            return this;
+        }
+
         /**
          * Minibatch size to use when training workers. In principle, the source data (i.e., {@code RDD<DataSet>} etc)
          * can have a different number of examples in each {@code DataSet} than we want to use when training.
@@ -1251,6 +1280,33 @@ public class SharedTrainingMaster extends BaseTrainingMaster<SharedTrainingResul
             return this;
         }
 
+        /**
+         * Enable hierarchical (intra-host, then inter-host) aggregation of updates.<br>
+         * When enabled, Spark executors on the same host exchange their updates via shared memory, and only one executor
+         * per host (elected automatically) sends the aggregated updates of the whole host to the other hosts. This
+         * reduces the number of update messages sent over the network from one per executor to one per host, which is
+         * useful when multiple executors are run on each machine.<br>
+         * Disabled by default.
+         *
+         * @param enabled True to enable
+         */
+        public Builder hostLocalAggregation(boolean enabled){
+            this.hostLocalAggregation = enabled;
+            return this;
+        }
+
+        /**
+         * Local directory used for exchanging updates between executors on the same host, when
+         * {@link #hostLocalAggregation(boolean)} is enabled. Should be on a memory-backed file system.<br>
+         * Default: /dev/shm if available, java.io.tmpdir otherwise
+         *
+         * @param directory Local directory to use on each host
+         */
+        public Builder hostLocalAggregationDirectory(String directory){
+            this.hostLocalAggregationDirectory = directory;
+            return this;
+        }
+
         public SharedTrainingMaster build() {
             SharedTrainingMaster master = new SharedTrainingMaster(voidConfiguration, numWorkers, rddTrainingApproach,
                             storageLevel, collectTrainingStats, repartitionStrategy, repartition,
@@ -1259,6 +1315,9 @@ public class SharedTrainingMaster extends BaseTrainingMaster<SharedTrainingResul
                     workerPeriodicGCFrequency, encodingDebugMode);
             if (transport != null)
                 master.transport = this.transport;
+            master.hostLocalAggregation = this.hostLocalAggregation;
+            master.hostLocalAggregationDirectory = this.hostLocalAggregationDirectory;
+            master.compressionAlgorithm = this.compressionAlgorithm;
 
             return master;
         }
@@ -0,0 +1,380 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.deeplearning4j.spark.parameterserver.networking.v2;
+
+import org.deeplearning4j.optimize.api.StepFunction;
+import org.deeplearning4j.optimize.solvers.accumulation.GradientsAccumulator;
+import org.deeplearning4j.optimize.solvers.accumulation.IndexedTail;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.CompressedUpdates;
+import org.deeplearning4j.optimize.solvers.accumulation.encoding.threshold.FixedThresholdAlgorithm;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.parameterserver.distributed.v2.transport.UpdatesHandler;
+import org.reactivestreams.Subscription;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.*;
+
+public class HostAggregatingEncodingHandlerTest {
+    // small enough that each aggregate carries at most 2 values (numParams / 16), so a residual is left over
+    private static final int NUM_PARAMS = 32;
+
+    @Rule
+    public TemporaryFolder testDir = new TemporaryFolder();
+
+    private final List<Participant> participants = new ArrayList<>();
+
+    @After
+    public void tearDown() throws Exception {
+        for (Participant p : participants)
+            p.handler.shutdownExchange();
+    }
+
+    @Test(timeout = 60000L)
+    public void testAggregateFlushRelay() throws Exception {
+        File dir = testDir.newFolder();
+        Participant leader = start(dir);
+        Participant standby = start(dir);
+        Participant follower = start(dir);
+        awaitPeers();
+
+        assertEquals(HostLocalUpdatesExchange.Role.LEADER, leader.handler.getExchange().getRole());
+        assertEquals(HostLocalUpdatesExchange.Role.STANDBY, standby.handler.getExchange().getRole());
+        assertEquals(HostLocalUpdatesExchange.Role.FOLLOWER, follower.handler.getExchange().getRole());
+        // only the leader and standby receive updates from other hosts
+        assertEquals(Boolean.FALSE, leader.handler.passive);
+        assertEquals(Boolean.FALSE, standby.handler.passive);
+        assertEquals(Boolean.TRUE, follower.handler.passive);
+
+        INDArray expected = Nd4j.create(DataType.FLOAT, NUM_PARAMS);
+        int numLocal = 0;
+        for (int i = 0; i < 20; i++) {
+            INDArray u = encode(i % 8, 8 + i % 4);
+            standby.handler.sendMessage(u, i, 0);
+            CompressedUpdates.decode(u, expected);
+            u = encode(16 + i % 8, 24 + i % 4);
+            follower.handler.sendMessage(u, i, 0);
+            CompressedUpdates.decode(u, expected);
+            numLocal += 2;
+        }
+        INDArray u = encode(30, 31);
+        leader.handler.sendMessage(u, 20, 0);
+        CompressedUpdates.decode(u, expected);
+        numLocal++;
+
+        // every update is applied exactly once by every participant
+        awaitModels(expected);
+        awaitFlushed(leader);
+        awaitReplicas(leader, standby, follower);
+
+        synchronized (leader.handler.aggregationLock) {
+            // the leader sends aggregates: fewer messages than updates produced on this host, none from other executors
+            assertTrue(leader.mesh.size() > 0);
+            assertTrue(leader.mesh.size() + " mesh messages for " + numLocal + " updates", leader.mesh.size() < numLocal);
+            assertEquals(leader.mesh.size(), leader.handler.getMeshMessagesCount());
+            assertTrue(standby.mesh.isEmpty());
+            assertTrue(follower.mesh.isEmpty());
+
+            // nothing is lost: values not sent yet are retained for subsequent aggregates
+            assertEquals(expected, sum(leader.mesh).addi(leader.handler.hostUpdates));
+            assertTrue(leader.handler.hostUpdates.sumNumber().doubleValue() > 0);
+        }
+
+        // update from another host, received by leader and standby: applied once, relayed by the leader
+        int numMesh = leader.mesh.size();
+        INDArray m = encode(1, 2, 3);
+        standby.subscriber.onNext(m);
+        leader.subscriber.onNext(m);
+        // followers are passive: a stray delivery is ignored
+        follower.subscriber.onNext(m);
+        CompressedUpdates.decode(m, expected);
+        awaitModels(expected);
+        awaitNoPending(standby);
+        Thread.sleep(200);
+        assertModels(expected);
+        assertTrue(standby.handler.unmatchedRelays.isEmpty());
+        // updates from other hosts are not sent back to the mesh
+        assertEquals(numMesh, leader.mesh.size());
+    }
+
+    @Test(timeout = 90000L)
+    public void testLeaderFailover() throws Exception {
+        File dir = testDir.newFolder();
+        Participant leader = start(dir);
+        Participant standby = start(dir);
+        Participant follower = start(dir);
+        awaitPeers();
+
+        // 5 values, at most 2 per aggregate: the leader sends 2 and retains the rest
+        INDArray local = encode(0, 1, 2, 3, 4);
+        follower.handler.sendMessage(local, 0, 0);
+        INDArray expected = decode(local);
+        while (leader.mesh.isEmpty())
+            Thread.sleep(10);
+        awaitModels(expected);
+        awaitReplicas(leader, standby, follower);
+        assertEquals(3, standby.handler.hostUpdates.sumNumber().intValue());
+
+        // received from the mesh by both: applied once
+        INDArray m1 = encode(20, 21);
+        leader.subscriber.onNext(m1);
+        standby.subscriber.onNext(m1);
+        CompressedUpdates.decode(m1, expected);
+        awaitModels(expected);
+
+        // relayed by the leader, but received from the mesh by the standby only after it took over
+        INDArray m2 = encode(22, 23);
+        leader.subscriber.onNext(m2);
+        CompressedUpdates.decode(m2, expected);
+        awaitModels(expected);
+
+        // received from the mesh by the standby only: the leader terminates before receiving it
+        INDArray m3 = encode(24, 25);
+        standby.subscriber.onNext(m3);
+        Thread.sleep(200);
+        assertModels(expected);
+
+        leader.handler.shutdownExchange();
+        participants.remove(leader);
+
+        // the standby takes over, and relays the pending update
+        CompressedUpdates.decode(m3, expected);
+        awaitModels(expected);
+        assertEquals(HostLocalUpdatesExchange.Role.LEADER, standby.handler.getExchange().getRole());
+
+        // the previous leader's relay isn't relayed again
+        standby.subscriber.onNext(m2);
+        Thread.sleep(200);
+        assertModels(expected);
+
+        // the new leader sends the values retained by the previous leader
+        while (standby.mesh.isEmpty())
+            Thread.sleep(10);
+        synchronized (standby.handler.aggregationLock) {
+            assertEquals(decode(local), sum(leader.mesh).addi(sum(standby.mesh)).addi(standby.handler.hostUpdates));
+        }
+
+        // the follower takes over as standby, and starts receiving updates from the mesh
+        while (follower.handler.passive)
+            Thread.sleep(10);
+        assertEquals(HostLocalUpdatesExchange.Role.STANDBY, follower.handler.getExchange().getRole());
+        INDArray m4 = encode(26, 27);
+        standby.subscriber.onNext(m4);
+        follower.subscriber.onNext(m4);
+        CompressedUpdates.decode(m4, expected);
+        awaitModels(expected);
+        awaitNoPending(follower);
+        Thread.sleep(200);
+        assertModels(expected);
+    }
+
+    private Participant start(File dir) throws Exception {
+        Participant p = new Participant();
+        p.handler.startExchange(dir, NUM_PARAMS, p.model);
+        participants.add(p);
+        return p;
+    }
+
+    private void awaitPeers() throws InterruptedException {
+        for (Participant p : participants) {
+            while (p.handler.getExchange().getNumPeers() < participants.size() - 1)
+                Thread.sleep(10);
+        }
+    }
+
+    private void awaitModels(INDArray expected) throws InterruptedException {
+        for (Participant p : participants) {
+            while (!expected.equals(p.model.params))
+                Thread.sleep(10);
+        }
+    }
+
+    private void assertModels(INDArray expected) {
+        for (Participant p : participants)
+            assertEquals(expected, p.model.params);
+    }
+
+    private static void awaitReplicas(Participant leader, Participant... others) throws InterruptedException {
+        // aggregates are published after the leader updated its own aggregate
+        while (true) {
+            boolean equal = true;
+            synchronized (leader.handler.aggregationLock) {
+                for (Participant p : others) {
+                    synchronized (p.handler.aggregationLock) {
+                        equal &= leader.handler.hostUpdates.equals(p.handler.hostUpdates);
+                    }
+                }
+            }
+            if (equal)
+                return;
+            Thread.sleep(10);
+        }
+    }
+
+    private static void awaitFlushed(Participant leader) throws InterruptedException {
+        while (true) {
+            synchronized (leader.handler.aggregationLock) {
+                if (!leader.handler.hostPending)
+                    return;
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private static void awaitNoPending(Participant p) throws InterruptedException {
+        while (true) {
+            synchronized (p.handler.relayLock) {
+                if (p.handler.pendingUpdates.isEmpty())
+                    return;
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private static INDArray encode(int... indices) {
+        INDArray updates = Nd4j.create(DataType.FLOAT, NUM_PARAMS);
+        for (int i : indices)
+            updates.putScalar(i, 1.0);
+        return Nd4j.getExecutioner().thresholdEncode(updates, 1.0);
+    }
+
+    private static INDArray decode(INDArray encoded) {
+        INDArray out = Nd4j.create(DataType.FLOAT, NUM_PARAMS);
+        CompressedUpdates.decode(encoded, out);
+        return out;
+    }
+
+    private static INDArray sum(List<INDArray> encoded) {
+        INDArray out = Nd4j.create(DataType.FLOAT, NUM_PARAMS);
+        for (INDArray e : encoded)
+            CompressedUpdates.decode(e, out);
+        return out;
+    }
+
+    private static class Participant {
+        private final TestHandler handler = new TestHandler();
+        private final Model model = new Model();
+        private final List<INDArray> mesh = handler.mesh;
+        private final UpdatesHandler subscriber;
+
+        private Participant() {
+            handler.initialize(model);
+            subscriber = handler.meshSubscriber(model);
+        }
+    }
+
+    private static class TestHandler extends HostAggregatingEncodingHandler {
+        private final List<INDArray> mesh = new CopyOnWriteArrayList<>();
+        private volatile Boolean passive;
+
+        private TestHandler() {
+            super(new FixedThresholdAlgorithm(1.0), null, null, false);
+        }
+
+        @Override
+        protected void sendToMesh(INDArray encoded, int iteration, int epoch) {
+            mesh.add(Nd4j.createFromArray(encoded.data().asInt()));
+        }
+
+        @Override
+        protected void setMeshPassive(boolean passive) {
+            this.passive = passive;
+        }
+    }
+
+    /**
+     * Model parameters of a participant: updates are applied by the accumulator (this participant's own updates),
+     * and by the update consumers (updates from other participants and other hosts)
+     */
+    private static class Model implements GradientsAccumulator, UpdatesHandler {
+        private final INDArray params = Nd4j.create(DataType.FLOAT, NUM_PARAMS);
+
+        @Override
+        public synchronized void receiveUpdate(INDArray array) {
+            CompressedUpdates.decode(array, params);
+        }
+
+        @Override
+        public synchronized void onNext(INDArray array) {
+            CompressedUpdates.decode(array, params);
+        }
+
+        @Override
+        public INDArray getParametersArray() {
+            return params;
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+        }
+
+        @Override
+        public void onComplete() {
+        }
+
+        @Override
+        public void setExternalSource(IndexedTail source) {
+        }
+
+        @Override
+        public IndexedTail getExternalSource() {
+            return null;
+        }
+
+        @Override
+        public void applyUpdate(StepFunction function, INDArray params, INDArray updates, boolean isFinalStep) {
+        }
+
+        @Override
+        public void applyUpdate(StepFunction function, INDArray params, INDArray updates, double alpha) {
+        }
+
+        @Override
+        public void storeUpdate(INDArray array, int iterationNumber, int epochNumber) {
+        }
+
+        @Override
+        public void markExternalUpdates(boolean updatesAvailable) {
+        }
+
+        @Override
+        public void reset() {
+        }
+
+        @Override
+        public void touch() {
+        }
+
+        @Override
+        public boolean hasAnything() {
+            return false;
+        }
+    }
+}
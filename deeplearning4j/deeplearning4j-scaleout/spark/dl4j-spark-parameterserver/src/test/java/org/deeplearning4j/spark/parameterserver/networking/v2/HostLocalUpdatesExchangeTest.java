@@ -0,0 +1,352 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.deeplearning4j.spark.parameterserver.networking.v2;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.exception.ND4JIllegalStateException;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+public class HostLocalUpdatesExchangeTest {
+
+    @Rule
+    public TemporaryFolder testDir = new TemporaryFolder();
+
+    @Test(timeout = 60000L)
+    public void testExchange() throws Exception {
+        File dir = testDir.newFolder();
+
+        CollectingListener l0 = new CollectingListener();
+        CollectingListener l1 = new CollectingListener();
+        HostLocalUpdatesExchange ex0 = new HostLocalUpdatesExchange(dir, 32, 4, 4, l0);
+        HostLocalUpdatesExchange ex1 = new HostLocalUpdatesExchange(dir, 32, 4, 4, l1);
+        try {
+            ex0.start();
+            ex1.start();
+
+            assertNotEquals(ex0.getIndex(), ex1.getIndex());
+            assertTrue(ex0.isLeader() ^ ex1.isLeader());
+
+            // participants only receive updates published after they discovered each other
+            while (ex0.getNumPeers() < 1 || ex1.getNumPeers() < 1)
+                Thread.sleep(10);
+
+            // more updates than slots: the writer has to wait for the reader
+            INDArray[] sent = new INDArray[10];
+            for (int i = 0; i < sent.length; i++) {
+                sent[i] = Nd4j.createFromArray(new int[]{4, 100, i, 0, i + 1, -(i + 2), i + 3, i + 4});
+                ex0.publish(sent[i], HostLocalUpdatesExchange.TYPE_LOCAL);
+            }
+            INDArray relay = Nd4j.createFromArray(new int[]{1, 100, 7, 0});
+            ex1.publish(relay, HostLocalUpdatesExchange.TYPE_RELAY);
+
+            while (l1.updates.size() < sent.length || l0.updates.isEmpty())
+                Thread.sleep(10);
+
+            for (int i = 0; i < sent.length; i++) {
+                assertEquals(sent[i], l1.updates.get(i));
+                assertEquals(HostLocalUpdatesExchange.TYPE_LOCAL, l1.types.get(i).intValue());
+            }
+            assertEquals(1, l0.updates.size());
+            assertEquals(relay, l0.updates.get(0));
+            assertEquals(HostLocalUpdatesExchange.TYPE_RELAY, l0.types.get(0).intValue());
+
+            assertEquals(sent.length, ex0.getPublishedCount());
+            assertEquals(sent.length, ex1.getReceivedCount());
+        } finally {
+            ex0.close();
+            ex1.close();
+        }
+    }
+
+    @Test(timeout = 60000L)
+    public void testLeaderFailover() throws Exception {
+        File dir = testDir.newFolder();
+
+        CollectingListener l1 = new CollectingListener();
+        CollectingListener l2 = new CollectingListener();
+        HostLocalUpdatesExchange ex0 = new HostLocalUpdatesExchange(dir, 16, 2, 4, new CollectingListener());
+        HostLocalUpdatesExchange ex1 = new HostLocalUpdatesExchange(dir, 16, 2, 4, l1);
+        HostLocalUpdatesExchange ex2 = new HostLocalUpdatesExchange(dir, 16, 2, 4, l2);
+        try {
+            ex0.start();
+            ex1.start();
+            ex2.start();
+            assertEquals(HostLocalUpdatesExchange.Role.LEADER, ex0.getRole());
+            assertEquals(HostLocalUpdatesExchange.Role.STANDBY, ex1.getRole());
+            assertEquals(HostLocalUpdatesExchange.Role.FOLLOWER, ex2.getRole());
+            while (ex0.getNumPeers() < 2 || ex1.getNumPeers() < 2 || ex2.getNumPeers() < 2)
+                Thread.sleep(10);
+
+            // last updates of the leader, not read by the standby yet when the leader terminates
+            synchronized (l1) {
+                for (int i = 0; i < 2; i++)
+                    ex0.publish(Nd4j.createFromArray(new int[]{1, 100, i, 0}), HostLocalUpdatesExchange.TYPE_RELAY);
+                ex0.close();
+            }
+
+            // the standby takes over as leader, then the follower as standby
+            while (!ex1.isLeader() || ex2.getRole() != HostLocalUpdatesExchange.Role.STANDBY)
+                Thread.sleep(10);
+            while (l2.promotions.isEmpty())
+                Thread.sleep(10);
+
+            assertEquals(Collections.singletonList(HostLocalUpdatesExchange.Role.LEADER), l1.promotions);
+            assertEquals(Collections.singletonList(HostLocalUpdatesExchange.Role.STANDBY), l2.promotions);
+            // all updates of the previous leader were received before the promotion
+            assertEquals(2, l1.updatesBeforeLeader);
+        } finally {
+            ex0.close();
+            ex1.close();
+            ex2.close();
+        }
+    }
+
+    @Test(timeout = 60000L)
+    public void testWaitingWriterReleasesLock() throws Exception {
+        File dir = testDir.newFolder();
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final HostLocalUpdatesExchange ex0 = new HostLocalUpdatesExchange(dir, 16, 2, 4, new CollectingListener());
+        HostLocalUpdatesExchange ex1 = new HostLocalUpdatesExchange(dir, 16, 2, 4, new CollectingListener() {
+            @Override
+            public void onUpdate(INDArray update, int type) {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.onUpdate(update, type);
+            }
+        });
+        Thread writer = null;
+        try {
+            ex0.start();
+            ex1.start();
+            while (ex0.getNumPeers() < 1 || ex1.getNumPeers() < 1)
+                Thread.sleep(10);
+
+            writer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 10; i++)
+                        ex0.publish(Nd4j.createFromArray(new int[]{1, 100, i, 0}), HostLocalUpdatesExchange.TYPE_LOCAL);
+                }
+            });
+            writer.start();
+
+            // writer waits for the stuck reader parked, and without holding the write lock
+            while (writer.getState() != Thread.State.TIMED_WAITING)
+                Thread.sleep(1);
+            long start = System.currentTimeMillis();
+            synchronized (ex0.writeLock) {
+                assertTrue(ex0.getPublishedCount() < 10);
+            }
+            assertTrue(System.currentTimeMillis() - start < 1000L);
+
+            latch.countDown();
+            writer.join();
+            assertEquals(10, ex0.getPublishedCount());
+        } finally {
+            latch.countDown();
+            if (writer != null)
+                writer.join();
+            ex0.close();
+            ex1.close();
+        }
+    }
+
+    @Test(timeout = 60000L)
+    public void testStuckReaderFailsWriter() throws Exception {
+        File dir = testDir.newFolder();
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        HostLocalUpdatesExchange ex0 = new HostLocalUpdatesExchange(dir, 16, 2, 4, new CollectingListener());
+        HostLocalUpdatesExchange ex1 = new HostLocalUpdatesExchange(dir, 16, 2, 4, new CollectingListener() {
+            @Override
+            public void onUpdate(INDArray update, int type) {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        try {
+            ex0.start();
+            ex1.start();
+            ex0.writerTimeoutMs = 2000L;
+            while (ex0.getNumPeers() < 1 || ex1.getNumPeers() < 1)
+                Thread.sleep(10);
+
+            // reader is alive but doesn't read: its updates must not be dropped silently
+            try {
+                for (int i = 0; i < 10; i++)
+                    ex0.publish(Nd4j.createFromArray(new int[]{1, 100, i, 0}), HostLocalUpdatesExchange.TYPE_LOCAL);
+                fail("Expected exception");
+            } catch (ND4JIllegalStateException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("is alive"));
+            }
+        } finally {
+            latch.countDown();
+            ex0.close();
+            ex1.close();
+        }
+    }
+
+    @Test(timeout = 120000L)
+    public void testMultipleProcesses() throws Exception {
+        File dir = testDir.newFolder();
+        int numUpdates = 20;
+
+        CollectingListener listener = new CollectingListener();
+        HostLocalUpdatesExchange ex = new HostLocalUpdatesExchange(dir, 16, 4, 4, listener);
+        Process child = null;
+        Process idle = null;
+        try {
+            ex.start();
+            child = fork(dir, numUpdates);
+            while (listener.updates.size() < numUpdates)
+                Thread.sleep(10);
+
+            // child publishes more updates than slots: all of them must arrive, in order
+            for (int i = 0; i < numUpdates; i++) {
+                assertEquals(childUpdate(i), listener.updates.get(i));
+                assertEquals(HostLocalUpdatesExchange.TYPE_LOCAL, listener.types.get(i).intValue());
+            }
+
+            for (int i = 0; i < numUpdates; i++)
+                ex.publish(parentUpdate(i), HostLocalUpdatesExchange.TYPE_RELAY);
+            assertEquals(0, child.waitFor());
+            child = null;
+            // closed participants are no longer readers
+            assertEquals(0, numReaders(ex));
+
+            // a killed process doesn't close the exchange: the writer must stop waiting for it
+            idle = fork(dir, 0);
+            while (numReaders(ex) < 1)
+                Thread.sleep(10);
+            idle.destroy();
+            idle.waitFor();
+            idle = null;
+            for (int i = 0; i < 10; i++)
+                ex.publish(parentUpdate(i), HostLocalUpdatesExchange.TYPE_RELAY);
+            assertEquals(0, numReaders(ex));
+        } finally {
+            if (child != null)
+                child.destroy();
+            if (idle != null)
+                idle.destroy();
+            ex.close();
+        }
+    }
+
+    private static int numReaders(HostLocalUpdatesExchange ex) {
+        int cnt = 0;
+        for (int j = 0; j < ex.maxParticipants; j++) {
+            if (j != ex.getIndex() && HostLocalUpdatesExchange.getSequence(ex.outbox, HostLocalUpdatesExchange.readerOffset(j)) >= 0)
+                cnt++;
+        }
+        return cnt;
+    }
+
+    private static Process fork(File dir, int numUpdates) throws Exception {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        return new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), ChildProcess.class.getName(),
+                dir.getAbsolutePath(), String.valueOf(numUpdates)).inheritIO().start();
+    }
+
+    private static INDArray childUpdate(int i) {
+        return Nd4j.createFromArray(new int[]{3, 100, i, 0, i + 1, -(i + 2), i + 3});
+    }
+
+    private static INDArray parentUpdate(int i) {
+        return Nd4j.createFromArray(new int[]{1, 100, -i, 0});
+    }
+
+    /**
+     * Participant in a separate JVM: publishes the specified number of updates, then checks the same number of updates
+     * published by the parent. With 0 updates, it only joins the exchange and waits to be killed
+     */
+    public static class ChildProcess {
+        public static void main(String[] args) throws Exception {
+            File dir = new File(args[0]);
+            int numUpdates = Integer.parseInt(args[1]);
+
+            CollectingListener listener = new CollectingListener();
+            HostLocalUpdatesExchange ex = new HostLocalUpdatesExchange(dir, 16, 4, 4, listener);
+            ex.start();
+            while (ex.getNumPeers() < 1)
+                Thread.sleep(10);
+
+            if (numUpdates == 0) {
+                Thread.sleep(Long.MAX_VALUE);
+            }
+
+            for (int i = 0; i < numUpdates; i++)
+                ex.publish(childUpdate(i), HostLocalUpdatesExchange.TYPE_LOCAL);
+
+            long start = System.currentTimeMillis();
+            while (listener.updates.size() < numUpdates) {
+                if (System.currentTimeMillis() - start > 60000L)
+                    System.exit(1);
+                Thread.sleep(10);
+            }
+
+            int status = 0;
+            for (int i = 0; i < numUpdates; i++) {
+                if (!parentUpdate(i).equals(listener.updates.get(i)) || listener.types.get(i) != HostLocalUpdatesExchange.TYPE_RELAY)
+                    status = 2;
+            }
+            ex.close();
+            System.exit(status);
+        }
+    }
+
+    private static class CollectingListener implements HostLocalUpdatesExchange.Listener {
+        private final CopyOnWriteArrayList<INDArray> updates = new CopyOnWriteArrayList<>();
+        private final CopyOnWriteArrayList<Integer> types = new CopyOnWriteArrayList<>();
+        private final CopyOnWriteArrayList<HostLocalUpdatesExchange.Role> promotions = new CopyOnWriteArrayList<>();
+        private volatile int updatesBeforeLeader = -1;
+
+        @Override
+        public void onUpdate(INDArray update, int type) {
+            // types first: the test thread waits on updates
+            types.add(type);
+            synchronized (this) {
+                updates.add(update);
+            }
+        }
+
+        @Override
+        public void onPromotion(HostLocalUpdatesExchange.Role role) {
+            if (role == HostLocalUpdatesExchange.Role.LEADER)
+                updatesBeforeLeader = updates.size();
+            promotions.add(role);
+        }
+    }
+}
@@ -39,8 +39,10 @@ import org.deeplearning4j.api.storage.StatsStorageRouterProvider;
 import org.deeplearning4j.api.storage.StorageMetaData;
 import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
 import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.api.Updater;
 import org.deeplearning4j.nn.graph.ComputationGraph;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.updater.BaseMultiLayerUpdater;
 import org.deeplearning4j.optimize.api.TrainingListener;
 import org.deeplearning4j.spark.api.*;
 import org.deeplearning4j.spark.api.stats.SparkTrainingStats;
@@ -52,6 +54,8 @@ import org.deeplearning4j.spark.impl.multilayer.SparkDl4jMultiLayer;
 import org.deeplearning4j.spark.impl.paramavg.aggregator.ParameterAveragingAggregationTuple;
 import org.deeplearning4j.spark.impl.paramavg.aggregator.ParameterAveragingElementAddFunction;
 import org.deeplearning4j.spark.impl.paramavg.aggregator.ParameterAveragingElementCombineFunction;
+import org.deeplearning4j.spark.impl.paramavg.aggregator.ParameterAveragingShardCombineFunction;
+import org.deeplearning4j.spark.impl.paramavg.aggregator.ParameterAveragingShardFunction;
 import org.deeplearning4j.spark.impl.paramavg.stats.ParameterAveragingTrainingMasterStats;
 import org.deeplearning4j.spark.util.SparkUtils;
 import org.deeplearning4j.util.UIDProvider;
@@ -62,6 +66,7 @@ import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.shade.jackson.annotation.JsonIgnoreProperties;
 import org.nd4j.shade.jackson.core.JsonProcessingException;
 import org.nd4j.shade.jackson.databind.ObjectMapper;
+import scala.Tuple2;
 
 import java.io.IOException;
 import java.io.OutputStream;
@@ -96,6 +101,7 @@ public class ParameterAveragingTrainingMaster
 
     protected int averagingFrequency;
     protected int aggregationDepth;
+    protected int averagingShardSize;
     protected int prefetchNumBatches;
     protected int iterationCount = 0;
 
@@ -117,6 +123,7 @@ public class ParameterAveragingTrainingMaster
         this.batchSizePerWorker = builder.batchSizePerWorker;
         this.averagingFrequency = builder.averagingFrequency;
         this.aggregationDepth = builder.aggregationDepth;
+        this.averagingShardSize = builder.averagingShardSize;
         this.prefetchNumBatches = builder.prefetchNumBatches;
         this.repartition = builder.repartition;
         this.repartitionStrategy = builder.repartitionStrategy;
@@ -661,6 +668,11 @@ public class ParameterAveragingTrainingMaster
         //Need to do parameter averaging, and where necessary also do averaging of the updaters
         //Let's do all of this in ONE step, such that we don't have extra synchronization costs
 
+        if (averagingShardSize > 0) {
+            processResultsSharded(network, graph, results, splitNum, totalSplits);
+            return;
+        }
+
         if (collectTrainingStats)
             stats.logAggregateStartTime();
         ParameterAveragingAggregationTuple tuple =
@@ -668,7 +680,6 @@ public class ParameterAveragingTrainingMaster
                                         new ParameterAveragingElementCombineFunction(), this.aggregationDepth);
         INDArray params = tuple.getParametersSum();
         int aggCount = tuple.getAggregationsCount();
-        SparkTrainingStats aggregatedStats = tuple.getSparkTrainingStats();
         if (collectTrainingStats)
             stats.logAggregationEndTime();
 
@@ -700,14 +711,102 @@ public class ParameterAveragingTrainingMaster
             log.info("Skipping imbalanced split with no data for all executors");
         }
 
+        finishProcessResults(network, graph, tuple, params != null, splitNum, totalSplits);
+    }
+
+    /**
+     * Sharded alternative to the tree aggregation in {@link #processResults(SparkDl4jMultiLayer, SparkComputationGraph, JavaRDD, int, int)}:
+     * parameters and updater state are split into shards of {@link #averagingShardSize} elements and reduced by key.
+     * Averaged shards are streamed to the driver one partition at a time, and assigned directly to the network's
+     * parameter and updater state views - hence the driver never holds more than one partition of shards in
+     * addition to the network itself
+     */
+    protected void processResultsSharded(SparkDl4jMultiLayer network, SparkComputationGraph graph,
+                    JavaRDD<ParameterAveragingTrainingResult> results, int splitNum, int totalSplits) {
+        INDArray paramsView;
+        INDArray updaterStateView;
+        if (network != null) {
+            paramsView = network.getNetwork().params();
+            updaterStateView = network.getNetwork().getUpdater().getStateViewArray();
+        } else {
+            paramsView = graph.getNetwork().params();
+            updaterStateView = graph.getNetwork().getUpdater().getStateViewArray();
+        }
+
+        //Shards are spread over as many reduce partitions as there are result partitions, which bounds the amount
+        // of data fetched by the driver at any time to approximately (model size / number of partitions)
+        long maxLength = Math.max(paramsView.length(), updaterStateView == null ? 0 : updaterStateView.length());
+        int numShards = ParameterAveragingShardFunction.numShards(maxLength, averagingShardSize);
+        int numPartitions = Math.max(1, Math.min(numShards + 1, results.partitions().size()));
+
+        if (collectTrainingStats)
+            stats.logAggregateStartTime();
+        JavaPairRDD<Integer, ParameterAveragingAggregationTuple> shards =
+                        results.mapPartitionsToPair(new ParameterAveragingShardFunction(averagingShardSize))
+                                        .reduceByKey(new ParameterAveragingShardCombineFunction(), numPartitions);
+
+        ParameterAveragingAggregationTuple metadata = null;
+        int numShardsReceived = 0;
+        boolean updaterStateReceived = false;
+        Iterator<Tuple2<Integer, ParameterAveragingAggregationTuple>> iter = shards.toLocalIterator();
+        while (iter.hasNext()) {
+            Tuple2<Integer, ParameterAveragingAggregationTuple> t = iter.next();
+            ParameterAveragingAggregationTuple tuple = t._2();
+            if (t._1() == ParameterAveragingShardFunction.METADATA_KEY) {
+                metadata = tuple;
+                continue;
+            }
+
+            int aggCount = tuple.getAggregationsCount();
+            if (tuple.getParametersSum() != null) {
+                ParameterAveragingShardFunction.getShard(paramsView, t._1(), averagingShardSize)
+                                .assign(tuple.getParametersSum().divi(aggCount));
+            }
+            if (tuple.getUpdaterStateSum() != null && updaterStateView != null) {
+                //May be null if all SGD updaters, for example
+                ParameterAveragingShardFunction.getShard(updaterStateView, t._1(), averagingShardSize)
+                                .assign(tuple.getUpdaterStateSum().divi(aggCount));
+                updaterStateReceived = true;
+            }
+            numShardsReceived++;
+        }
+        Nd4j.getExecutioner().commit();
+        if (numShardsReceived > 0 && !updaterStateReceived) {
+            //Mixed precision training: the full precision (master) parameters are part of the updater state. If that
+            // was averaged too they are consistent with the new parameters; otherwise they are now out of date
+            Updater u = (network != null ? network.getNetwork().getUpdater() : graph.getNetwork().getUpdater());
+            if (u instanceof BaseMultiLayerUpdater)
+                ((BaseMultiLayerUpdater) u).invalidateMasterParams();
+        }
+        if (collectTrainingStats)
+            stats.logAggregationEndTime();
+
+        if (collectTrainingStats)
+            stats.logProcessParamsUpdaterStart();
+        boolean averaged = metadata != null && numShardsReceived > 0;
+        if (averaged) {
+            if (network != null) {
+                network.setScore(metadata.getScoreSum() / metadata.getAggregationsCount());
+            } else {
+                graph.setScore(metadata.getScoreSum() / metadata.getAggregationsCount());
+            }
+        } else {
+            log.info("Skipping imbalanced split with no data for all executors");
+        }
+
+        finishProcessResults(network, graph, metadata, averaged, splitNum, totalSplits);
+    }
 
+    protected void finishProcessResults(SparkDl4jMultiLayer network, SparkComputationGraph graph,
+                    ParameterAveragingAggregationTuple tuple, boolean averaged, int splitNum, int totalSplits) {
+        SparkTrainingStats aggregatedStats = (tuple == null ? null : tuple.getSparkTrainingStats());
 
         if (collectTrainingStats) {
             stats.logProcessParamsUpdaterEnd();
             stats.addWorkerStats(aggregatedStats);
         }
 
-        if (statsStorage != null) {
+        if (statsStorage != null && tuple != null) {
             Collection<StorageMetaData> meta = tuple.getListenerMetaData();
             if (meta != null && !meta.isEmpty()) {
                 statsStorage.putStorageMetaData(meta);
@@ -728,7 +827,7 @@ public class ParameterAveragingTrainingMaster
 
         log.info("Completed training of split {} of {}", splitNum, totalSplits);
 
-        if (params != null) {
+        if (averaged) {
             //Params may be null for edge case (empty RDD)
             if (network != null) {
                 MultiLayerConfiguration conf = network.getNetwork().getLayerWiseConfigurations();
@@ -758,6 +857,7 @@ public class ParameterAveragingTrainingMaster
         protected int batchSizePerWorker = 16;
         protected int averagingFrequency = 5;
         protected int aggregationDepth = 2;
+        protected int averagingShardSize = 0;
         protected int prefetchNumBatches = 0;
         protected Repartition repartition = Repartition.Always;
         protected RepartitionStrategy repartitionStrategy = RepartitionStrategy.Balanced;
@@ -873,6 +973,24 @@ public class ParameterAveragingTrainingMaster
             return this;
         }
 
+        /**
+         * Enable sharded parameter averaging, with the specified number of elements per shard. (default: 0 - disabled)<br>
+         * When enabled, the flattened parameters and updater state of each partition are split into fixed-size shards,
+         * and each shard is reduced separately (by key) instead of aggregating complete copies of the model via
+         * tree aggregation. The averaged shards are then streamed to the driver one partition at a time, and written
+         * directly into the network's parameters and updater state.<br>
+         * This keeps the memory used for aggregation (on both the executors and the driver) bounded, and parallelizes
+         * the reduction. It is mainly useful for large models (hundreds of MB of parameters or more).<br>
+         * When enabled, {@link #aggregationDepth(int)} is not used.
+         *
+         * @param averagingShardSize Number of parameters (and updater state elements) per shard, or 0 to disable
+         */
+        public Builder averagingShardSize(int averagingShardSize) {
+            checkArgument(averagingShardSize >= 0, "Invalid input: averaging shard size must be >= 0 (0: disabled)");
+            this.averagingShardSize = averagingShardSize;
+            return this;
+        }
+
         /**
          * Set the number of minibatches to asynchronously prefetch in the worker.
          * <p>
@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.deeplearning4j.spark.impl.paramavg.aggregator;
+
+import org.apache.spark.api.java.function.Function2;
+import org.deeplearning4j.api.storage.Persistable;
+import org.deeplearning4j.api.storage.StorageMetaData;
+import org.deeplearning4j.spark.api.stats.SparkTrainingStats;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.Collection;
+
+/**
+ * Reduce function for sharded parameter averaging (see {@link ParameterAveragingShardFunction}).<br>
+ * Unlike {@link ParameterAveragingElementCombineFunction}, tuples without parameters are not discarded: parameters
+ * and updater state may be absent for the metadata key, or for the trailing shards of the shorter of the two arrays
+ */
+public class ParameterAveragingShardCombineFunction implements
+                Function2<ParameterAveragingAggregationTuple, ParameterAveragingAggregationTuple, ParameterAveragingAggregationTuple> {
+    @Override
+    public ParameterAveragingAggregationTuple call(ParameterAveragingAggregationTuple v1,
+                    ParameterAveragingAggregationTuple v2) throws Exception {
+        if (v1 == null)
+            return v2;
+        else if (v2 == null)
+            return v1;
+
+        INDArray paramsSum = sum(v1.getParametersSum(), v2.getParametersSum());
+        INDArray updaterStateSum = sum(v1.getUpdaterStateSum(), v2.getUpdaterStateSum());
+        Nd4j.getExecutioner().commit();
+
+        double scoreSum = v1.getScoreSum() + v2.getScoreSum();
+        int aggregationCount = v1.getAggregationsCount() + v2.getAggregationsCount();
+
+        SparkTrainingStats stats = v1.getSparkTrainingStats();
+        if (v2.getSparkTrainingStats() != null) {
+            if (stats == null)
+                stats = v2.getSparkTrainingStats();
+            else
+                stats.addOtherTrainingStats(v2.getSparkTrainingStats());
+        }
+
+        Collection<StorageMetaData> listenerMetaData = merge(v1.getListenerMetaData(), v2.getListenerMetaData());
+        Collection<Persistable> listenerStaticInfo = merge(v1.getListenerStaticInfo(), v2.getListenerStaticInfo());
+        Collection<Persistable> listenerUpdates = merge(v1.getListenerUpdates(), v2.getListenerUpdates());
+
+        return new ParameterAveragingAggregationTuple(paramsSum, updaterStateSum, scoreSum, aggregationCount, stats,
+                        listenerMetaData, listenerStaticInfo, listenerUpdates);
+    }
+
+    private static INDArray sum(INDArray first, INDArray second) {
+        if (first == null)
+            return second;
+        if (second != null)
+            first.addi(second);
+        return first;
+    }
+
+    private static <T> Collection<T> merge(Collection<T> first, Collection<T> second) {
+        if (first == null)
+            return second;
+        if (second != null)
+            first.addAll(second);
+        return first;
+    }
+}
@@ -0,0 +1,169 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+
+package org.deeplearning4j.spark.impl.paramavg.aggregator;
+
+import org.datavec.spark.functions.FlatMapFunctionAdapter;
+import org.deeplearning4j.spark.impl.paramavg.ParameterAveragingTrainingResult;
+import org.deeplearning4j.spark.util.BasePairFlatMapFunctionAdaptee;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+import scala.Tuple2;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Function used for sharded parameter averaging: sums the training results of a partition, then splits the summed
+ * (flattened) parameters and updater state into fixed-size shards, each keyed by its shard index. Shards can then be
+ * reduced by key, in parallel, instead of aggregating full copies of the model.<br>
+ * Score, training stats and listener information are emitted separately under {@link #METADATA_KEY}.
+ */
+public class ParameterAveragingShardFunction
+                extends BasePairFlatMapFunctionAdaptee<Iterator<ParameterAveragingTrainingResult>, Integer, ParameterAveragingAggregationTuple> {
+
+    /**
+     * Key used for the (parameter-free) tuple holding the score, training stats and listener information
+     */
+    public static final int METADATA_KEY = -1;
+
+    /**
+     * @param shardSize Number of elements (parameters or updater state) in each shard
+     */
+    public ParameterAveragingShardFunction(int shardSize) {
+        super(new ParameterAveragingShardFunctionAdapter(shardSize));
+    }
+
+    /**
+     * @param array     Flattened parameters or updater state
+     * @param shard     Index of the shard
+     * @param shardSize Number of elements in each shard
+     * @return View of the elements of the specified shard, or null if the array has no elements for this shard
+     */
+    public static INDArray getShard(INDArray array, int shard, int shardSize) {
+        long start = (long) shard * shardSize;
+        if (array == null || start >= array.length())
+            return null;
+        long end = Math.min(array.length(), start + shardSize);
+        INDArray flat = (array.rank() == 1 ? array : array.reshape(array.length()));
+        return flat.get(NDArrayIndex.interval(start, end));
+    }
+
+    /**
+     * @param length    Number of elements
+     * @param shardSize Number of elements in each shard
+     * @return Number of shards required for the specified number of elements
+     */
+    public static int numShards(long length, int shardSize) {
+        return (int) ((length + shardSize - 1) / shardSize);
+    }
+}
+
+
+/**
+ * Function used for sharded parameter averaging: sums the training results of a partition, then splits the summed
+ * (flattened) parameters and updater state into fixed-size shards, each keyed by its shard index.<br>
+ * Shards are copied lazily, one at a time as Spark consumes them, so at most one detached shard exists in addition to
+ * the partition sum.
+ */
+class ParameterAveragingShardFunctionAdapter implements
+                FlatMapFunctionAdapter<Iterator<ParameterAveragingTrainingResult>, Tuple2<Integer, ParameterAveragingAggregationTuple>> {
+
+    private final int shardSize;
+
+    public ParameterAveragingShardFunctionAdapter(int shardSize) {
+        this.shardSize = shardSize;
+    }
+
+    @Override
+    public Iterable<Tuple2<Integer, ParameterAveragingAggregationTuple>> call(
+                    Iterator<ParameterAveragingTrainingResult> iter) throws Exception {
+        //Sum all results in this partition first, so that only one copy of each shard per partition is shuffled
+        ParameterAveragingElementAddFunction addFunction = new ParameterAveragingElementAddFunction();
+        ParameterAveragingAggregationTuple tuple = null;
+        while (iter.hasNext()) {
+            ParameterAveragingTrainingResult result = iter.next();
+            if (result == null || result.getParameters() == null)
+                continue; //No data for this worker
+            tuple = addFunction.call(tuple, result);
+        }
+
+        if (tuple == null)
+            return Collections.emptyList();
+
+        final ParameterAveragingAggregationTuple sum = tuple;
+        return new Iterable<Tuple2<Integer, ParameterAveragingAggregationTuple>>() {
+            @Override
+            public Iterator<Tuple2<Integer, ParameterAveragingAggregationTuple>> iterator() {
+                return new ShardIterator(sum, shardSize);
+            }
+        };
+    }
+
+    /**
+     * Emits the metadata tuple, followed by one tuple per shard
+     */
+    private static class ShardIterator implements Iterator<Tuple2<Integer, ParameterAveragingAggregationTuple>> {
+        private final ParameterAveragingAggregationTuple sum;
+        private final int shardSize;
+        private final int numShards;
+        //-1: metadata tuple
+        private int next = ParameterAveragingShardFunction.METADATA_KEY;
+
+        private ShardIterator(ParameterAveragingAggregationTuple sum, int shardSize) {
+            this.sum = sum;
+            this.shardSize = shardSize;
+            INDArray updaterState = sum.getUpdaterStateSum();
+            long maxLength = Math.max(sum.getParametersSum().length(), updaterState == null ? 0 : updaterState.length());
+            this.numShards = ParameterAveragingShardFunction.numShards(maxLength, shardSize);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < numShards;
+        }
+
+        @Override
+        public Tuple2<Integer, ParameterAveragingAggregationTuple> next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+
+            int i = next++;
+            if (i == ParameterAveragingShardFunction.METADATA_KEY) {
+                return new Tuple2<>(ParameterAveragingShardFunction.METADATA_KEY,
+                                new ParameterAveragingAggregationTuple(null, null, sum.getScoreSum(),
+                                                sum.getAggregationsCount(), sum.getSparkTrainingStats(),
+                                                sum.getListenerMetaData(), sum.getListenerStaticInfo(),
+                                                sum.getListenerUpdates()));
+            }
+
+            INDArray paramsShard = ParameterAveragingShardFunction.getShard(sum.getParametersSum(), i, shardSize);
+            INDArray updaterShard = ParameterAveragingShardFunction.getShard(sum.getUpdaterStateSum(), i, shardSize);
+            //Shards are detached from the full arrays, so that only the shard itself is serialized
+            return new Tuple2<>(i, new ParameterAveragingAggregationTuple(
+                            paramsShard == null ? null : paramsShard.dup(),
+                            updaterShard == null ? null : updaterShard.dup(), 0.0, sum.getAggregationsCount(),
+                            null, null, null, null));
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -40,7 +40,9 @@ import org.nd4j.linalg.activations.Activation;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.dataset.DataSet;
 import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.learning.config.Adam;
 import org.nd4j.linalg.learning.config.IUpdater;
+import org.nd4j.linalg.learning.config.Nesterovs;
 import org.nd4j.linalg.learning.config.RmsProp;
 import org.nd4j.linalg.learning.config.Sgd;
 import org.nd4j.linalg.lossfunctions.LossFunctions;
@@ -355,6 +357,116 @@ public class TestCompareParameterAveragingSparkVsSingleMachine {
         }
     }
 
+    @Test
+    public void testAverageEveryStepSharded() {
+        //As per testAverageEveryStep, but with sharded parameter averaging instead of tree aggregation
+        //Shard size is deliberately not a divisor of the number of parameters or the updater state size
+        //Sgd and Nesterovs updates are linear in the gradient, so averaging every step matches a single machine.
+        //Adam is not: instead, sharded averaging (including the 2 Adam state arrays) must match tree aggregation
+
+        int miniBatchSizePerWorker = 10;
+        int nWorkers = 4;
+
+        IUpdater[] updaters = {new Sgd(0.5), new Nesterovs(0.1, 0.9), new Adam(0.01)};
+        for (IUpdater updater : updaters) {
+            for (boolean saveUpdater : new boolean[] {true, false}) {
+                for (boolean graph : new boolean[] {false, true}) {
+                    String msg = updater.getClass().getSimpleName() + ", saveUpdater=" + saveUpdater + ", graph=" + graph;
+                    JavaSparkContext sc = getContext(nWorkers);
+
+                    try {
+                        int[] seeds = {1, 2, 3};
+
+                        INDArray initialParams;
+                        INDArray finalParams;
+                        double score;
+                        if (updater instanceof Adam) {
+                            ParameterAveragingTrainingMaster tm = new ParameterAveragingTrainingMaster.Builder(1)
+                                            .averagingFrequency(1).batchSizePerWorker(miniBatchSizePerWorker)
+                                            .saveUpdater(saveUpdater).workerPrefetchNumBatches(0)
+                                            .rddTrainingApproach(RDDTrainingApproach.Export).build();
+                            INDArray[] out = new INDArray[2];
+                            score = fitSpark(sc, tm, graph, updater, seeds, miniBatchSizePerWorker * nWorkers, out);
+                            initialParams = out[0];
+                            finalParams = out[1];
+                        } else if (graph) {
+                            ComputationGraph net = new ComputationGraph(getGraphConf(12345, updater.clone()));
+                            net.init();
+                            initialParams = net.params().dup();
+                            for (int i = 0; i < seeds.length; i++) {
+                                DataSet ds = getOneDataSet(miniBatchSizePerWorker * nWorkers, seeds[i]);
+                                if (!saveUpdater)
+                                    net.setUpdater(null);
+                                net.fit(ds);
+                            }
+                            finalParams = net.params().dup();
+                            score = net.score();
+                        } else {
+                            MultiLayerNetwork net = new MultiLayerNetwork(getConf(12345, updater.clone()));
+                            net.init();
+                            initialParams = net.params().dup();
+                            for (int i = 0; i < seeds.length; i++) {
+                                DataSet ds = getOneDataSet(miniBatchSizePerWorker * nWorkers, seeds[i]);
+                                if (!saveUpdater)
+                                    net.setUpdater(null);
+                                net.fit(ds);
+                            }
+                            finalParams = net.params().dup();
+                            score = net.score();
+                        }
+
+                        ParameterAveragingTrainingMaster tm = new ParameterAveragingTrainingMaster.Builder(1)
+                                        .averagingFrequency(1).batchSizePerWorker(miniBatchSizePerWorker)
+                                        .saveUpdater(saveUpdater).workerPrefetchNumBatches(0).averagingShardSize(7)
+                                        .rddTrainingApproach(RDDTrainingApproach.Export).build();
+
+                        INDArray[] out = new INDArray[2];
+                        double sparkScore = fitSpark(sc, tm, graph, updater, seeds, miniBatchSizePerWorker * nWorkers, out);
+                        assertEquals(msg, initialParams, out[0]);
+                        INDArray finalSparkParams = out[1];
+
+                        assertNotEquals(msg, initialParams, finalParams);
+                        assertEquals(msg, finalParams, finalSparkParams);
+
+                        assertTrue(msg, sparkScore > 0.0);
+                        assertEquals(msg, score, sparkScore, 1e-3);
+                    } finally {
+                        sc.stop();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Fit a Spark network with the specified training master, one RDD per seed
+     *
+     * @param out Initial and final parameters of the network
+     * @return Final score
+     */
+    private double fitSpark(JavaSparkContext sc, TrainingMaster tm, boolean graph, IUpdater updater, int[] seeds,
+                    int numExamples, INDArray[] out) {
+        if (graph) {
+            SparkComputationGraph sparkNet = new SparkComputationGraph(sc, getGraphConf(12345, updater.clone()), tm);
+            out[0] = sparkNet.getNetwork().params().dup();
+            for (int i = 0; i < seeds.length; i++) {
+                List<DataSet> list = getOneDataSetAsIndividalExamples(numExamples, seeds[i]);
+                sparkNet.fit(sc.parallelize(list));
+            }
+            out[1] = sparkNet.getNetwork().params().dup();
+            return sparkNet.getScore();
+        } else {
+            SparkDl4jMultiLayer sparkNet = new SparkDl4jMultiLayer(sc, getConf(12345, updater.clone()), tm);
+            out[0] = sparkNet.getNetwork().params().dup();
+            for (int i = 0; i < seeds.length; i++) {
+                List<DataSet> list = getOneDataSetAsIndividalExamples(numExamples, seeds[i]);
+                sparkNet.fit(sc.parallelize(list));
+            }
+            out[1] = sparkNet.getNetwork().params().dup();
+            return sparkNet.getScore();
+        }
+    }
+
     @Test
     public void testAverageEveryStepCNN() {
         //Idea: averaging every step with SGD (SGD updater + optimizer) is mathematically identical to doing the learning
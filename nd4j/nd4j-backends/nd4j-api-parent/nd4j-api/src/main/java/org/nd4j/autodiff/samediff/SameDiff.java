@@ -90,7 +90,11 @@ import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -119,6 +123,17 @@ public class SameDiff extends SDBaseOps {
     private final Map<String,SameDiffOp> ops = new LinkedHashMap<>();
     @Getter
     private final Map<Long,InferenceSession> sessions = new ConcurrentHashMap<>();      //Key: thread ID
+    private final Map<String,Lock> opExecutionLocks = new ConcurrentHashMap<>();        //Key: op name. Shared by all sessions
+    private InferenceSessionPool sessionPool;                                           //Lazily created, see checkoutSession()
+    private int sessionPoolSize;                                                        //0 = not set (default: number of processors)
+    private boolean useSessionPool;                                                     //If true: output(...) uses pooled sessions instead of per-thread sessions
+    @Getter
+    private boolean useCompiledExecutionPlan;                                           //If true: sessions freeze the op order for graphs without control flow
+    @Getter
+    private boolean useLivenessAnalysis;                                                //If true: sessions release intermediate arrays after their last use
+    @Getter
+    private int interOpThreads = 1;                                                     //Number of threads for executing independent ops in parallel
+    private ExecutorService interOpExecutor;                                            //Lazily created, when interOpThreads > 1
 
     private final Map<String,DeviceLocalNDArray> constantArrays = new ConcurrentHashMap<>();
     private final Map<String,DeviceLocalNDArray> variablesArrays = new ConcurrentHashMap<>();     //TODO issues with DeviceLocal +  mutable / changed during training?
@@ -1649,9 +1664,27 @@ public class SameDiff extends SDBaseOps {
      */
     public SameDiff dup() {
         Cloner cloner = newCloner();
-        SameDiff clone = cloner.deepClone(this);
+        //Session pool and inter-op executor are not cloned (executor threads can't be cloned) - clone will create its own
+        InferenceSessionPool pool;
+        ExecutorService executor;
+        synchronized (this){
+            pool = sessionPool;
+            executor = interOpExecutor;
+            sessionPool = null;
+            interOpExecutor = null;
+        }
+        SameDiff clone;
+        try {
+            clone = cloner.deepClone(this);
+        } finally {
+            synchronized (this){
+                sessionPool = pool;
+                interOpExecutor = executor;
+            }
+        }
         //TODO don't clone sessions in the first place!
         clone.sessions.clear();
+        clone.opExecutionLocks.clear();
         return clone;
     }
 
@@ -2474,6 +2507,21 @@ public class SameDiff extends SDBaseOps {
      */
     protected Map<String,INDArray> output(Map<String,INDArray> placeholders, boolean training, At at, String... outputs){
         Preconditions.checkState(outputs != null && outputs.length > 0, "No outputs were specified");
+        if(useSessionPool){
+            InferenceSession is = checkoutSession();
+            try {
+                Map<String,INDArray> ret = is.output(Arrays.asList(outputs), placeholders, listeners, training, at);
+                //Output arrays belong to the session's array arena, and will be overwritten on the next use of the session
+                Map<String,INDArray> out = new HashMap<>();
+                for(Map.Entry<String,INDArray> e : ret.entrySet()){
+                    out.put(e.getKey(), e.getValue() == null ? null : e.getValue().dup());
+                }
+                return out;
+            } finally {
+                returnSession(is);
+            }
+        }
+
         long threadId = Thread.currentThread().getId();
         if(!sessions.containsKey(threadId)){
             log.info("Creating new InferenceSession for thread {}", threadId);
@@ -2493,6 +2541,192 @@ public class SameDiff extends SDBaseOps {
         return ret;
     }
 
+    /**
+     * Do inference for the given variables for a single batch, using the specified session.<br>
+     * The session should be obtained from {@link #checkoutSession()} and must not be used by any other thread
+     * concurrently. The returned arrays belong to the session and are only valid until the session is next used
+     * or is returned via {@link #returnSession(InferenceSession)}; duplicate them if they are required for longer.
+     *
+     * @param session      Session to use for execution
+     * @param placeholders Placeholder values
+     * @param outputs      Variables to get the values of
+     * @return Map of output arrays
+     */
+    public Map<String,INDArray> output(@NonNull InferenceSession session, Map<String,INDArray> placeholders, String... outputs){
+        Preconditions.checkState(outputs != null && outputs.length > 0, "No outputs were specified");
+        return session.output(Arrays.asList(outputs), placeholders, listeners, false, null);
+    }
+
+    /**
+     * Check out an {@link InferenceSession} from this SameDiff instance's session pool, for use with
+     * {@link #output(InferenceSession, Map, String...)}. Unlike the default per-thread sessions, pooled sessions are
+     * not tied to a thread and the total number of sessions is bounded (see {@link #setSessionPoolSize(int)}): if all
+     * sessions are in use, this method blocks until one is returned.<br>
+     * Sessions must be returned after use via {@link #returnSession(InferenceSession)}
+     *
+     * @return Session, for exclusive use by the caller until it is returned
+     */
+    public InferenceSession checkoutSession(){
+        return getSessionPool().checkout();
+    }
+
+    /**
+     * Return a session previously obtained from {@link #checkoutSession()}
+     *
+     * @param session Session to return to the pool
+     */
+    public void returnSession(@NonNull InferenceSession session){
+        getSessionPool().release(session);
+    }
+
+    /**
+     * Set the maximum number of pooled sessions - i.e., the maximum number of concurrent executions using
+     * {@link #checkoutSession()}. Defaults to the number of available processors. Any existing pooled sessions are
+     * discarded.
+     *
+     * @param maxSessions Maximum number of pooled sessions
+     */
+    public synchronized void setSessionPoolSize(int maxSessions){
+        Preconditions.checkArgument(maxSessions > 0, "Session pool size must be positive, got %s", maxSessions);
+        this.sessionPoolSize = maxSessions;
+        if(sessionPool != null){
+            sessionPool.clear();
+            sessionPool = null;
+        }
+    }
+
+    /**
+     * If set to true, {@link #output(Map, String...)} and related methods use sessions from the bounded session pool
+     * (see {@link #checkoutSession()}) instead of creating one session per calling thread. This is recommended when
+     * calling output methods from many different threads (such as a request thread pool), as the per-thread sessions
+     * are never released.<br>
+     * Note that when enabled, arrays for ARRAY type variables are not retained after the output call returns (i.e.,
+     * {@link SDVariable#getArr()} will return null for these), and the returned arrays are copies of the session arrays.
+     *
+     * @param useSessionPool Whether output methods should use the session pool
+     */
+    public void setUseSessionPool(boolean useSessionPool){
+        this.useSessionPool = useSessionPool;
+    }
+
+    /**
+     * If set to true, inference sessions will compile a static execution plan the first time a given set of output
+     * variables is requested, and reuse it for later calls requesting the same outputs. A compiled plan freezes the
+     * op execution order, skipping the dynamic scheduling (op readiness checks and dependency bookkeeping) on each
+     * call; combined with the reuse of each session's op output arrays, repeated calls with the same input shapes
+     * don't need to allocate any new arrays. This can substantially reduce the per-call overhead for small graphs
+     * or small minibatches.<br>
+     * Plans are only compiled for graphs (or the part of the graph required for the requested outputs) without
+     * control flow ops such as Enter, Exit, Merge and Switch; these always use dynamic execution.
+     *
+     * @param useCompiledExecutionPlan Whether to use compiled execution plans
+     */
+    public void setUseCompiledExecutionPlan(boolean useCompiledExecutionPlan){
+        this.useCompiledExecutionPlan = useCompiledExecutionPlan;
+        if(!useCompiledExecutionPlan){
+            for(InferenceSession s : sessions.values()){
+                s.clearCompiledPlans();
+            }
+        }
+    }
+
+    /**
+     * If set to true, inference sessions will use liveness analysis to release intermediate arrays as soon as the last
+     * op that uses them has been executed, instead of keeping all arrays referenced until the end of the output call.
+     * Released arrays are recycled for the outputs of later ops with the same shape and datatype, so the peak memory
+     * requirement for inference is determined by the arrays that are simultaneously live, rather than by the total
+     * size of all activations. The peak memory of the last execution is available from
+     * {@link InferenceSession#getPeakLiveBytes()}.<br>
+     * Note that when enabled, intermediate (ARRAY type) arrays are generally not available after the output call
+     * (for example, via {@link SDVariable#getArr()}). Only the requested outputs are retained.<br>
+     * Liveness analysis is only used for graphs (or the part of the graph required for the requested outputs) without
+     * control flow ops (Enter, Exit, Merge, Switch etc) and without tensor array ops.
+     *
+     * @param useLivenessAnalysis Whether to use liveness analysis
+     */
+    public void setUseLivenessAnalysis(boolean useLivenessAnalysis){
+        this.useLivenessAnalysis = useLivenessAnalysis;
+        if(!useLivenessAnalysis){
+            for(InferenceSession s : sessions.values()){
+                s.clearOutputArrays();
+            }
+        }
+    }
+
+    /**
+     * Set the number of threads used for inter-op parallelism: that is, executing independent ops (for example, ops on
+     * independent branches of an Inception-style block, or the heads of a multi-head model) at the same time.
+     * With more than 1 thread, each op is dispatched to a bounded fork-join pool (shared by all sessions for this
+     * SameDiff instance) as soon as the ops it depends on have been executed.<br>
+     * Note that each op may also use multiple threads internally (intra-op parallelism, via OpenMP - see the
+     * OMP_NUM_THREADS environment variable). In general, the number of inter-op threads multiplied by the number of
+     * OpenMP threads should not exceed the number of physical cores.<br>
+     * Inter-op parallelism is only used for graphs (or the part of the graph required for the requested outputs)
+     * without control flow ops (Enter, Exit, Merge, Switch etc) and without tensor array ops. Listeners may be called
+     * from the inter-op threads.
+     *
+     * @param interOpThreads Number of inter-op threads. 1 (the default) means no inter-op parallelism
+     */
+    public synchronized void setInterOpThreads(int interOpThreads){
+        Preconditions.checkArgument(interOpThreads > 0, "Number of inter-op threads must be positive, got %s", interOpThreads);
+        this.interOpThreads = interOpThreads;
+        if(interOpExecutor != null){
+            interOpExecutor.shutdown();
+            interOpExecutor = null;
+        }
+    }
+
+    /**
+     * Get the executor for inter-op parallel execution - see {@link #setInterOpThreads(int)}. Mainly for internal use by sessions.
+     *
+     * @return Executor for inter-op parallel execution
+     */
+    public synchronized ExecutorService getInterOpExecutor(){
+        if(interOpExecutor == null){
+            interOpExecutor = new ForkJoinPool(interOpThreads);
+        }
+        return interOpExecutor;
+    }
+
+    /**
+     * Get the lock to hold while parameterizing and executing the specified op. Op instances are shared between all
+     * sessions, hence concurrent sessions must not set inputs/outputs on, or execute, the same op at the same time.
+     * Mainly for internal use by sessions.
+     *
+     * @param opName Name of the op
+     * @return Lock for the op
+     */
+    public Lock getOpExecutionLock(@NonNull String opName){
+        Lock l = opExecutionLocks.get(opName);
+        if(l == null){
+            opExecutionLocks.putIfAbsent(opName, new ReentrantLock());
+            l = opExecutionLocks.get(opName);
+        }
+        return l;
+    }
+
+    protected synchronized InferenceSessionPool getSessionPool(){
+        if(sessionPool == null){
+            int size = sessionPoolSize > 0 ? sessionPoolSize : Runtime.getRuntime().availableProcessors();
+            sessionPool = new InferenceSessionPool(this, size);
+        }
+        return sessionPool;
+    }
+
+    /**
+     * Remove all sessions (per-thread and pooled), in case they have any cached arrays/state
+     */
+    protected void clearSessions(){
+        sessions.clear();
+        InferenceSessionPool p;
+        synchronized (this){
+            p = sessionPool;
+        }
+        if(p != null){
+            p.clear();
+        }
+    }
+
     public SDVariable one(String name, int... shape){
         return one(name, Nd4j.defaultFloatingPointType(), shape);
     }
@@ -2936,7 +3170,7 @@ public class SameDiff extends SDBaseOps {
         }
 
         //Remove all sessions in case they have any cached arrays/state
-        sessions.clear();
+        clearSessions();
 
         //If gradient function has been defined, remove it (so it will be recreated later)
         sameDiffFunctionInstances.remove(GRAD_FN_KEY);
@@ -3034,7 +3268,7 @@ public class SameDiff extends SDBaseOps {
         }
 
         //Remove all sessions in case they have any cached arrays/state
-        sessions.clear();
+        clearSessions();
 
         //If gradient function has been defined, remove it (so it will be recreated later)
         sameDiffFunctionInstances.remove(GRAD_FN_KEY);
@@ -3147,7 +3381,7 @@ public class SameDiff extends SDBaseOps {
         }
 
         if(anyChanged){
-            sessions.clear();
+            clearSessions();
 
             //Recalculate datatypes of outputs, and dynamically update them
             calculateOutputDataTypes(true);
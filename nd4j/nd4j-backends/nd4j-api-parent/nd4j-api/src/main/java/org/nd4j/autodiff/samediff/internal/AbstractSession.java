@@ -29,8 +29,14 @@ import org.nd4j.autodiff.samediff.SameDiff;
 import org.nd4j.autodiff.samediff.VariableType;
 import org.nd4j.base.Preconditions;
 import org.nd4j.linalg.api.ops.impl.controlflow.compat.*;
+import org.nd4j.linalg.api.ops.impl.shape.tensorops.BaseTensorOp;
 
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+
 import org.nd4j.linalg.factory.Nd4j;
 
 /**
@@ -49,7 +55,7 @@ public abstract class AbstractSession<T, O> {
 
     protected final SameDiff sameDiff;
     @Getter
-    protected final Map<VarId, T> nodeOutputs = new HashMap<>();
+    protected final Map<VarId, T> nodeOutputs = Collections.synchronizedMap(new HashMap<VarId, T>());     //Synchronized for parallel (inter-op) execution
     @Getter
     protected final Map<VarId, List<T>> tensorArrays = new HashMap<>(); //Stores the outputs for a TensorArray ops
     protected final Queue<VarId> availableForExec = new LinkedList<>();
@@ -93,6 +99,30 @@ public abstract class AbstractSession<T, O> {
     @Getter
     protected final Map<String, FrameIter> frameParents = new HashMap<>();
 
+    /**
+     * Compiled (static) execution plans, used only when {@link #useCompiledPlan()} returns true.
+     * Key: the requested output variables. Value: the frozen op execution order for those outputs
+     */
+    @Getter
+    protected final Map<List<String>, ExecutionPlan> compiledPlans = new HashMap<>();
+
+    /**
+     * Number of executions that replayed a compiled plan (see {@link #useCompiledPlan()})
+     */
+    @Getter
+    protected long planHits;
+
+    /*
+    Liveness analysis state, used only when useLivenessAnalysis() returns true (and the subgraph has no control flow or
+    tensor array ops). remainingConsumers: number of ops not yet executed that use each (ARRAY type) variable as input.
+    liveRefs: number of node outputs referencing each value - a value may be referenced by more than one variable,
+    for example when an Identity op forwards its input
+     */
+    protected final Map<String, Integer> remainingConsumers = new HashMap<>();
+    protected final Map<T, Integer> liveRefs = new IdentityHashMap<>();
+    protected final Set<String> livenessRequiredOutputs = new HashSet<>();
+    protected boolean livenessActive;
+
 
     public AbstractSession(@NonNull SameDiff sameDiff) {
         this.sameDiff = sameDiff;
@@ -133,6 +163,23 @@ public abstract class AbstractSession<T, O> {
         return newVarId(variable, frameIter.getFrame(), frameIter.getIteration(), frameIter.getParentFrame());
     }
 
+    /**
+     * Clear all state from the previous execution: the calculated node outputs, tensor arrays and the execution
+     * bookkeeping. After this call, the session holds no references to any arrays from the previous execution
+     * (other than those retained for reuse by subclasses).
+     */
+    public void clearExecutionState() {
+        availableForExec.clear();
+        availableForExecSet.clear();
+        subgraph.clear();
+        execInputs.clear();
+        execInputsAllIter.clear();
+        execConstInputs.clear();
+        nodeOutputs.clear();            //TODO eventually we'll have cache here for later execs... main challenge is detecting in-place array modifications and invalidating old results
+        tensorArrays.clear();
+        frameParents.clear();
+    }
+
     /**
      * Get the output of the session - i.e., perform inference/forward pass
      *
@@ -152,19 +199,26 @@ public abstract class AbstractSession<T, O> {
         placeholderValues = preprocessPlaceholders(placeholderValues);
 
         //Clear state from past
-        availableForExec.clear();
-        availableForExecSet.clear();
-        subgraph.clear();
-        execInputs.clear();
-        execInputsAllIter.clear();
-        execConstInputs.clear();
-        nodeOutputs.clear();            //TODO eventually we'll have cache here for later execs... main challenge is detecting in-place array modifications and invalidating old results
-        tensorArrays.clear();
+        clearExecutionState();
 
         //Step 1: determine subgraph structure we actually need to execute
         //Basic plan: work backwards from the variables we want, based on the graph structure, to work out what
         // we actually need to execute
-        initSubgraph(variables);
+        //If we have a compiled plan for these outputs, the subgraph has already been determined
+        ExecutionPlan plan = null;
+        if(useCompiledPlan()){
+            plan = compiledPlans.get(variables);
+            if(plan != null && !plan.isValidFor(sameDiff)){
+                //Graph structure has changed since the plan was compiled
+                compiledPlans.remove(variables);
+                plan = null;
+            }
+        }
+        if(plan != null){
+            subgraph.addAll(plan.getSubgraph());
+        } else {
+            initSubgraph(variables);
+        }
 
         //Step 1a: Check that we have required placeholders
         List<String> phNames = sameDiff.inputs();
@@ -208,6 +262,27 @@ public abstract class AbstractSession<T, O> {
             }
         }
 
+        livenessActive = useLivenessAnalysis() && (plan != null || !subgraphHasControlFlow()) && !subgraphHasTensorArrayOps();
+        if(livenessActive){
+            initLiveness(variables);
+        }
+
+        int interOpThreads = interOpThreads();
+        if(interOpThreads > 1 && (plan != null || !subgraphHasControlFlow()) && !subgraphHasTensorArrayOps()){
+            return execParallel(variables, placeholderValues, listeners, training, at);
+        }
+
+        if(plan != null){
+            return execPlan(plan, variables, placeholderValues, listeners, training, at);
+        }
+
+        //Record the execution order, so we can skip the dynamic scheduling next time - but only when there are no
+        // control flow ops (Enter/Exit/Merge/Switch etc) in the subgraph, as the execution order depends on the data for these
+        List<PlanStep> planSteps = null;
+        if(useCompiledPlan() && !subgraphHasControlFlow()){
+            planSteps = new ArrayList<>();
+        }
+
         //Step 2: execute in any order, until we have all required nodeOutputs
         /*
         The idea is simple: we start off with a set of "available to execute" variables - just the placeholders and
@@ -275,6 +350,13 @@ public abstract class AbstractSession<T, O> {
 
             log.trace("Beginning execution step {}: variable {}", step, varToExec);
 
+            if(planSteps != null){
+                planSteps.add(new PlanStep(varToExec, sameDiff.getVariables().get(varToExec.getVariable()).getOutputOfOp(),
+                        inputsToVar == null ? null : new HashSet<>(inputsToVar),
+                        inputsToVarAllIter == null ? null : new HashSet<>(inputsToVarAllIter),
+                        constPhForVar == null ? null : new HashSet<>(constPhForVar)));
+            }
+
             if (sameDiff.getVariable(varToExec.getVariable()).isPlaceHolder()) {
                 //Variable is placeholder: do lookup
                 nodeOutputs.put(varToExec, placeholderValues.get(varToExec.getVariable()));
@@ -300,9 +382,19 @@ public abstract class AbstractSession<T, O> {
                 String opName = sameDiff.getVariables().get(varToExec.getVariable()).getOutputOfOp();
 
                 //Execute op
+                //Op instances are shared between all sessions for this SameDiff instance: hold the op's lock while
+                // setting its inputs/outputs and executing it, so concurrent sessions can't interfere with each other
                 FrameIter frameIter = varToExec.toFrameIter();
-                O parameterizedOp = getAndParameterizeOp(opName, frameIter, inputsToVar, inputsToVarAllIter, constPhForVar, placeholderValues);
-                T[] opOutputValues = getOutputs(parameterizedOp, frameIter, inputsToVar, inputsToVarAllIter, constPhForVar, listeners, training, at);
+                O parameterizedOp;
+                T[] opOutputValues;
+                Lock opLock = sameDiff.getOpExecutionLock(opName);
+                opLock.lock();
+                try {
+                    parameterizedOp = getAndParameterizeOp(opName, frameIter, inputsToVar, inputsToVarAllIter, constPhForVar, placeholderValues);
+                    opOutputValues = getOutputs(parameterizedOp, frameIter, inputsToVar, inputsToVarAllIter, constPhForVar, listeners, training, at);
+                } finally {
+                    opLock.unlock();
+                }
 
 
                 //Post execution: work out what is now available for exec
@@ -372,6 +464,10 @@ public abstract class AbstractSession<T, O> {
                         out.put(opOutputVarNames[i], opOutputValues[i]);
                     }
                 }
+
+                if(livenessActive){
+                    livenessOpExecuted(opName, opOutputValues);
+                }
             } else {
                 Variable v = sameDiff.getVariables().get(varToExec.getVariable());
                 throw new IllegalStateException("Unable to execute variable " + varToExec + " of type " + v.getVariable().getVariableType());
@@ -383,6 +479,469 @@ public abstract class AbstractSession<T, O> {
         //TODO under what circumstances should we clear the nodeOutputs map?
         //TODO when should we close the workspace? (Might want to leave it open if we expect to re-use)
 
+        if(planSteps != null){
+            List<PlanNode> structure = new ArrayList<>(subgraph.size());
+            for(String s : subgraph){
+                structure.add(PlanNode.of(sameDiff, s));
+            }
+            compiledPlans.put(new ArrayList<>(variables), new ExecutionPlan(new HashSet<>(subgraph), planSteps, structure));
+        }
+
+        return out;
+    }
+
+    /**
+     * Whether a compiled (static) execution plan should be recorded and used for repeated executions with the same
+     * requested outputs. When enabled, the op execution order determined on the first call is frozen and used for later
+     * calls, skipping the dynamic scheduling (op readiness checks, VarId/frame bookkeeping and dependency tracking).
+     * Plans are only compiled for subgraphs without control flow ops; other graphs always use dynamic execution.
+     *
+     * @return True if compiled plans should be used. False by default
+     */
+    protected boolean useCompiledPlan(){
+        return false;
+    }
+
+    /**
+     * Clear any compiled execution plans for this session
+     */
+    public void clearCompiledPlans(){
+        compiledPlans.clear();
+    }
+
+    /**
+     * @return True if the current subgraph contains any control flow ops - in which case the execution order may depend
+     * on the values of the arrays, and a static plan can't be used
+     */
+    protected boolean subgraphHasControlFlow(){
+        for(String s : subgraph){
+            String opName = sameDiff.getVariables().get(s).getOutputOfOp();
+            if(opName == null)
+                continue;
+            DifferentialFunction fn = sameDiff.getOps().get(opName).getOp();
+            if(fn instanceof Enter || fn instanceof Exit || fn instanceof Merge || fn instanceof Switch ||
+                    fn instanceof NextIteration || fn instanceof LoopCond){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return True if the current subgraph contains any tensor array ops. Arrays written to a tensor array are
+     * referenced outside of the node outputs, hence liveness analysis is not used for these graphs
+     */
+    protected boolean subgraphHasTensorArrayOps(){
+        for(String s : subgraph){
+            String opName = sameDiff.getVariables().get(s).getOutputOfOp();
+            if(opName != null && sameDiff.getOps().get(opName).getOp() instanceof BaseTensorOp){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether liveness analysis should be used: if true, each intermediate (ARRAY type) variable is removed from the
+     * node outputs as soon as the last op that uses it has been executed, and passed to {@link #arrayReleased(Object)}
+     * (where it may, for example, be recycled for the outputs of later ops). Requested outputs are never released.
+     * Liveness analysis is only used for subgraphs without control flow or tensor array ops.
+     *
+     * @return True if liveness analysis should be used. False by default
+     */
+    protected boolean useLivenessAnalysis(){
+        return false;
+    }
+
+    /**
+     * Called (with liveness analysis only) when a value is first referenced by any node output
+     */
+    protected void arrayLive(T value){
+        //No op by default
+    }
+
+    /**
+     * Called (with liveness analysis only) when a value is no longer referenced by any node output, and won't be
+     * used by any other ops in this execution
+     */
+    protected void arrayReleased(T value){
+        //No op by default
+    }
+
+    /**
+     * Count the number of consumers (ops in the subgraph) for each variable, for liveness analysis
+     */
+    protected void initLiveness(List<String> variables){
+        remainingConsumers.clear();
+        liveRefs.clear();
+        livenessRequiredOutputs.clear();
+        livenessRequiredOutputs.addAll(variables);
+
+        Set<String> opsInSubgraph = new HashSet<>();
+        for(String s : subgraph){
+            String opName = sameDiff.getVariables().get(s).getOutputOfOp();
+            if(opName != null)
+                opsInSubgraph.add(opName);
+        }
+        for(String opName : opsInSubgraph){
+            List<String> inputs = sameDiff.getOps().get(opName).getInputsToOp();
+            if(inputs == null)
+                continue;
+            for(String in : new HashSet<>(inputs)){
+                Integer c = remainingConsumers.get(in);
+                remainingConsumers.put(in, c == null ? 1 : c + 1);
+            }
+        }
+    }
+
+    /**
+     * Update the liveness state after an op has been executed: record its outputs as live, and release any inputs
+     * that have no remaining consumers
+     */
+    protected void livenessOpExecuted(String opName, T[] opOutputValues){
+        List<String> inputs = sameDiff.getOps().get(opName).getInputsToOp();
+        Set<String> uniqueInputs = (inputs == null ? Collections.<String>emptySet() : new HashSet<>(inputs));
+
+        for(T t : opOutputValues){
+            if(t == null)
+                continue;
+            Integer c = liveRefs.get(t);
+            if(c != null){
+                //Op forwarded an existing op output (for example, Identity op)
+                liveRefs.put(t, c + 1);
+                continue;
+            }
+            //Ops may also forward placeholders, constants or variables: these are never tracked, hence never released
+            boolean forwarded = false;
+            for(String in : uniqueInputs){
+                if(nodeOutputs.get(newVarId(in, OUTER_FRAME, 0, null)) == t){
+                    forwarded = true;
+                    break;
+                }
+            }
+            if(!forwarded){
+                liveRefs.put(t, 1);
+                arrayLive(t);
+            }
+        }
+
+        for(String in : uniqueInputs){
+            Integer c = remainingConsumers.get(in);
+            if(c == null)
+                continue;
+            if(c > 1){
+                remainingConsumers.put(in, c - 1);
+                continue;
+            }
+            remainingConsumers.remove(in);
+
+            //Last consumer has been executed. Release the array, unless it's required after this execution
+            Variable v = sameDiff.getVariables().get(in);
+            if(v.getVariable().getVariableType() != VariableType.ARRAY || livenessRequiredOutputs.contains(in) ||
+                    (v.getControlDepsForOp() != null && !v.getControlDepsForOp().isEmpty()) ||
+                    (v.getControlDepsForVar() != null && !v.getControlDepsForVar().isEmpty())){
+                continue;
+            }
+            T value = nodeOutputs.remove(newVarId(in, OUTER_FRAME, 0, null));
+            if(value == null)
+                continue;
+            Integer refs = liveRefs.get(value);
+            if(refs == null)
+                continue;       //Not an op output (shouldn't happen for ARRAY type variables)
+            if(refs > 1){
+                liveRefs.put(value, refs - 1);
+            } else {
+                liveRefs.remove(value);
+                arrayReleased(value);
+            }
+        }
+    }
+
+    /**
+     * Number of threads to use for inter-op parallelism - i.e., executing independent ops (for example, on independent
+     * branches of the graph) at the same time. If greater than 1, ops are executed by the executor returned by
+     * {@link #interOpExecutor()} as soon as all of their inputs are available. Only used for subgraphs without control
+     * flow or tensor array ops; other subgraphs are always executed one op at a time.
+     *
+     * @return Number of inter-op threads. 1 (no inter-op parallelism) by default
+     */
+    protected int interOpThreads(){
+        return 1;
+    }
+
+    /**
+     * @return Executor to use for inter-op parallel execution. Only called if {@link #interOpThreads()} is greater than 1.
+     * By default, the executor shared by all sessions of the SameDiff instance (see {@link SameDiff#getInterOpExecutor()})
+     */
+    protected ExecutorService interOpExecutor(){
+        return sameDiff.getInterOpExecutor();
+    }
+
+    /**
+     * Execute the subgraph with inter-op parallelism: each op is submitted to the inter-op executor as soon as all of the
+     * ops it depends on (via inputs or control dependencies) have been executed.
+     * All variables are in the outer frame, as parallel execution is never used for graphs with control flow
+     */
+    protected Map<String, T> execParallel(List<String> variables, final Map<String, T> placeholderValues, final List<Listener> listeners,
+                                          final boolean training, final At at){
+        //Placeholders, constants and variables are available immediately
+        Set<String> ops = new HashSet<>();
+        for(String s : subgraph){
+            Variable v = sameDiff.getVariables().get(s);
+            if(v.getOutputOfOp() != null){
+                ops.add(v.getOutputOfOp());
+            } else if(v.getVariable().isPlaceHolder()){
+                nodeOutputs.put(newVarId(s, OUTER_FRAME, 0, null), placeholderValues.get(s));
+            } else {
+                T arr = getConstantOrVariable(s);
+                Preconditions.checkNotNull(arr, "Encountered null placeholder array for constant: %s", s);
+                nodeOutputs.put(newVarId(s, OUTER_FRAME, 0, null), arr);
+            }
+        }
+
+        //Work out the op dependencies: an op can be executed once all ops calculating its inputs and control dependencies have been executed
+        final Map<String, AtomicInteger> pending = new HashMap<>();
+        final Map<String, List<String>> dependents = new HashMap<>();
+        for(String opName : ops){
+            SameDiffOp op = sameDiff.getOps().get(opName);
+            Set<String> deps = new HashSet<>();
+            List<String> required = new ArrayList<>();
+            if(op.getInputsToOp() != null)
+                required.addAll(op.getInputsToOp());
+            if(op.getControlDeps() != null)
+                required.addAll(op.getControlDeps());
+            for(String out : op.getOutputsOfOp()){
+                List<String> cd = sameDiff.getVariables().get(out).getControlDeps();
+                if(cd != null)
+                    required.addAll(cd);
+            }
+            for(String s : required){
+                String depOp = sameDiff.getVariables().get(s).getOutputOfOp();
+                if(depOp != null && !depOp.equals(opName)){
+                    deps.add(depOp);
+                }
+            }
+            for(String d : deps){
+                if(!dependents.containsKey(d))
+                    dependents.put(d, new ArrayList<String>());
+                dependents.get(d).add(opName);
+            }
+            pending.put(opName, new AtomicInteger(deps.size()));
+        }
+
+        final Set<String> requested = new HashSet<>(variables);
+        final Map<String, T> out = new HashMap<>();
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final ExecutorService executor = interOpExecutor();
+        //Number of submitted tasks that have not yet finished. Dependent tasks are submitted before the task that
+        // submits them finishes, so this only reaches zero once all ops have been executed, or (on error) once no
+        // more tasks are running. We must not return or throw before that: running tasks still write to this session
+        final AtomicInteger inFlight = new AtomicInteger();
+        final Object monitor = new Object();
+
+        final class OpTask implements Runnable {
+            private final String opName;
+
+            private OpTask(String opName){
+                this.opName = opName;
+            }
+
+            private void submit(String op){
+                inFlight.incrementAndGet();
+                try {
+                    executor.execute(new OpTask(op));
+                } catch (Throwable t){
+                    error.compareAndSet(null, t);
+                    taskDone();
+                }
+            }
+
+            private void taskDone(){
+                if(inFlight.decrementAndGet() == 0){
+                    synchronized (monitor){
+                        monitor.notifyAll();
+                    }
+                }
+            }
+
+            @Override
+            public void run() {
+                try {
+                    if(error.get() == null){
+                        execParallelOp(opName, placeholderValues, listeners, training, at, requested, out);
+                        List<String> d = dependents.get(opName);
+                        if(d != null){
+                            for(String s : d){
+                                if(pending.get(s).decrementAndGet() == 0){
+                                    submit(s);
+                                }
+                            }
+                        }
+                    }
+                } catch (Throwable t){
+                    //Ops depending on this one will not be submitted; ops already running will finish
+                    error.compareAndSet(null, t);
+                } finally {
+                    taskDone();
+                }
+            }
+        }
+
+        //Hold one count while submitting the initial tasks, so completion can't be signalled before all are submitted
+        inFlight.incrementAndGet();
+        OpTask submitter = new OpTask(null);
+        for(String opName : ops){
+            if(pending.get(opName).get() == 0){
+                submitter.submit(opName);
+            }
+        }
+        submitter.taskDone();
+
+        boolean interrupted = false;
+        synchronized (monitor){
+            while(inFlight.get() > 0){
+                try {
+                    monitor.wait();
+                } catch (InterruptedException e){
+                    //Stop scheduling new ops, but still wait for the running ones
+                    interrupted = true;
+                    error.compareAndSet(null, e);
+                }
+            }
+        }
+        if(interrupted){
+            Thread.currentThread().interrupt();
+        }
+
+        Throwable t = error.get();
+        if(t != null){
+            if(t instanceof RuntimeException)
+                throw (RuntimeException) t;
+            if(t instanceof Error)
+                throw (Error) t;
+            throw new RuntimeException("Error during parallel op execution", t);
+        }
+
+        //Requested outputs may also be placeholders/constants/variables
+        for(String s : variables){
+            if(!out.containsKey(s)){
+                VarId vid = newVarId(s, OUTER_FRAME, 0, null);
+                Preconditions.checkState(nodeOutputs.containsKey(vid), "Parallel execution did not produce requested output variable %s", s);
+                out.put(s, nodeOutputs.get(vid));
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Execute a single op, as part of parallel execution. The op lock is held while the op is parameterized and executed;
+     * the session itself is locked only while parameterizing the op and recording its outputs
+     */
+    protected void execParallelOp(String opName, Map<String, T> placeholderValues, List<Listener> listeners, boolean training, At at,
+                                  Set<String> requested, Map<String, T> out){
+        FrameIter outerFrame = new FrameIter(OUTER_FRAME, 0, null);
+        Set<VarId> inputs = new HashSet<>();
+        Set<String> constPhInputs = new HashSet<>();
+        List<String> opInputs = sameDiff.getOps().get(opName).getInputsToOp();
+        if(opInputs != null){
+            for(String s : opInputs){
+                SDVariable v = sameDiff.getVariable(s);
+                if(v.isConstant() || v.isPlaceHolder()){
+                    constPhInputs.add(s);
+                } else {
+                    inputs.add(newVarId(s, OUTER_FRAME, 0, null));
+                }
+            }
+        }
+
+        O parameterizedOp;
+        T[] opOutputValues;
+        Lock opLock = sameDiff.getOpExecutionLock(opName);
+        opLock.lock();
+        try {
+            synchronized (this){
+                parameterizedOp = getAndParameterizeOp(opName, outerFrame, inputs, null, constPhInputs, placeholderValues);
+            }
+            opOutputValues = getOutputs(parameterizedOp, outerFrame, inputs, null, constPhInputs, listeners, training, at);
+        } finally {
+            opLock.unlock();
+        }
+
+        String[] opOutputVarNames = sameDiff.getFunctionById(opName).outputVariablesNames();
+        Preconditions.checkState(opOutputValues.length == opOutputVarNames.length, "Unexpected number of outputs from executed op %s:" +
+                " got %s outputs when %s outputs were expected (%s)", parameterizedOp.getClass().getSimpleName(), opOutputValues.length,
+                opOutputVarNames.length, opOutputVarNames);
+        synchronized (this){
+            for( int i=0; i<opOutputVarNames.length; i++ ){
+                Preconditions.checkNotNull(opOutputValues[i], "Encountered null output (output %s) for op %s", i, parameterizedOp.getClass().getSimpleName());
+                nodeOutputs.put(newVarId(opOutputVarNames[i], OUTER_FRAME, 0, null), opOutputValues[i]);
+                if(requested.contains(opOutputVarNames[i])){
+                    out.put(opOutputVarNames[i], opOutputValues[i]);
+                }
+            }
+            if(livenessActive){
+                livenessOpExecuted(opName, opOutputValues);
+            }
+        }
+    }
+
+    /**
+     * Execute a compiled plan: ops are executed in the recorded order, with no dynamic scheduling.
+     * All variables are in the outer frame, as plans are never compiled for graphs with control flow
+     */
+    protected Map<String, T> execPlan(ExecutionPlan plan, List<String> variables, Map<String, T> placeholderValues,
+                                      List<Listener> listeners, boolean training, At at){
+        planHits++;
+        FrameIter outerFrame = new FrameIter(OUTER_FRAME, 0, null);
+        for(PlanStep step : plan.getSteps()){
+            VarId varToExec = step.getVarId();
+            if(nodeOutputs.containsKey(varToExec))
+                continue;   //Output of a multi-output op executed earlier in the plan
+
+            if(step.getOpName() == null) {
+                SDVariable v = sameDiff.getVariable(varToExec.getVariable());
+                T arr;
+                if(v.isPlaceHolder()){
+                    arr = placeholderValues.get(varToExec.getVariable());
+                } else {
+                    arr = getConstantOrVariable(varToExec.getVariable());
+                    Preconditions.checkNotNull(arr, "Encountered null placeholder array for constant: %s", varToExec);
+                }
+                nodeOutputs.put(varToExec, arr);
+                continue;
+            }
+
+            String opName = step.getOpName();
+            O parameterizedOp;
+            T[] opOutputValues;
+            Lock opLock = sameDiff.getOpExecutionLock(opName);
+            opLock.lock();
+            try {
+                parameterizedOp = getAndParameterizeOp(opName, outerFrame, step.getInputs(), step.getAllIterInputs(), step.getConstPhInputs(), placeholderValues);
+                opOutputValues = getOutputs(parameterizedOp, outerFrame, step.getInputs(), step.getAllIterInputs(), step.getConstPhInputs(), listeners, training, at);
+            } finally {
+                opLock.unlock();
+            }
+
+            String[] opOutputVarNames = sameDiff.getFunctionById(opName).outputVariablesNames();
+            Preconditions.checkState(opOutputValues.length == opOutputVarNames.length, "Unexpected number of outputs from executed op %s:" +
+                    " got %s outputs when %s outputs were expected (%s)", parameterizedOp.getClass().getSimpleName(), opOutputValues.length,
+                    opOutputVarNames.length, opOutputVarNames);
+            for( int i=0; i<opOutputVarNames.length; i++ ){
+                Preconditions.checkNotNull(opOutputValues[i], "Encountered null output (output %s) for op %s", i, parameterizedOp.getClass().getSimpleName());
+                nodeOutputs.put(newVarId(opOutputVarNames[i], OUTER_FRAME, 0, null), opOutputValues[i]);
+            }
+            if(livenessActive){
+                livenessOpExecuted(opName, opOutputValues);
+            }
+        }
+
+        Map<String, T> out = new HashMap<>();
+        for(String s : variables){
+            VarId vid = newVarId(s, OUTER_FRAME, 0, null);
+            Preconditions.checkState(nodeOutputs.containsKey(vid), "Compiled execution plan did not produce requested output variable %s", s);
+            out.put(s, nodeOutputs.get(vid));
+        }
         return out;
     }
 
@@ -929,6 +1488,84 @@ public abstract class AbstractSession<T, O> {
         }
     }
 
+    /*
+    ExecutionPlan: a frozen execution order for a specific set of requested outputs, recorded from a dynamic execution.
+    structure is the state of each variable in the subgraph when the plan was compiled, and is used to detect changes
+    to the graph (such as replaced, renamed or rewired ops) after the plan was compiled
+     */
+    @Data
+    @AllArgsConstructor
+    public static class ExecutionPlan {
+        private Set<String> subgraph;
+        private List<PlanStep> steps;
+        private List<PlanNode> structure;
+
+        public boolean isValidFor(SameDiff sd){
+            for(PlanNode n : structure){
+                if(!n.matches(sd))
+                    return false;
+            }
+            return true;
+        }
+    }
+
+    /*
+    PlanNode: a variable in the subgraph of an ExecutionPlan, as it was when the plan was compiled: the variable type,
+    plus (for ARRAY type variables) the op instance it is an output of and that op's inputs, outputs and control dependencies
+     */
+    @Data
+    @AllArgsConstructor
+    public static class PlanNode {
+        private String variable;
+        private VariableType variableType;
+        private String opName;
+        private DifferentialFunction op;
+        private List<String> opInputs;
+        private List<String> opOutputs;
+        private List<String> opControlDeps;
+        private List<String> controlDeps;
+
+        public static PlanNode of(SameDiff sd, String variable){
+            Variable v = sd.getVariables().get(variable);
+            String opName = v.getOutputOfOp();
+            SameDiffOp op = opName == null ? null : sd.getOps().get(opName);
+            return new PlanNode(variable, v.getVariable().getVariableType(), opName, op == null ? null : op.getOp(),
+                    op == null ? null : copy(op.getInputsToOp()), op == null ? null : copy(op.getOutputsOfOp()),
+                    op == null ? null : copy(op.getControlDeps()), copy(v.getControlDeps()));
+        }
+
+        private static List<String> copy(List<String> l){
+            return l == null ? null : new ArrayList<>(l);
+        }
+
+        public boolean matches(SameDiff sd){
+            Variable v = sd.getVariables().get(variable);
+            if(v == null || v.getVariable().getVariableType() != variableType || !Objects.equals(opName, v.getOutputOfOp())
+                    || !Objects.equals(controlDeps, v.getControlDeps()))
+                return false;
+            if(opName == null)
+                return true;
+            SameDiffOp o = sd.getOps().get(opName);
+            //Op instance is compared by identity: a replaced op may have the same name, inputs and outputs
+            return o != null && o.getOp() == op && Objects.equals(opInputs, o.getInputsToOp())
+                    && Objects.equals(opOutputs, o.getOutputsOfOp()) && Objects.equals(opControlDeps, o.getControlDeps());
+        }
+    }
+
+    /*
+    PlanStep: a single variable to execute (or look up) in an ExecutionPlan, and the inputs required to do so.
+    opName is null for placeholders, constants and variables
+     */
+    @Data
+    @AllArgsConstructor
+    public static class PlanStep {
+        private VarId varId;
+        private String opName;
+        private Set<VarId> inputs;
+        private Set<VarId> allIterInputs;
+        private Set<String> constPhInputs;
+    }
+
     /*
     FrameIter: Identifies frame + iteration. Used mainly for for exit nodes
      */
@@ -16,7 +16,9 @@
 
 package org.nd4j.autodiff.samediff.internal;
 
+import lombok.Getter;
 import lombok.NonNull;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.nd4j.autodiff.functions.DifferentialFunction;
 import org.nd4j.autodiff.listeners.At;
@@ -57,10 +59,163 @@ public class InferenceSession extends AbstractSession<INDArray,DifferentialFunct
     private static final String SCOPE_PANIC_MSG = "If required, arrays in workspaces can be detached using INDArray.detach() before being passed to the SameDiff instance.\n" +
             "Alternatively, arrays defined in a workspace must be replaced after the workspace has been closed.";
 
+    /**
+     * Output arrays for each op, owned by this session. Op instances are shared between sessions, so op output arrays
+     * are kept here (and set on the op just before execution) instead of relying on the arrays currently set on the op.
+     * Key: op name. Value: output arrays, reused across executions if the output shape doesn't change
+     */
+    protected final Map<String,INDArray[]> outputArrays = new HashMap<>();
+
+    /**
+     * Arrays released by liveness analysis, available for reuse as op outputs (in this or later executions).
+     * Key: shape descriptor (shape, order and datatype) of the arrays. Access ordered, for least recently used eviction
+     * once the total size exceeds the limit - see {@link #setMaxReleasedBytes(long)}
+     */
+    protected final LinkedHashMap<LongShapeDescriptor,Deque<INDArray>> releasedArrays = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * Total size (in bytes) of the arrays currently in {@link #releasedArrays}
+     */
+    @Getter
+    protected long releasedBytes;
+    protected long executionReleasedBytes;
+    protected long lastExecutionReleasedBytes;
+    /**
+     * Maximum total size (in bytes) of the arrays kept for reuse. If <= 0 (default), the limit is the total size of the
+     * arrays released during the current or last execution (whichever is larger) - i.e., enough to serve one execution
+     */
+    @Getter @Setter
+    protected long maxReleasedBytes;
+    protected long currentLiveBytes;
+    /**
+     * Peak memory (in bytes) of the op output arrays that were simultaneously referenced during the last execution.
+     * Only calculated when liveness analysis is used - see {@link SameDiff#setUseLivenessAnalysis(boolean)}
+     */
+    @Getter
+    protected long peakLiveBytes;
+
     public InferenceSession(@NonNull SameDiff sameDiff) {
         super(sameDiff);
     }
 
+    @Override
+    protected boolean useCompiledPlan(){
+        return sameDiff.isUseCompiledExecutionPlan();
+    }
+
+    @Override
+    protected int interOpThreads(){
+        return sameDiff.getInterOpThreads();
+    }
+
+    @Override
+    protected boolean useLivenessAnalysis(){
+        return sameDiff.isUseLivenessAnalysis();
+    }
+
+    @Override
+    protected void initLiveness(List<String> variables){
+        super.initLiveness(variables);
+        currentLiveBytes = 0;
+        peakLiveBytes = 0;
+        lastExecutionReleasedBytes = executionReleasedBytes;
+        executionReleasedBytes = 0;
+    }
+
+    @Override
+    protected void arrayLive(INDArray value){
+        currentLiveBytes += numBytes(value);
+        peakLiveBytes = Math.max(peakLiveBytes, currentLiveBytes);
+    }
+
+    @Override
+    protected void arrayReleased(INDArray value){
+        currentLiveBytes -= numBytes(value);
+        if(value.isView() || value.isEmpty() || value.isAttached())
+            return;         //Not safe/possible to reuse the buffer
+        LongShapeDescriptor key = value.shapeDescriptor();
+        Deque<INDArray> d = releasedArrays.get(key);
+        if(d == null){
+            d = new ArrayDeque<>();
+            releasedArrays.put(key, d);
+        }
+        d.push(value);
+        long bytes = numBytes(value);
+        releasedBytes += bytes;
+        executionReleasedBytes += bytes;
+
+        //Evict least recently used shapes (for example, from earlier executions with a different minibatch size)
+        long limit = maxReleasedBytes > 0 ? maxReleasedBytes : Math.max(executionReleasedBytes, lastExecutionReleasedBytes);
+        Iterator<Map.Entry<LongShapeDescriptor,Deque<INDArray>>> iter = releasedArrays.entrySet().iterator();
+        while(releasedBytes > limit && iter.hasNext()){
+            Deque<INDArray> dq = iter.next().getValue();
+            while(releasedBytes > limit && !dq.isEmpty()){
+                releasedBytes -= numBytes(dq.pollLast());
+            }
+            if(dq.isEmpty())
+                iter.remove();
+        }
+    }
+
+    protected static long numBytes(INDArray arr){
+        return arr.isEmpty() ? 0 : arr.length() * arr.dataType().width();
+    }
+
+    /**
+     * Allocate a new op output array, reusing an array released by liveness analysis if one of the same shape and type is available
+     */
+    protected INDArray allocateOutput(LongShapeDescriptor lsd){
+        if(livenessActive){
+            //Synchronized, as ops may be executed concurrently (inter-op parallelism) while arrays are being released
+            synchronized (this) {
+                Deque<INDArray> d = releasedArrays.get(lsd);
+                if (d != null && !d.isEmpty()) {
+                    INDArray arr = d.pop();
+                    releasedBytes -= numBytes(arr);
+                    return arr;
+                }
+            }
+        }
+        try(MemoryWorkspace ws = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+            //TODO Proper workspace support will be added to SameDiff later
+            return Nd4j.create(lsd, false);
+        }
+    }
+
+    /**
+     * Release all arrays held by this session for reuse between executions: op output arrays, and arrays
+     * released by liveness analysis
+     */
+    public void clearOutputArrays(){
+        outputArrays.clear();
+        releasedArrays.clear();
+        releasedBytes = 0;
+    }
+
+    /**
+     * Get the output array (for the specified output index) from this session's output arena, or null if none exists.
+     * Always null when liveness analysis is active: in that case, output arrays are instead recycled once released
+     */
+    protected INDArray getArenaOutput(String opName, int idx){
+        if(livenessActive)
+            return null;
+        INDArray[] arr = outputArrays.get(opName);
+        return (arr == null || arr.length <= idx) ? null : arr[idx];
+    }
+
+    /**
+     * Store the output array (for the specified output index) in this session's output arena, for reuse on later executions
+     */
+    protected void setArenaOutput(String opName, int idx, int numOutputs, INDArray out){
+        if(livenessActive)
+            return;
+        INDArray[] arr = outputArrays.get(opName);
+        if(arr == null || arr.length < numOutputs){
+            arr = (arr == null ? new INDArray[numOutputs] : Arrays.copyOf(arr, numOutputs));
+            outputArrays.put(opName, arr);
+        }
+        arr[idx] = out;
+    }
+
     @Override
     protected Map<String,INDArray> preprocessPlaceholders(Map<String,INDArray> placeholders){
         //Handle casting of the input array automatically.
@@ -666,7 +821,7 @@ public class InferenceSession extends AbstractSession<INDArray,DifferentialFunct
             Preconditions.checkState(outShape != null && outShape.size() > 0, "Failed to calculate output shapes for op %s (%s) - no shapes were returned by calculateOutputShape()", customOp.opName(), customOp.getOwnName());
             String[] outNames = df.outputVariablesNames();
             for( int i=0; i<outShape.size(); i++ ){
-                INDArray currOutput = (customOp.numOutputArguments() <= i ? null : customOp.getOutputArgument(i));
+                INDArray currOutput = getArenaOutput(opName, i);
                 LongShapeDescriptor reqShape = outShape.get(i);
 
                 //Issue: many ops have multiple valid output datatypes, and output shape calc can't at present know which: https://github.com/deeplearning4j/deeplearning4j/issues/6872
@@ -678,13 +833,10 @@ public class InferenceSession extends AbstractSession<INDArray,DifferentialFunct
                 }
 
                 if(currOutput == null || !currOutput.shapeDescriptor().equals(reqShape) || currOutput.isEmpty() != reqShape.isEmpty() || isLoop){
-                    INDArray out;
-                    try(MemoryWorkspace ws = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
-                        //TODO Proper workspace support will be added to SameDiff later
-                        out = Nd4j.create(reqShape, false);
-                    }
-                    customOp.setOutputArgument(i, out);
+                    currOutput = allocateOutput(reqShape);
+                    setArenaOutput(opName, i, outShape.size(), currOutput);
                 }
+                customOp.setOutputArgument(i, currOutput);
             }
 
         } else if(df instanceof Op){
@@ -732,28 +884,27 @@ public class InferenceSession extends AbstractSession<INDArray,DifferentialFunct
             //Check output shape; allocate a new Z if required
             //For example, if minibatch size has changed since last op execution
             if(emptyReduce){
-                INDArray z = op.z();
+                INDArray z = getArenaOutput(opName, 0);
                 if (z == null || !op.x().equalShapes(z) || isLoop) {
                     //Note: edge case: [x,y].sum(empty) = [x,y] for TF import compatibility.
-                    op.setZ(op.x().ulike());
+                    z = op.x().ulike();
+                    setArenaOutput(opName, 0, 1, z);
                 }
+                op.setZ(z);
             } else {
                 List<LongShapeDescriptor> outputShape = ((BaseOp) op).calculateOutputShape();
                 Preconditions.checkState(outputShape != null && outputShape.size() == 1, "Could not calculate output shape for op: %s", op.getClass());
-                INDArray z = op.z();
+                INDArray z = getArenaOutput(opName, 0);
                 if (z == null || !outputShape.get(0).equals(z.shapeDescriptor()) || isLoop) {
                     if (log.isTraceEnabled()) {
                         log.trace("Existing op result (z) array shape for op {} was {}, allocating new array of shape {}",
                                 op.getClass().getSimpleName(), (z == null ? null : Arrays.toString(z.shape())), outputShape.get(0).toString());
                     }
 
-                    LongShapeDescriptor lsd = outputShape.get(0);
-                    try (MemoryWorkspace ws = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
-                        //TODO Proper workspace support will be added to SameDiff later
-                        z = Nd4j.create(lsd, false);
-                    }
-                    op.setZ(z);
+                    z = allocateOutput(outputShape.get(0));
+                    setArenaOutput(opName, 0, 1, z);
                 }
+                op.setZ(z);
             }
             df.resolvePropertiesFromSameDiffBeforeExecution();
         }
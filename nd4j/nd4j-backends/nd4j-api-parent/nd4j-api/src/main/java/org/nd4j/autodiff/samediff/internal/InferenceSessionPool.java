@@ -0,0 +1,146 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.autodiff.samediff.internal;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.base.Preconditions;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * InferenceSessionPool: a bounded pool of {@link InferenceSession} instances for a single SameDiff instance.<br>
+ * Unlike the per-thread sessions in SameDiff, sessions here are not tied to any thread: a session is checked out,
+ * used for one or more calls to {@link InferenceSession#output(java.util.List, java.util.Map, java.util.List, boolean, org.nd4j.autodiff.listeners.At)}
+ * and then released back to the pool, where it can be used by any other thread.<br>
+ * At most {@link #getMaxSessions()} sessions are created; when all are in use, {@link #checkout()} blocks until one
+ * is released. Sessions keep their output array arena between uses, so repeated calls with the same shapes don't
+ * allocate new op output arrays.
+ */
+@Slf4j
+public class InferenceSessionPool {
+
+    private final SameDiff sameDiff;
+    @Getter
+    private final int maxSessions;
+    private final LinkedBlockingQueue<InferenceSession> idle = new LinkedBlockingQueue<>();
+    private final Set<InferenceSession> allSessions = Collections.newSetFromMap(new ConcurrentHashMap<InferenceSession, Boolean>());
+
+    /**
+     * @param sameDiff    SameDiff instance to create sessions for
+     * @param maxSessions Maximum number of sessions that may be created (i.e., maximum number of concurrent executions)
+     */
+    public InferenceSessionPool(@NonNull SameDiff sameDiff, int maxSessions) {
+        Preconditions.checkArgument(maxSessions > 0, "Maximum number of sessions must be positive, got %s", maxSessions);
+        this.sameDiff = sameDiff;
+        this.maxSessions = maxSessions;
+    }
+
+    /**
+     * Check out a session, blocking until one is available if the maximum number of sessions are all in use.
+     * The session must be returned via {@link #release(InferenceSession)} after use.
+     *
+     * @return Session for exclusive use by the caller
+     */
+    public InferenceSession checkout() {
+        try {
+            return checkout(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for an InferenceSession", e);
+        }
+    }
+
+    /**
+     * Check out a session, waiting up to the specified amount of time for one to become available
+     *
+     * @return Session for exclusive use by the caller, or null if no session became available before the timeout
+     */
+    public InferenceSession checkout(long timeout, @NonNull TimeUnit unit) throws InterruptedException {
+        long end = System.nanoTime() + Math.min(unit.toNanos(timeout), Long.MAX_VALUE / 2);
+        while (true) {
+            InferenceSession s = idle.poll();
+            if (s != null)
+                return s;
+
+            synchronized (allSessions) {
+                if (allSessions.size() < maxSessions) {
+                    s = new InferenceSession(sameDiff);
+                    allSessions.add(s);
+                    log.debug("Created new pooled InferenceSession: {} of {} sessions", allSessions.size(), maxSessions);
+                    return s;
+                }
+            }
+
+            //Wait in short intervals: the pool may be cleared while we are waiting, in which case we can create a new session
+            long remaining = end - System.nanoTime();
+            if (remaining <= 0)
+                return null;
+            s = idle.poll(Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(100)), TimeUnit.NANOSECONDS);
+            if (s != null)
+                return s;
+        }
+    }
+
+    /**
+     * Return a session to the pool. The session's per-execution state (node outputs, tensor arrays) is cleared,
+     * but its output array arena is retained for reuse. Arrays returned by the session should not be used after
+     * this method has been called, unless they were duplicated first.<br>
+     * Sessions created before the last call to {@link #clear()} are discarded instead of being returned to the pool.
+     *
+     * @param session Session to return
+     */
+    public void release(@NonNull InferenceSession session) {
+        session.clearExecutionState();
+        synchronized (allSessions) {
+            if (allSessions.contains(session)) {
+                idle.offer(session);
+            }
+        }
+    }
+
+    /**
+     * Discard all sessions, including their array arenas. Sessions that are currently checked out are discarded
+     * when they are released. Should be called whenever the structure of the graph changes.
+     */
+    public void clear() {
+        synchronized (allSessions) {
+            allSessions.clear();
+            idle.clear();
+        }
+    }
+
+    /**
+     * @return Number of sessions currently created by this pool (idle or checked out)
+     */
+    public int numSessions() {
+        return allSessions.size();
+    }
+
+    /**
+     * @return Number of sessions currently available for checkout without creating a new session
+     */
+    public int numIdleSessions() {
+        return idle.size();
+    }
+}
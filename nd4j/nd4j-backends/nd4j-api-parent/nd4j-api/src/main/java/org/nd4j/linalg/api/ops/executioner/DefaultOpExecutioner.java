@@ -43,6 +43,7 @@ import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.primitives.AtomicBoolean;
 import org.nd4j.linalg.primitives.Optional;
 import org.nd4j.linalg.profiler.OpProfiler;
+import org.nd4j.linalg.profiler.OpTimelineTracer;
 import org.nd4j.linalg.profiler.ProfilerConfig;
 import org.nd4j.linalg.util.ArrayUtil;
 
@@ -491,6 +492,9 @@ public class DefaultOpExecutioner implements OpExecutioner {
 
 
     public void profilingConfigurableHookOut(Op op, long timeStart) {
+        if (OpTimelineTracer.getInstance().isEnabled())
+            OpTimelineTracer.getInstance().record(op, timeStart, System.nanoTime());
+
         if (OpProfiler.getInstance().getConfig() == null)
             return;
 
@@ -524,6 +528,17 @@ public class DefaultOpExecutioner implements OpExecutioner {
     }
 
     public void profilingConfigurableHookOut(CustomOp op, long timeStart) {
+        profilingConfigurableHookOut(op, null, timeStart);
+    }
+
+    /**
+     * Profiling hook for custom ops executed with an {@link OpContext}: input and output arrays for the op timeline
+     * are taken from the context when the op itself doesn't hold them
+     */
+    public void profilingConfigurableHookOut(CustomOp op, OpContext oc, long timeStart) {
+        if (OpTimelineTracer.getInstance().isEnabled())
+            OpTimelineTracer.getInstance().record(op, oc, timeStart, System.nanoTime());
+
         if (OpProfiler.getInstance().getConfig() == null)
             return;
 
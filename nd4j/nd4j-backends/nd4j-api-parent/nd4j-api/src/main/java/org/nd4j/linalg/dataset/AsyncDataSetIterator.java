@@ -42,7 +42,10 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * with off-heap memory that needs to be cleaned up by the JVM garbage collector.<br>
  *
  * Note that appropriate DL4J fit methods automatically utilize this iterator, so users don't need to manually wrap
- * their iterators when fitting a network
+ * their iterators when fitting a network<br>
+ * <br>
+ * This iterator uses a single producer thread. For expensive iterators that can be split into shards, see
+ * {@link MultiWorkerAsyncDataSetIterator}
  *
  * @author raver119@gmail.com
  */
@@ -0,0 +1,532 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.linalg.dataset;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.nd4j.base.Preconditions;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.memory.conf.WorkspaceConfiguration;
+import org.nd4j.linalg.api.memory.enums.AllocationPolicy;
+import org.nd4j.linalg.api.memory.enums.LearningPolicy;
+import org.nd4j.linalg.api.memory.enums.ResetPolicy;
+import org.nd4j.linalg.api.memory.enums.SpillPolicy;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Base class for asynchronous prefetching iterators that use multiple producer threads, one per shard of the
+ * underlying data source. See {@link MultiWorkerAsyncDataSetIterator} and {@link MultiWorkerAsyncMultiDataSetIterator}.<br>
+ * <br>
+ * Two modes are supported:<br>
+ * <b>Ordered</b>: minibatches are returned round-robin from the shards (skipping exhausted shards), so the output
+ * order is deterministic and independent of thread scheduling. A slow minibatch stalls the consumer even if other
+ * workers have minibatches ready.<br>
+ * <b>Unordered</b>: minibatches are returned in whatever order they are completed by the workers, for maximum throughput.<br>
+ * <br>
+ * Prefetch depth is the maximum number of minibatches buffered per worker. When adaptive prefetching is enabled, the
+ * depth is periodically adjusted (between 1 and the maximum depth) based on the observed consumer and producer rates:
+ * the depth is increased when the consumer had to wait while the workers could, on average, produce faster than the
+ * consumer consumes or were at times blocked on a full buffer (i.e., waiting is due to variance in minibatch creation
+ * time), and decreased when the consumer never
+ * had to wait while the workers spent most of their time blocked on a full buffer.<br>
+ * <br>
+ * Time spent blocked by the consumer and by the producers is available via {@link #getStats()}: a large
+ * {@link Stats#getConsumerBlockedFraction()} means training is ETL bound.
+ *
+ * @param <T> Type of element returned by the iterator
+ */
+@Slf4j
+public abstract class BaseMultiWorkerAsyncIterator<T> {
+    public static final int DEFAULT_INITIAL_DEPTH = 2;
+    public static final int DEFAULT_MAX_DEPTH = 8;
+
+    // fraction of the time the consumer may be blocked before the depth is increased
+    protected static final double GROW_THRESHOLD = 0.05;
+    // the depth is only decreased if the consumer was blocked less than this fraction of the time...
+    protected static final double SHRINK_CONSUMER_THRESHOLD = 0.01;
+    // ...and the producers were blocked on a full buffer more than this fraction of the time
+    protected static final double SHRINK_PRODUCER_THRESHOLD = 0.5;
+
+    protected int numWorkers;
+    protected boolean ordered;
+    protected int maxDepth;
+    protected boolean adaptive;
+    protected boolean useWorkspace;
+    protected Integer deviceId;
+    protected String workspaceId;
+
+    protected volatile int depth;
+    protected List<ResizableSemaphore> permits;
+    protected List<BlockingQueue<Entry<T>>> queues;
+    protected List<WorkerThread> workers;
+    protected AtomicBoolean shouldWork = new AtomicBoolean(true);
+    protected volatile RuntimeException throwable = null;
+
+    // consumer side state - only accessed from the consumer thread
+    protected T nextElement;
+    protected boolean[] active;
+    protected int numActive;
+    protected int cursor;
+
+    protected final AtomicLong consumerBlockedNanos = new AtomicLong();
+    protected final AtomicLong producerBlockedNanos = new AtomicLong();
+    protected final AtomicLong producerFetchNanos = new AtomicLong();
+    protected final AtomicLong produced = new AtomicLong();
+    protected final AtomicLong consumed = new AtomicLong();
+    protected long statsStartNanos;
+
+    // adaptive depth: values at the start of the current window
+    protected int adaptInterval;
+    protected long windowStart;
+    protected long windowConsumerBlocked;
+    protected long windowProducerBlocked;
+    protected long windowProducerFetch;
+    protected long windowProduced;
+    protected long windowConsumed;
+
+    protected BaseMultiWorkerAsyncIterator(int numWorkers, boolean ordered, int initialDepth, int maxDepth,
+                                           boolean adaptive, boolean useWorkspace, Integer deviceId) {
+        Preconditions.checkArgument(numWorkers > 0, "Number of workers must be > 0, got %s", numWorkers);
+        Preconditions.checkArgument(initialDepth > 0 && initialDepth <= maxDepth,
+                        "Initial prefetch depth must be between 1 and the maximum depth (%s), got %s", maxDepth, initialDepth);
+        this.numWorkers = numWorkers;
+        this.ordered = ordered;
+        this.depth = initialDepth;
+        this.maxDepth = maxDepth;
+        this.adaptive = adaptive;
+        this.useWorkspace = useWorkspace;
+        this.deviceId = deviceId;
+        this.workspaceId = "MWADSI_ITER-" + java.util.UUID.randomUUID().toString();
+        this.adaptInterval = Math.max(8, 4 * numWorkers);
+        this.statsStartNanos = System.nanoTime();
+    }
+
+    /**
+     * Returns true if the specified shard has more elements. Called from the worker thread for that shard only.
+     */
+    protected abstract boolean shardHasNext(int shard);
+
+    /**
+     * Returns the next element of the specified shard. Called from the worker thread for that shard only.
+     */
+    protected abstract T shardNext(int shard);
+
+    /**
+     * Reset the specified shard. Only called while no workers are running.
+     */
+    protected abstract void resetShard(int shard);
+
+    public int getNumWorkers() {
+        return numWorkers;
+    }
+
+    public boolean isOrdered() {
+        return ordered;
+    }
+
+    /**
+     * @return Current prefetch depth - the maximum number of buffered elements per worker
+     */
+    public int getPrefetchDepth() {
+        return depth;
+    }
+
+    /**
+     * Start the worker threads. Should be called at the end of the constructor of the implementing class, once the
+     * shards have been created.
+     */
+    protected void start() {
+        permits = new ArrayList<>(numWorkers);
+        queues = new ArrayList<>();
+        workers = new ArrayList<>(numWorkers);
+        for (int i = 0; i < numWorkers; i++) {
+            permits.add(new ResizableSemaphore(depth));
+            // queues are unbounded: capacity is controlled by the permits, so that it can be changed at runtime
+            if (ordered || i == 0)
+                queues.add(new LinkedBlockingQueue<Entry<T>>());
+        }
+
+        active = new boolean[numWorkers];
+        for (int i = 0; i < numWorkers; i++)
+            active[i] = true;
+        numActive = numWorkers;
+        cursor = 0;
+        nextElement = null;
+        shouldWork.set(true);
+        resetWindow();
+
+        for (int i = 0; i < numWorkers; i++) {
+            WorkerThread t = new WorkerThread(i, ordered ? queues.get(i) : queues.get(0));
+
+            /**
+             * We want to ensure, that background threads will have the same thread->device affinity, as master thread
+             */
+            Nd4j.getAffinityManager().attachThreadToDevice(t, deviceId);
+            workers.add(t);
+        }
+        for (WorkerThread t : workers)
+            t.start();
+    }
+
+    /**
+     * Stop all worker threads (synchronously) and destroy their workspaces, if any
+     */
+    protected void stop() {
+        if (workers == null)
+            return;
+
+        shouldWork.set(false);
+        for (WorkerThread t : workers)
+            t.interrupt();
+        try {
+            for (WorkerThread t : workers)
+                t.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        for (WorkerThread t : workers)
+            t.destroyWorkspace();
+        for (BlockingQueue<Entry<T>> q : queues)
+            q.clear();
+        workers = null;
+        nextElement = null;
+        numActive = 0;
+    }
+
+    /**
+     * Stop the workers, reset all shards and start again
+     */
+    protected void restart() {
+        stop();
+        throwable = null;
+        for (int i = 0; i < numWorkers; i++)
+            resetShard(i);
+        start();
+    }
+
+    /**
+     * This method will terminate the background threads AND will destroy attached workspaces (if any)
+     *
+     * PLEASE NOTE: After shutdown() call, this instance can't be used anymore
+     */
+    public void shutdown() {
+        stop();
+    }
+
+    protected boolean hasNextElement() {
+        if (throwable != null)
+            throw throwable;
+
+        if (nextElement != null)
+            return true;
+
+        try {
+            while (numActive > 0) {
+                int w = ordered ? cursor : 0;
+                Entry<T> e;
+                long start = System.nanoTime();
+                try {
+                    e = queues.get(w).take();
+                } finally {
+                    consumerBlockedNanos.addAndGet(System.nanoTime() - start);
+                }
+
+                if (throwable != null)
+                    throw throwable;
+
+                if (e.value == null) {
+                    // terminator: worker is done
+                    active[e.worker] = false;
+                    numActive--;
+                    if (ordered)
+                        cursor = nextActive(e.worker);
+                    continue;
+                }
+
+                permits.get(e.worker).release();
+                if (ordered)
+                    cursor = nextActive(e.worker);
+                nextElement = e.value;
+                return true;
+            }
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for next element", e);
+        }
+    }
+
+    protected T nextElement() {
+        if (!hasNextElement())
+            throw new NoSuchElementException("No more elements");
+
+        T temp = nextElement;
+        nextElement = null;
+
+        consumed.incrementAndGet();
+        if (adaptive && consumed.get() - windowConsumed >= adaptInterval)
+            adaptDepth();
+
+        return temp;
+    }
+
+    protected int nextActive(int from) {
+        for (int i = 1; i <= numWorkers; i++) {
+            int idx = (from + i) % numWorkers;
+            if (active[idx])
+                return idx;
+        }
+        return from;
+    }
+
+    /**
+     * Adjust the prefetch depth based on producer/consumer behaviour since the last adjustment
+     */
+    protected void adaptDepth() {
+        long window = System.nanoTime() - windowStart;
+        long cBlocked = consumerBlockedNanos.get() - windowConsumerBlocked;
+        long pBlocked = producerBlockedNanos.get() - windowProducerBlocked;
+        long pFetch = producerFetchNanos.get() - windowProducerFetch;
+        long nProduced = produced.get() - windowProduced;
+        long nConsumed = consumed.get() - windowConsumed;
+
+        int newDepth = computeDepth(depth, maxDepth, numWorkers, window, cBlocked, pBlocked, pFetch, nProduced, nConsumed);
+        if (newDepth != depth) {
+            log.debug("Changing prefetch depth from {} to {}: consumer blocked {}ns, producers blocked {}ns over {}ns",
+                            depth, newDepth, cBlocked, pBlocked, window);
+            setDepth(newDepth);
+        }
+
+        resetWindow();
+    }
+
+    /**
+     * Compute the new prefetch depth for one adaptation window. This only depends on its arguments, so the policy can
+     * be tested independently of thread scheduling.
+     *
+     * @param depth           Current depth
+     * @param maxDepth        Maximum depth
+     * @param numWorkers      Number of workers
+     * @param window          Duration of the window
+     * @param consumerBlocked Time the consumer spent waiting for elements in the window
+     * @param producerBlocked Total time, over all workers, spent waiting for buffer space in the window
+     * @param producerFetch   Total time, over all workers, spent creating elements in the window
+     * @param produced        Number of elements produced in the window
+     * @param consumed        Number of elements consumed in the window
+     * @return New depth, between 1 and maxDepth inclusive
+     */
+    static int computeDepth(int depth, int maxDepth, int numWorkers, long window, long consumerBlocked,
+                            long producerBlocked, long producerFetch, long produced, long consumed) {
+        if (window <= 0 || consumed <= 0)
+            return depth;
+
+        double cFrac = consumerBlocked / (double) window;
+        // average over workers, so it is comparable to the window duration
+        double pFrac = producerBlocked / (double) numWorkers / window;
+
+        // rates in elements per second: consumer rate excludes time spent waiting for elements, producer
+        // capacity is the rate all workers could produce at if they never had to wait for buffer space
+        long consumerBusy = Math.max(1, window - consumerBlocked);
+        double consumerRate = consumed * 1e9 / consumerBusy;
+        double producerCapacity = producerFetch <= 0 ? Double.POSITIVE_INFINITY : produced * 1e9 * numWorkers / producerFetch;
+
+        if (cFrac > GROW_THRESHOLD && (producerCapacity > consumerRate || pFrac > GROW_THRESHOLD)) {
+            // Workers are fast enough on average (or the buffer was full at times), so waiting is due to variance
+            // and a deeper buffer helps. Otherwise we are ETL bound, and more buffering won't help
+            return Math.min(maxDepth, depth + 1);
+        } else if (cFrac < SHRINK_CONSUMER_THRESHOLD && pFrac > SHRINK_PRODUCER_THRESHOLD) {
+            return Math.max(1, depth - 1);
+        }
+        return depth;
+    }
+
+    protected void setDepth(int newDepth) {
+        int delta = newDepth - depth;
+        for (ResizableSemaphore s : permits) {
+            if (delta > 0)
+                s.release(delta);
+            else
+                s.reducePermits(-delta);
+        }
+        depth = newDepth;
+    }
+
+    protected void resetWindow() {
+        windowStart = System.nanoTime();
+        windowConsumerBlocked = consumerBlockedNanos.get();
+        windowProducerBlocked = producerBlockedNanos.get();
+        windowProducerFetch = producerFetchNanos.get();
+        windowProduced = produced.get();
+        windowConsumed = consumed.get();
+    }
+
+    /**
+     * @return Statistics on producer and consumer blocking, since creation or the last call to {@link #resetStats()}
+     */
+    public Stats getStats() {
+        return new Stats(System.nanoTime() - statsStartNanos, consumerBlockedNanos.get(), producerBlockedNanos.get(),
+                        producerFetchNanos.get(), produced.get(), consumed.get(), numWorkers, depth);
+    }
+
+    /**
+     * Reset the statistics returned by {@link #getStats()}
+     */
+    public void resetStats() {
+        consumerBlockedNanos.set(0);
+        producerBlockedNanos.set(0);
+        producerFetchNanos.set(0);
+        produced.set(0);
+        consumed.set(0);
+        statsStartNanos = System.nanoTime();
+        resetWindow();
+    }
+
+    /**
+     * Producer and consumer statistics for a multi-worker async iterator. All times are in nanoseconds.
+     */
+    @Data
+    @AllArgsConstructor
+    public static class Stats {
+        /** Time since creation of the iterator, or the last stats reset */
+        private long elapsedNanos;
+        /** Time the consumer spent waiting for elements */
+        private long consumerBlockedNanos;
+        /** Total time, over all workers, spent waiting for buffer space */
+        private long producerBlockedNanos;
+        /** Total time, over all workers, spent creating elements (i.e., in the underlying iterators) */
+        private long producerFetchNanos;
+        private long produced;
+        private long consumed;
+        private int numWorkers;
+        private int prefetchDepth;
+
+        /**
+         * @return Fraction of the elapsed time the consumer was blocked waiting for data. Values close to 1 mean
+         * that training is ETL bound
+         */
+        public double getConsumerBlockedFraction() {
+            return elapsedNanos <= 0 ? 0.0 : consumerBlockedNanos / (double) elapsedNanos;
+        }
+
+        /**
+         * @return Average fraction of the elapsed time each worker was blocked waiting for buffer space
+         */
+        public double getProducerBlockedFraction() {
+            return elapsedNanos <= 0 ? 0.0 : producerBlockedNanos / (double) numWorkers / elapsedNanos;
+        }
+    }
+
+    @AllArgsConstructor
+    protected static class Entry<T> {
+        protected final int worker;
+        // null for terminator
+        protected final T value;
+    }
+
+    protected static class ResizableSemaphore extends Semaphore {
+        protected ResizableSemaphore(int permits) {
+            super(permits);
+        }
+
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+
+    protected class WorkerThread extends Thread {
+        private final int shard;
+        private final BlockingQueue<Entry<T>> queue;
+        private final WorkspaceConfiguration configuration = WorkspaceConfiguration.builder()
+                        .minSize(10 * 1024L * 1024L).overallocationLimit(maxDepth + 2)
+                        .policyReset(ResetPolicy.ENDOFBUFFER_REACHED).policyLearning(LearningPolicy.FIRST_LOOP)
+                        .policyAllocation(AllocationPolicy.OVERALLOCATE).policySpill(SpillPolicy.REALLOCATE).build();
+        private MemoryWorkspace workspace;
+
+        protected WorkerThread(int shard, BlockingQueue<Entry<T>> queue) {
+            this.shard = shard;
+            this.queue = queue;
+            this.setDaemon(true);
+            this.setName("MWADSI prefetch thread " + shard);
+        }
+
+        @Override
+        public void run() {
+            Semaphore permit = permits.get(shard);
+            try {
+                if (useWorkspace)
+                    workspace = Nd4j.getWorkspaceManager().getWorkspaceForCurrentThread(configuration, workspaceId);
+
+                while (shouldWork.get() && shardHasNext(shard)) {
+                    long start = System.nanoTime();
+                    permit.acquire();
+                    long fetchStart = System.nanoTime();
+                    producerBlockedNanos.addAndGet(fetchStart - start);
+
+                    T element;
+                    if (useWorkspace) {
+                        try (MemoryWorkspace ws = workspace.notifyScopeEntered()) {
+                            element = shardNext(shard);
+                        }
+                    } else {
+                        element = shardNext(shard);
+                    }
+
+                    // we want to ensure underlying iterator finished element creation
+                    Nd4j.getExecutioner().commit();
+                    producerFetchNanos.addAndGet(System.nanoTime() - fetchStart);
+
+                    if (element == null) {
+                        permit.release();
+                        continue;
+                    }
+                    produced.incrementAndGet();
+                    queue.put(new Entry<>(shard, element));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Throwable t) {
+                // exceptions caused by stop() interrupting the worker are not errors
+                if (shouldWork.get() && throwable == null)
+                    throwable = t instanceof RuntimeException ? (RuntimeException) t : new RuntimeException(t);
+                shouldWork.set(false);
+            } finally {
+                // queue is unbounded, so this never blocks
+                queue.add(new Entry<T>(shard, null));
+            }
+        }
+
+        protected void destroyWorkspace() {
+            if (workspace != null) {
+                log.debug("Manually destroying MWADSI workspace");
+                workspace.destroyWorkspace(true);
+                workspace = null;
+            }
+        }
+    }
+}
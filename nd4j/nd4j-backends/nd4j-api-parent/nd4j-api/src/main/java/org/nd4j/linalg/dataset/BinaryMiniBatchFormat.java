@@ -0,0 +1,463 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.linalg.dataset;
+
+import lombok.NonNull;
+import org.nd4j.base.Preconditions;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.concurrency.AffinityManager;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A compact binary file format for caching preprocessed {@link DataSet} and {@link MultiDataSet} minibatches, as an
+ * alternative to {@link DataSet#save(File)} / {@link DataSet#load(File)} for multi-epoch training.<br>
+ * Each file holds a single minibatch, and consists of a header (with the data type and shape of all features, labels
+ * and mask arrays) followed by the raw array contents in 'c' order, each aligned to {@link #ALIGNMENT} bytes.<br>
+ * When reading uncompressed files, each array is memory mapped and wrapped as an INDArray without any copy (for
+ * backends that support wrapping direct buffers). Mappings are private (copy-on-write): in-place modification of the
+ * returned arrays (for example, by normalizers) never modifies the file.<br>
+ * Files are written to a temporary file in the same directory, which is then renamed over the destination file. Hence
+ * overwriting a file never modifies the contents of existing mappings of it (which would otherwise fail with SIGBUS
+ * if the file is truncated), and readers never see a partially written file.<br>
+ * Optionally, arrays can be compressed (see {@link Compression}), trading read-time CPU for disk space and IO.
+ * <br>
+ * File layout (header values are little endian):
+ * <pre>
+ * magic (8 bytes), version (int), data byte order (byte), compression (byte), reserved (short), header length (int)
+ * for each of features, labels, features masks, labels masks:
+ *     number of arrays (int, -1 for null)
+ *     for each array: present (byte), and if present: data type name (byte length + ASCII), rank (int),
+ *                     shape (rank longs), offset (long), stored length in bytes (long), raw length in bytes (long)
+ * array data
+ * </pre>
+ */
+public class BinaryMiniBatchFormat {
+    public static final byte[] MAGIC = new byte[] {'N', 'D', '4', 'J', 'B', 'M', 'B', 'F'};
+    public static final int VERSION = 1;
+    public static final int ALIGNMENT = 64;
+
+    // magic, version, byte order, compression, reserved, header length
+    private static final int PREAMBLE_LENGTH = MAGIC.length + 4 + 1 + 1 + 2 + 4;
+    private static final int NUM_GROUPS = 4;
+
+    /**
+     * Compression of the array data. Note that compressed arrays cannot be memory mapped: they are decompressed into
+     * off-heap memory when read
+     */
+    public enum Compression {
+        NONE, DEFLATE
+    }
+
+    private BinaryMiniBatchFormat() {}
+
+    /**
+     * Write the DataSet to the specified file, without compression
+     */
+    public static void write(@NonNull DataSet ds, @NonNull File f) throws IOException {
+        write(ds, f, Compression.NONE);
+    }
+
+    /**
+     * Write the DataSet to the specified file
+     */
+    public static void write(@NonNull DataSet ds, @NonNull File f, @NonNull Compression compression) throws IOException {
+        write(f, compression, arr(ds.getFeatures()), arr(ds.getLabels()), arr(ds.getFeaturesMaskArray()),
+                arr(ds.getLabelsMaskArray()));
+    }
+
+    /**
+     * Write the MultiDataSet to the specified file, without compression
+     */
+    public static void write(@NonNull org.nd4j.linalg.dataset.api.MultiDataSet mds, @NonNull File f) throws IOException {
+        write(mds, f, Compression.NONE);
+    }
+
+    /**
+     * Write the MultiDataSet to the specified file
+     */
+    public static void write(@NonNull org.nd4j.linalg.dataset.api.MultiDataSet mds, @NonNull File f,
+                             @NonNull Compression compression) throws IOException {
+        write(f, compression, mds.getFeatures(), mds.getLabels(), mds.getFeaturesMaskArrays(), mds.getLabelsMaskArrays());
+    }
+
+    private static INDArray[] arr(INDArray arr) {
+        return arr == null ? null : new INDArray[] {arr};
+    }
+
+    private static void write(File f, Compression compression, INDArray[]... groups) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        int headerLength = PREAMBLE_LENGTH;
+        for (INDArray[] group : groups) {
+            headerLength += 4;
+            if (group == null)
+                continue;
+            for (INDArray a : group) {
+                headerLength += 1;
+                if (a == null)
+                    continue;
+                Entry e = new Entry(a, compression);
+                entries.add(e);
+                headerLength += 1 + e.dataType.name().length() + 4 + 8 * e.shape.length + 3 * 8;
+            }
+        }
+
+        long offset = align(headerLength);
+        for (Entry e : entries) {
+            e.offset = offset;
+            offset = align(offset + e.storedLength);
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(headerLength).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(MAGIC);
+        header.putInt(VERSION);
+        header.put((byte) (ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? 0 : 1));
+        header.put((byte) compression.ordinal());
+        header.putShort((short) 0);
+        header.putInt(headerLength);
+        int entryIdx = 0;
+        for (INDArray[] group : groups) {
+            header.putInt(group == null ? -1 : group.length);
+            if (group == null)
+                continue;
+            for (INDArray a : group) {
+                header.put((byte) (a == null ? 0 : 1));
+                if (a == null)
+                    continue;
+                Entry e = entries.get(entryIdx++);
+                byte[] dt = e.dataType.name().getBytes(StandardCharsets.US_ASCII);
+                header.put((byte) dt.length);
+                header.put(dt);
+                header.putInt(e.shape.length);
+                for (long l : e.shape) {
+                    header.putLong(l);
+                }
+                header.putLong(e.offset);
+                header.putLong(e.storedLength);
+                header.putLong(e.rawLength);
+            }
+        }
+        header.flip();
+
+        // never truncate the destination in place: it may be memory mapped (see read)
+        File dir = f.getAbsoluteFile().getParentFile();
+        File tmp = File.createTempFile("." + f.getName() + ".", ".tmp", dir);
+        boolean moved = false;
+        try {
+            try (FileOutputStream fos = new FileOutputStream(tmp, false); FileChannel ch = fos.getChannel()) {
+                writeFully(ch, header, 0);
+                for (Entry e : entries) {
+                    writeFully(ch, e.stored, e.offset);
+                }
+            }
+            try {
+                Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            moved = true;
+        } finally {
+            if (!moved) {
+                tmp.delete();
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel ch, ByteBuffer bb, long position) throws IOException {
+        while (bb.hasRemaining()) {
+            position += ch.write(bb, position);
+        }
+    }
+
+    private static long align(long offset) {
+        return (offset + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    /**
+     * @return True if the specified file is (appears to be) in the binary minibatch format
+     */
+    public static boolean isBinaryMiniBatchFile(@NonNull File f) {
+        if (!f.isFile() || f.length() < PREAMBLE_LENGTH)
+            return false;
+        byte[] magic = new byte[MAGIC.length];
+        try (FileInputStream fis = new FileInputStream(f)) {
+            int read = 0;
+            while (read < magic.length) {
+                int n = fis.read(magic, read, magic.length - read);
+                if (n < 0)
+                    return false;
+                read += n;
+            }
+        } catch (IOException e) {
+            return false;
+        }
+        return Arrays.equals(MAGIC, magic);
+    }
+
+    /**
+     * Read a DataSet from the specified file. The file must contain at most one features, labels, features mask and
+     * labels mask array
+     */
+    public static DataSet readDataSet(@NonNull File f) throws IOException {
+        INDArray[][] groups = read(f);
+        for (INDArray[] g : groups) {
+            if (g != null && g.length > 1) {
+                throw new IllegalStateException("Cannot read file as a DataSet: file contains a MultiDataSet with multiple "
+                        + "inputs or outputs. Use readMultiDataSet instead: " + f);
+            }
+        }
+        return new DataSet(first(groups[0]), first(groups[1]), first(groups[2]), first(groups[3]));
+    }
+
+    /**
+     * Read a MultiDataSet from the specified file. Files written from a DataSet can also be read as a MultiDataSet
+     */
+    public static MultiDataSet readMultiDataSet(@NonNull File f) throws IOException {
+        INDArray[][] groups = read(f);
+        return new MultiDataSet(groups[0], groups[1], groups[2], groups[3]);
+    }
+
+    private static INDArray first(INDArray[] arr) {
+        return arr == null || arr.length == 0 ? null : arr[0];
+    }
+
+    private static INDArray[][] read(File f) throws IOException {
+        // private (copy-on-write) mappings require a channel opened for writing; fall back to copying otherwise
+        boolean writable = f.canWrite();
+        try (RandomAccessFile raf = new RandomAccessFile(f, writable ? "rw" : "r"); FileChannel ch = raf.getChannel()) {
+            ByteBuffer preamble = ByteBuffer.allocate(PREAMBLE_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(ch, preamble, 0, f);
+            byte[] magic = new byte[MAGIC.length];
+            preamble.get(magic);
+            if (!Arrays.equals(MAGIC, magic))
+                throw new IllegalStateException("File is not in the binary minibatch format: " + f);
+            int version = preamble.getInt();
+            if (version != VERSION)
+                throw new IllegalStateException("Unsupported binary minibatch format version " + version + ": " + f);
+            ByteOrder dataOrder = preamble.get() == 0 ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+            Compression compression = Compression.values()[preamble.get()];
+            preamble.getShort();
+            int headerLength = preamble.getInt();
+
+            ByteBuffer header = ByteBuffer.allocate(headerLength - PREAMBLE_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(ch, header, PREAMBLE_LENGTH, f);
+
+            INDArray[][] groups = new INDArray[NUM_GROUPS][0];
+            for (int g = 0; g < NUM_GROUPS; g++) {
+                int n = header.getInt();
+                if (n < 0) {
+                    groups[g] = null;
+                    continue;
+                }
+                groups[g] = new INDArray[n];
+                for (int i = 0; i < n; i++) {
+                    if (header.get() == 0)
+                        continue;
+                    byte[] dt = new byte[header.get()];
+                    header.get(dt);
+                    DataType dataType = DataType.valueOf(new String(dt, StandardCharsets.US_ASCII));
+                    long[] shape = new long[header.getInt()];
+                    for (int j = 0; j < shape.length; j++) {
+                        shape[j] = header.getLong();
+                    }
+                    long offset = header.getLong();
+                    long storedLength = header.getLong();
+                    long rawLength = header.getLong();
+
+                    ByteBuffer data;
+                    if (rawLength == 0) {
+                        data = null;
+                    } else if (compression == Compression.NONE) {
+                        Preconditions.checkState(rawLength <= Integer.MAX_VALUE, "Arrays larger than 2GB are not supported: %s", f);
+                        if (writable) {
+                            data = ch.map(FileChannel.MapMode.PRIVATE, offset, rawLength);
+                        } else {
+                            data = copyToDirect(ch.map(FileChannel.MapMode.READ_ONLY, offset, rawLength));
+                        }
+                    } else {
+                        data = inflate(ch, offset, storedLength, rawLength, f);
+                    }
+                    groups[g][i] = toArray(data, dataOrder, dataType, shape);
+                }
+            }
+            return groups;
+        }
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer bb, long position, File f) throws IOException {
+        while (bb.hasRemaining()) {
+            int n = ch.read(bb, position);
+            if (n < 0)
+                throw new IOException("Unexpected end of file: " + f);
+            position += n;
+        }
+        bb.flip();
+    }
+
+    private static ByteBuffer copyToDirect(ByteBuffer src) {
+        ByteBuffer out = ByteBuffer.allocateDirect(src.remaining());
+        out.put(src);
+        out.flip();
+        return out;
+    }
+
+    private static ByteBuffer inflate(FileChannel ch, long offset, long storedLength, long rawLength, File f)
+            throws IOException {
+        Preconditions.checkState(storedLength <= Integer.MAX_VALUE && rawLength <= Integer.MAX_VALUE,
+                "Arrays larger than 2GB are not supported: %s", f);
+        ByteBuffer stored = ByteBuffer.allocate((int) storedLength);
+        readFully(ch, stored, offset, f);
+
+        byte[] raw = new byte[(int) rawLength];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(stored.array());
+            int n = 0;
+            while (n < raw.length && !inflater.finished()) {
+                n += inflater.inflate(raw, n, raw.length - n);
+            }
+            if (n != raw.length)
+                throw new IOException("Invalid compressed array data in file: " + f);
+        } catch (DataFormatException e) {
+            throw new IOException("Invalid compressed array data in file: " + f, e);
+        } finally {
+            inflater.end();
+        }
+
+        ByteBuffer out = ByteBuffer.allocateDirect(raw.length);
+        out.put(raw);
+        out.flip();
+        return out;
+    }
+
+    private static INDArray toArray(ByteBuffer data, ByteOrder dataOrder, DataType dataType, long[] shape) {
+        if (data == null)
+            return Nd4j.create(dataType, shape, 'c');
+
+        data.order(dataOrder);
+        if (dataOrder != ByteOrder.nativeOrder()) {
+            data = swapToNative(data, dataType.width());
+        }
+
+        long length = data.remaining() / dataType.width();
+        switch (dataType) {
+            case DOUBLE:
+            case FLOAT:
+            case HALF:
+            case LONG:
+            case INT:
+                // wraps the (mapped) buffer, no copy
+                DataBuffer buffer = Nd4j.createBuffer(data, dataType, (int) length);
+                return Nd4j.create(buffer, shape, Nd4j.getStrides(shape, 'c'), 0, 'c', dataType);
+            default:
+                INDArray out = Nd4j.createUninitialized(dataType, shape, 'c');
+                ByteBuffer target = out.data().asNio();
+                target.put(data);
+                Nd4j.getAffinityManager().tagLocation(out, AffinityManager.Location.HOST);
+                return out;
+        }
+    }
+
+    private static ByteBuffer swapToNative(ByteBuffer src, int width) {
+        ByteBuffer out = ByteBuffer.allocateDirect(src.remaining()).order(ByteOrder.nativeOrder());
+        int n = src.remaining();
+        for (int i = 0; i < n; i += width) {
+            for (int j = 0; j < width; j++) {
+                out.put(i + j, src.get(src.position() + i + width - 1 - j));
+            }
+        }
+        return out;
+    }
+
+    private static class Entry {
+        // keeps the memory referenced by the stored buffer alive until written
+        private final INDArray arr;
+        private final DataType dataType;
+        private final long[] shape;
+        private final long rawLength;
+        private final ByteBuffer stored;
+        private final long storedLength;
+        private long offset;
+
+        private Entry(INDArray arr, Compression compression) {
+            if (arr.isView() || arr.ordering() != 'c' || arr.data().length() != arr.length()) {
+                arr = arr.dup('c');
+            }
+            Nd4j.getAffinityManager().ensureLocation(arr, AffinityManager.Location.HOST);
+
+            this.arr = arr;
+            this.dataType = arr.dataType();
+            Preconditions.checkState(dataType.width() > 0, "Unable to write arrays of data type %s", dataType);
+            this.shape = arr.shape();
+            this.rawLength = arr.isEmpty() ? 0 : arr.length() * dataType.width();
+            Preconditions.checkState(rawLength <= Integer.MAX_VALUE, "Arrays larger than 2GB are not supported");
+
+            ByteBuffer raw;
+            if (rawLength == 0) {
+                raw = ByteBuffer.allocate(0);
+            } else {
+                raw = arr.data().asNio().duplicate();
+                raw.position(0);
+                raw.limit((int) rawLength);
+            }
+
+            if (compression == Compression.DEFLATE && rawLength > 0) {
+                byte[] in = new byte[(int) rawLength];
+                raw.get(in);
+                Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+                try {
+                    deflater.setInput(in);
+                    deflater.finish();
+                    byte[] buf = new byte[Math.max(64, in.length / 2)];
+                    int n = 0;
+                    while (!deflater.finished()) {
+                        if (n == buf.length)
+                            buf = Arrays.copyOf(buf, 2 * buf.length);
+                        n += deflater.deflate(buf, n, buf.length - n);
+                    }
+                    this.stored = ByteBuffer.wrap(buf, 0, n);
+                    this.storedLength = n;
+                } finally {
+                    deflater.end();
+                }
+            } else {
+                this.stored = raw;
+                this.storedLength = rawLength;
+            }
+        }
+    }
+}
@@ -135,6 +135,8 @@ public class ExistingMiniBatchDataSetIterator implements DataSetIterator {
 
     private DataSet read(int idx) throws IOException {
         File path = new File(rootDir, String.format(pattern, idx));
+        if (BinaryMiniBatchFormat.isBinaryMiniBatchFile(path))
+            return BinaryMiniBatchFormat.readDataSet(path);
         DataSet d = new DataSet();
         d.load(path);
         return d;
@@ -0,0 +1,191 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.linalg.dataset;
+
+import lombok.NonNull;
+import org.nd4j.linalg.dataset.api.DataSetPreProcessor;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIteratorShardFactory;
+import org.nd4j.linalg.dataset.callbacks.DataSetCallback;
+import org.nd4j.linalg.dataset.callbacks.DefaultCallback;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Async prefetching iterator that uses multiple worker threads, each iterating over one shard of the underlying data
+ * source.<br>
+ * Unlike {@link AsyncDataSetIterator} (which uses a single producer thread) this allows expensive iterators, such as
+ * RecordReaderDataSetIterator with a heavy TransformProcess, to use more than one thread.<br>
+ * Shards are created by a {@link DataSetIteratorShardFactory}: for example, one iterator per subset of the input files.<br>
+ * <br>
+ * See {@link BaseMultiWorkerAsyncIterator} for details on the ordered/unordered modes, adaptive prefetch depth
+ * and blocking statistics.
+ */
+public class MultiWorkerAsyncDataSetIterator extends BaseMultiWorkerAsyncIterator<DataSet> implements DataSetIterator {
+    protected List<DataSetIterator> shards;
+    protected DataSetCallback callback;
+
+    /**
+     * Create an ordered iterator with adaptive prefetch depth and workspaces enabled
+     *
+     * @param shardFactory Factory used to create the shards of the underlying data source
+     * @param numWorkers   Number of worker threads (and shards)
+     */
+    public MultiWorkerAsyncDataSetIterator(DataSetIteratorShardFactory shardFactory, int numWorkers) {
+        this(shardFactory, numWorkers, true);
+    }
+
+    /**
+     * Create an iterator with adaptive prefetch depth and workspaces enabled
+     *
+     * @param shardFactory Factory used to create the shards of the underlying data source
+     * @param numWorkers   Number of worker threads (and shards)
+     * @param ordered      If true: return minibatches in a deterministic order (round-robin over shards). If false:
+     *                     return minibatches as soon as they are available, for maximum throughput
+     */
+    public MultiWorkerAsyncDataSetIterator(DataSetIteratorShardFactory shardFactory, int numWorkers, boolean ordered) {
+        this(shardFactory, numWorkers, ordered, DEFAULT_INITIAL_DEPTH, DEFAULT_MAX_DEPTH, true, true);
+    }
+
+    /**
+     * @param shardFactory Factory used to create the shards of the underlying data source
+     * @param numWorkers   Number of worker threads (and shards)
+     * @param ordered      If true: return minibatches in a deterministic order (round-robin over shards). If false:
+     *                     return minibatches as soon as they are available, for maximum throughput
+     * @param initialDepth Initial prefetch depth - maximum number of minibatches buffered per worker
+     * @param maxDepth     Maximum prefetch depth per worker
+     * @param adaptive     If true: adjust the prefetch depth between 1 and maxDepth based on observed producer and
+     *                     consumer rates. If false: the prefetch depth is fixed at initialDepth
+     * @param useWorkspace Whether workspaces should be used for minibatch creation in the worker threads
+     */
+    public MultiWorkerAsyncDataSetIterator(DataSetIteratorShardFactory shardFactory, int numWorkers, boolean ordered,
+                                           int initialDepth, int maxDepth, boolean adaptive, boolean useWorkspace) {
+        this(shardFactory, numWorkers, ordered, initialDepth, maxDepth, adaptive, useWorkspace, new DefaultCallback(),
+                        Nd4j.getAffinityManager().getDeviceForCurrentThread());
+    }
+
+    public MultiWorkerAsyncDataSetIterator(@NonNull DataSetIteratorShardFactory shardFactory, int numWorkers,
+                                           boolean ordered, int initialDepth, int maxDepth, boolean adaptive,
+                                           boolean useWorkspace, DataSetCallback callback, Integer deviceId) {
+        super(numWorkers, ordered, initialDepth, maxDepth, adaptive, useWorkspace, deviceId);
+        this.callback = callback;
+        this.shards = new ArrayList<>(numWorkers);
+        for (int i = 0; i < numWorkers; i++) {
+            DataSetIterator iter = shardFactory.createShard(i, numWorkers);
+            if (iter.resetSupported() && !iter.hasNext())
+                iter.reset();
+            shards.add(iter);
+        }
+
+        start();
+    }
+
+    @Override
+    protected boolean shardHasNext(int shard) {
+        return shards.get(shard).hasNext();
+    }
+
+    @Override
+    protected DataSet shardNext(int shard) {
+        DataSet ds = shards.get(shard).next();
+        if (callback != null && ds != null)
+            callback.call(ds);
+        return ds;
+    }
+
+    @Override
+    protected void resetShard(int shard) {
+        shards.get(shard).reset();
+    }
+
+    @Override
+    public DataSet next(int num) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int inputColumns() {
+        return shards.get(0).inputColumns();
+    }
+
+    @Override
+    public int totalOutcomes() {
+        return shards.get(0).totalOutcomes();
+    }
+
+    @Override
+    public boolean resetSupported() {
+        for (DataSetIterator iter : shards) {
+            if (!iter.resetSupported())
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean asyncSupported() {
+        return false;
+    }
+
+    @Override
+    public void reset() {
+        restart();
+        if (callback != null)
+            callback.reset();
+    }
+
+    @Override
+    public int batch() {
+        return shards.get(0).batch();
+    }
+
+    /**
+     * Set the pre processor on all shards. Note that it will be called concurrently from the worker threads.
+     */
+    @Override
+    public void setPreProcessor(DataSetPreProcessor preProcessor) {
+        for (DataSetIterator iter : shards)
+            iter.setPreProcessor(preProcessor);
+    }
+
+    @Override
+    public DataSetPreProcessor getPreProcessor() {
+        return shards.get(0).getPreProcessor();
+    }
+
+    @Override
+    public List<String> getLabels() {
+        return shards.get(0).getLabels();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return hasNextElement();
+    }
+
+    @Override
+    public DataSet next() {
+        return nextElement();
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,172 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.linalg.dataset;
+
+import lombok.NonNull;
+import org.nd4j.linalg.dataset.api.MultiDataSet;
+import org.nd4j.linalg.dataset.api.MultiDataSetPreProcessor;
+import org.nd4j.linalg.dataset.api.iterator.MultiDataSetIterator;
+import org.nd4j.linalg.dataset.api.iterator.MultiDataSetIteratorShardFactory;
+import org.nd4j.linalg.dataset.callbacks.DataSetCallback;
+import org.nd4j.linalg.dataset.callbacks.DefaultCallback;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Async prefetching iterator that uses multiple worker threads, each iterating over one shard of the underlying data
+ * source. This is the {@link MultiDataSetIterator} equivalent of {@link MultiWorkerAsyncDataSetIterator}.<br>
+ * <br>
+ * See {@link BaseMultiWorkerAsyncIterator} for details on the ordered/unordered modes, adaptive prefetch depth
+ * and blocking statistics.
+ */
+public class MultiWorkerAsyncMultiDataSetIterator extends BaseMultiWorkerAsyncIterator<MultiDataSet>
+                implements MultiDataSetIterator {
+    protected List<MultiDataSetIterator> shards;
+    protected DataSetCallback callback;
+
+    /**
+     * Create an ordered iterator with adaptive prefetch depth and workspaces enabled
+     *
+     * @param shardFactory Factory used to create the shards of the underlying data source
+     * @param numWorkers   Number of worker threads (and shards)
+     */
+    public MultiWorkerAsyncMultiDataSetIterator(MultiDataSetIteratorShardFactory shardFactory, int numWorkers) {
+        this(shardFactory, numWorkers, true);
+    }
+
+    /**
+     * Create an iterator with adaptive prefetch depth and workspaces enabled
+     *
+     * @param shardFactory Factory used to create the shards of the underlying data source
+     * @param numWorkers   Number of worker threads (and shards)
+     * @param ordered      If true: return minibatches in a deterministic order (round-robin over shards). If false:
+     *                     return minibatches as soon as they are available, for maximum throughput
+     */
+    public MultiWorkerAsyncMultiDataSetIterator(MultiDataSetIteratorShardFactory shardFactory, int numWorkers,
+                                                boolean ordered) {
+        this(shardFactory, numWorkers, ordered, DEFAULT_INITIAL_DEPTH, DEFAULT_MAX_DEPTH, true, true);
+    }
+
+    /**
+     * @param shardFactory Factory used to create the shards of the underlying data source
+     * @param numWorkers   Number of worker threads (and shards)
+     * @param ordered      If true: return minibatches in a deterministic order (round-robin over shards). If false:
+     *                     return minibatches as soon as they are available, for maximum throughput
+     * @param initialDepth Initial prefetch depth - maximum number of minibatches buffered per worker
+     * @param maxDepth     Maximum prefetch depth per worker
+     * @param adaptive     If true: adjust the prefetch depth between 1 and maxDepth based on observed producer and
+     *                     consumer rates. If false: the prefetch depth is fixed at initialDepth
+     * @param useWorkspace Whether workspaces should be used for minibatch creation in the worker threads
+     */
+    public MultiWorkerAsyncMultiDataSetIterator(MultiDataSetIteratorShardFactory shardFactory, int numWorkers,
+                                                boolean ordered, int initialDepth, int maxDepth, boolean adaptive,
+                                                boolean useWorkspace) {
+        this(shardFactory, numWorkers, ordered, initialDepth, maxDepth, adaptive, useWorkspace, new DefaultCallback(),
+                        Nd4j.getAffinityManager().getDeviceForCurrentThread());
+    }
+
+    public MultiWorkerAsyncMultiDataSetIterator(@NonNull MultiDataSetIteratorShardFactory shardFactory, int numWorkers,
+                                                boolean ordered, int initialDepth, int maxDepth, boolean adaptive,
+                                                boolean useWorkspace, DataSetCallback callback, Integer deviceId) {
+        super(numWorkers, ordered, initialDepth, maxDepth, adaptive, useWorkspace, deviceId);
+        this.callback = callback;
+        this.shards = new ArrayList<>(numWorkers);
+        for (int i = 0; i < numWorkers; i++) {
+            MultiDataSetIterator iter = shardFactory.createShard(i, numWorkers);
+            if (iter.resetSupported() && !iter.hasNext())
+                iter.reset();
+            shards.add(iter);
+        }
+
+        start();
+    }
+
+    @Override
+    protected boolean shardHasNext(int shard) {
+        return shards.get(shard).hasNext();
+    }
+
+    @Override
+    protected MultiDataSet shardNext(int shard) {
+        MultiDataSet mds = shards.get(shard).next();
+        if (callback != null && mds != null)
+            callback.call(mds);
+        return mds;
+    }
+
+    @Override
+    protected void resetShard(int shard) {
+        shards.get(shard).reset();
+    }
+
+    @Override
+    public MultiDataSet next(int num) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Set the pre processor on all shards. Note that it will be called concurrently from the worker threads.
+     */
+    @Override
+    public void setPreProcessor(MultiDataSetPreProcessor preProcessor) {
+        for (MultiDataSetIterator iter : shards)
+            iter.setPreProcessor(preProcessor);
+    }
+
+    @Override
+    public MultiDataSetPreProcessor getPreProcessor() {
+        return shards.get(0).getPreProcessor();
+    }
+
+    @Override
+    public boolean resetSupported() {
+        for (MultiDataSetIterator iter : shards) {
+            if (!iter.resetSupported())
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean asyncSupported() {
+        return false;
+    }
+
+    @Override
+    public void reset() {
+        restart();
+        if (callback != null)
+            callback.reset();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return hasNextElement();
+    }
+
+    @Override
+    public MultiDataSet next() {
+        return nextElement();
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+}
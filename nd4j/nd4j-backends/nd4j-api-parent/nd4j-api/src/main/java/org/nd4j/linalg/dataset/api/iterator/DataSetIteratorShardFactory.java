@@ -0,0 +1,39 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.linalg.dataset.api.iterator;
+
+/**
+ * Creates {@link DataSetIterator}s over disjoint shards of a data source, so that the shards can be iterated
+ * concurrently. Used by {@link org.nd4j.linalg.dataset.MultiWorkerAsyncDataSetIterator}.<br>
+ * <br>
+ * Shards should be strided: shard {@code s} of {@code n} should return minibatches {@code s, s+n, s+2n, ...}
+ * of the full (single threaded) sequence. With strided shards, the ordered mode of
+ * {@link org.nd4j.linalg.dataset.MultiWorkerAsyncDataSetIterator} returns exactly the same sequence of minibatches
+ * as iterating over the full data source on a single thread.
+ */
+public interface DataSetIteratorShardFactory {
+
+    /**
+     * Create an iterator over one shard of the data source
+     *
+     * @param shard     Index of the shard, 0 to numShards-1 inclusive
+     * @param numShards Total number of shards
+     * @return Iterator over the specified shard
+     */
+    DataSetIterator createShard(int shard, int numShards);
+
+}
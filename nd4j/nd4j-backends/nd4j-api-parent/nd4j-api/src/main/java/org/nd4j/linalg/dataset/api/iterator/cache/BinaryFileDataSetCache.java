@@ -0,0 +1,73 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.linalg.dataset.api.iterator.cache;
+
+import lombok.NonNull;
+import org.nd4j.linalg.dataset.BinaryMiniBatchFormat;
+import org.nd4j.linalg.dataset.DataSet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * A file-based DataSet cache, like {@link InFileDataSetCache}, that stores DataSets using {@link BinaryMiniBatchFormat}.
+ * Cached DataSets are memory mapped when read (unless compressed), so the cost of reading them in later epochs is
+ * mostly limited to page faults on first access.
+ */
+public class BinaryFileDataSetCache extends InFileDataSetCache {
+    private final BinaryMiniBatchFormat.Compression compression;
+
+    public BinaryFileDataSetCache(File cacheDirectory) {
+        this(cacheDirectory, BinaryMiniBatchFormat.Compression.NONE);
+    }
+
+    public BinaryFileDataSetCache(Path cacheDirectory) {
+        this(cacheDirectory.toFile());
+    }
+
+    public BinaryFileDataSetCache(String cacheDirectory) {
+        this(new File(cacheDirectory));
+    }
+
+    /**
+     * @param cacheDirectory Directory to store cached DataSets in
+     * @param compression    Compression for the cached arrays. Compressed arrays are not memory mapped when read
+     */
+    public BinaryFileDataSetCache(File cacheDirectory, @NonNull BinaryMiniBatchFormat.Compression compression) {
+        super(cacheDirectory);
+        this.compression = compression;
+    }
+
+    @Override
+    protected DataSet load(File file) {
+        try {
+            return BinaryMiniBatchFormat.readDataSet(file);
+        } catch (IOException e) {
+            throw new RuntimeException("Error loading DataSet from cache file: " + file, e);
+        }
+    }
+
+    @Override
+    protected void save(DataSet dataSet, File file) {
+        try {
+            BinaryMiniBatchFormat.write(dataSet, file, compression);
+        } catch (IOException e) {
+            throw new RuntimeException("Error writing DataSet to cache file: " + file, e);
+        }
+    }
+}
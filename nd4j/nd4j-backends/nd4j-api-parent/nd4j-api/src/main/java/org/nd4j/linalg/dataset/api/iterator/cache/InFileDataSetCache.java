@@ -88,12 +88,20 @@ public class InFileDataSetCache implements DataSetCache {
         } else if (!file.isFile()) {
             throw new IllegalStateException("ERROR: cannot read DataSet: cache path " + file + " is not a file");
         } else {
-            DataSet ds = new DataSet();
-            ds.load(file);
-            return ds;
+            return load(file);
         }
     }
 
+    protected DataSet load(File file) {
+        DataSet ds = new DataSet();
+        ds.load(file);
+        return ds;
+    }
+
+    protected void save(DataSet dataSet, File file) {
+        dataSet.save(file);
+    }
+
     @Override
     public void put(String key, DataSet dataSet) {
         File file = resolveKey(key);
@@ -109,7 +117,7 @@ public class InFileDataSetCache implements DataSetCache {
             file.delete();
         }
 
-        dataSet.save(file);
+        save(dataSet, file);
     }
 
     @Override
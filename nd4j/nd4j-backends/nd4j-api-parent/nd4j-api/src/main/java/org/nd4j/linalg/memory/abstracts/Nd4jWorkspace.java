@@ -33,6 +33,7 @@ import org.nd4j.linalg.api.memory.pointers.PointersPair;
 import org.nd4j.linalg.exception.ND4JIllegalStateException;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.memory.MemoryManager;
+import org.nd4j.linalg.memory.metrics.MemoryMetrics;
 import org.nd4j.linalg.util.ND4JFileUtils;
 
 import java.io.BufferedOutputStream;
@@ -198,6 +199,8 @@ public abstract class Nd4jWorkspace implements MemoryWorkspace {
         }
 
         init();
+
+        MemoryMetrics.getInstance().registerWorkspace(this);
     }
 
     @Override
@@ -30,6 +30,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This class provides unified management for Deallocatable resources
@@ -43,6 +44,11 @@ public class DeallocatorService {
     private Map<String, DeallocatableReference> referenceMap = new ConcurrentHashMap<>();
     private List<List<ReferenceQueue<Deallocatable>>> deviceMap = new ArrayList<>();
 
+    // stats, exposed via MemoryMetrics
+    private final AtomicLong deallocations = new AtomicLong(0);
+    private final AtomicLong lastBacklog = new AtomicLong(0);
+    private final AtomicLong maxBacklog = new AtomicLong(0);
+
     public DeallocatorService() {
         // we need to have at least 2 threads, but for CUDA we'd need at least numDevices threads, due to thread->device affinity
         int numDevices = Nd4j.getAffinityManager().getNumberOfDevices();
@@ -82,6 +88,63 @@ public class DeallocatorService {
         referenceMap.put(deallocatable.getUniqueId(), reference);
     }
 
+    /**
+     * @return Number of Deallocatable objects currently tracked, i.e. picked but not yet deallocated
+     */
+    public long getNumberOfTrackedObjects() {
+        return referenceMap.size();
+    }
+
+    /**
+     * @return Total number of objects deallocated so far
+     */
+    public long getNumberOfDeallocations() {
+        return deallocations.get();
+    }
+
+    /**
+     * @return Number of collected objects that were already waiting in a queue when its deallocator thread
+     * woke up last time
+     */
+    public long getLastBacklog() {
+        return lastBacklog.get();
+    }
+
+    /**
+     * @return Maximum number of collected objects seen waiting in a single queue
+     */
+    public long getMaxBacklog() {
+        return maxBacklog.get();
+    }
+
+    protected void deallocate(@NonNull DeallocatableReference reference) {
+        reference.getDeallocator().deallocate();
+        referenceMap.remove(reference.getId());
+        deallocations.incrementAndGet();
+    }
+
+    /**
+     * Deallocates given reference, and then everything that got enqueued meanwhile, so we know how far behind GC we are
+     */
+    protected void deallocateAndDrain(@NonNull DeallocatableReference reference, @NonNull ReferenceQueue<Deallocatable> queue) {
+        deallocate(reference);
+
+        long backlog = 0;
+        DeallocatableReference next;
+        while ((next = (DeallocatableReference) queue.poll()) != null) {
+            deallocate(next);
+            backlog++;
+        }
+        updateBacklog(backlog);
+    }
+
+    protected void updateBacklog(long backlog) {
+        lastBacklog.set(backlog);
+        long max = maxBacklog.get();
+        while (backlog > max && !maxBacklog.compareAndSet(max, backlog))
+            max = maxBacklog.get();
+    }
+
 
     private class DeallocatorServiceThread extends Thread implements Runnable {
         private final ReferenceQueue<Deallocatable> queue;
@@ -113,8 +176,7 @@ public class DeallocatorService {
                         }
                     } else {
                         // invoking deallocator
-                        reference.getDeallocator().deallocate();
-                        referenceMap.remove(reference.getId());
+                        deallocateAndDrain(reference, queue);
                     }
                 } else {
                     try {
@@ -123,8 +185,7 @@ public class DeallocatorService {
                             continue;
 
                         // invoking deallocator
-                        reference.getDeallocator().deallocate();
-                        referenceMap.remove(reference.getId());
+                        deallocateAndDrain(reference, queue);
                     } catch (InterruptedException e) {
                         canRun = false;
                     } catch (Exception e) {
@@ -0,0 +1,274 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.linalg.memory.metrics;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.bytedeco.javacpp.Pointer;
+import org.nd4j.base.Preconditions;
+import org.nd4j.linalg.api.buffer.allocation.HostMemoryPool;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.memory.abstracts.Nd4jWorkspace;
+import org.nd4j.linalg.memory.deallocation.DeallocatorService;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MemoryMetrics: a single registry of memory statistics for ND4J - workspaces (across all threads), JavaCPP off-heap
+ * memory, the {@link HostMemoryPool} and the {@link DeallocatorService}.<br>
+ * Values are computed on request, so reading them is cheap when nobody is looking. They can be consumed in 3 ways:<br>
+ * - Directly via the getters on {@link #getInstance()}<br>
+ * - Via JMX, after calling {@link #registerMBean()} (object name {@link #OBJECT_NAME})<br>
+ * - Pushed periodically to a {@link MemoryMetricsListener} (for example, to forward values to a metrics library)
+ * via {@link #startReporting(long, TimeUnit)}
+ */
+@Slf4j
+public class MemoryMetrics implements MemoryMetricsMXBean {
+    public static final String OBJECT_NAME = "org.nd4j:type=MemoryMetrics";
+
+    private static final MemoryMetrics INSTANCE = new MemoryMetrics();
+
+    private final Set<Reference<Nd4jWorkspace>> workspaces = Collections.newSetFromMap(new ConcurrentHashMap<Reference<Nd4jWorkspace>, Boolean>());
+    private final ReferenceQueue<Nd4jWorkspace> collected = new ReferenceQueue<>();
+    private final List<MemoryMetricsListener> listeners = new CopyOnWriteArrayList<>();
+
+    private ScheduledExecutorService reporter;
+    private ScheduledFuture<?> reportingTask;
+
+    protected MemoryMetrics() {
+        //
+    }
+
+    public static MemoryMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Start tracking the specified workspace. Called by {@link Nd4jWorkspace} on creation; workspaces are held
+     * via weak references, so tracking doesn't prevent them from being garbage collected.
+     */
+    public void registerWorkspace(@NonNull Nd4jWorkspace workspace) {
+        purge();
+        workspaces.add(new WeakReference<>(workspace, collected));
+    }
+
+    protected void purge() {
+        Reference<? extends Nd4jWorkspace> r;
+        while ((r = collected.poll()) != null)
+            workspaces.remove(r);
+    }
+
+    protected List<Nd4jWorkspace> liveWorkspaces() {
+        purge();
+        List<Nd4jWorkspace> out = new ArrayList<>(workspaces.size());
+        for (Reference<Nd4jWorkspace> r : workspaces) {
+            Nd4jWorkspace ws = r.get();
+            if (ws != null)
+                out.add(ws);
+        }
+        return out;
+    }
+
+    @Override
+    public List<WorkspaceMetrics> getWorkspaces() {
+        List<WorkspaceMetrics> out = new ArrayList<>();
+        for (Nd4jWorkspace ws : liveWorkspaces()) {
+            out.add(new WorkspaceMetrics(ws.getId(), ws.getThreadId() == null ? -1 : ws.getThreadId(), ws.getDeviceId(),
+                    ws.getCurrentSize(), ws.getHostOffset(), ws.getMaxCycleAllocations(), ws.getSpilledSize(),
+                    ws.getPinnedSize(), ws.getCyclesCount(), ws.getNumberOfExternalAllocations(),
+                    ws.getNumberOfPinnedAllocations(), ws.isScopeActive()));
+        }
+        return out;
+    }
+
+    @Override
+    public int getNumWorkspaces() {
+        return liveWorkspaces().size();
+    }
+
+    @Override
+    public long getTotalWorkspaceBytes() {
+        long sum = 0;
+        for (Nd4jWorkspace ws : liveWorkspaces())
+            sum += ws.getCurrentSize();
+        return sum;
+    }
+
+    @Override
+    public long getTotalSpilledBytes() {
+        long sum = 0;
+        for (Nd4jWorkspace ws : liveWorkspaces())
+            sum += ws.getSpilledSize();
+        return sum;
+    }
+
+    @Override
+    public long getOffHeapBytes() {
+        return Pointer.totalBytes();
+    }
+
+    @Override
+    public long getMaxOffHeapBytes() {
+        return Pointer.maxBytes();
+    }
+
+    @Override
+    public long getPhysicalBytes() {
+        return Pointer.physicalBytes();
+    }
+
+    @Override
+    public long getMaxPhysicalBytes() {
+        return Pointer.maxPhysicalBytes();
+    }
+
+    @Override
+    public long getHostPoolAllocatedBytes() {
+        return HostMemoryPool.getInstance().getAllocatedBytes();
+    }
+
+    @Override
+    public long getHostPoolIdleBytes() {
+        return HostMemoryPool.getInstance().getIdleBytes();
+    }
+
+    @Override
+    public long getDeallocatorTrackedObjects() {
+        return Nd4j.getDeallocatorService().getNumberOfTrackedObjects();
+    }
+
+    @Override
+    public long getDeallocatorDeallocations() {
+        return Nd4j.getDeallocatorService().getNumberOfDeallocations();
+    }
+
+    @Override
+    public long getDeallocatorLastBacklog() {
+        return Nd4j.getDeallocatorService().getLastBacklog();
+    }
+
+    @Override
+    public long getDeallocatorMaxBacklog() {
+        return Nd4j.getDeallocatorService().getMaxBacklog();
+    }
+
+    /**
+     * Register this instance with the platform MBean server. Does nothing if it is already registered.
+     */
+    public synchronized void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException e) {
+            log.debug("MemoryMetrics MBean is already registered");
+        } catch (Exception e) {
+            throw new RuntimeException("Error registering MemoryMetrics MBean", e);
+        }
+    }
+
+    /**
+     * Remove this instance from the platform MBean server, if it was registered
+     */
+    public synchronized void unregisterMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.unregisterMBean(new ObjectName(OBJECT_NAME));
+        } catch (InstanceNotFoundException e) {
+            //Not registered - ignore
+        } catch (Exception e) {
+            throw new RuntimeException("Error unregistering MemoryMetrics MBean", e);
+        }
+    }
+
+    public void addListener(@NonNull MemoryMetricsListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(@NonNull MemoryMetricsListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Start calling all registered {@link MemoryMetricsListener}s periodically, from a single daemon thread.
+     * Any previously started reporting is stopped first.
+     *
+     * @param period Reporting period
+     * @param unit   Unit for the reporting period
+     */
+    public synchronized void startReporting(long period, @NonNull TimeUnit unit) {
+        Preconditions.checkArgument(period > 0, "Reporting period must be positive, got %s", period);
+        stopReporting();
+        if (reporter == null) {
+            reporter = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "MemoryMetricsReporter");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        reportingTask = reporter.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                report();
+            }
+        }, period, period, unit);
+    }
+
+    /**
+     * Stop periodic reporting started via {@link #startReporting(long, TimeUnit)}
+     */
+    public synchronized void stopReporting() {
+        if (reportingTask != null) {
+            reportingTask.cancel(false);
+            reportingTask = null;
+        }
+    }
+
+    /**
+     * Call all registered listeners once, on the calling thread
+     */
+    public void report() {
+        for (MemoryMetricsListener l : listeners) {
+            try {
+                l.onReport(this);
+            } catch (Throwable t) {
+                //Don't let a broken listener kill the reporting thread
+                log.warn("Exception in MemoryMetricsListener {}", l, t);
+            }
+        }
+    }
+}
@@ -0,0 +1,31 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.linalg.memory.metrics;
+
+/**
+ * Listener for periodic memory metrics reporting. See {@link MemoryMetrics#startReporting(long, java.util.concurrent.TimeUnit)}
+ * after registering it via {@link MemoryMetrics#addListener(MemoryMetricsListener)}
+ */
+public interface MemoryMetricsListener {
+
+    /**
+     * Called periodically from the reporting thread
+     *
+     * @param metrics Metrics registry to read values from
+     */
+    void onReport(MemoryMetrics metrics);
+}
@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.linalg.memory.metrics;
+
+import java.util.List;
+
+/**
+ * JMX interface for {@link MemoryMetrics}. Registered as {@link MemoryMetrics#OBJECT_NAME}
+ */
+public interface MemoryMetricsMXBean {
+
+    /**
+     * @return Statistics for all live workspaces, across all threads
+     */
+    List<WorkspaceMetrics> getWorkspaces();
+
+    int getNumWorkspaces();
+
+    /**
+     * @return Total size of all workspace memory blocks, in bytes
+     */
+    long getTotalWorkspaceBytes();
+
+    /**
+     * @return Total bytes allocated outside of workspace blocks by all workspaces
+     */
+    long getTotalSpilledBytes();
+
+    /**
+     * @return Off-heap bytes currently allocated via JavaCPP
+     */
+    long getOffHeapBytes();
+
+    /**
+     * @return Maximum off-heap bytes that may be allocated via JavaCPP
+     */
+    long getMaxOffHeapBytes();
+
+    /**
+     * @return Physical memory (resident set size) of this process, in bytes
+     */
+    long getPhysicalBytes();
+
+    /**
+     * @return Maximum physical memory for this process, in bytes
+     */
+    long getMaxPhysicalBytes();
+
+    /**
+     * @return Bytes in use from the host memory pool, or 0 if pooling is disabled. See {@link org.nd4j.linalg.api.buffer.allocation.HostMemoryPool}
+     */
+    long getHostPoolAllocatedBytes();
+
+    /**
+     * @return Idle bytes held by the host memory pool
+     */
+    long getHostPoolIdleBytes();
+
+    /**
+     * @return Number of objects currently tracked by the DeallocatorService
+     */
+    long getDeallocatorTrackedObjects();
+
+    /**
+     * @return Total number of objects deallocated by the DeallocatorService
+     */
+    long getDeallocatorDeallocations();
+
+    /**
+     * @return Number of collected objects that were waiting for the deallocator threads at the end of the last
+     * deallocation burst
+     */
+    long getDeallocatorLastBacklog();
+
+    /**
+     * @return Largest number of collected objects waiting for the deallocator threads seen so far
+     */
+    long getDeallocatorMaxBacklog();
+}
@@ -0,0 +1,47 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.linalg.memory.metrics;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Point-in-time statistics for a single workspace. See {@link MemoryMetrics#getWorkspaces()}
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class WorkspaceMetrics {
+    private String id;
+    private long threadId;
+    private int deviceId;
+    /** Size of the workspace memory block, in bytes */
+    private long currentBytes;
+    /** Bytes currently in use within the workspace block */
+    private long usedBytes;
+    /** Bytes allocated during the biggest cycle so far */
+    private long peakCycleBytes;
+    /** Bytes allocated outside of the workspace block (spilled) */
+    private long spilledBytes;
+    /** Bytes in pinned allocations (circular workspaces only) */
+    private long pinnedBytes;
+    private long cycles;
+    private int externalAllocations;
+    private int pinnedAllocations;
+    private boolean scopeActive;
+}
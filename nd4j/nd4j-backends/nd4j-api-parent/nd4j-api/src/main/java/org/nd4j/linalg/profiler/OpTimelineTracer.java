@@ -0,0 +1,313 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.linalg.profiler;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
+import org.nd4j.base.Preconditions;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.CustomOp;
+import org.nd4j.linalg.api.ops.Op;
+import org.nd4j.linalg.api.ops.OpContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * This class records a timeline of op executions: when each op started and finished, on which thread, its input
+ * shapes, and the number of bytes of input and output arrays it touched.<br>
+ * Events are stored in a fixed-size ring buffer, so only the most recent {@link #getCapacity()} events are retained.
+ * The timeline can be exported in the Chrome trace event format, and viewed in chrome://tracing or Perfetto.<br>
+ * <br>
+ * Usage:
+ * <pre>
+ * {@code
+ * OpTimelineTracer.getInstance().setEnabled(true);
+ * net.output(input);
+ * OpTimelineTracer.getInstance().exportChromeTrace(new File("trace.json"));
+ * }
+ * </pre>
+ * Tracing is disabled by default. When disabled, the overhead per op is a single volatile read.
+ */
+@Slf4j
+public class OpTimelineTracer {
+    public static final int DEFAULT_CAPACITY = 100000;
+
+    private static final OpTimelineTracer INSTANCE = new OpTimelineTracer();
+
+    @Getter
+    private volatile boolean enabled = false;
+    private volatile AtomicReferenceArray<TraceEvent> events = new AtomicReferenceArray<>(DEFAULT_CAPACITY);
+    private final AtomicLong counter = new AtomicLong(0);
+
+    /**
+     * A single op execution
+     */
+    @Data
+    @AllArgsConstructor
+    public static class TraceEvent {
+        private String opName;
+        private String opClass;
+        private long threadId;
+        private String threadName;
+        private long startNanos;
+        private long endNanos;
+        private long[][] inputShapes;
+        private long bytes;
+
+        public long getDurationNanos() {
+            return endNanos - startNanos;
+        }
+    }
+
+    protected OpTimelineTracer() {
+        //
+    }
+
+    public static OpTimelineTracer getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Enable or disable recording of op executions. Previously recorded events are retained
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return Maximum number of events retained
+     */
+    public int getCapacity() {
+        return events.length();
+    }
+
+    /**
+     * Set the maximum number of events retained. Clears all previously recorded events
+     *
+     * @param capacity Maximum number of events retained
+     */
+    public synchronized void setCapacity(int capacity) {
+        Preconditions.checkArgument(capacity > 0, "Capacity must be positive, got %s", capacity);
+        events = new AtomicReferenceArray<>(capacity);
+        counter.set(0);
+    }
+
+    /**
+     * Remove all recorded events
+     */
+    public synchronized void clear() {
+        setCapacity(getCapacity());
+    }
+
+    /**
+     * @return Total number of events recorded since creation or the last {@link #clear()}, including events that
+     * have since been overwritten
+     */
+    public long getNumRecorded() {
+        return counter.get();
+    }
+
+    public void record(@NonNull Op op, long startNanos, long endNanos) {
+        if (!enabled)
+            return;
+
+        List<INDArray> inputs = new ArrayList<>(2);
+        if (op.x() != null)
+            inputs.add(op.x());
+        if (op.y() != null)
+            inputs.add(op.y());
+        List<INDArray> outputs = op.z() == null ? Collections.<INDArray>emptyList() : Collections.singletonList(op.z());
+        record(op.opName(), op.getClass(), inputs, outputs, startNanos, endNanos);
+    }
+
+    public void record(@NonNull CustomOp op, long startNanos, long endNanos) {
+        record(op, null, startNanos, endNanos);
+    }
+
+    /**
+     * Record a custom op execution. Input and output arrays are taken from the context if the op doesn't have them set
+     *
+     * @param op      Op that was executed
+     * @param context Context the op was executed with. May be null
+     */
+    public void record(@NonNull CustomOp op, OpContext context, long startNanos, long endNanos) {
+        if (!enabled)
+            return;
+
+        List<INDArray> inputs = op.numInputArguments() > 0 || context == null ? Arrays.asList(op.inputArguments()) : context.getInputArrays();
+        List<INDArray> outputs = op.numOutputArguments() > 0 || context == null ? Arrays.asList(op.outputArguments()) : context.getOutputArrays();
+        record(op.opName(), op.getClass(), inputs, outputs, startNanos, endNanos);
+    }
+
+    protected void record(String opName, Class<?> opClass, List<INDArray> inputs, List<INDArray> outputs, long startNanos, long endNanos) {
+        int nIn = inputs == null ? 0 : inputs.size();
+        long[][] shapes = new long[nIn][0];
+        long bytes = 0;
+        for (int i = 0; i < nIn; i++) {
+            INDArray arr = inputs.get(i);
+            if (arr == null)
+                continue;
+            shapes[i] = arr.shape();
+            bytes += numBytes(arr);
+        }
+        if (outputs != null) {
+            for (INDArray arr : outputs) {
+                if (arr != null)
+                    bytes += numBytes(arr);
+            }
+        }
+
+        Thread t = Thread.currentThread();
+        TraceEvent e = new TraceEvent(opName, opClass.getSimpleName(), t.getId(), t.getName(), startNanos, endNanos, shapes, bytes);
+
+        AtomicReferenceArray<TraceEvent> buffer = events;
+        long idx = counter.getAndIncrement();
+        buffer.set((int) (idx % buffer.length()), e);
+    }
+
+    private static long numBytes(INDArray arr) {
+        if (arr.isEmpty())
+            return 0;
+        return arr.length() * arr.dataType().width();
+    }
+
+    /**
+     * @return All retained events, ordered by start time
+     */
+    public List<TraceEvent> getEvents() {
+        AtomicReferenceArray<TraceEvent> buffer = events;
+        List<TraceEvent> out = new ArrayList<>(buffer.length());
+        for (int i = 0; i < buffer.length(); i++) {
+            TraceEvent e = buffer.get(i);
+            if (e != null)
+                out.add(e);
+        }
+
+        Collections.sort(out, new Comparator<TraceEvent>() {
+            @Override
+            public int compare(TraceEvent e1, TraceEvent e2) {
+                return Long.compare(e1.getStartNanos(), e2.getStartNanos());
+            }
+        });
+        return out;
+    }
+
+    /**
+     * @return All retained events, in the Chrome trace event JSON format
+     */
+    public String toChromeTrace() {
+        List<TraceEvent> list = getEvents();
+        long origin = list.isEmpty() ? 0 : list.get(0).getStartNanos();
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+        boolean first = true;
+        Map<Long, String> threads = new HashMap<>();
+        for (TraceEvent e : list) {
+            threads.put(e.getThreadId(), e.getThreadName());
+
+            if (!first)
+                sb.append(",");
+            first = false;
+            sb.append("\n{\"name\":\"").append(escape(e.getOpName()))
+                    .append("\",\"cat\":\"").append(escape(e.getOpClass()))
+                    .append("\",\"ph\":\"X\",\"pid\":1,\"tid\":").append(e.getThreadId())
+                    .append(",\"ts\":").append(micros(e.getStartNanos() - origin))
+                    .append(",\"dur\":").append(micros(e.getDurationNanos()))
+                    .append(",\"args\":{\"inputShapes\":\"");
+            long[][] shapes = e.getInputShapes();
+            for (int i = 0; i < shapes.length; i++) {
+                if (i > 0)
+                    sb.append(", ");
+                sb.append(Arrays.toString(shapes[i]));
+            }
+            sb.append("\",\"bytes\":").append(e.getBytes()).append("}}");
+        }
+
+        for (Map.Entry<Long, String> t : threads.entrySet()) {
+            if (!first)
+                sb.append(",");
+            first = false;
+            sb.append("\n{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":").append(t.getKey())
+                    .append(",\"args\":{\"name\":\"").append(escape(t.getValue())).append("\"}}");
+        }
+        sb.append("\n]}");
+        return sb.toString();
+    }
+
+    /**
+     * Write all retained events to the specified file, in the Chrome trace event JSON format
+     *
+     * @param file File to write to
+     */
+    public void exportChromeTrace(@NonNull File file) throws IOException {
+        FileUtils.writeStringToFile(file, toChromeTrace(), StandardCharsets.UTF_8);
+    }
+
+    private static String micros(long nanos) {
+        return String.format(Locale.US, "%.3f", nanos / 1000.0);
+    }
+
+    private static String escape(String s) {
+        if (s == null)
+            return "";
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.toString();
+    }
+}
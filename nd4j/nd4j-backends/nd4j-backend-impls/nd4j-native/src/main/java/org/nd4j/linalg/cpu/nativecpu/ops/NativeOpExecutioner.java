@@ -563,6 +563,8 @@ public class NativeOpExecutioner extends DefaultOpExecutioner {
                 }
             }
 
+        profilingConfigurableHookOut(op, st);
+
         return ret;
     }
 
@@ -659,6 +661,7 @@ public class NativeOpExecutioner extends DefaultOpExecutioner {
 
         if (op.dimensions() != null) {
             invokeScalarAlongDimension(op);
+            profilingConfigurableHookOut(op, st);
             return op.z();
         }
 
@@ -962,6 +965,7 @@ public class NativeOpExecutioner extends DefaultOpExecutioner {
                 throw new UnsupportedOperationException("Unknown operation type: [" + op.getOpType() + "]");
         }
 
+        profilingConfigurableHookOut(op, st);
 
         return op.z();
     }
@@ -2143,7 +2147,7 @@ public class NativeOpExecutioner extends DefaultOpExecutioner {
         } finally {
             if (mklOverride)
                 Nd4jCpu.Environment.getInstance().setUseMKLDNN(true);
-            profilingConfigurableHookOut(op, st);
+            profilingConfigurableHookOut(op, context, st);
         }
     }
 
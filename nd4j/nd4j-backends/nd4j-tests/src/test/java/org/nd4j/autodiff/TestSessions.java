@@ -17,10 +17,14 @@
 package org.nd4j.autodiff;
 
 import org.junit.Test;
+import org.nd4j.autodiff.listeners.At;
+import org.nd4j.autodiff.listeners.BaseListener;
+import org.nd4j.autodiff.listeners.Listener;
 import org.nd4j.autodiff.samediff.SDVariable;
 import org.nd4j.autodiff.samediff.SameDiff;
 import org.nd4j.autodiff.samediff.internal.AbstractSession;
 import org.nd4j.autodiff.samediff.internal.InferenceSession;
+import org.nd4j.autodiff.samediff.internal.SameDiffOp;
 import org.nd4j.imports.graphmapper.tf.TFGraphMapper;
 import org.nd4j.linalg.BaseNd4jTest;
 import org.nd4j.linalg.api.buffer.DataType;
@@ -28,12 +32,18 @@ import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.factory.Nd4jBackend;
 import org.nd4j.linalg.io.ClassPathResource;
+import org.nd4j.linalg.ops.transforms.Transforms;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.junit.Assert.*;
 
@@ -249,4 +259,319 @@ public class TestSessions extends BaseNd4jTest {
         }
 
     }
+
+    @Test
+    public void testSessionPool() throws Exception {
+        SameDiff sd = SameDiff.create();
+        SDVariable ph1 = sd.placeHolder("x", DataType.FLOAT, -1, 4);
+        SDVariable ph2 = sd.placeHolder("y", DataType.FLOAT, 1, 4);
+        SDVariable a = ph1.add("a", ph2);
+        SDVariable out = sd.math().tanh("out", a);
+
+        sd.setSessionPoolSize(2);
+        sd.setUseSessionPool(true);
+
+        final INDArray y = Nd4j.linspace(0.1, 0.4, 4, DataType.DOUBLE).castTo(DataType.FLOAT).reshape(1, 4);
+        int nThreads = 4;
+        final int nIter = 20;
+        final INDArray[][] expected = new INDArray[nThreads][nIter];
+        final INDArray[][] actual = new INDArray[nThreads][nIter];
+        Thread[] threads = new Thread[nThreads];
+        for( int t=0; t<nThreads; t++ ){
+            final int thread = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for( int i=0; i<nIter; i++ ){
+                        INDArray x = Nd4j.rand(DataType.FLOAT, 1 + (thread + i) % 3, 4);
+                        expected[thread][i] = Transforms.tanh(x.addRowVector(y), true);
+                        Map<String,INDArray> m = new HashMap<>();
+                        m.put("x", x);
+                        m.put("y", y);
+                        actual[thread][i] = sd.output(m, "out").get("out");
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for(Thread t : threads){
+            t.join();
+        }
+
+        for( int t=0; t<nThreads; t++ ){
+            for( int i=0; i<nIter; i++ ){
+                assertEquals(expected[t][i], actual[t][i]);
+            }
+        }
+
+        //Only pooled sessions should have been created, not per-thread sessions
+        assertTrue(sd.getSessions().isEmpty());
+
+        //Explicit checkout/return
+        InferenceSession s1 = sd.checkoutSession();
+        InferenceSession s2 = sd.checkoutSession();
+        assertNotSame(s1, s2);
+        sd.returnSession(s1);
+        InferenceSession s3 = sd.checkoutSession();
+        assertSame(s1, s3);
+        assertTrue(s3.getNodeOutputs().isEmpty());
+        sd.returnSession(s2);
+        sd.returnSession(s3);
+    }
+
+    @Test
+    public void testCompiledExecutionPlan(){
+        SameDiff sd = SameDiff.create();
+        SDVariable ph1 = sd.placeHolder("x", DataType.FLOAT, -1, 3);
+        SDVariable ph2 = sd.placeHolder("y", DataType.FLOAT, 3, 3);
+        SDVariable a = ph1.add("a", 1.0);
+        SDVariable b = ph1.mmul("b", ph2);
+        SDVariable c = ph1.sub("c", 2.0);
+        SDVariable d = a.add("d", b);
+        sd.setUseCompiledExecutionPlan(true);
+
+        InferenceSession is = new InferenceSession(sd);
+        INDArray y = Nd4j.linspace(0.0, 0.9, 9, DataType.DOUBLE).castTo(DataType.FLOAT).reshape(3,3);
+        int count = 0;
+        for( int mb : new int[]{2, 2, 5}) {
+            INDArray x = Nd4j.rand(DataType.FLOAT, mb, 3);
+            INDArray dExp = x.add(1.0).add(x.mmul(y));
+
+            Map<String, INDArray> m = new HashMap<>();
+            m.put("x", x);
+            m.put("y", y);
+
+            Map<String, INDArray> outMap = is.output(Arrays.asList("d", "b"), m, null, false, null);
+            assertEquals(2, outMap.size());
+            assertEquals(dExp, outMap.get("d"));
+            assertEquals(x.mmul(y), outMap.get("b"));
+
+            //Plan should have been compiled on first execution, and "c" should never be executed
+            assertEquals(1, is.getCompiledPlans().size());
+            assertFalse(is.getNodeOutputs().containsKey(new AbstractSession.VarId("c", AbstractSession.OUTER_FRAME, 0, null)));
+            //First execution is dynamic (and compiles the plan), later executions replay it
+            assertEquals(count++, is.getPlanHits());
+        }
+    }
+
+    @Test
+    public void testCompiledExecutionPlanGraphChange(){
+        SameDiff sd = SameDiff.create();
+        SDVariable x = sd.placeHolder("x", DataType.FLOAT, -1, 3);
+        SDVariable a = x.add("a", 1.0);
+        SDVariable b = x.mul("b", 2.0);
+        SDVariable c = x.sub("c", 3.0);
+        SDVariable d = a.add("d", b);
+        sd.setUseCompiledExecutionPlan(true);
+
+        InferenceSession is = new InferenceSession(sd);
+        INDArray xArr = Nd4j.rand(DataType.FLOAT, 2, 3);
+        Map<String, INDArray> m = Collections.singletonMap("x", xArr);
+        for( int i=0; i<2; i++ ) {
+            Map<String, INDArray> out = is.output(Collections.singletonList("d"), m, null, false, null);
+            assertEquals(xArr.add(1.0).add(xArr.mul(2.0)), out.get("d"));
+        }
+        assertEquals(1, is.getPlanHits());
+
+        //Rewire "d" to use "c" instead of "b": op and variable counts are unchanged
+        String dOp = sd.getVariables().get("d").getOutputOfOp();
+        sd.getOps().get(dOp).setInputsToOp(Arrays.asList("a", "c"));
+        sd.getVariables().get("b").getInputsForOp().remove(dOp);
+        if(sd.getVariables().get("c").getInputsForOp() == null)
+            sd.getVariables().get("c").setInputsForOp(new ArrayList<String>());
+        sd.getVariables().get("c").getInputsForOp().add(dOp);
+
+        for( int i=0; i<2; i++ ) {
+            Map<String, INDArray> out = is.output(Collections.singletonList("d"), m, null, false, null);
+            assertEquals(xArr.add(1.0).add(xArr.sub(3.0)), out.get("d"));
+        }
+        //Stale plan must not be replayed: recompiled on first call after the change, replayed on the second
+        assertEquals(2, is.getPlanHits());
+    }
+
+    @Test
+    public void testLivenessAnalysis(){
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 100);
+        SDVariable x = in;
+        for( int i=0; i<5; i++ ){
+            x = sd.math().tanh("tanh" + i, x);
+        }
+        sd.setUseLivenessAnalysis(true);
+
+        InferenceSession is = new InferenceSession(sd);
+        for( int iter=0; iter<3; iter++ ) {
+            INDArray arr = Nd4j.rand(DataType.FLOAT, 100, 100);
+            INDArray exp = arr;
+            for (int i = 0; i < 5; i++) {
+                exp = Transforms.tanh(exp, true);
+            }
+
+            Map<String, INDArray> out = is.output(Collections.singletonList("tanh4"), Collections.singletonMap("in", arr), null, false, null);
+            assertEquals(exp, out.get("tanh4"));
+
+            //Only the output of the op currently being executed and its input should be live at any point in time
+            long bytesPerArray = 100 * 100 * 4;
+            assertEquals(2 * bytesPerArray, is.getPeakLiveBytes());
+
+            //Intermediate arrays should have been released
+            assertFalse(is.getNodeOutputs().containsKey(new AbstractSession.VarId("tanh0", AbstractSession.OUTER_FRAME, 0, null)));
+            assertTrue(is.getNodeOutputs().containsKey(new AbstractSession.VarId("tanh4", AbstractSession.OUTER_FRAME, 0, null)));
+        }
+    }
+
+    @Test
+    public void testLivenessReleasedArraysBounded(){
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 100);
+        SDVariable x = in;
+        for( int i=0; i<5; i++ ){
+            x = sd.math().tanh("tanh" + i, x);
+        }
+        sd.setUseLivenessAnalysis(true);
+
+        InferenceSession is = new InferenceSession(sd);
+        //Variable minibatch size: arrays for shapes that are no longer used should not be retained indefinitely
+        for( int mb=1; mb<=20; mb++ ) {
+            INDArray arr = Nd4j.rand(DataType.FLOAT, mb, 100);
+            Map<String, INDArray> out = is.output(Collections.singletonList("tanh4"), Collections.singletonMap("in", arr), null, false, null);
+            assertArrayEquals(new long[]{mb, 100}, out.get("tanh4").shape());
+
+            //4 intermediate arrays (tanh0 to tanh3) are released per execution
+            long bytesPerExec = 4L * mb * 100 * 4;
+            assertTrue(is.getReleasedBytes() <= bytesPerExec);
+        }
+
+        //Explicit limit
+        is.setMaxReleasedBytes(100 * 4);
+        is.output(Collections.singletonList("tanh4"), Collections.singletonMap("in", Nd4j.rand(DataType.FLOAT, 5, 100)), null, false, null);
+        assertTrue(is.getReleasedBytes() <= 100 * 4);
+    }
+
+    @Test
+    public void testInterOpParallelExecution(){
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 8);
+        SDVariable w = sd.var("w", Nd4j.rand(DataType.FLOAT, 8, 8));
+        //Several independent branches, merged at the end
+        SDVariable[] branches = new SDVariable[6];
+        for( int i=0; i<branches.length; i++ ){
+            SDVariable b = in.mmul(w).add(i);
+            for( int j=0; j<3; j++ ){
+                b = sd.math().tanh(b).mul(1.5);
+            }
+            branches[i] = b;
+        }
+        SDVariable out = sd.concat("out", 1, branches);
+
+        INDArray arr = Nd4j.rand(DataType.FLOAT, 4, 8);
+        INDArray exp = sd.output(Collections.singletonMap("in", arr), "out").get("out").dup();
+
+        sd.setInterOpThreads(4);
+        for( int i=0; i<5; i++ ) {
+            INDArray act = sd.output(Collections.singletonMap("in", arr), "out").get("out");
+            assertEquals(exp, act);
+        }
+    }
+
+    @Test
+    public void testInterOpParallelSessionSubclass(){
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 8);
+        SDVariable a = sd.math().tanh("a", in);
+        SDVariable b = sd.nn().sigmoid("b", in);
+        SDVariable out = a.add("out", b);
+
+        //Session enabling inter-op parallelism without providing an executor: the base class provides one
+        InferenceSession is = new InferenceSession(sd){
+            @Override
+            protected int interOpThreads(){
+                return 2;
+            }
+        };
+        INDArray arr = Nd4j.rand(DataType.FLOAT, 4, 8);
+        Map<String, INDArray> m = is.output(Collections.singletonList("out"), Collections.singletonMap("in", arr),
+                null, false, null);
+        assertEquals(Transforms.tanh(arr, true).add(Transforms.sigmoid(arr, true)), m.get("out"));
+    }
+
+    @Test
+    public void testInterOpParallelOpsOverlap() throws Exception {
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 8);
+        SDVariable a = sd.math().tanh("a", in);
+        SDVariable b = sd.nn().sigmoid("b", in);
+        SDVariable out = a.add("out", b);
+        sd.setInterOpThreads(2);
+
+        //Both independent ops must be running at the same time to pass the barrier: with sequential execution, the
+        // first op would time out waiting for the second
+        final CyclicBarrier barrier = new CyclicBarrier(2);
+        Listener l = new BaseListener() {
+            @Override
+            public void preOpExecution(SameDiff sd, At at, boolean training, SameDiffOp op) {
+                String v = op.getOutputsOfOp().get(0);
+                if(v.equals("a") || v.equals("b")){
+                    try {
+                        barrier.await(30, TimeUnit.SECONDS);
+                    } catch (Exception e){
+                        throw new RuntimeException("Independent ops were not executed concurrently", e);
+                    }
+                }
+            }
+        };
+
+        INDArray arr = Nd4j.rand(DataType.FLOAT, 4, 8);
+        InferenceSession is = new InferenceSession(sd);
+        Map<String, INDArray> m = is.output(Collections.singletonList("out"), Collections.singletonMap("in", arr),
+                Collections.singletonList(l), false, null);
+        assertEquals(Transforms.tanh(arr, true).add(Transforms.sigmoid(arr, true)), m.get("out"));
+    }
+
+    @Test
+    public void testInterOpParallelErrorWaitsForRunningOps() throws Exception {
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 8);
+        SDVariable a = sd.math().tanh("a", in);
+        SDVariable b = sd.nn().sigmoid("b", in);
+        SDVariable out = a.add("out", b);
+        sd.setInterOpThreads(2);
+
+        final CountDownLatch bStarted = new CountDownLatch(1);
+        final AtomicBoolean bDone = new AtomicBoolean();
+        Listener l = new BaseListener() {
+            @Override
+            public void preOpExecution(SameDiff sd, At at, boolean training, SameDiffOp op) {
+                String v = op.getOutputsOfOp().get(0);
+                try {
+                    if (v.equals("a")) {
+                        bStarted.await(30, TimeUnit.SECONDS);
+                        throw new IllegalStateException("Thrown as expected");
+                    } else if (v.equals("b")) {
+                        bStarted.countDown();
+                        Thread.sleep(500);
+                    }
+                } catch (InterruptedException e){
+                    throw new RuntimeException(e);
+                }
+            }
+
+            @Override
+            public void opExecution(SameDiff sd, At at, boolean training, SameDiffOp op, INDArray[] outputs) {
+                if(op.getOutputsOfOp().get(0).equals("b"))
+                    bDone.set(true);
+            }
+        };
+
+        InferenceSession is = new InferenceSession(sd);
+        try {
+            is.output(Collections.singletonList("out"), Collections.singletonMap("in", Nd4j.rand(DataType.FLOAT, 4, 8)),
+                    Collections.singletonList(l), false, null);
+            fail("Expected exception");
+        } catch (IllegalStateException e){
+            assertEquals("Thrown as expected", e.getMessage());
+        }
+        //The exception must not be rethrown until the op still running on another thread has finished
+        assertTrue(bDone.get());
+    }
 }
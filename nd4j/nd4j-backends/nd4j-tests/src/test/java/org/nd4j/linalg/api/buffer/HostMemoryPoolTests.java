@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.linalg.api.buffer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nd4j.linalg.BaseNd4jTest;
+import org.nd4j.linalg.api.buffer.allocation.HostMemoryPool;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.executioner.OpExecutioner;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.factory.Nd4jBackend;
+
+import static org.junit.Assert.*;
+
+public class HostMemoryPoolTests extends BaseNd4jTest {
+
+    public HostMemoryPoolTests(Nd4jBackend backend) {
+        super(backend);
+    }
+
+    @Override
+    public char ordering() {
+        return 'c';
+    }
+
+    @Before
+    public void setUp() {
+        HostMemoryPool.getInstance().setEnabled(true);
+    }
+
+    @After
+    public void tearDown() {
+        HostMemoryPool.getInstance().setEnabled(false);
+    }
+
+    @Test
+    public void testReuseAfterClose() {
+        //Pooling only applies to host-side buffers
+        if (Nd4j.getExecutioner().type() == OpExecutioner.ExecutionerType.CUDA)
+            return;
+
+        HostMemoryPool pool = HostMemoryPool.getInstance();
+        long hits = pool.getHits();
+
+        DataBuffer b1 = Nd4j.createBuffer(DataType.FLOAT, 1000, false);
+        long address = b1.address();
+        assertTrue(pool.getAllocatedBytes() >= 4000);
+        b1.put(0, 5.0f);
+        b1.close();
+
+        //Same size class: should be served from the thread cache, and zeroed as requested
+        INDArray arr = Nd4j.create(DataType.FLOAT, 990);
+        assertEquals(address, arr.data().address());
+        assertEquals(hits + 1, pool.getHits());
+        assertEquals(0.0, arr.sumNumber().doubleValue(), 0.0);
+
+        arr.assign(3.0);
+        assertEquals(3.0 * 990, arr.sumNumber().doubleValue(), 1e-3);
+        arr.close();
+        assertTrue(pool.getIdleBytes() >= 3960);
+    }
+
+    @Test
+    public void testDifferentTypes() {
+        if (Nd4j.getExecutioner().type() == OpExecutioner.ExecutionerType.CUDA)
+            return;
+
+        for (DataType dt : new DataType[]{DataType.DOUBLE, DataType.FLOAT, DataType.HALF, DataType.INT, DataType.LONG,
+                DataType.BYTE, DataType.BOOL}) {
+            INDArray arr = Nd4j.create(dt, 3, 4);
+            arr.assign(1);
+            assertEquals(dt.toString(), 12.0, arr.castTo(DataType.DOUBLE).sumNumber().doubleValue(), 1e-3);
+            assertEquals(12, arr.data().length());
+            arr.close();
+        }
+    }
+
+    @Test
+    public void testLargeAllocationBypassesPool() {
+        if (Nd4j.getExecutioner().type() == OpExecutioner.ExecutionerType.CUDA)
+            return;
+
+        HostMemoryPool pool = HostMemoryPool.getInstance();
+        long maxBlock = pool.getMaxBlockBytes();
+        try {
+            pool.setMaxBlockBytes(1024);
+            long before = pool.getAllocatedBytes();
+            DataBuffer b = Nd4j.createBuffer(DataType.FLOAT, 1024, true);
+            assertEquals(before, pool.getAllocatedBytes());
+            b.close();
+        } finally {
+            pool.setMaxBlockBytes(maxBlock);
+        }
+    }
+
+    @Test
+    public void testDisabled() {
+        HostMemoryPool.getInstance().setEnabled(false);
+        assertNull(HostMemoryPool.getInstance().allocate(1024));
+        assertFalse(HostMemoryPool.getInstance().release(null));
+        assertEquals(0, HostMemoryPool.getInstance().getIdleBytes());
+    }
+}
@@ -0,0 +1,65 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.linalg.dataset;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.nd4j.linalg.BaseNd4jTest;
+import org.nd4j.linalg.factory.Nd4jBackend;
+
+import static org.junit.Assert.assertEquals;
+import static org.nd4j.linalg.dataset.BaseMultiWorkerAsyncIterator.computeDepth;
+
+@RunWith(Parameterized.class)
+public class BaseMultiWorkerAsyncIteratorTest extends BaseNd4jTest {
+
+    private static final long MS = 1000000L;
+
+    public BaseMultiWorkerAsyncIteratorTest(Nd4jBackend backend) {
+        super(backend);
+    }
+
+    @Override
+    public char ordering() {
+        return 'c';
+    }
+
+    @Test
+    public void testComputeDepth() {
+        //Slow consumer: consumer never waits, 2 workers blocked on a full buffer 80% of the time -> shrink
+        assertEquals(2, computeDepth(3, 6, 2, 100 * MS, 0, 160 * MS, 40 * MS, 20, 20));
+        assertEquals(1, computeDepth(1, 6, 2, 100 * MS, 0, 160 * MS, 40 * MS, 20, 20));
+
+        //Consumer waits 20% of the time, but workers could produce 2x faster than consumption -> grow
+        assertEquals(4, computeDepth(3, 6, 2, 100 * MS, 20 * MS, 0, 80 * MS, 20, 20));
+        assertEquals(6, computeDepth(6, 6, 2, 100 * MS, 20 * MS, 0, 80 * MS, 20, 20));
+
+        //Consumer waits, workers are never blocked and slower than the consumer: ETL bound, more buffering won't help
+        assertEquals(3, computeDepth(3, 6, 2, 100 * MS, 50 * MS, 0, 200 * MS, 10, 10));
+
+        //Consumer waits, workers are slow on average but were blocked at times (variance) -> grow
+        assertEquals(4, computeDepth(3, 6, 2, 100 * MS, 50 * MS, 40 * MS, 200 * MS, 10, 10));
+
+        //Balanced: small waits on both sides -> unchanged
+        assertEquals(3, computeDepth(3, 6, 2, 100 * MS, 2 * MS, 20 * MS, 150 * MS, 20, 20));
+
+        //Empty window -> unchanged
+        assertEquals(3, computeDepth(3, 6, 2, 0, 0, 0, 0, 0, 0));
+        assertEquals(3, computeDepth(3, 6, 2, 100 * MS, 0, 160 * MS, 40 * MS, 0, 0));
+    }
+}
@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.linalg.dataset;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.nd4j.linalg.BaseNd4jTest;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.factory.Nd4jBackend;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+@RunWith(Parameterized.class)
+public class BinaryMiniBatchFormatTest extends BaseNd4jTest {
+
+    @Rule
+    public TemporaryFolder testDir = new TemporaryFolder();
+
+    public BinaryMiniBatchFormatTest(Nd4jBackend backend) {
+        super(backend);
+    }
+
+    @Override
+    public char ordering() {
+        return 'c';
+    }
+
+    @Test
+    public void testDataSetRoundTrip() throws Exception {
+        INDArray f = Nd4j.rand(DataType.FLOAT, 4, 3, 5);
+        INDArray l = Nd4j.rand(DataType.DOUBLE, 4, 2, 5);
+        INDArray fm = Nd4j.create(DataType.FLOAT, 4, 5).assign(1);
+        INDArray lm = Nd4j.create(DataType.FLOAT, 4, 5).assign(1);
+        lm.putScalar(0, 4, 0.0);
+
+        for (BinaryMiniBatchFormat.Compression c : BinaryMiniBatchFormat.Compression.values()) {
+            for (DataSet ds : new DataSet[] {new DataSet(f, l), new DataSet(f, l, fm, lm)}) {
+                File file = testDir.newFile();
+                BinaryMiniBatchFormat.write(ds, file, c);
+                assertTrue(BinaryMiniBatchFormat.isBinaryMiniBatchFile(file));
+
+                DataSet restored = BinaryMiniBatchFormat.readDataSet(file);
+                assertEquals(ds, restored);
+                assertEquals(DataType.DOUBLE, restored.getLabels().dataType());
+            }
+        }
+    }
+
+    @Test
+    public void testViewsAndOrder() throws Exception {
+        INDArray f = Nd4j.linspace(1, 60, 60, DataType.FLOAT).reshape('c', 6, 10);
+        //Non-contiguous view and 'f' order array: should be written as 'c' order copies
+        INDArray fView = f.get(NDArrayIndex.interval(1, 4), NDArrayIndex.interval(2, 7));
+        INDArray l = Nd4j.rand(DataType.FLOAT, new long[] {3, 4}).dup('f');
+
+        File file = testDir.newFile();
+        BinaryMiniBatchFormat.write(new DataSet(fView, l), file);
+        DataSet restored = BinaryMiniBatchFormat.readDataSet(file);
+        assertEquals(fView, restored.getFeatures());
+        assertEquals(l, restored.getLabels());
+    }
+
+    @Test
+    public void testInPlaceModificationDoesNotModifyFile() throws Exception {
+        DataSet ds = new DataSet(Nd4j.rand(DataType.FLOAT, 10, 4), Nd4j.rand(DataType.FLOAT, 10, 2));
+        File file = testDir.newFile();
+        BinaryMiniBatchFormat.write(ds, file);
+
+        DataSet first = BinaryMiniBatchFormat.readDataSet(file);
+        first.getFeatures().addi(100.0);
+
+        DataSet second = BinaryMiniBatchFormat.readDataSet(file);
+        assertEquals(ds.getFeatures(), second.getFeatures());
+    }
+
+    @Test
+    public void testOverwriteMappedFile() throws Exception {
+        File dir = testDir.newFolder();
+        File file = new File(dir, "minibatch.bin");
+        DataSet first = new DataSet(Nd4j.rand(DataType.FLOAT, 64, 100), Nd4j.rand(DataType.FLOAT, 64, 10));
+        BinaryMiniBatchFormat.write(first, file);
+        DataSet mapped = BinaryMiniBatchFormat.readDataSet(file);
+
+        //Overwrite with a smaller minibatch: must not truncate (or modify) the existing mapping
+        DataSet second = new DataSet(Nd4j.rand(DataType.FLOAT, 2, 100), Nd4j.rand(DataType.FLOAT, 2, 10));
+        BinaryMiniBatchFormat.write(second, file);
+
+        assertEquals(first, mapped);
+        assertEquals(second, BinaryMiniBatchFormat.readDataSet(file));
+        //No temporary files are left behind
+        assertArrayEquals(new String[] {"minibatch.bin"}, dir.list());
+    }
+
+    @Test
+    public void testMultiDataSetRoundTrip() throws Exception {
+        INDArray[] f = new INDArray[] {Nd4j.rand(DataType.FLOAT, 3, 4), Nd4j.rand(DataType.DOUBLE, 3, 2, 6)};
+        INDArray[] l = new INDArray[] {Nd4j.rand(DataType.FLOAT, 3, 1)};
+        INDArray[] fm = new INDArray[] {null, Nd4j.create(DataType.FLOAT, 3, 6).assign(1)};
+        MultiDataSet mds = new MultiDataSet(f, l, fm, null);
+
+        for (BinaryMiniBatchFormat.Compression c : BinaryMiniBatchFormat.Compression.values()) {
+            File file = testDir.newFile();
+            BinaryMiniBatchFormat.write(mds, file, c);
+            assertEquals(mds, BinaryMiniBatchFormat.readMultiDataSet(file));
+        }
+
+        //DataSet files can also be read as a MultiDataSet
+        DataSet ds = new DataSet(f[0], l[0]);
+        File file = testDir.newFile();
+        BinaryMiniBatchFormat.write(ds, file);
+        assertEquals(ds.toMultiDataSet(), BinaryMiniBatchFormat.readMultiDataSet(file));
+    }
+
+    @Test
+    public void testIsBinaryMiniBatchFile() throws Exception {
+        DataSet ds = new DataSet(Nd4j.rand(DataType.FLOAT, 3, 4), Nd4j.rand(DataType.FLOAT, 3, 2));
+        File file = testDir.newFile();
+        ds.save(file);
+        assertFalse(BinaryMiniBatchFormat.isBinaryMiniBatchFile(file));
+    }
+}
@@ -0,0 +1,184 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.linalg.profiling;
+
+import lombok.val;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.nd4j.linalg.BaseNd4jTest;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.DynamicCustomOp;
+import org.nd4j.linalg.api.ops.impl.broadcast.BroadcastAddOp;
+import org.nd4j.linalg.api.ops.impl.reduce.same.Sum;
+import org.nd4j.linalg.api.ops.impl.scalar.ScalarAdd;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.factory.Nd4jBackend;
+import org.nd4j.linalg.profiler.OpTimelineTracer;
+import org.nd4j.shade.jackson.databind.JsonNode;
+import org.nd4j.shade.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class OpTimelineTracerTests extends BaseNd4jTest {
+
+    @Rule
+    public TemporaryFolder testDir = new TemporaryFolder();
+
+    public OpTimelineTracerTests(Nd4jBackend b){
+        super(b);
+    }
+
+    @Override
+    public char ordering(){
+        return 'c';
+    }
+
+    @Before
+    public void setUp() {
+        OpTimelineTracer.getInstance().clear();
+        OpTimelineTracer.getInstance().setEnabled(true);
+    }
+
+    @After
+    public void tearDown() {
+        OpTimelineTracer.getInstance().setEnabled(false);
+        OpTimelineTracer.getInstance().setCapacity(OpTimelineTracer.DEFAULT_CAPACITY);
+    }
+
+    @Test
+    public void testRecordOps() {
+        INDArray x = Nd4j.createUninitialized(100);
+        x.assign(10f);
+        x.addi(2f);
+
+        INDArray in = Nd4j.rand(3, 4);
+        INDArray out = Nd4j.create(in.dataType(), 3, 4);
+        val op = DynamicCustomOp.builder("tanh").addInputs(in).addOutputs(out).build();
+        Nd4j.getExecutioner().exec(op);
+
+        List<OpTimelineTracer.TraceEvent> events = OpTimelineTracer.getInstance().getEvents();
+        //assign, add, rand and tanh - possibly with extra ops, depending on the backend
+        assertTrue(events.size() >= 4);
+
+        long prevStart = Long.MIN_VALUE;
+        for (OpTimelineTracer.TraceEvent e : events) {
+            assertTrue(e.getStartNanos() >= prevStart);
+            assertTrue(e.getEndNanos() >= e.getStartNanos());
+            assertEquals(Thread.currentThread().getId(), e.getThreadId());
+            prevStart = e.getStartNanos();
+        }
+
+        OpTimelineTracer.TraceEvent last = events.get(events.size() - 1);
+        assertEquals("tanh", last.getOpName());
+        assertArrayEquals(new long[]{3, 4}, last.getInputShapes()[0]);
+        assertEquals(2 * 12 * in.dataType().width(), last.getBytes());
+    }
+
+    @Test
+    public void testRecordReduceAndBroadcast() {
+        INDArray x = Nd4j.rand(3, 4);
+        INDArray row = Nd4j.rand(1, 4).reshape(4);
+        INDArray z = Nd4j.create(x.dataType(), 3, 4);
+
+        OpTimelineTracer.getInstance().clear();
+        INDArray sum = Nd4j.getExecutioner().exec(new Sum(x, 1));
+        Nd4j.getExecutioner().exec(new BroadcastAddOp(x, row, z, 1));
+
+        List<OpTimelineTracer.TraceEvent> events = OpTimelineTracer.getInstance().getEvents();
+        assertEquals(2, events.size());
+
+        OpTimelineTracer.TraceEvent reduce = events.get(0);
+        assertEquals("reduce_sum", reduce.getOpName());
+        assertArrayEquals(new long[]{3, 4}, reduce.getInputShapes()[0]);
+        assertEquals((12 + sum.length()) * x.dataType().width(), reduce.getBytes());
+        assertTrue(reduce.getEndNanos() >= reduce.getStartNanos());
+
+        OpTimelineTracer.TraceEvent broadcast = events.get(1);
+        assertEquals("broadcastadd", broadcast.getOpName());
+        assertEquals(2, broadcast.getInputShapes().length);
+        assertEquals((12 + 4 + 12) * x.dataType().width(), broadcast.getBytes());
+        assertTrue(broadcast.getStartNanos() >= reduce.getStartNanos());
+    }
+
+    @Test
+    public void testRecordScalarAlongDimension() {
+        INDArray x = Nd4j.rand(3, 4);
+        INDArray scalars = Nd4j.rand(3, 1).reshape(3);
+        INDArray z = Nd4j.create(x.dataType(), 3, 4);
+
+        OpTimelineTracer.getInstance().clear();
+        ScalarAdd op = new ScalarAdd(x, scalars, z, 0.0);
+        op.setDimension(1);
+        Nd4j.getExecutioner().exec(op);
+
+        List<OpTimelineTracer.TraceEvent> events = OpTimelineTracer.getInstance().getEvents();
+        assertEquals(1, events.size());
+        assertEquals("add_scalar", events.get(0).getOpName());
+        assertArrayEquals(new long[]{3, 4}, events.get(0).getInputShapes()[0]);
+        assertTrue(events.get(0).getEndNanos() >= events.get(0).getStartNanos());
+    }
+
+    @Test
+    public void testRingBuffer() {
+        OpTimelineTracer.getInstance().setCapacity(5);
+
+        INDArray x = Nd4j.createUninitialized(10);
+        for (int i = 0; i < 12; i++)
+            x.addi(1.0);
+
+        assertEquals(12, OpTimelineTracer.getInstance().getNumRecorded());
+        assertEquals(5, OpTimelineTracer.getInstance().getEvents().size());
+    }
+
+    @Test
+    public void testDisabled() {
+        OpTimelineTracer.getInstance().setEnabled(false);
+        Nd4j.createUninitialized(10).addi(1.0);
+        assertEquals(0, OpTimelineTracer.getInstance().getEvents().size());
+    }
+
+    @Test
+    public void testChromeTraceExport() throws Exception {
+        INDArray x = Nd4j.rand(10, 10);
+        x.mmul(x).addi(1.0);
+
+        File f = new File(testDir.newFolder(), "trace.json");
+        OpTimelineTracer.getInstance().exportChromeTrace(f);
+
+        JsonNode json = new ObjectMapper().readTree(f);
+        JsonNode events = json.get("traceEvents");
+        assertTrue(events.isArray());
+
+        int numOps = 0;
+        for (JsonNode e : events) {
+            if ("X".equals(e.get("ph").asText())) {
+                numOps++;
+                assertTrue(e.has("ts"));
+                assertTrue(e.has("dur"));
+                assertTrue(e.get("args").has("bytes"));
+            }
+        }
+        assertEquals(OpTimelineTracer.getInstance().getEvents().size(), numOps);
+        assertTrue(numOps > 0);
+    }
+}
@@ -0,0 +1,223 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.linalg.workspace;
+
+import org.junit.After;
+import org.junit.Test;
+import org.nd4j.linalg.BaseNd4jTest;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.memory.Deallocatable;
+import org.nd4j.linalg.api.memory.Deallocator;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.memory.conf.WorkspaceConfiguration;
+import org.nd4j.linalg.api.memory.enums.AllocationPolicy;
+import org.nd4j.linalg.api.memory.enums.LearningPolicy;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.factory.Nd4jBackend;
+import org.nd4j.linalg.memory.metrics.MemoryMetrics;
+import org.nd4j.linalg.memory.metrics.MemoryMetricsListener;
+import org.nd4j.linalg.memory.metrics.WorkspaceMetrics;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class MemoryMetricsTests extends BaseNd4jTest {
+
+    public MemoryMetricsTests(Nd4jBackend backend) {
+        super(backend);
+    }
+
+    @Override
+    public char ordering() {
+        return 'c';
+    }
+
+    @After
+    public void tearDown() {
+        MemoryMetrics.getInstance().stopReporting();
+        MemoryMetrics.getInstance().unregisterMBean();
+        Nd4j.getWorkspaceManager().destroyAllWorkspacesForCurrentThread();
+    }
+
+    @Test
+    public void testWorkspaceMetrics() {
+        WorkspaceConfiguration conf = WorkspaceConfiguration.builder().initialSize(1024 * 1024)
+                .policyAllocation(AllocationPolicy.STRICT).policyLearning(LearningPolicy.NONE).build();
+
+        String id = "MEMORY_METRICS_TEST";
+        try (MemoryWorkspace ws = Nd4j.getWorkspaceManager().getAndActivateWorkspace(conf, id)) {
+            INDArray arr = Nd4j.create(DataType.FLOAT, 100);
+
+            WorkspaceMetrics found = null;
+            for (WorkspaceMetrics m : MemoryMetrics.getInstance().getWorkspaces()) {
+                if (id.equals(m.getId()) && m.getThreadId() == Thread.currentThread().getId())
+                    found = m;
+            }
+
+            assertNotNull(found);
+            assertEquals(1024 * 1024, found.getCurrentBytes());
+            assertTrue(found.getUsedBytes() >= 400);
+            assertTrue(found.isScopeActive());
+            assertTrue(MemoryMetrics.getInstance().getTotalWorkspaceBytes() >= 1024 * 1024);
+        }
+    }
+
+    @Test
+    public void testOffHeapMetrics() {
+        MemoryMetrics mm = MemoryMetrics.getInstance();
+        INDArray arr = Nd4j.create(DataType.FLOAT, 1000);
+        assertTrue(mm.getOffHeapBytes() > 0);
+        assertTrue(mm.getMaxOffHeapBytes() > 0);
+    }
+
+    @Test
+    public void testDeallocatorMetrics() throws Exception {
+        MemoryMetrics mm = MemoryMetrics.getInstance();
+        int numObjects = 100;
+        long trackedBefore = mm.getDeallocatorTrackedObjects();
+        long deallocationsBefore = mm.getDeallocatorDeallocations();
+
+        // deallocators are held back until all objects are collected, so that deallocator threads find a backlog
+        final CountDownLatch gate = new CountDownLatch(1);
+        final CountDownLatch released = new CountDownLatch(numObjects);
+        final AtomicInteger entered = new AtomicInteger(0);
+
+        List<TestDeallocatable> objects = new ArrayList<>();
+        for (int i = 0; i < numObjects; i++) {
+            TestDeallocatable d = new TestDeallocatable(gate, released, entered);
+            Nd4j.getDeallocatorService().pickObject(d);
+            objects.add(d);
+        }
+        assertTrue(mm.getDeallocatorTrackedObjects() >= trackedBefore + numObjects);
+
+        objects = null;
+        long end = System.currentTimeMillis() + 30000;
+        while (entered.get() == 0 && System.currentTimeMillis() < end) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        assertTrue(entered.get() > 0);
+        // give the reference handler time to enqueue the remaining objects
+        Thread.sleep(500);
+        gate.countDown();
+
+        assertTrue(released.await(30, TimeUnit.SECONDS));
+        end = System.currentTimeMillis() + 10000;
+        while (mm.getDeallocatorDeallocations() < deallocationsBefore + numObjects && System.currentTimeMillis() < end)
+            Thread.sleep(10);
+
+        assertTrue(mm.getDeallocatorDeallocations() >= deallocationsBefore + numObjects);
+        assertTrue(mm.getDeallocatorMaxBacklog() > 0);
+    }
+
+    @Test
+    public void testMBean() throws Exception {
+        MemoryMetrics.getInstance().registerMBean();
+        //Second registration should be a no-op
+        MemoryMetrics.getInstance().registerMBean();
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(MemoryMetrics.OBJECT_NAME);
+        assertTrue(server.isRegistered(name));
+        Object offHeap = server.getAttribute(name, "OffHeapBytes");
+        assertTrue(offHeap instanceof Long);
+
+        MemoryMetrics.getInstance().unregisterMBean();
+        assertFalse(server.isRegistered(name));
+    }
+
+    @Test
+    public void testReporting() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(2);
+        MemoryMetricsListener l = new MemoryMetricsListener() {
+            @Override
+            public void onReport(MemoryMetrics metrics) {
+                metrics.getNumWorkspaces();
+                latch.countDown();
+            }
+        };
+
+        MemoryMetrics.getInstance().addListener(l);
+        try {
+            MemoryMetrics.getInstance().startReporting(10, TimeUnit.MILLISECONDS);
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        } finally {
+            MemoryMetrics.getInstance().removeListener(l);
+        }
+    }
+    private static class TestDeallocatable implements Deallocatable {
+        private final String id = UUID.randomUUID().toString();
+        private final CountDownLatch gate;
+        private final CountDownLatch released;
+        private final AtomicInteger entered;
+
+        private TestDeallocatable(CountDownLatch gate, CountDownLatch released, AtomicInteger entered) {
+            this.gate = gate;
+            this.released = released;
+            this.entered = entered;
+        }
+
+        @Override
+        public String getUniqueId() {
+            return id;
+        }
+
+        @Override
+        public Deallocator deallocator() {
+            // static class: the deallocator must not reference this instance, otherwise it never becomes weakly reachable
+            return new TestDeallocator(gate, released, entered);
+        }
+
+        @Override
+        public int targetDevice() {
+            return 0;
+        }
+    }
+
+    private static class TestDeallocator implements Deallocator {
+        private final CountDownLatch gate;
+        private final CountDownLatch released;
+        private final AtomicInteger entered;
+
+        private TestDeallocator(CountDownLatch gate, CountDownLatch released, AtomicInteger entered) {
+            this.gate = gate;
+            this.released = released;
+            this.entered = entered;
+        }
+
+        @Override
+        public void deallocate() {
+            entered.incrementAndGet();
+            try {
+                gate.await(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            released.countDown();
+        }
+    }
+}
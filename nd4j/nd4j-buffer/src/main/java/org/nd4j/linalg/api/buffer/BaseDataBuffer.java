@@ -22,6 +22,7 @@ import lombok.val;
 import org.bytedeco.javacpp.*;
 import org.bytedeco.javacpp.indexer.*;
 import org.nd4j.config.ND4JSystemProperties;
+import org.nd4j.linalg.api.buffer.allocation.HostMemoryPool;
 import org.nd4j.linalg.api.buffer.util.AllocUtil;
 import org.nd4j.linalg.api.buffer.util.DataTypeUtil;
 import org.nd4j.linalg.api.memory.MemoryWorkspace;
@@ -692,93 +693,99 @@ public abstract class BaseDataBuffer implements DataBuffer {
         if (length < 0)
             throw new IllegalArgumentException("Unable to create a buffer of length <= 0");
 
+        // null unless host memory pooling is enabled
+        Pointer block = HostMemoryPool.getInstance().allocate(length * getElementSize());
+
         if (dataType() == DataType.DOUBLE) {
-            pointer = new DoublePointer(length());
+            pointer = block == null ? new DoublePointer(length()) : new DoublePointer(block).capacity(length());
             indexer = DoubleIndexer.create((DoublePointer) pointer);
             if (initialize)
                 fillPointerWithZero();
         } else if (dataType() == DataType.FLOAT) {
-            pointer = new FloatPointer(length());
+            pointer = block == null ? new FloatPointer(length()) : new FloatPointer(block).capacity(length());
             setIndexer(FloatIndexer.create((FloatPointer) pointer));
 
             if (initialize)
                 fillPointerWithZero();
 
         } else if (dataType() == DataType.HALF) {
-            pointer = new ShortPointer(length());
+            pointer = block == null ? new ShortPointer(length()) : new ShortPointer(block).capacity(length());
             setIndexer(HalfIndexer.create((ShortPointer) pointer));
 
             if (initialize)
                 fillPointerWithZero();
         } else if (dataType() == DataType.BFLOAT16) {
-            pointer = new ShortPointer(length());
+            pointer = block == null ? new ShortPointer(length()) : new ShortPointer(block).capacity(length());
             setIndexer(Bfloat16Indexer.create((ShortPointer) pointer));
 
             if (initialize)
                 fillPointerWithZero();
         } else if (dataType() == DataType.INT) {
-            pointer = new IntPointer(length());
+            pointer = block == null ? new IntPointer(length()) : new IntPointer(block).capacity(length());
             setIndexer(IntIndexer.create((IntPointer) pointer));
             if (initialize)
                 fillPointerWithZero();
         } else if (dataType() == DataType.LONG) {
-            pointer = new LongPointer(length());
+            pointer = block == null ? new LongPointer(length()) : new LongPointer(block).capacity(length());
             setIndexer(LongIndexer.create((LongPointer) pointer));
 
             if (initialize)
                 fillPointerWithZero();
         } else if (dataType() == DataType.BYTE) {
-            pointer = new BytePointer(length());
+            pointer = block == null ? new BytePointer(length()) : new BytePointer(block).capacity(length());
             setIndexer(ByteIndexer.create((BytePointer) pointer));
 
             if (initialize)
                 fillPointerWithZero();
         } else if (dataType() == DataType.SHORT) {
-            pointer = new ShortPointer(length());
+            pointer = block == null ? new ShortPointer(length()) : new ShortPointer(block).capacity(length());
             setIndexer(ShortIndexer.create((ShortPointer) pointer));
 
             if (initialize)
                 fillPointerWithZero();
         } else if (dataType() == DataType.UBYTE) {
-            pointer = new BytePointer(length());
+            pointer = block == null ? new BytePointer(length()) : new BytePointer(block).capacity(length());
             setIndexer(UByteIndexer.create((BytePointer) pointer));
 
             if (initialize)
                 fillPointerWithZero();
         } else if (dataType() == DataType.UINT16) {
-            pointer = new ShortPointer(length());
+            pointer = block == null ? new ShortPointer(length()) : new ShortPointer(block).capacity(length());
             setIndexer(UShortIndexer.create((ShortPointer) pointer));
 
             if (initialize)
                 fillPointerWithZero();
         } else if (dataType() == DataType.UINT32) {
-            pointer = new IntPointer(length());
+            pointer = block == null ? new IntPointer(length()) : new IntPointer(block).capacity(length());
             // FIXME: we need unsigned indexer here
             setIndexer(IntIndexer.create((IntPointer) pointer));
 
             if (initialize)
                 fillPointerWithZero();
         } else if (dataType() == DataType.UINT64) {
-            pointer = new LongPointer(length());
+            pointer = block == null ? new LongPointer(length()) : new LongPointer(block).capacity(length());
             // FIXME: we need unsigned indexer here
             setIndexer(LongIndexer.create((LongPointer) pointer));
 
             if (initialize)
                 fillPointerWithZero();
         } else if (dataType() == DataType.BOOL) {
-            pointer = new BooleanPointer(length());
+            pointer = block == null ? new BooleanPointer(length()) : new BooleanPointer(block).capacity(length());
             setIndexer(BooleanIndexer.create((BooleanPointer) pointer));
 
             if (initialize)
                 fillPointerWithZero();
         } else if (dataType() == DataType.UTF8) {
-            pointer = new BytePointer(length());
+            pointer = block == null ? new BytePointer(length()) : new BytePointer(block).capacity(length());
             setIndexer(ByteIndexer.create((BytePointer) pointer));
 
             if (initialize)
                 fillPointerWithZero();
         }
 
+        if (block != null)
+            HostMemoryPool.getInstance().attach(pointer, block);
+
         //// log.info("Creating new buffer of size: {}; dtype: {}; A", length, dataType());
     }
 
@@ -2658,7 +2665,8 @@ public abstract class BaseDataBuffer implements DataBuffer {
 
     protected void release() {
         this.released = true;
-        this.pointer.deallocate();
+        if (!HostMemoryPool.getInstance().release(this.pointer))
+            this.pointer.deallocate();
         this.indexer = null;
         this.pointer = null;
     }
@@ -0,0 +1,441 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.linalg.api.buffer.allocation;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.bytedeco.javacpp.Pointer;
+import org.nd4j.config.ND4JSystemProperties;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * HostMemoryPool: an optional size-class pool for host (off-heap) memory of data buffers allocated outside of
+ * workspaces.<br>
+ * Without pooling, every such buffer is a separate native allocation, released only once the buffer is garbage
+ * collected. With pooling enabled, allocations are rounded up to one of a set of size classes (4 classes per power
+ * of 2, so at most 25% of the block is unused) and served from:<br>
+ * 1. A per-thread cache of idle blocks (no synchronization)<br>
+ * 2. A shared pool of idle blocks<br>
+ * 3. A new native allocation<br>
+ * Blocks go back to the pool when the owning buffer is closed (into the closing thread's cache) or when the owning
+ * pointer is garbage collected (into the shared pool). Idle memory beyond the configured caps is freed.<br>
+ * <br>
+ * Pooling is disabled by default; it can be enabled via {@link ND4JSystemProperties#HOST_MEMORY_POOL_ENABLED} or
+ * {@link #setEnabled(boolean)}. Note that pooled memory is not included in JavaCPP's {@link Pointer#totalBytes()}
+ * and is not subject to its limits; use {@link #getAllocatedBytes()} and {@link #getIdleBytes()} instead.
+ */
+@Slf4j
+public class HostMemoryPool {
+    public static final long DEFAULT_MAX_POOLED_BYTES = 1024L * 1024L * 1024L;
+    public static final long DEFAULT_MAX_THREAD_CACHE_BYTES = 64L * 1024L * 1024L;
+    public static final long DEFAULT_MAX_BLOCK_BYTES = 256L * 1024L * 1024L;
+
+    protected static final int MIN_BLOCK_LOG2 = 6;
+    protected static final long MIN_BLOCK_BYTES = 1L << MIN_BLOCK_LOG2;
+    protected static final int MAX_BLOCK_LOG2 = 40;
+    protected static final int NUM_CLASSES = (MAX_BLOCK_LOG2 - MIN_BLOCK_LOG2) * 4 + 1;
+
+    private static final HostMemoryPool INSTANCE = new HostMemoryPool();
+
+    @Getter
+    private volatile boolean enabled;
+    @Getter
+    private volatile long maxPooledBytes;
+    @Getter
+    private volatile long maxThreadCacheBytes;
+    @Getter
+    private volatile long maxBlockBytes;
+
+    private final ConcurrentLinkedQueue<Pointer>[] shared;
+    private final AtomicLong sharedBytes = new AtomicLong(0);
+    private final AtomicLong allocatedBytes = new AtomicLong(0);
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+
+    private final Map<Long, PooledBlock> inUse = new ConcurrentHashMap<>();
+    private final ReferenceQueue<Pointer> collected = new ReferenceQueue<>();
+    private final List<ThreadCache> caches = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<ThreadCache> threadCache = new ThreadLocal<ThreadCache>() {
+        @Override
+        protected ThreadCache initialValue() {
+            ThreadCache c = new ThreadCache(Thread.currentThread());
+            caches.add(c);
+            return c;
+        }
+    };
+    private Thread reaper;
+
+    @SuppressWarnings("unchecked")
+    protected HostMemoryPool() {
+        shared = new ConcurrentLinkedQueue[NUM_CLASSES];
+        for (int i = 0; i < NUM_CLASSES; i++)
+            shared[i] = new ConcurrentLinkedQueue<>();
+
+        maxPooledBytes = longProperty(ND4JSystemProperties.HOST_MEMORY_POOL_MAX_BYTES, DEFAULT_MAX_POOLED_BYTES);
+        maxThreadCacheBytes = longProperty(ND4JSystemProperties.HOST_MEMORY_POOL_THREAD_CACHE_BYTES, DEFAULT_MAX_THREAD_CACHE_BYTES);
+        maxBlockBytes = Math.min(1L << MAX_BLOCK_LOG2, longProperty(ND4JSystemProperties.HOST_MEMORY_POOL_MAX_BLOCK_BYTES, DEFAULT_MAX_BLOCK_BYTES));
+        setEnabled(Boolean.parseBoolean(System.getProperty(ND4JSystemProperties.HOST_MEMORY_POOL_ENABLED, "false")));
+    }
+
+    private static long longProperty(String key, long defaultValue) {
+        String s = System.getProperty(key);
+        if (s == null)
+            return defaultValue;
+        try {
+            return Long.parseLong(s.trim());
+        } catch (NumberFormatException e) {
+            log.warn("Invalid value for key {}: \"{}\"", key, s);
+            return defaultValue;
+        }
+    }
+
+    public static HostMemoryPool getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Enable or disable pooling for new allocations. Blocks that are in use when pooling is disabled are freed
+     * (instead of pooled) when released.
+     */
+    public synchronized void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (enabled && reaper == null) {
+            reaper = new ReaperThread();
+            reaper.start();
+        }
+        if (!enabled)
+            trim();
+    }
+
+    /**
+     * @param maxPooledBytes Maximum number of idle bytes kept in the shared pool
+     */
+    public void setMaxPooledBytes(long maxPooledBytes) {
+        if (maxPooledBytes < 0)
+            throw new IllegalArgumentException("Maximum pooled bytes must be >= 0, got " + maxPooledBytes);
+        this.maxPooledBytes = maxPooledBytes;
+    }
+
+    /**
+     * @param maxThreadCacheBytes Maximum number of idle bytes cached by each thread
+     */
+    public void setMaxThreadCacheBytes(long maxThreadCacheBytes) {
+        if (maxThreadCacheBytes < 0)
+            throw new IllegalArgumentException("Maximum thread cache bytes must be >= 0, got " + maxThreadCacheBytes);
+        this.maxThreadCacheBytes = maxThreadCacheBytes;
+    }
+
+    /**
+     * @param maxBlockBytes Largest allocation served by the pool. Larger allocations bypass the pool
+     */
+    public void setMaxBlockBytes(long maxBlockBytes) {
+        if (maxBlockBytes < 1 || maxBlockBytes > (1L << MAX_BLOCK_LOG2))
+            throw new IllegalArgumentException("Maximum block size must be between 1 and 2^" + MAX_BLOCK_LOG2 + " bytes, got " + maxBlockBytes);
+        this.maxBlockBytes = maxBlockBytes;
+    }
+
+    /**
+     * @return Size class index for the specified number of bytes
+     */
+    protected static int sizeClass(long bytes) {
+        if (bytes <= MIN_BLOCK_BYTES)
+            return 0;
+        int log2 = 63 - Long.numberOfLeadingZeros(bytes - 1);
+        long base = 1L << log2;
+        int sub = (int) ((bytes - 1 - base) / (base >> 2));
+        return (log2 - MIN_BLOCK_LOG2) * 4 + sub + 1;
+    }
+
+    /**
+     * @return Block size, in bytes, for the specified size class
+     */
+    protected static long classBytes(int sizeClass) {
+        if (sizeClass == 0)
+            return MIN_BLOCK_BYTES;
+        int log2 = MIN_BLOCK_LOG2 + (sizeClass - 1) / 4;
+        long base = 1L << log2;
+        return base + ((sizeClass - 1) % 4 + 1) * (base >> 2);
+    }
+
+    /**
+     * Allocate a block of at least the specified number of bytes. The returned pointer must not be modified or used
+     * directly: it should be wrapped in a new (typed) pointer, which is then passed to {@link #attach(Pointer, Pointer)}.
+     * Note that memory of reused blocks is not zeroed.
+     *
+     * @param bytes Number of bytes required
+     * @return Block with at least the requested number of bytes, or null if pooling is disabled or the size is
+     * outside of the range handled by the pool
+     */
+    public Pointer allocate(long bytes) {
+        if (!enabled || bytes <= 0 || bytes > maxBlockBytes)
+            return null;
+
+        int sizeClass = sizeClass(bytes);
+        long size = classBytes(sizeClass);
+        Pointer p = threadCache.get().poll(sizeClass, size);
+        if (p == null) {
+            p = shared[sizeClass].poll();
+            if (p != null)
+                sharedBytes.addAndGet(-size);
+        }
+
+        if (p != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            p = Pointer.malloc(size);
+            if (p == null || p.isNull()) {
+                //Out of memory: release idle memory and try once more
+                trim();
+                p = Pointer.malloc(size);
+                if (p == null || p.isNull())
+                    throw new OutOfMemoryError("Cannot allocate " + size + " bytes of host memory for pooled buffer");
+            }
+            //Capacity of the block is its size class, in bytes
+            p.capacity(size);
+        }
+        allocatedBytes.addAndGet(size);
+        return p;
+    }
+
+    /**
+     * Register the owner of a block returned by {@link #allocate(long)}. The block will be returned to the pool when
+     * {@link #release(Pointer)} is called for the owner, or when the owner is garbage collected.
+     *
+     * @param owner Pointer wrapping the block. Must have the same address as the block
+     * @param block Block returned by {@link #allocate(long)}
+     */
+    public void attach(@NonNull Pointer owner, @NonNull Pointer block) {
+        if (owner.address() != block.address())
+            throw new IllegalArgumentException("Owner pointer address does not match pooled block address");
+        PooledBlock b = new PooledBlock(owner, block, sizeClass(block.capacity()), collected);
+        inUse.put(block.address(), b);
+    }
+
+    /**
+     * Return the block owned by the specified pointer to the pool immediately. The owner must not be used after this.
+     *
+     * @param owner Pointer previously passed to {@link #attach(Pointer, Pointer)}
+     * @return True if the pointer owned a pooled block (which was returned), false if it is not managed by this pool
+     */
+    public boolean release(Pointer owner) {
+        if (owner == null || inUse.isEmpty())
+            return false;
+        PooledBlock b = inUse.get(owner.address());
+        if (b == null || !b.isOwner(owner))
+            return false;
+        if (!inUse.remove(owner.address(), b))
+            return false;
+        b.clear();
+        recycle(b.block, b.sizeClass, true);
+        return true;
+    }
+
+    protected void recycle(Pointer block, int sizeClass, boolean toThreadCache) {
+        long size = classBytes(sizeClass);
+        allocatedBytes.addAndGet(-size);
+        if (!enabled) {
+            Pointer.free(block);
+            return;
+        }
+
+        if (toThreadCache && threadCache.get().offer(block, sizeClass, size))
+            return;
+
+        if (sharedBytes.addAndGet(size) <= maxPooledBytes) {
+            shared[sizeClass].offer(block);
+        } else {
+            sharedBytes.addAndGet(-size);
+            Pointer.free(block);
+        }
+    }
+
+    /**
+     * Free all idle memory in the shared pool and in the calling thread's cache
+     */
+    public void trim() {
+        threadCache.get().flush(false);
+        for (int i = 0; i < NUM_CLASSES; i++) {
+            long size = classBytes(i);
+            Pointer p;
+            while ((p = shared[i].poll()) != null) {
+                sharedBytes.addAndGet(-size);
+                Pointer.free(p);
+            }
+        }
+    }
+
+    /**
+     * @return Number of bytes in blocks currently in use (i.e., owned by data buffers)
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes.get();
+    }
+
+    /**
+     * @return Number of bytes in idle blocks, in the shared pool and all thread caches
+     */
+    public long getIdleBytes() {
+        long sum = sharedBytes.get();
+        for (ThreadCache c : caches)
+            sum += c.bytes;
+        return sum;
+    }
+
+    /**
+     * @return Number of allocations served from idle blocks
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return Number of allocations that required a new native allocation
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    protected void processCollected(PooledBlock b) {
+        if (inUse.remove(b.block.address(), b))
+            recycle(b.block, b.sizeClass, false);
+    }
+
+    protected void sweepThreadCaches() {
+        for (ThreadCache c : caches) {
+            Thread t = c.thread.get();
+            if (t == null || !t.isAlive()) {
+                caches.remove(c);
+                c.flush(true);
+            }
+        }
+    }
+
+    protected static class PooledBlock extends PhantomReference<Pointer> {
+        private final Pointer block;
+        private final int sizeClass;
+        //Phantom references always return null from get(), so we keep a weak reference to check explicit releases
+        private final WeakReference<Pointer> owner;
+
+        protected PooledBlock(Pointer owner, Pointer block, int sizeClass, ReferenceQueue<Pointer> queue) {
+            super(owner, queue);
+            this.block = block;
+            this.sizeClass = sizeClass;
+            this.owner = new WeakReference<>(owner);
+        }
+
+        protected boolean isOwner(Pointer p) {
+            return owner.get() == p;
+        }
+    }
+
+    protected class ThreadCache {
+        private final WeakReference<Thread> thread;
+        private final ArrayDeque<Pointer>[] free;
+        private volatile long bytes;
+
+        @SuppressWarnings("unchecked")
+        protected ThreadCache(Thread thread) {
+            this.thread = new WeakReference<>(thread);
+            this.free = new ArrayDeque[NUM_CLASSES];
+        }
+
+        protected synchronized Pointer poll(int sizeClass, long size) {
+            ArrayDeque<Pointer> q = free[sizeClass];
+            if (q == null || q.isEmpty())
+                return null;
+            bytes -= size;
+            return q.pollLast();
+        }
+
+        protected synchronized boolean offer(Pointer block, int sizeClass, long size) {
+            if (bytes + size > maxThreadCacheBytes)
+                return false;
+            if (free[sizeClass] == null)
+                free[sizeClass] = new ArrayDeque<>();
+            free[sizeClass].addLast(block);
+            bytes += size;
+            return true;
+        }
+
+        /**
+         * Remove all idle blocks from this cache, either moving them to the shared pool or freeing them
+         */
+        protected synchronized void flush(boolean toShared) {
+            for (int i = 0; i < free.length; i++) {
+                ArrayDeque<Pointer> q = free[i];
+                if (q == null)
+                    continue;
+                long size = classBytes(i);
+                Pointer p;
+                while ((p = q.pollFirst()) != null) {
+                    bytes -= size;
+                    if (toShared && enabled && sharedBytes.addAndGet(size) <= maxPooledBytes) {
+                        shared[i].offer(p);
+                    } else {
+                        if (toShared && enabled)
+                            sharedBytes.addAndGet(-size);
+                        Pointer.free(p);
+                    }
+                }
+            }
+        }
+    }
+
+    protected class ReaperThread extends Thread {
+        protected ReaperThread() {
+            setName("HostMemoryPoolReaper");
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            long lastSweep = System.currentTimeMillis();
+            while (true) {
+                try {
+                    PooledBlock b = (PooledBlock) collected.remove(1000);
+                    while (b != null) {
+                        processCollected(b);
+                        b = (PooledBlock) collected.poll();
+                    }
+
+                    //Blocks cached by threads that have terminated can't be reused by them: move them to the shared pool
+                    long now = System.currentTimeMillis();
+                    if (now - lastSweep >= 1000) {
+                        sweepThreadCaches();
+                        lastSweep = now;
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                } catch (Throwable t) {
+                    log.error("Error in host memory pool reaper thread", t);
+                }
+            }
+        }
+    }
+}
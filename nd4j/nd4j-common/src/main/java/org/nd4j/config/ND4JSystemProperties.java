@@ -125,6 +125,36 @@ public class ND4JSystemProperties {
      */
     public static final String RESOURCES_LOCAL_DIRS = "org.nd4j.strumpf.resource.dirs";
 
+    /**
+     * Applicability: nd4j-native backend, arrays allocated outside of workspaces<br>
+     * Description: If set to true, host memory for data buffers created outside of workspaces is allocated from a
+     * size-class pool (see {@code org.nd4j.linalg.api.buffer.allocation.HostMemoryPool}) instead of a fresh native
+     * allocation for every buffer. Memory is returned to the pool when the buffer is closed or garbage collected.
+     * Default: false
+     */
+    public static final String HOST_MEMORY_POOL_ENABLED = "org.nd4j.memory.pool.enabled";
+
+    /**
+     * Applicability: nd4j-native backend, when {@link #HOST_MEMORY_POOL_ENABLED} is set<br>
+     * Description: Maximum number of bytes of idle memory kept in the shared host memory pool. Memory returned
+     * to the pool beyond this limit is released to the system. Default: 1073741824 (1GB)
+     */
+    public static final String HOST_MEMORY_POOL_MAX_BYTES = "org.nd4j.memory.pool.maxbytes";
+
+    /**
+     * Applicability: nd4j-native backend, when {@link #HOST_MEMORY_POOL_ENABLED} is set<br>
+     * Description: Maximum number of bytes of idle memory cached per thread by the host memory pool, for
+     * allocation without any synchronization. Default: 67108864 (64MB)
+     */
+    public static final String HOST_MEMORY_POOL_THREAD_CACHE_BYTES = "org.nd4j.memory.pool.threadcachebytes";
+
+    /**
+     * Applicability: nd4j-native backend, when {@link #HOST_MEMORY_POOL_ENABLED} is set<br>
+     * Description: Largest allocation (in bytes) served by the host memory pool. Larger buffers are allocated
+     * directly, as if pooling was disabled. Default: 268435456 (256MB)
+     */
+    public static final String HOST_MEMORY_POOL_MAX_BLOCK_BYTES = "org.nd4j.memory.pool.maxblockbytes";
+
     private ND4JSystemProperties() {
     }
 }
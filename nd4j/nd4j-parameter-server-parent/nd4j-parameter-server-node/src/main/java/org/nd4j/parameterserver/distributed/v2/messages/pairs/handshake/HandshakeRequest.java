@@ -16,10 +16,18 @@
 
 package org.nd4j.parameterserver.distributed.v2.messages.pairs.handshake;
 
+import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
 import org.nd4j.parameterserver.distributed.v2.messages.impl.base.BaseRequestMessage;
 
 @NoArgsConstructor
 public class HandshakeRequest extends BaseRequestMessage {
 
+    /**
+     * If true, this node joins the mesh as passive node, i.e. it won't receive updates broadcast through the mesh
+     */
+    @Getter
+    @Setter
+    private boolean passive = false;
 }
@@ -0,0 +1,37 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2018 Skymind, Inc.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package org.nd4j.parameterserver.distributed.v2.messages.pairs.handshake;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.nd4j.parameterserver.distributed.v2.messages.impl.base.BaseRequestMessage;
+
+/**
+ * This message is sent by an already introduced node to the root node, to change its passive mode.
+ * Root node replies with {@link HandshakeResponse}, carrying updated mesh
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+public class PassiveModeRequest extends BaseRequestMessage {
+    private static final long serialVersionUID = 1L;
+
+    @Getter
+    @Setter
+    private boolean passive;
+}
@@ -180,6 +180,21 @@ public interface Transport {
      */
     boolean isIntroduced();
 
+    /**
+     * This method sets passive mode for this node. Passive nodes don't receive updates broadcast through the mesh,
+     * but can still send their own updates, and exchange requests with other nodes.
+     * If this node was already introduced to the root node, this method blocks until the root node has updated the mesh
+     *
+     * @param passive
+     */
+    void setPassive(boolean passive);
+
+    /**
+     * This method checks if this node is passive
+     * @return
+     */
+    boolean isPassive();
+
     /**
      * This method checks connection to the given node ID, and if it's not connected - establishes connection
      * @param id
@@ -36,6 +36,7 @@ import org.nd4j.parameterserver.distributed.v2.messages.history.HashHistoryHolde
 import org.nd4j.parameterserver.distributed.v2.messages.impl.MeshUpdateMessage;
 import org.nd4j.parameterserver.distributed.v2.messages.pairs.handshake.HandshakeRequest;
 import org.nd4j.parameterserver.distributed.v2.messages.pairs.handshake.HandshakeResponse;
+import org.nd4j.parameterserver.distributed.v2.messages.pairs.handshake.PassiveModeRequest;
 import org.nd4j.parameterserver.distributed.v2.messages.pairs.ping.PingMessage;
 import org.nd4j.parameterserver.distributed.v2.messages.pairs.ping.PongMessage;
 import org.nd4j.parameterserver.distributed.v2.messages.MessagesHistoryHolder;
@@ -105,6 +106,9 @@ public abstract  class BaseTransport  implements Transport {
     // this flag is used to track status of handshake procedure at node side
     protected AtomicBoolean handshakeFlag = new AtomicBoolean(false);
 
+    // passive nodes don't receive updates broadcast through the mesh
+    protected volatile boolean passive = false;
+
     protected final ThreadPoolExecutor executorService = (ThreadPoolExecutor) Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()), new ThreadFactory() {
         @Override
         public Thread newThread(@NonNull Runnable r) {
@@ -203,7 +207,9 @@ public abstract  class BaseTransport  implements Transport {
         // now we're going for Handshake with master
         if (!masterMode) {
             try {
-                sendMessageBlocking(new HandshakeRequest(), rootId);
+                val request = new HandshakeRequest();
+                request.setPassive(passive);
+                sendMessageBlocking(request, rootId);
             } catch (Exception e) {
                 throw new ND4JIllegalStateException("Can't proceed with handshake from [" + this.id() + "] to [" + rootId + "]", e);
             }
@@ -224,6 +230,33 @@ public abstract  class BaseTransport  implements Transport {
         this.launch();
     }
 
+    @Override
+    public synchronized void setPassive(boolean passive) {
+        if (masterMode && passive)
+            throw new ND4JIllegalStateException("Root node can't be passive");
+
+        if (this.passive == passive)
+            return;
+
+        this.passive = passive;
+
+        // if we're not introduced yet - passive mode will be sent with handshake request
+        if (masterMode || !handshakeFlag.get())
+            return;
+
+        try {
+            sendMessageBlocking(new PassiveModeRequest(passive), rootId);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ND4JIllegalStateException("Interrupted while changing passive mode of [" + this.id() + "]", e);
+        }
+    }
+
+    @Override
+    public boolean isPassive() {
+        return passive;
+    }
+
     @Override
     public synchronized void shutdown() {
         // shuttng down
@@ -243,9 +276,9 @@ public abstract  class BaseTransport  implements Transport {
         if (!node.isRootNode() && (PropagationMode.BOTH_WAYS == mode || PropagationMode.ONLY_UP == mode))
             chunks.forEach(c -> sendMessage(c, upstream.getId()));
 
-        // and send chunks to all downstreams
+        // and send chunks to all downstreams, except passive ones
         if (PropagationMode.BOTH_WAYS == mode || PropagationMode.ONLY_DOWN == mode)
-            downstreams.parallelStream().forEach(n -> {
+            downstreams.parallelStream().filter(n -> !n.isPassive()).forEach(n -> {
                 chunks.forEach(c -> sendMessage(c, n.getId()));
             });
     }
@@ -325,6 +358,10 @@ public abstract  class BaseTransport  implements Transport {
         // now we're sending message down
         if (PropagationMode.BOTH_WAYS == mode || PropagationMode.ONLY_DOWN == mode) {
             for (val n:downstreams) {
+                // passive nodes don't receive updates
+                if (n.isPassive() && voidMessage instanceof INDArrayMessage)
+                    continue;
+
                 if (!isLoopedNode(n, originatorId, relayId)) {
                     sendMessage(voidMessage, n.getId());
                 }
@@ -382,6 +419,7 @@ public abstract  class BaseTransport  implements Transport {
                 replies.putIfAbsent(reply.getRequestId(), reply);
             }
         } else if (message instanceof HandshakeRequest) {
+            val request = (HandshakeRequest) message;
             synchronized (mesh) {
                 if (!mesh.get().isKnownNode(this.id())) {
                     mesh.get().getRootNode().setId(this.id);
@@ -399,19 +437,22 @@ public abstract  class BaseTransport  implements Transport {
                     // notifying transport implementation about node reconnect
                     onRemap(message.getOriginatorId());
 
+                    // restarted node might have changed its mode
+                    mesh.get().setPassive(message.getOriginatorId(), request.isPassive());
+
                     mesh.get().remapNodeAndDownstreams(message.getOriginatorId());
                     // we say that this model has restarted
                     response.setRestart(true);
                 } else {
                     // first we add new node to the mesh
-                    mesh.get().addNode(message.getOriginatorId());
+                    mesh.get().addNode(message.getOriginatorId(), request.isPassive());
                     numerOfNodes.incrementAndGet();
                 }
 
                 response.setMesh(mesh.get().clone());
             }
 
-            response.setRequestId(((HandshakeRequest) message).getRequestId());
+            response.setRequestId(request.getRequestId());
             sendMessage(response, message.getOriginatorId());
 
             // update all other nodes with new mesh
@@ -423,6 +464,27 @@ public abstract  class BaseTransport  implements Transport {
                 log.error("MeshUpdateMessage propagation failed:", e);
                 throw new RuntimeException(e);
             }
+        } else if (message instanceof PassiveModeRequest) {
+            val request = (PassiveModeRequest) message;
+            val response = HandshakeResponse.builder()
+                    .build();
+
+            synchronized (mesh) {
+                mesh.get().setPassive(message.getOriginatorId(), request.isPassive());
+                response.setMesh(mesh.get().clone());
+            }
+
+            response.setRequestId(request.getRequestId());
+            sendMessage(response, message.getOriginatorId());
+
+            // update all other nodes with new mesh
+            try {
+                propagateMessageDirect(new MeshUpdateMessage(mesh.get()));
+            } catch (Exception e) {
+                log.error("Wasn't able to propagate message from [{}]", id());
+                log.error("MeshUpdateMessage propagation failed:", e);
+                throw new RuntimeException(e);
+            }
         } else if (message instanceof HandshakeResponse) {
             val response = (HandshakeResponse) message;
             val newMesh = response.getMesh();
@@ -19,6 +19,7 @@ package org.nd4j.parameterserver.distributed.v2.util;
 import lombok.*;
 import lombok.extern.slf4j.Slf4j;
 import org.nd4j.linalg.primitives.Atomic;
+import org.nd4j.linalg.exception.ND4JIllegalStateException;
 import org.nd4j.linalg.util.SerializationUtils;
 import org.nd4j.parameterserver.distributed.v2.enums.MeshBuildMode;
 import org.nd4j.parameterserver.distributed.enums.NodeStatus;
@@ -95,10 +96,29 @@ public class MeshOrganizer implements Serializable {
      * This methods adds new node to the network
      */
     public Node addNode(@NonNull String ip, @NonNull int port) {
+        return addNode(ip, port, false);
+    }
+
+    /**
+     * This method adds new node to the network
+     *
+     * PLEASE NOTE: Default port 40123 is used
+     * @param ip
+     * @param passive if true, the node won't receive updates broadcast through the mesh. See {@link Node#isPassive()}
+     */
+    public Node addNode(@NonNull String ip, boolean passive) {
+        return addNode(ip, 40123, passive);
+    }
+
+    /**
+     * This methods adds new node to the network
+     */
+    public Node addNode(@NonNull String ip, int port, boolean passive) {
         val node = Node.builder()
                 .id(ip)
                 .port(port)
                 .upstream(null)
+                .passive(passive)
                 .build();
 
          return this.addNode(node);
@@ -129,12 +149,15 @@ public class MeshOrganizer implements Serializable {
             // adding node to the candidate
             candidate.addDownstreamNode(node);
 
-            // adding this node for future connections
-            for (int e = 0; e < MAX_DOWNSTREAMS; e++)
-                fillQueue.add(node);
+            // passive nodes are always leaves, since they don't receive updates to relay
+            if (!node.isPassive()) {
+                // adding this node for future connections
+                for (int e = 0; e < MAX_DOWNSTREAMS; e++)
+                    fillQueue.add(node);
 
-            sortedNodes.add(node);
-            Collections.sort(sortedNodes);
+                sortedNodes.add(node);
+                Collections.sort(sortedNodes);
+            }
         } else {
             rootNode.addDownstreamNode(node);
         }
@@ -145,6 +168,42 @@ public class MeshOrganizer implements Serializable {
         return node;
     }
 
+    /**
+     * This method changes passive mode of the given node. Downstreams of a node that becomes passive are remapped to
+     * other nodes, since passive nodes don't receive updates to relay
+     *
+     * @param ip
+     * @param passive
+     * @throws NoSuchElementException
+     */
+    public synchronized void setPassive(@NonNull String ip, boolean passive) throws NoSuchElementException {
+        val node = getNodeById(ip);
+        if (node.isRootNode())
+            throw new ND4JIllegalStateException("Root node can't be passive");
+
+        if (node.isPassive() == passive)
+            return;
+
+        version++;
+        node.setPassive(passive);
+
+        if (buildMode == MeshBuildMode.MESH) {
+            if (passive) {
+                sortedNodes.remove(node);
+                fillQueue.removeAll(Collections.singleton(node));
+
+                for (val n : node.getDownstreamNodes())
+                    remapNode(n);
+            } else {
+                for (int e = 0; e < MAX_DOWNSTREAMS; e++)
+                    fillQueue.add(node);
+
+                sortedNodes.add(node);
+                Collections.sort(sortedNodes);
+            }
+        }
+    }
+
     /**
      * This method marks Node (specified by IP) as offline, and remaps its downstreams
      *
@@ -377,6 +436,15 @@ public class MeshOrganizer implements Serializable {
         @Setter
         private int port;
 
+        /**
+         * Passive nodes don't receive updates broadcast through the mesh (they still receive mesh updates, and can send
+         * their own updates and requests). Passive nodes are always leaves of the tree
+         */
+        @Getter(AccessLevel.PUBLIC)
+        @Setter(AccessLevel.PROTECTED)
+        @Builder.Default
+        private boolean passive = false;
+
         @Getter(AccessLevel.NONE)
         @Setter(AccessLevel.NONE)
         private Node upstream;
@@ -27,6 +27,8 @@ import org.nd4j.parameterserver.distributed.v2.messages.pairs.handshake.Handshak
 import org.nd4j.parameterserver.distributed.v2.messages.pairs.handshake.HandshakeResponse;
 import org.nd4j.parameterserver.distributed.v2.transport.MessageCallable;
 
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -205,4 +207,72 @@ public class DummyTransportTest {
         assertNotEquals(version, newMesh.getVersion());
         assertTrue(restarted.get());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testPassiveNodes_1() throws Exception {
+        val connector = new DummyTransport.Connector();
+        val transportA = new DummyTransport("alpha", connector);
+        val transportB = new DummyTransport("beta", connector);
+        val transportG = new DummyTransport("gamma", connector, "alpha");
+        val transportD = new DummyTransport("delta", connector);
+
+        connector.register(transportA, transportB, transportG, transportD);
+
+        transportB.sendMessage(new HandshakeRequest(), "alpha");
+
+        val request = new HandshakeRequest();
+        request.setPassive(true);
+        transportG.setPassive(true);
+        transportG.sendMessage(request, "alpha");
+
+        transportD.sendMessage(new HandshakeRequest(), "alpha");
+
+        // ids of distinct messages received by each node: the same message might be delivered more than once
+        val received = new ConcurrentHashMap<String, Set<String>>();
+        for (val t : new DummyTransport[]{transportA, transportB, transportG, transportD}) {
+            received.put(t.id(), ConcurrentHashMap.<String>newKeySet());
+            t.addPrecursor(GradientsUpdateMessage.class, new MessageCallable<GradientsUpdateMessage>() {
+                @Override
+                public void apply(GradientsUpdateMessage message) {
+                    received.get(t.id()).add(message.getMessageId());
+                }
+            });
+        }
+
+        // all nodes share the same mesh, with gamma as passive leaf
+        assertTrue(transportD.getMesh().getNodeById("gamma").isPassive());
+        assertEquals(transportA.getMesh(), transportD.getMesh());
+
+        val msg = new GradientsUpdateMessage("message", Nd4j.ones(10, 10));
+        msg.setOriginatorId("beta");
+        transportB.propagateMessage(msg, PropagationMode.BOTH_WAYS);
+
+        assertEquals(1, received.get("alpha").size());
+        assertEquals(0, received.get("gamma").size());
+        assertEquals(1, received.get("delta").size());
+
+        // passive node still sends its own updates
+        val msg2 = new GradientsUpdateMessage("message2", Nd4j.ones(10, 10));
+        msg2.setOriginatorId("gamma");
+        transportG.propagateMessage(msg2, PropagationMode.BOTH_WAYS);
+
+        assertEquals(2, received.get("alpha").size());
+        assertEquals(1, received.get("beta").size());
+        assertEquals(2, received.get("delta").size());
+
+        // once gamma becomes active, it receives updates
+        val version = transportA.getMesh().getVersion();
+        transportG.setPassive(false);
+        assertFalse(transportA.getMesh().getNodeById("gamma").isPassive());
+        assertFalse(transportB.getMesh().getNodeById("gamma").isPassive());
+        assertNotEquals(version, transportG.getMesh().getVersion());
+
+        val msg3 = new GradientsUpdateMessage("message3", Nd4j.ones(10, 10));
+        msg3.setOriginatorId("beta");
+        transportB.propagateMessage(msg3, PropagationMode.BOTH_WAYS);
+
+        assertEquals(3, received.get("alpha").size());
+        assertEquals(1, received.get("gamma").size());
+        assertEquals(3, received.get("delta").size());
+    }
+}
@@ -337,4 +337,62 @@ public class MeshOrganizerTest {
         }
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testPassiveNodes_1() throws Exception {
+        val mesh = new MeshOrganizer(MeshBuildMode.MESH);
+
+        val passive = new ArrayList<MeshOrganizer.Node>();
+        for (int e = 0; e < 200; e++) {
+            if (e % 2 == 0)
+                passive.add(mesh.addNode(java.util.UUID.randomUUID().toString(), true));
+            else
+                mesh.addNode(java.util.UUID.randomUUID().toString(), false);
+        }
+
+        assertEquals(201, mesh.totalNodes());
+
+        // passive nodes are always leaves
+        for (val n : passive) {
+            assertTrue(n.isPassive());
+            assertEquals(0, n.numberOfDownstreams());
+        }
+
+        // and that survives serialization
+        val copy = mesh.clone();
+        for (val n : passive)
+            assertTrue(copy.getNodeById(n.getId()).isPassive());
+    }
+
+    @Test
+    public void testPassiveNodes_2() throws Exception {
+        val mesh = new MeshOrganizer(MeshBuildMode.MESH);
+
+        // first nodes are connected to the root node, next ones to the first node
+        val first = mesh.addNode("192.168.1.1");
+        for (int e = 0; e < 20; e++)
+            mesh.addNode(java.util.UUID.randomUUID().toString());
+
+        assertTrue(first.numberOfDownstreams() > 0);
+
+        val version = mesh.getVersion();
+        mesh.setPassive("192.168.1.1", true);
+
+        // downstreams of passive node are remapped
+        assertTrue(first.isPassive());
+        assertEquals(0, first.numberOfDownstreams());
+        assertEquals(22, mesh.totalNodes());
+        assertNotEquals(version, mesh.getVersion());
+
+        // new nodes are never connected to passive node
+        for (int e = 0; e < 100; e++)
+            mesh.addNode(java.util.UUID.randomUUID().toString());
+        assertEquals(0, first.numberOfDownstreams());
+
+        // until it's active again: it's a candidate for new connections after all nodes already in queue
+        mesh.setPassive("192.168.1.1", false);
+        assertFalse(first.isPassive());
+        for (int e = 0; e < 2000 && first.numberOfDownstreams() == 0; e++)
+            mesh.addNode(java.util.UUID.randomUUID().toString());
+        assertTrue(first.numberOfDownstreams() > 0);
+    }
+}